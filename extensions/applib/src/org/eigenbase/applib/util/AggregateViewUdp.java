@@ -0,0 +1,734 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.applib.util;
+
+import java.sql.*;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.cwm.core.*;
+import net.sf.farrago.cwm.relational.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.session.*;
+
+import org.eigenbase.applib.resource.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
+
+import org.luciddb.lcs.*;
+
+
+/**
+ * AggregateViewUdp creates and refreshes materialized aggregate views: stored
+ * tables holding the result of a GROUP BY query over other stored tables,
+ * which the optimizer substitutes for matching aggregate queries while the
+ * views are fresh (see {@link LcsAggregateView}).
+ *
+ * <p>A refresh after rows were only appended to one of the base tables
+ * aggregates just the new rows, selected by LCS_RID, and merges them into
+ * the view. Any other change to the base tables recomputes the view.
+ *
+ * <p>The state of the base tables is captured before the view is loaded,
+ * and every base table read by the load is restricted to the rids it had
+ * then, so rows appended while the load runs are left for the next refresh.
+ * Where the query reads a base table other than in its FROM clause, the
+ * restriction cannot be applied; if the base tables change during such a
+ * load, the view is recorded as stale.
+ *
+ * @version $Id$
+ */
+public abstract class AggregateViewUdp
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a table holding the result of a query and registers it as an
+     * aggregate view.
+     *
+     * @param schemaName schema for the new table; null for the current schema
+     * @param viewName name of the new table
+     * @param query aggregate query over stored tables
+     */
+    public static void create(
+        String schemaName,
+        String viewName,
+        String query)
+        throws SQLException
+    {
+        if ((viewName == null) || (viewName.trim().length() == 0)) {
+            throw ApplibResource.instance().InputIsRequired.ex("viewName");
+        }
+        if ((query == null) || (query.trim().length() == 0)) {
+            throw ApplibResource.instance().InputIsRequired.ex("query");
+        }
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        if (schemaName == null) {
+            schemaName = session.getSessionVariables().schemaName;
+            if (schemaName == null) {
+                throw ApplibResource.instance().InputIsRequired.ex(
+                    "schemaName");
+            }
+        }
+        FarragoRepos repos = session.getRepos();
+
+        // Analyze the query for its canonical text and the tables it reads.
+        FarragoSessionAnalyzedSql analyzedSql;
+        FarragoSession reentrantSession =
+            session.getSessionFactory().newReentrantSession(session);
+        try {
+            analyzedSql =
+                reentrantSession.analyzeSql(query, null, null, false);
+        } finally {
+            session.getSessionFactory().releaseReentrantSession(
+                reentrantSession);
+        }
+        String sql = analyzedSql.canonicalString.getSql();
+        SqlSelect select = parseSelect(sql);
+        if (analyzedSql.hasDynamicParams
+            || (select == null)
+            || (select.getGroup() == null)
+            || (select.getGroup().size() == 0))
+        {
+            throw ApplibResource.instance().InvalidAggregateViewQuery.ex();
+        }
+
+        // Capture the state of the base tables before loading, so that a
+        // later incremental refresh picks up from there.
+        List<String> baseTableMofIds = new ArrayList<String>();
+        Map<String, LcsAggregateView.TableState> state;
+        List<RidRange> ridRanges;
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginReadTxn();
+            for (CwmModelElement element : analyzedSql.dependencies) {
+                if (!(element instanceof FemLocalTable)
+                    || ((FemLocalTable) element).isTemporary())
+                {
+                    throw ApplibResource.instance()
+                    .AggregateViewSourceNotStored.ex(
+                        repos.getLocalizedObjectName(element));
+                }
+                baseTableMofIds.add(element.refMofId());
+            }
+            state =
+                LcsAggregateView.getCurrentState(
+                    getTables(repos, baseTableMofIds));
+            ridRanges = getRidRanges(repos, state);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+        String loadSql = getRestrictedSql(sql, ridRanges);
+
+        String tableName = getTableName(schemaName, viewName);
+        Connection conn =
+            DriverManager.getConnection("jdbc:default:connection");
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ResultSetMetaData rsmd = ps.getMetaData();
+        StringBuilder ddl = new StringBuilder();
+        ddl.append("create table ").append(tableName).append(" (");
+        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            if (i > 1) {
+                ddl.append(", ");
+            }
+            ddl.append(
+                SqlDialect.EIGENBASE.quoteIdentifier(rsmd.getColumnName(i)));
+            ddl.append(" ").append(rsmd.getColumnTypeName(i));
+            int colType = rsmd.getColumnType(i);
+            if ((colType == Types.VARBINARY)
+                || (colType == Types.BINARY)
+                || (colType == Types.CHAR)
+                || (colType == Types.VARCHAR))
+            {
+                ddl.append("(").append(rsmd.getPrecision(i)).append(")");
+            } else if (colType == Types.DECIMAL) {
+                ddl.append("(").append(rsmd.getPrecision(i)).append(",")
+                .append(rsmd.getScale(i)).append(")");
+            }
+        }
+        ddl.append(")");
+        ps.close();
+
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate(ddl.toString());
+        stmt.executeUpdate(
+            "insert into " + tableName + " "
+            + ((loadSql == null) ? sql : loadSql));
+        stmt.close();
+
+        txn = repos.newTxnContext(true);
+        try {
+            txn.beginWriteTxn();
+            if (loadSql == null) {
+                state = checkUnchanged(repos, baseTableMofIds, state);
+            }
+            LcsAggregateView.register(
+                repos,
+                findTable(session, schemaName, viewName),
+                sql,
+                getTables(repos, baseTableMofIds),
+                state);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    /**
+     * Brings an aggregate view up to date with its base tables.
+     *
+     * @param schemaName schema of the view; null for the current schema
+     * @param viewName name of the view
+     */
+    public static void refresh(
+        String schemaName,
+        String viewName)
+        throws SQLException
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        if (schemaName == null) {
+            schemaName = session.getSessionVariables().schemaName;
+        }
+        FarragoRepos repos = session.getRepos();
+
+        String sql;
+        Map<String, LcsAggregateView.TableState> state;
+        List<RidRange> ridRanges;
+        String mergeSql = null;
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginReadTxn();
+            FemLocalTable table = findTable(session, schemaName, viewName);
+            LcsAggregateView view =
+                (table == null) ? null
+                : LcsAggregateView.getView(repos, table);
+            if (view == null) {
+                throw ApplibResource.instance().NotAggregateView.ex(
+                    schemaName,
+                    viewName);
+            }
+            sql = view.getSql();
+            state = view.getCurrentState(repos);
+            if (state == null) {
+                throw ApplibResource.instance().AggregateViewSourceMissing.ex(
+                    schemaName,
+                    viewName);
+            }
+            if (state.equals(view.getRefreshedState())) {
+                txn.commit();
+                return;
+            }
+            ridRanges = getRidRanges(repos, state);
+            String appendedMofId = view.getAppendedTable(state);
+            if (appendedMofId != null) {
+                FemAbstractColumnSet appendedTable =
+                    (FemAbstractColumnSet) repos.getMdrRepos().getByMofId(
+                        appendedMofId);
+                SqlIdentifier appendedTableName =
+                    FarragoCatalogUtil.getQualifiedName(appendedTable);
+                for (RidRange ridRange : ridRanges) {
+                    if (ridRange.tableName.equalsDeep(
+                            appendedTableName,
+                            false))
+                    {
+                        ridRange.fromRid =
+                            view.getRefreshedState().get(appendedMofId)
+                            .getNextRid();
+                    }
+                }
+                mergeSql =
+                    getMergeSql(
+                        getTableName(schemaName, viewName),
+                        getColumnNames(table),
+                        sql,
+                        appendedTableName,
+                        ridRanges);
+            }
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+
+        String loadSql = null;
+        if (mergeSql == null) {
+            for (RidRange ridRange : ridRanges) {
+                ridRange.fromRid = 0;
+            }
+            loadSql = getRestrictedSql(sql, ridRanges);
+        }
+
+        Connection conn =
+            DriverManager.getConnection("jdbc:default:connection");
+        Statement stmt = conn.createStatement();
+        if (mergeSql != null) {
+            stmt.executeUpdate(mergeSql);
+        } else {
+            String tableName = getTableName(schemaName, viewName);
+            stmt.executeUpdate("truncate table " + tableName);
+            stmt.executeUpdate(
+                "insert into " + tableName + " "
+                + ((loadSql == null) ? sql : loadSql));
+        }
+        stmt.close();
+
+        txn = repos.newTxnContext(true);
+        try {
+            txn.beginWriteTxn();
+            if ((mergeSql == null) && (loadSql == null)) {
+                state = checkUnchanged(repos, state.keySet(), state);
+            }
+            LcsAggregateView.recordState(
+                repos,
+                findTable(session, schemaName, viewName),
+                state);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    private static String getTableName(String schemaName, String tableName)
+    {
+        return SqlDialect.EIGENBASE.quoteIdentifier(schemaName) + "."
+            + SqlDialect.EIGENBASE.quoteIdentifier(tableName);
+    }
+
+    private static FemLocalTable findTable(
+        FarragoSession session,
+        String schemaName,
+        String tableName)
+    {
+        CwmCatalog catalog =
+            session.getRepos().getCatalog(
+                session.getSessionVariables().catalogName);
+        if (catalog == null) {
+            return null;
+        }
+        FemLocalSchema schema =
+            FarragoCatalogUtil.getSchemaByName(catalog, schemaName);
+        if (schema == null) {
+            return null;
+        }
+        return FarragoCatalogUtil.getModelElementByNameAndType(
+            schema.getOwnedElement(),
+            tableName,
+            FemLocalTable.class);
+    }
+
+    private static List<FemAbstractColumnSet> getTables(
+        FarragoRepos repos,
+        List<String> mofIds)
+    {
+        List<FemAbstractColumnSet> tables =
+            new ArrayList<FemAbstractColumnSet>();
+        for (String mofId : mofIds) {
+            RefBaseObject obj = repos.getMdrRepos().getByMofId(mofId);
+            if (obj instanceof FemAbstractColumnSet) {
+                tables.add((FemAbstractColumnSet) obj);
+            }
+        }
+        return tables;
+    }
+
+    private static List<String> getColumnNames(FemAbstractColumnSet table)
+    {
+        List<String> names = new ArrayList<String>();
+        for (
+            FemAbstractColumn column
+            : Util.cast(table.getFeature(), FemAbstractColumn.class))
+        {
+            names.add(column.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Describes the rows each base table has in a captured state.
+     *
+     * @param repos repository
+     * @param state state of the base tables
+     *
+     * @return one range per base table, from rid 0 up to the rid which the
+     * next row appended to it will receive
+     */
+    private static List<RidRange> getRidRanges(
+        FarragoRepos repos,
+        Map<String, LcsAggregateView.TableState> state)
+    {
+        List<RidRange> ridRanges = new ArrayList<RidRange>();
+        for (Map.Entry<String, LcsAggregateView.TableState> entry
+            : state.entrySet())
+        {
+            FemAbstractColumnSet table =
+                (FemAbstractColumnSet) repos.getMdrRepos().getByMofId(
+                    entry.getKey());
+            ridRanges.add(
+                new RidRange(
+                    FarragoCatalogUtil.getQualifiedName(table),
+                    getColumnNames(table).get(0),
+                    entry.getValue().getNextRid()));
+        }
+        return ridRanges;
+    }
+
+    /**
+     * Rewrites a view's query to read only the rid ranges of its base
+     * tables.
+     *
+     * @param sql canonical text of the view's query
+     * @param ridRanges rid range of each base table
+     *
+     * @return rewritten query, or null if some reference to a base table
+     * could not be restricted
+     */
+    private static String getRestrictedSql(
+        String sql,
+        List<RidRange> ridRanges)
+    {
+        SqlSelect select = parseSelect(sql);
+        if ((select == null) || !restrictTables(select, ridRanges)) {
+            return null;
+        }
+        return select.toSqlString(SqlDialect.EIGENBASE).getSql();
+    }
+
+    /**
+     * Replaces each base table in the FROM clause of a query with a query
+     * for its rid range.
+     *
+     * @param select query, modified in place
+     * @param ridRanges rid range of each base table
+     *
+     * @return false if a base table is also read elsewhere in the query
+     */
+    private static boolean restrictTables(
+        SqlSelect select,
+        List<RidRange> ridRanges)
+    {
+        for (RidRange ridRange : ridRanges) {
+            int refCount = countTableReferences(select, ridRange.tableName);
+            int replaced = 0;
+            while (replaceTable(
+                    select.getFrom(),
+                    ridRange.tableName,
+                    ridRange.newRangeQuery()))
+            {
+                ++replaced;
+            }
+            if (replaced != refCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks, after loading a view without restricting its base tables to
+     * rid ranges, whether the base tables changed during the load.
+     *
+     * @param repos repository
+     * @param mofIds MOF ID's of the base tables
+     * @param state state of the base tables captured before the load
+     *
+     * @return the captured state if the base tables did not change, or
+     * otherwise a state which makes the view stale
+     */
+    private static Map<String, LcsAggregateView.TableState> checkUnchanged(
+        FarragoRepos repos,
+        Collection<String> mofIds,
+        Map<String, LcsAggregateView.TableState> state)
+    {
+        if (state.equals(
+                LcsAggregateView.getCurrentState(
+                    getTables(repos, new ArrayList<String>(mofIds)))))
+        {
+            return state;
+        }
+        return LcsAggregateView.getUnknownState(mofIds);
+    }
+
+    private static SqlSelect parseSelect(String sql)
+    {
+        SqlNode node;
+        try {
+            node = new SqlParser(sql).parseQuery();
+        } catch (SqlParseException ex) {
+            return null;
+        }
+        return (node instanceof SqlSelect) ? (SqlSelect) node : null;
+    }
+
+    /**
+     * Builds a MERGE statement which folds the aggregate of the rows
+     * appended to a base table into a view.
+     *
+     * @param tableName quoted name of the view table
+     * @param columnNames names of the view table's columns
+     * @param sql canonical text of the view's query
+     * @param baseTableName qualified name of the appended base table
+     * @param ridRanges rid range of each base table; for the appended one,
+     * the appended rows
+     *
+     * @return the statement, or null if the view's query cannot be applied
+     * to the appended rows alone
+     */
+    private static String getMergeSql(
+        String tableName,
+        List<String> columnNames,
+        String sql,
+        SqlIdentifier baseTableName,
+        List<RidRange> ridRanges)
+    {
+        SqlSelect select = parseSelect(sql);
+        if ((select == null)
+            || select.isDistinct()
+            || (select.getHaving() != null)
+            || (select.getGroup() == null))
+        {
+            return null;
+        }
+        SqlNodeList selectList = select.getSelectList();
+        if (selectList.size() != columnNames.size()) {
+            return null;
+        }
+
+        // Each column must be a group key or an aggregate which can be
+        // combined with the aggregate of the new rows.
+        List<String> keys = new ArrayList<String>();
+        List<String> updates = new ArrayList<String>();
+        for (int i = 0; i < selectList.size(); i++) {
+            SqlNode item = selectList.get(i);
+            if (item.getKind() == SqlKind.AS) {
+                item = ((SqlCall) item).getOperands()[0];
+            }
+            String oldValue =
+                "\"OLD\"." + SqlDialect.EIGENBASE.quoteIdentifier(
+                    columnNames.get(i));
+            String newValue =
+                "\"DELTA\"." + SqlDialect.EIGENBASE.quoteIdentifier(
+                    columnNames.get(i));
+            if (isGroupKey(select.getGroup(), item)) {
+                keys.add(oldValue + " is not distinct from " + newValue);
+                continue;
+            }
+            String aggName = getAggregateName(item);
+            String combined;
+            if ("SUM".equals(aggName)) {
+                combined =
+                    "coalesce(" + oldValue + " + " + newValue + ", "
+                    + oldValue + ", " + newValue + ")";
+            } else if ("COUNT".equals(aggName)) {
+                combined = oldValue + " + " + newValue;
+            } else if ("MIN".equals(aggName) || "MAX".equals(aggName)) {
+                combined =
+                    "case when " + oldValue + " is null or " + newValue
+                    + ("MIN".equals(aggName) ? " < " : " > ") + oldValue
+                    + " then " + newValue + " else " + oldValue + " end";
+            } else {
+                return null;
+            }
+            updates.add(
+                SqlDialect.EIGENBASE.quoteIdentifier(columnNames.get(i))
+                + " = " + combined);
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+
+        // Restrict the appended table to the new rows, and the others to the
+        // rows they had when their state was captured; if the appended table
+        // is read more than once, the result isn't just the new rows'
+        // aggregate.
+        if ((countTableReferences(select, baseTableName) != 1)
+            || !restrictTables(select, ridRanges))
+        {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("merge into ").append(tableName).append(" as \"OLD\"");
+        sb.append(" using (")
+        .append(select.toSqlString(SqlDialect.EIGENBASE).getSql())
+        .append(") as \"DELTA\" (");
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+                values.append(", ");
+            }
+            String name =
+                SqlDialect.EIGENBASE.quoteIdentifier(columnNames.get(i));
+            sb.append(name);
+            values.append("\"DELTA\".").append(name);
+        }
+        sb.append(") on ");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            sb.append(keys.get(i));
+        }
+        if (!updates.isEmpty()) {
+            sb.append(" when matched then update set ");
+            for (int i = 0; i < updates.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(updates.get(i));
+            }
+        }
+        sb.append(" when not matched then insert values (")
+        .append(values).append(")");
+        return sb.toString();
+    }
+
+    private static boolean isGroupKey(SqlNodeList groupList, SqlNode item)
+    {
+        for (SqlNode groupItem : groupList) {
+            if (groupItem.equalsDeep(item, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getAggregateName(SqlNode item)
+    {
+        if (!(item instanceof SqlCall)) {
+            return null;
+        }
+        SqlCall call = (SqlCall) item;
+        if (!(call.getOperator() instanceof SqlAggFunction)
+            || (call.getFunctionQuantifier() != null))
+        {
+            return null;
+        }
+        return call.getOperator().getName().toUpperCase();
+    }
+
+    private static int countTableReferences(
+        SqlNode node,
+        final SqlIdentifier tableName)
+    {
+        final int [] count = { 0 };
+        node.accept(
+            new SqlBasicVisitor<Void>() {
+                public Void visit(SqlIdentifier id)
+                {
+                    if (id.equalsDeep(tableName, false)) {
+                        ++count[0];
+                    }
+                    return null;
+                }
+            });
+        return count[0];
+    }
+
+    /**
+     * Replaces the first reference to a table in a FROM clause.
+     *
+     * @param from FROM clause, modified in place
+     * @param tableName qualified name of the table
+     * @param newRows query to read in place of the table
+     *
+     * @return whether a reference was replaced
+     */
+    private static boolean replaceTable(
+        SqlNode from,
+        SqlIdentifier tableName,
+        SqlNode newRows)
+    {
+        if (from instanceof SqlJoin) {
+            SqlJoin join = (SqlJoin) from;
+            return replaceTable(join.getLeft(), tableName, newRows)
+                || replaceTable(join.getRight(), tableName, newRows);
+        }
+        if (from.getKind() == SqlKind.AS) {
+            SqlCall as = (SqlCall) from;
+            SqlNode operand = as.getOperands()[0];
+            if ((operand instanceof SqlIdentifier)
+                && operand.equalsDeep(tableName, false))
+            {
+                as.setOperand(0, newRows);
+                return true;
+            }
+            return replaceTable(operand, tableName, newRows);
+        }
+        if (from instanceof SqlSelect) {
+            return replaceTable(
+                ((SqlSelect) from).getFrom(),
+                tableName,
+                newRows);
+        }
+        return false;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * RidRange is a range of LCS rids of one base table.
+     */
+    private static class RidRange
+    {
+        final SqlIdentifier tableName;
+        final String ridColumnName;
+        long fromRid;
+        final long toRid;
+
+        RidRange(SqlIdentifier tableName, String ridColumnName, long toRid)
+        {
+            this.tableName = tableName;
+            this.ridColumnName = ridColumnName;
+            this.toRid = toRid;
+        }
+
+        /**
+         * @return query for the rows of the table in this range
+         */
+        SqlNode newRangeQuery()
+        {
+            String ridExpr =
+                "lcs_rid("
+                + SqlDialect.EIGENBASE.quoteIdentifier(ridColumnName) + ")";
+            StringBuilder sb = new StringBuilder();
+            sb.append("select * from ")
+            .append(tableName.toSqlString(SqlDialect.EIGENBASE).getSql())
+            .append(" where ");
+            if (fromRid > 0) {
+                sb.append(ridExpr).append(" >= ").append(fromRid)
+                .append(" and ");
+            }
+            sb.append(ridExpr).append(" < ").append(toRid);
+            try {
+                return new SqlParser(sb.toString()).parseQuery();
+            } catch (SqlParseException ex) {
+                throw Util.newInternal(ex);
+            }
+        }
+    }
+}
+
+// End AggregateViewUdp.java
@@ -31,9 +31,13 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.sql.Connection;
 import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
@@ -46,7 +50,15 @@ import java.sql.Driver;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.net.InetAddress;
 import java.util.Properties;
 import java.util.List;
@@ -66,6 +78,15 @@ import org.luciddb.pg2luciddb.configuration.Configuration;
  * http://developer.postgresql.org/pgdocs/postgres/protocol.html
  * The PostgreSQL catalog is described here:
  * http://www.postgresql.org/docs/7.4/static/catalogs.html
+ *
+ * Client connections are multiplexed over a single selector thread, so an
+ * idle connection doesn't hold a thread. When a client sends data, its
+ * ServerThread is handed to a pool of worker threads, which processes the
+ * complete messages received so far and then returns the connection to the
+ * selector. The pool keeps workerThreads threads and starts more while they
+ * are all busy (a long query holds its worker until it completes), so one
+ * connection never waits for another connection's query. CancelRequest
+ * packets are handled on the selector thread itself.
  */
 
 public class Server 
@@ -79,9 +100,19 @@ public class Server
     // start time:
     public static final long startTime = System.currentTimeMillis();
 
-    private boolean stop;
+    // selector tick (in miliseconds), used to check idle connections:
+    private static final long SELECT_TIMEOUT = 1000;
+
+    // how long (in seconds) workers started above workerThreads are kept idle:
+    private static final long WORKER_KEEP_ALIVE = 60;
+
+    private volatile boolean stop;
     private boolean trace;
-    private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private ExecutorService workers;
+    private ConcurrentLinkedQueue<ServerThread> resumed = new ConcurrentLinkedQueue<ServerThread>();
+    private AtomicInteger nextProcessId = new AtomicInteger();
     private Set<ServerThread> running = Collections.synchronizedSet(new HashSet<ServerThread>());
     private String baseDir;
     private boolean ifExists;    
@@ -372,8 +403,44 @@ public class Server
             return;
         }
         
-        // create server socket (no SSL support yet)
-        serverSocket = NetUtils.createServerSocket(configuration.getServerPort(), false);
+        // create server channel (no SSL support yet)
+        try
+        {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(configuration.getServerPort()));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException e)
+        {
+            logger.error("Can't listen on port " + configuration.getServerPort() + ": " + e.toString());
+            return;
+        }
+
+        // create worker threads; a request is never queued behind another one,
+        // a new thread is started when all of them are busy (there is at most
+        // one request in progress per connection):
+        final String threadName = Thread.currentThread().getName();
+        workers = new ThreadPoolExecutor(
+            Math.max(1, configuration.getWorkerThreads()),
+            Integer.MAX_VALUE,
+            WORKER_KEEP_ALIVE,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, threadName + " worker " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
         // listen:
         listen();
     }
@@ -381,37 +448,125 @@ public class Server
     // listen:
     public void listen() 
     {
-        String threadName = Thread.currentThread().getName();
-
         logger.info("Launching server thread with configuration: " + configuration.toString());        
 
         try 
         {
             while (!stop) 
             {
-                Socket s = serverSocket.accept();
-                if (!allow(s.getInetAddress().getHostAddress())) 
+                selector.select(SELECT_TIMEOUT);
+
+                // wait for data again on connections whose requests have been processed:
+                ServerThread c;
+                while ((c = resumed.poll()) != null) 
                 {
-                    logger.trace("Connection not allowed");
-                    s.close();
-                } 
-                else 
+                    SelectionKey key = c.getChannel().keyFor(selector);
+                    if (key != null && key.isValid()) 
+                    {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) 
                 {
-                    ServerThread c = new ServerThread(s, this);
-                    running.add(c);
-                    c.setProcessId(running.size());
-                    Thread thread = new Thread(c);
-                    thread.setName(threadName + " thread");
-                    c.setThread(thread);
-                    thread.start();
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) 
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable()) 
+                    {
+                        accept();
+                    } 
+                    else if (key.isReadable()) 
+                    {
+                        c = (ServerThread) key.attachment();
+                        // cancel requests mustn't wait for a worker:
+                        if (c.processCancelRequest()) 
+                        {
+                            continue;
+                        }
+                        // don't select the connection again until a worker has processed it,
+                        // and don't close it as idle before the worker has started:
+                        key.interestOps(0);
+                        c.setProcessing();
+                        workers.execute(c);
+                    }
                 }
+
+                closeIdleConnections();
             }
         } 
         catch (Exception e) 
         {
             if (!stop) 
             {
-                e.printStackTrace();
+                logger.error("Exception in [listen] method: " + e.toString());
+            }
+        }
+    }
+
+    // accept new connection:
+    private void accept() throws IOException 
+    {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) 
+        {
+            return;
+        }
+        Socket s = channel.socket();
+        if (!allow(s.getInetAddress().getHostAddress())) 
+        {
+            logger.trace("Connection not allowed");
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        s.setTcpNoDelay(true);
+        ServerThread c = new ServerThread(channel, this);
+        running.add(c);
+        c.setProcessId(nextProcessId.incrementAndGet());
+        channel.register(selector, SelectionKey.OP_READ, c);
+    }
+
+    // called by a worker once it has processed the data received on a connection:
+    void resume(ServerThread c) 
+    {
+        resumed.add(c);
+        selector.wakeup();
+    }
+
+    // cancel the statement running on the connection with the given process id:
+    void cancel(int processId, int secretKey) 
+    {
+        for (ServerThread c : New.arrayList(running)) 
+        {
+            if (c.getProcessId() == processId) 
+            {
+                c.cancel(secretKey);
+                return;
+            }
+        }
+        logger.trace("CancelRequest for unknown process: " + processId);
+    }
+
+    // close connections which have been idle for too long:
+    private void closeIdleConnections() 
+    {
+        int timeout = configuration.getConnectionCloseIdleTimeout();
+        if (timeout <= 0) 
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (ServerThread c : New.arrayList(running)) 
+        {
+            if (c.isIdleSince(now - timeout)) 
+            {
+                logger.debug("Closing idle connection");
+                c.close();
             }
         }
     }
@@ -419,40 +574,52 @@ public class Server
     // stop:
     public void stop() 
     {
-        // TODO server: combine with tcp server
         if (!stop) 
         {
             stop = true;
-            if (serverSocket != null) 
+            if (selector != null) 
+            {
+                selector.wakeup();
+            }
+            if (serverChannel != null) 
             {
                 try 
                 {
-                    serverSocket.close();
+                    serverChannel.close();
                 } 
                 catch (IOException e) 
                 {
-                    // TODO log exception
-                    e.printStackTrace();
+                    logger.error("Exception while closing server channel: " + e.toString());
                 }
-                serverSocket = null;
+                serverChannel = null;
             }
         }
         // TODO server: using a boolean 'now' argument? a timeout?
         for (ServerThread c : New.arrayList(running)) 
         {
             c.close();
+        }
+        if (workers != null) 
+        {
+            workers.shutdown();
             try 
             {
-                Thread t = c.getThread();
-                if (t != null) 
-                {              
-                    t.join(100);
-                }
+                workers.awaitTermination(100, TimeUnit.MILLISECONDS);
             }  
-            catch (Exception e) 
+            catch (InterruptedException e) 
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (selector != null) 
+        {
+            try 
+            {
+                selector.close();
+            } 
+            catch (IOException e) 
             {
-                // TODO log exception
-                e.printStackTrace();
+                logger.error("Exception while closing selector: " + e.toString());
             }
         }
     }
@@ -460,13 +627,14 @@ public class Server
     // is running method:
     public boolean isRunning(boolean traceError) 
     {
-        if (serverSocket == null) 
+        ServerSocketChannel channel = serverChannel;
+        if (channel == null) 
         {
             return false;
         }
         try 
         {
-            Socket s = NetUtils.createLoopbackSocket(serverSocket.getLocalPort(), false);
+            Socket s = NetUtils.createLoopbackSocket(channel.socket().getLocalPort(), false);
             s.close();
             return true;
         } 
@@ -23,15 +23,16 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.sql.Connection;
 import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
@@ -45,17 +46,17 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Random;
+import java.util.TimeZone;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.Vector;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Timestamp;
-import java.text.DateFormat;
 
 import org.h2.message.Message;
 import org.h2.util.ByteUtils;
@@ -71,22 +72,32 @@ import java.security.MessageDigest;
 
 
 /**
- * One server thread is opened for each client.
+ * One ServerThread is created for each client. It doesn't own a thread:
+ * the server runs it on a worker thread whenever the client has sent data,
+ * and it processes all of the messages received so far. Responses are
+ * collected in a reusable output buffer, which is only sent to the client
+ * when the client waits for a response (ReadyForQuery, authentication
+ * requests, Flush) or when the buffer is full.
  */
 public class ServerThread implements Runnable 
 {
     private static final int TYPE_STRING = Types.VARCHAR;
+    private static final int INPUT_BUFFER_SIZE = 8192;
+    private static final long WRITE_TIMEOUT = 1000;
+    private static final int CANCEL_REQUEST_CODE = 80877102;
+    private static final int CANCEL_REQUEST_LENGTH = 16;
     private Server server;
-    private Socket socket;
+    private SocketChannel channel;
     private Connection conn;
-    private boolean stop;
-    private DataInputStream dataInRaw;
+    private volatile boolean stop;
     private DataInputStream dataIn;
-    private OutputStream out;
-    private int messageType;
-    private ByteArrayOutputStream outBuffer;
-    private DataOutputStream dataOut;
-    private Thread thread;
+    private ByteBuffer inBuffer = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+    private ByteBuffer outBuffer;
+    private int messageStart = -1;
+    private Selector writeSelector;
+    private volatile boolean processing;
+    private volatile Statement executing;
+    private volatile long lastActivity = System.currentTimeMillis();
     private boolean initDone;
     private String userName;
     private String databaseName;
@@ -97,6 +108,10 @@ public class ServerThread implements Runnable
     private HashMap<String, Portal> portals = New.hashMap();
     private HashSet<Integer> types = New.hashSet();
 
+    // scratch buffers used to encode data rows:
+    private byte[] textBuffer = new byte[64];
+    private short[] numericDigits = new short[16];
+
     // get logger class:
     private static final Logger logger = Logger.getLogger(ServerThread.class);
 
@@ -113,6 +128,16 @@ public class ServerThread implements Runnable
     private static final String POSTGRES_DATE_INFINITY = "infinity";
     private static final String POSTGRES_DATE_MINUS_INFINITY = "-infinity";
 
+    // PostgreSQL epoch (2000-01-01) used by binary date & timestamp values:
+    private static final long MILLIS_PER_DAY = 86400000l;
+    private static final long POSTGRES_EPOCH_DAYS = 10957l;
+    private static final long POSTGRES_EPOCH_MILLIS = POSTGRES_EPOCH_DAYS * MILLIS_PER_DAY;
+
+    // binary numeric constants:
+    private static final BigInteger NUMERIC_BASE = BigInteger.valueOf(10000);
+    private static final int NUMERIC_POS = 0x0000;
+    private static final int NUMERIC_NEG = 0x4000;
+
     // regexp:
     private static final String SELECT_PGTYPE_PATTERN_STRING = "^(select.*\\s*from)\\s*(pg_type)(.*?)$";
     private static final String COLUMNS_Q_SEARCH_BY_IDS_1_STRING = "and\\s*c[.]oid\\s*=(\\d+)\\s*"; 
@@ -150,51 +175,207 @@ public class ServerThread implements Runnable
     private static final Pattern TYPE_CASTING_DT_2 = Pattern.compile(TYPE_CASTING_STRING_DT_2, Pattern.DOTALL);
     
     // constructor:
-    ServerThread(Socket socket, Server server) 
+    ServerThread(SocketChannel channel, Server server) 
     {
         this.server = server;
-        this.socket = socket;
+        this.channel = channel;
+        this.outBuffer = ByteBuffer.allocateDirect(Math.max(1024, server.configuration.getOutputBufferSize()));
+
+        // generate salt & secret key:
+        salt = generateRandomString(4);      
+        Random random = new Random();
+        secretKey = random.nextInt();
+
+        server.trace("Connect");
+        logger.debug("Start serving client: " + channel.socket().getRemoteSocketAddress());
     }
 
-    // run thread:
+    // process the data received from the client:
     public void run() 
     {
         try 
         {
-            server.trace("Connect");
-
-            // generate salt & secret key:
-            salt = generateRandomString(4);      
-            Random random = new Random();
-            secretKey = random.nextInt();
+            if (!readInput()) 
+            {
+                // more or less normal disconnect
+                stop = true;
+            }
+            while (!stop && processMessage()) 
+            {
+            }
+        } 
+        catch (Exception e) 
+        {
+            logger.trace("Exception in [run] method: " + e.toString());
+            stop = true;
+        } 
+        finally 
+        {
+            lastActivity = System.currentTimeMillis();
+            processing = false;
+            if (stop) 
+            {
+                server.trace("Disconnect");
+                close();
+            } 
+            else 
+            {
+                server.resume(this);
+            }
+        }
+    }
 
-            logger.debug("Start serving client: " + socket.getRemoteSocketAddress());
+    // read the data available on the channel; returns false at end of stream:
+    private boolean readInput() throws IOException 
+    {
+        while (true) 
+        {
+            if (!inBuffer.hasRemaining()) 
+            {
+                growInputBuffer(inBuffer.capacity() * 2);
+            }
+            int n = channel.read(inBuffer);
+            if (n < 0) 
+            {
+                return false;
+            }
+            if (n == 0) 
+            {
+                return true;
+            }
+        }
+    }
 
-            // set tcp parameters:
-            socket.setSoTimeout(server.configuration.getConnectionCloseIdleTimeout());
+    // grow input buffer, keeping the data received so far:
+    private void growInputBuffer(int capacity) 
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        inBuffer.flip();
+        buffer.put(inBuffer);
+        inBuffer = buffer;
+    }
 
-            InputStream ins = socket.getInputStream();
-            out = socket.getOutputStream();
-            dataInRaw = new DataInputStream(ins);
-            while (!stop) 
+    // process the next message if it has been received completely:
+    private boolean processMessage() throws IOException 
+    {
+        // the startup message has no message type:
+        int headerLength = initDone ? 5 : 4;
+        int needed = 0;
+        inBuffer.flip();
+        try 
+        {
+            if (inBuffer.remaining() < headerLength) 
+            {
+                return false;
+            }
+            int start = inBuffer.position();
+            int x = initDone ? (inBuffer.get(start) & 0xff) : 0;
+            int len = inBuffer.getInt(start + headerLength - 4);
+            if (len < 4) 
+            {
+                throw new IOException("Invalid message length: " + len);
+            }
+            int total = headerLength - 4 + len;
+            if (inBuffer.remaining() < total) 
             {
-                process();
-                out.flush();
+                needed = total;
+                return false;
             }
+            byte[] data = ByteUtils.newBytes(len - 4);
+            inBuffer.position(start + headerLength);
+            inBuffer.get(data);
+            process(x, data);
+            return true;
         } 
-        catch (EOFException e) 
+        finally 
         {
-            // more or less normal disconnect
-        } 
-        catch (Exception e) 
+            inBuffer.compact();
+            if (needed > inBuffer.capacity()) 
+            {
+                growInputBuffer(needed);
+            }
+        }
+    }
+
+    // handle a CancelRequest on the selector thread; returns true if the data
+    // received so far is (the beginning of) a CancelRequest, which is never
+    // followed by other messages on its connection:
+    boolean processCancelRequest() 
+    {
+        if (initDone) 
         {
-            logger.trace("Exception in [run] method: " + e.toString());
+            return false;
+        }
+        try 
+        {
+            if (!readInput()) 
+            {
+                // let the worker close the connection:
+                return false;
+            }
         } 
-        finally 
+        catch (IOException e) 
         {
-            server.trace("Disconnect");
+            logger.trace("Exception in [processCancelRequest] method: " + e.toString());
             close();
+            return true;
+        }
+        int received = inBuffer.position();
+        if (received >= 8 && (inBuffer.getInt(0) != CANCEL_REQUEST_LENGTH || inBuffer.getInt(4) != CANCEL_REQUEST_CODE)) 
+        {
+            return false;
+        }
+        if (received < CANCEL_REQUEST_LENGTH) 
+        {
+            // wait for the rest of the message (a startup message is never shorter than this):
+            return received > 0;
         }
+        logger.trace("CancelRequest");
+        server.cancel(inBuffer.getInt(8), inBuffer.getInt(12));
+        server.trace("Disconnect");
+        close();
+        return true;
+    }
+
+    // cancel the statement being executed, if the key matches:
+    void cancel(int key) 
+    {
+        if (key != secretKey) 
+        {
+            logger.trace("CancelRequest with invalid key");
+            return;
+        }
+        Statement stat = executing;
+        if (stat == null) 
+        {
+            return;
+        }
+        try 
+        {
+            stat.cancel();
+        } 
+        catch (SQLException e) 
+        {
+            logger.error("Exception while canceling statement: " + e.toString());
+        }
+    }
+
+    // mark the connection busy (when it is handed to a worker):
+    void setProcessing() 
+    {
+        processing = true;
+    }
+
+    // check if the connection has been idle since the specified time:
+    boolean isIdleSince(long time) 
+    {
+        return !processing && lastActivity < time;
+    }
+
+    // get channel:
+    SocketChannel getChannel() 
+    {
+        return channel;
     }
 
     // read string from input buffer:
@@ -251,43 +432,30 @@ public class ServerThread implements Runnable
         return buffer.toString();
     }
 
-    // process:
-    private void process() throws IOException 
+    // process message:
+    private void process(int x, byte[] data) throws IOException 
     {
-        int x;
-        // if init done:
-        if (initDone) 
-        {
-            x = dataInRaw.read();
-            if (x < 0) {
-                stop = true;
-                return;
-            }
-        } else {
-            x = 0;
-        }
-        int len = dataInRaw.readInt();
-        len -= 4;
-        byte[] data = ByteUtils.newBytes(len);
-        dataInRaw.readFully(data, 0, len);
-        dataIn = new DataInputStream(new ByteArrayInputStream(data, 0, len));
+        dataIn = new DataInputStream(new ByteArrayInputStream(data));
         switch (x) {
         // init state:
         case 0:
             logger.trace("Init");
             int version = readInt();
-            // cancel request:
-            if (version == 80877102) 
+            // cancel request (normally handled by the server before this):
+            if (version == CANCEL_REQUEST_CODE) 
             {
-                logger.trace("CancelRequest (not supported)");
-                logger.trace(" pid: " + readInt());
-                logger.trace(" key: " + readInt());
+                logger.trace("CancelRequest");
+                int pid = readInt();
+                int key = readInt();
+                server.cancel(pid, key);
+                stop = true;
             } 
             // SSL request:
             else if (version == 80877103) 
             {
                 logger.trace("SSLRequest");
-                out.write('N');
+                write('N');
+                flush();
             } 
             // startup message:
             else 
@@ -481,7 +649,12 @@ public class ServerThread implements Runnable
 
             portal.sql = prep.sql;
             portal.prepared = prep;
-            portals.put(portal.name, portal);
+            Portal old = portals.put(portal.name, portal);
+            // binding an existing name replaces the portal:
+            if (old != null) 
+            {
+                closePortal(old);
+            }
 
             int formatCodeCount = readShort();
             int[] formatCodes = new int[formatCodeCount];
@@ -563,7 +736,7 @@ public class ServerThread implements Runnable
                         {
                             PreparedStatement prep = conn.prepareStatement(p.sql);
                             ResultSetMetaData meta = prep.getMetaData();
-                            sendRowDescription(meta);
+                            sendRowDescription(meta, p.resultColumnFormat);
                             prep.close();
                         }
                     } 
@@ -591,51 +764,90 @@ public class ServerThread implements Runnable
                 sendErrorResponse("Portal not found: " + name);
                 break;
             }
-            int maxRows = readShort();
+            // maximum number of rows to return (0 - all rows):
+            int maxRows = readInt();
 
             try 
             {
-
-                PreparedStatement prep = conn.prepareStatement(p.sql);
-                // set parameters:
-                for (int i = 0; i < p.prepared.parameters.length; i++)
+                // open the cursor on first execute:
+                if (p.statement == null) 
                 {
-                     prep.setString(i + 1, p.prepared.parameters[i]);
-                }                                
+                    PreparedStatement prep = conn.prepareStatement(p.sql);
+                    p.statement = prep;
+                    // set parameters:
+                    for (int i = 0; i < p.prepared.parameters.length; i++)
+                    {
+                         prep.setString(i + 1, p.prepared.parameters[i]);
+                    }                                
           
-                logger.trace(p.sql);
-                prep.setMaxRows(maxRows);                
-                boolean result = prep.execute();
-                if (result) 
-                {
-                    try 
+                    logger.trace(p.sql);
+                    int fetchSize = (maxRows > 0) ? maxRows : server.configuration.getFetchSize();
+                    if (fetchSize > 0) 
                     {
-                        ResultSet rs = prep.getResultSet();
-                        ResultSetMetaData meta = rs.getMetaData();
-                        sendRowDescription(meta);
-                        while (rs.next()) 
-                        {
-                            sendDataRow(rs);
-                        }
-                        rs.close();
-                        sendCommandComplete(p.sql, 0);
-                    } 
-                    catch (SQLException e) 
+                        prep.setFetchSize(fetchSize);
+                    }
+                    executing = prep;
+                    boolean result = prep.execute();
+                    if (!result) 
                     {
-                        sendErrorResponse(e);
+                        sendCommandComplete(p.sql, prep.getUpdateCount());
+                        closePortal(p);
+                        break;
                     }
-                } 
-                else 
+                    p.resultSet = prep.getResultSet();
+                    p.encoders = sendRowDescription(p.resultSet.getMetaData(), p.resultColumnFormat);
+                }
+
+                // send rows until the cursor is exhausted or the limit is reached:
+                executing = p.statement;
+                int rows = 0;
+                while ((maxRows == 0 || rows < maxRows) && p.resultSet.next()) 
                 {
-                    sendCommandComplete(p.sql, prep.getUpdateCount());
+                    sendDataRow(p.resultSet, p.encoders);
+                    rows++;
                 }
 
-                prep.close();
+                // keep the cursor open for the next execute:
+                if (maxRows > 0 && rows == maxRows) 
+                {
+                    sendPortalSuspended();
+                }
+                else 
+                {
+                    sendCommandComplete(p.sql, 0);
+                    closePortal(p);
+                }
             } 
             catch (SQLException e) 
             {
+                closePortal(p);
                 sendErrorResponse(e);
             }
+            finally 
+            {
+                executing = null;
+            }
+            break;
+        }
+        // close prepared statement or portal:
+        case 'C': 
+        {
+            char type = (char) readByte();
+            String name = readString();
+            logger.trace("Close");
+            if (type == 'S') 
+            {
+                prepared.remove(name);
+            }
+            else if (type == 'P') 
+            {
+                Portal p = portals.remove(name);
+                if (p != null) 
+                {
+                    closePortal(p);
+                }
+            }
+            sendCloseComplete();
             break;
         }
         // sync query:
@@ -645,6 +857,13 @@ public class ServerThread implements Runnable
             sendReadyForQuery();
             break;
         }
+        // flush:
+        case 'H': 
+        {
+            logger.trace("Flush");
+            flush();
+            break;
+        }
         // query:
         case 'Q': 
         {
@@ -686,24 +905,29 @@ public class ServerThread implements Runnable
         	    //    rs.addRow(new Object[] { "Hello, world!" });
         	    //
                     //    ResultSetMetaData meta = rs.getMetaData();
-                    //    sendRowDescription(meta);
+                    //    ColumnEncoder[] encoders = sendRowDescription(meta);
                     //    while (rs.next()) 
                     //    {
-                    //        sendDataRow(rs);
+                    //        sendDataRow(rs, encoders);
                     //    }
                     //    sendCommandComplete(s, 0);
                     //}
 
                     stat = conn.createStatement();
+                    if (server.configuration.getFetchSize() > 0) 
+                    {
+                        stat.setFetchSize(server.configuration.getFetchSize());
+                    }
+                    executing = stat;
                     boolean result = stat.execute(s);
                     if (result) 
                     {
                         ResultSet rs = stat.getResultSet();
                         ResultSetMetaData meta = rs.getMetaData();
-                        sendRowDescription(meta);
+                        ColumnEncoder[] encoders = sendRowDescription(meta);
                         while (rs.next()) 
                         {
-                            sendDataRow(rs);
+                            sendDataRow(rs, encoders);
                         }
                         sendCommandComplete(s, 0);
                     } 
@@ -718,6 +942,7 @@ public class ServerThread implements Runnable
                 } 
                 finally 
                 {
+                    executing = null;
                     JdbcUtils.closeSilently(stat);
                 }
             }
@@ -848,10 +1073,10 @@ public class ServerThread implements Runnable
      	           rs.addRow(new Object[] { "63" });
 
                    ResultSetMetaData meta = rs.getMetaData();
-                   sendRowDescription(meta);
+                   ColumnEncoder[] encoders = sendRowDescription(meta);
                    while (rs.next()) 
                    {
-                      sendDataRow(rs);
+                      sendDataRow(rs, encoders);
                    }
                    sendCommandComplete(s, 0);
                    s = "";
@@ -872,10 +1097,10 @@ public class ServerThread implements Runnable
      	           rs.addRow(new Object[] { "on" });
 
                    ResultSetMetaData meta = rs.getMetaData();
-                   sendRowDescription(meta);
+                   ColumnEncoder[] encoders = sendRowDescription(meta);
                    while (rs.next()) 
                    {
-                      sendDataRow(rs);
+                      sendDataRow(rs, encoders);
                    }
                    sendCommandComplete(s, 0);
                    s = "";
@@ -1013,10 +1238,10 @@ public class ServerThread implements Runnable
                     rs.addColumn("OID", Types.INTEGER, 0, 0);
 
                     ResultSetMetaData meta = rs.getMetaData();
-                    sendRowDescription(meta);
+                    ColumnEncoder[] encoders = sendRowDescription(meta);
                     while (rs.next()) 
                     {
-                       sendDataRow(rs);
+                       sendDataRow(rs, encoders);
                     }
                     sendCommandComplete(s, 0);
                     s = "";
@@ -1203,146 +1428,270 @@ public class ServerThread implements Runnable
         sendMessage();
     }
 
-    // format date:
-    private String formatDate(Date d, String formatPattern) 
+    // resolve the column encoders of a result set (once per result set):
+    private ColumnEncoder[] createEncoders(ResultSetMetaData meta, int[] formatCodes) throws SQLException 
     {
-        String returnValue;
-        Calendar c = GregorianCalendar.getInstance();
-        c.setTime(d);
-        if (c.get(Calendar.ERA) == GregorianCalendar.BC)
-            formatPattern += " G";
-        DateFormat format = new java.text.SimpleDateFormat(formatPattern);
-        returnValue = format.format(d);
-        return returnValue;
+        int columns = meta.getColumnCount();
+        ColumnEncoder[] encoders = new ColumnEncoder[columns];
+        for (int i = 1; i <= columns; i++) 
+        {
+            // no codes - all text, one code - used for all columns, else one code per column:
+            int format = 0;
+            if (formatCodes != null && formatCodes.length == 1) 
+            {
+                format = formatCodes[0];
+            }
+            else if (formatCodes != null && formatCodes.length >= i) 
+            {
+                format = formatCodes[i - 1];
+            }
+            encoders[i - 1] = createEncoder(meta, i, format == 1);
+        }
+        return encoders;
+    }
+
+    // create encoder for one column (binary is used only when it is supported):
+    private ColumnEncoder createEncoder(ResultSetMetaData meta, int column, boolean binary) throws SQLException 
+    {
+        switch (meta.getColumnType(column)) 
+        {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+               return new IntegerEncoder(binary, meta.getColumnType(column));
+
+            case Types.REAL:
+               return new FloatEncoder(binary);
+
+            case Types.FLOAT:
+            case Types.DOUBLE:
+               return new DoubleEncoder(binary);
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+               return new NumericEncoder(binary);
+
+            case Types.BIT:
+            case Types.BOOLEAN:
+               if ("bool".equalsIgnoreCase(meta.getColumnTypeName(column)) || "boolean".equalsIgnoreCase(meta.getColumnTypeName(column))) 
+               {
+                   return new BooleanEncoder(binary);
+               }
+               // TODO must return 01, 111, 10111, etc and not only true or false as now
+               return new StringEncoder(false);
+
+            case Types.DATE:
+               return new DateEncoder(binary);
+
+            case Types.TIMESTAMP:
+               return new TimestampEncoder(binary);
+
+            // binary format of character types is the text itself:
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+               return new StringEncoder(binary);
+
+            default:
+               return new StringEncoder(false);
+        }
     }
 
     // send data row:
-    private void sendDataRow(ResultSet rs) throws IOException 
+    private void sendDataRow(ResultSet rs, ColumnEncoder[] encoders) throws IOException 
     {
+        // row description failed, error is already sent:
+        if (encoders == null) 
+        {
+            return;
+        }
+
         try 
         {
-            int columns = rs.getMetaData().getColumnCount();
             // data row:
             startMessage('D');
             // columns count:
-            writeShort(columns);
+            writeShort(encoders.length);
 
             // process over columns:
-            for (int i = 1; i <= columns; i++) 
+            for (int i = 0; i < encoders.length; i++) 
             {
-                String returnValue = null;                
-                switch (rs.getMetaData().getColumnType(i)) 
-                {
-                    case Types.TINYINT:
-                       returnValue = Byte.toString(rs.getByte(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.SMALLINT:
-                       returnValue = Short.toString(rs.getShort(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.INTEGER:
-                       returnValue = Integer.toString(rs.getInt(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.BIGINT:
-                       returnValue = Long.toString(rs.getLong(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.REAL:
-                       returnValue = Float.toString(rs.getFloat(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.FLOAT:
-                       returnValue = Double.toString(rs.getDouble(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.DOUBLE:
-                       returnValue = Double.toString(rs.getDouble(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.DECIMAL:
-                    case Types.NUMERIC:
-                       BigDecimal bigDecimal = rs.getBigDecimal(i);
-                       if (bigDecimal != null)
-                           returnValue = bigDecimal.toPlainString();
-                       break;
-
-                    case Types.BIT:
-                    case Types.BOOLEAN:
-                       if ("bool".equalsIgnoreCase((rs.getMetaData().getColumnTypeName(i))) || "boolean".equalsIgnoreCase((rs.getMetaData().getColumnTypeName(i)))) 
-                       {
-                           Boolean b = rs.getBoolean(i);
-                           returnValue = rs.wasNull() ? null : b ? "t" : "f";
-			   //returnValue = rs.wasNull() ? null : b ? "1" : "0";
-                       } else {
-                           // TODO must return 01, 111, 10111, etc and not only true or false as now
-                           returnValue = rs.getString(i);
-                       }
-                       break;
-
-                    case Types.DATE:
-                       java.sql.Date jdbcDate = rs.getDate(i);
-                       if (jdbcDate != null) {
-                           returnValue = formatDate(new Date(jdbcDate.getTime()), "yyyy-MM-dd");
-                       }
-                       break;
-
-                    case Types.TIMESTAMP:
-                       Timestamp ts = rs.getTimestamp(i);
-                       if (ts != null) 
-                       {
-                          if (ts.getTime() == JDBC_DATE_INFINITY)
-                              returnValue = POSTGRES_DATE_INFINITY;
-                          else if (ts.getTime() == JDBC_DATE_MINUS_INFINITY)
-                               returnValue = POSTGRES_DATE_MINUS_INFINITY;
-                          else 
-                          {
-                               returnValue = formatDate(new Date(ts.getTime()), "yyyy-MM-dd HH:mm:ss");
-                          }
-                       }
-                       break;
-                     default:
-                        returnValue = rs.getString(i);
-                        break;
-                  } 
-                  		  
-
-                  // TODO write Binary data
-                  if (returnValue != null)
-                  {
-                     byte[] d2 = returnValue.getBytes(getEncoding());
-                     writeInt(d2.length);
-                     write(d2);
-                  }
-                  else
-                  {
-                     writeInt(-1); 
-                  }
+                encoders[i].encode(rs, i + 1);
             }
 
             sendMessage();
         } 
         catch (SQLException e) 
         {
+            // do not send incomplete row:
+            cancelMessage();
             sendErrorResponse(e);
         }
     }
 
+    // write text value of a long directly into the output buffer:
+    private void writeTextLong(long value) throws IOException 
+    {
+        if (value == Long.MIN_VALUE) 
+        {
+            writeTextAscii(Long.toString(value));
+            return;
+        }
+
+        boolean negative = value < 0;
+        if (negative) 
+        {
+            value = -value;
+        }
+
+        int pos = textBuffer.length;
+        do 
+        {
+            textBuffer[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } 
+        while (value != 0);
+
+        if (negative) 
+        {
+            textBuffer[--pos] = '-';
+        }
+
+        writeText(textBuffer, pos, textBuffer.length - pos);
+    }
+
+    // write text value consisting of ASCII characters only (no encoding needed):
+    private void writeTextAscii(String s) throws IOException 
+    {
+        int length = s.length();
+        writeInt(length);
+        ensureOutputCapacity(length);
+        for (int i = 0; i < length; i++) 
+        {
+            outBuffer.put((byte) s.charAt(i));
+        }
+    }
+
+    // write length-prefixed value:
+    private void writeText(byte[] data, int offset, int length) throws IOException 
+    {
+        writeInt(length);
+        ensureOutputCapacity(length);
+        outBuffer.put(data, offset, length);
+    }
+
+    // put zero-padded number into text buffer, returns next position:
+    private int putDigits(int pos, int value, int width) 
+    {
+        int digits = 1;
+        for (int v = value / 10; v != 0; v /= 10) 
+        {
+            digits++;
+        }
+        digits = Math.max(digits, width);
+        for (int i = pos + digits - 1; i >= pos; i--) 
+        {
+            textBuffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    // put date as yyyy-MM-dd into text buffer, returns next position:
+    private int putDate(int pos, Calendar c) 
+    {
+        pos = putDigits(pos, c.get(Calendar.YEAR), 4);
+        textBuffer[pos++] = '-';
+        pos = putDigits(pos, c.get(Calendar.MONTH) + 1, 2);
+        textBuffer[pos++] = '-';
+        return putDigits(pos, c.get(Calendar.DAY_OF_MONTH), 2);
+    }
+
+    // put era suffix of BC dates into text buffer, returns next position:
+    private int putEra(int pos, Calendar c) 
+    {
+        if (c.get(Calendar.ERA) == GregorianCalendar.BC) 
+        {
+            textBuffer[pos++] = ' ';
+            textBuffer[pos++] = 'B';
+            textBuffer[pos++] = 'C';
+        }
+        return pos;
+    }
+
+    // get days since PostgreSQL epoch (2000-01-01) of a local time:
+    private static int getPostgresDays(long millis, TimeZone timeZone) 
+    {
+        long local = millis + timeZone.getOffset(millis);
+        long days = local / MILLIS_PER_DAY;
+        if (local % MILLIS_PER_DAY < 0) 
+        {
+            days--;
+        }
+        return (int) (days - POSTGRES_EPOCH_DAYS);
+    }
+
+    // write numeric in PostgreSQL binary format (base 10000 digits):
+    private void writeBinaryNumeric(BigDecimal value) throws IOException 
+    {
+        int dscale = Math.max(value.scale(), 0);
+        int fractionDigits = (dscale + 3) / 4;
+        BigInteger unscaled = value.setScale(fractionDigits * 4).unscaledValue();
+        int sign = unscaled.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS;
+        unscaled = unscaled.abs();
+
+        // collect digits, least significant first:
+        int count = 0;
+        while (unscaled.bitLength() >= 63) 
+        {
+            BigInteger[] qr = unscaled.divideAndRemainder(NUMERIC_BASE);
+            numericDigits = ensureNumericDigits(count + 1);
+            numericDigits[count++] = qr[1].shortValue();
+            unscaled = qr[0];
+        }
+        for (long l = unscaled.longValue(); l != 0; l /= 10000) 
+        {
+            numericDigits = ensureNumericDigits(count + 1);
+            numericDigits[count++] = (short) (l % 10000);
+        }
+
+        // trailing zeros are implied by weight:
+        int low = 0;
+        while (low < count && numericDigits[low] == 0) 
+        {
+            low++;
+        }
+        int weight = count - 1 - fractionDigits;
+        if (low == count) 
+        {
+            weight = 0;
+            sign = NUMERIC_POS;
+        }
+
+        writeInt(8 + 2 * (count - low));
+        writeShort(count - low);
+        writeShort(weight);
+        writeShort(sign);
+        writeShort(dscale);
+        for (int i = count - 1; i >= low; i--) 
+        {
+            writeShort(numericDigits[i]);
+        }
+    }
+
+    // grow numeric digits buffer:
+    private short[] ensureNumericDigits(int n) 
+    {
+        if (numericDigits.length >= n) 
+        {
+            return numericDigits;
+        }
+        short[] digits = new short[numericDigits.length * 2];
+        System.arraycopy(numericDigits, 0, digits, 0, numericDigits.length);
+        return digits;
+    }
+
     // get encoding:
     private String getEncoding() 
     {
@@ -1462,17 +1811,25 @@ public class ServerThread implements Runnable
         sendMessage();
     }
 
-    // send row description:
-    private void sendRowDescription(ResultSetMetaData meta) throws IOException 
+    // send row description (all columns in text format):
+    private ColumnEncoder[] sendRowDescription(ResultSetMetaData meta) throws IOException 
+    {
+        return sendRowDescription(meta, null);
+    }
+
+    // send row description, returns the encoders to send data rows with:
+    private ColumnEncoder[] sendRowDescription(ResultSetMetaData meta, int[] formatCodes) throws IOException 
     {
         try 
         {
             if (meta == null) 
             {
                 sendNoData();
+                return null;
             } 
             else 
             {
+                ColumnEncoder[] encoders = createEncoders(meta, formatCodes);
                 int columns = meta.getColumnCount();
                 startMessage('T');
                 // number of columns:
@@ -1571,15 +1928,18 @@ public class ServerThread implements Runnable
                         writeInt(-1);
                     }
 
-                    // text
-                    writeShort(0);
+                    // format code (text or binary):
+                    writeShort(encoders[i - 1].format);
                 }
                 sendMessage();
+                return encoders;
             }
         } 
         catch (SQLException e) 
         {
+            cancelMessage();
             sendErrorResponse(e);
+            return null;
         }
     }
 
@@ -1640,16 +2000,52 @@ public class ServerThread implements Runnable
         sendMessage();
     }
 
+    // send close complete:
+    private void sendCloseComplete() throws IOException 
+    {
+        startMessage('3');
+        sendMessage();
+    }
+
+    // send portal suspended (row limit of execute reached):
+    private void sendPortalSuspended() throws IOException 
+    {
+        startMessage('s');
+        sendMessage();
+    }
+
     // close:
-    void close() 
+    synchronized void close() 
     {
+        if (channel == null) 
+        {
+            return;
+        }
         try 
         {
             stop = true;
+            // send any pending responses, like an error message:
+            if (messageStart < 0 && outBuffer.position() > 0) 
+            {
+                try 
+                {
+                    flush();
+                } 
+                catch (IOException e) 
+                {
+                    // client has gone away
+                }
+            }
+            for (Portal p : portals.values()) 
+            {
+                closePortal(p);
+            }
+            portals.clear();
             JdbcUtils.closeSilently(conn);
-            if (socket != null) 
+            channel.close();
+            if (writeSelector != null) 
             {
-                socket.close();
+                writeSelector.close();
             }
             logger.trace("Close");
         } 
@@ -1658,16 +2054,28 @@ public class ServerThread implements Runnable
             logger.error(e.getStackTrace());
         }
         conn = null;
-        socket = null;
+        channel = null;
+        writeSelector = null;
         server.remove(this);
     }
 
+    // close the cursor of a portal:
+    private void closePortal(Portal p) 
+    {
+        JdbcUtils.closeSilently(p.resultSet);
+        JdbcUtils.closeSilently(p.statement);
+        p.resultSet = null;
+        p.statement = null;
+        p.encoders = null;
+    }
+
     // send cleartext auth request:
     private void sendAuthenticationCleartextPassword() throws IOException 
     {
         startMessage('R');
         writeInt(3);
         sendMessage();
+        flush();
     }
 
     // send secure auth request:
@@ -1677,6 +2085,7 @@ public class ServerThread implements Runnable
         writeInt(5); // MD5
         writeStringNonNullTerminated(salt);
         sendMessage();
+        flush();
     }
   
     // check if specified password are equals:
@@ -1783,6 +2192,8 @@ public class ServerThread implements Runnable
         }
         write((byte) c);
         sendMessage();
+        // client waits for ReadyForQuery, so this is where responses are sent:
+        flush();
     }
 
     // send backend keydata:
@@ -1811,67 +2222,129 @@ public class ServerThread implements Runnable
     // write int:
     private void writeInt(int i) throws IOException 
     {
-        dataOut.writeInt(i);
+        ensureOutputCapacity(4);
+        outBuffer.putInt(i);
     }
 
     // write short:
     private void writeShort(int i) throws IOException 
     {
-        dataOut.writeShort(i);
+        ensureOutputCapacity(2);
+        outBuffer.putShort((short) i);
     }
 
     // write binary data:
     private void write(byte[] data) throws IOException 
     {
-        dataOut.write(data);
+        ensureOutputCapacity(data.length);
+        outBuffer.put(data);
     }
 
     // write integer data:
     private void write(int b) throws IOException 
     {
-        dataOut.write(b);
+        ensureOutputCapacity(1);
+        outBuffer.put((byte) b);
     }
 
     // start message:
-    private void startMessage(int messageType) 
+    private void startMessage(int messageType) throws IOException 
     {
-        this.messageType = messageType;
-        outBuffer = new ByteArrayOutputStream();
-        dataOut = new DataOutputStream(outBuffer);
+        ensureOutputCapacity(5);
+        messageStart = outBuffer.position();
+        outBuffer.put((byte) messageType);
+        // length, filled in by sendMessage:
+        outBuffer.putInt(0);
     }
 
-    // send message:
+    // finish message (it is sent with the next flush):
     private void sendMessage() throws IOException 
     {
-        dataOut.flush();
-        byte[] buff = outBuffer.toByteArray();
-        int len = buff.length;
-        dataOut = new DataOutputStream(out);
-        dataOut.write(messageType);
-        dataOut.writeInt(len + 4);
-        dataOut.write(buff);
-        dataOut.flush();
+        outBuffer.putInt(messageStart + 1, outBuffer.position() - messageStart - 1);
+        messageStart = -1;
     }
 
-    // send parameter status:
-    private void sendParameterStatus(String param, String value) throws IOException 
+    // drop the message being written:
+    private void cancelMessage() 
     {
-        startMessage('S');
-        writeString(param);
-        writeString(value);
-        sendMessage();
+        if (messageStart >= 0) 
+        {
+            outBuffer.position(messageStart);
+            messageStart = -1;
+        }
     }
 
-    // set thread:
-    void setThread(Thread thread) 
+    // make room in the output buffer, sending complete messages if it is full:
+    private void ensureOutputCapacity(int n) throws IOException 
     {
-        this.thread = thread;
+        if (outBuffer.remaining() >= n) 
+        {
+            return;
+        }
+
+        // send complete messages; the current one stays in the buffer
+        // because its length isn't known yet:
+        int end = outBuffer.position();
+        int keep = (messageStart < 0) ? end : messageStart;
+        outBuffer.position(0);
+        outBuffer.limit(keep);
+        writeFully(outBuffer);
+        outBuffer.limit(end);
+        outBuffer.position(keep);
+        outBuffer.compact();
+        if (messageStart >= 0) 
+        {
+            messageStart = 0;
+        }
+
+        // a single message may be larger than the buffer:
+        if (outBuffer.remaining() < n) 
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(outBuffer.capacity() * 2, outBuffer.position() + n));
+            outBuffer.flip();
+            buffer.put(outBuffer);
+            outBuffer = buffer;
+        }
+    }
+
+    // send all complete messages to the client:
+    private void flush() throws IOException 
+    {
+        outBuffer.flip();
+        writeFully(outBuffer);
+        outBuffer.clear();
+    }
+
+    // write buffer to the channel, waiting while the client isn't reading:
+    private void writeFully(ByteBuffer buffer) throws IOException 
+    {
+        while (buffer.hasRemaining()) 
+        {
+            if (channel.write(buffer) > 0) 
+            {
+                continue;
+            }
+            if (stop) 
+            {
+                throw new IOException("Connection closed");
+            }
+            if (writeSelector == null) 
+            {
+                writeSelector = Selector.open();
+                channel.register(writeSelector, SelectionKey.OP_WRITE);
+            }
+            writeSelector.select(WRITE_TIMEOUT);
+            writeSelector.selectedKeys().clear();
+        }
     }
 
-    // get thread:
-    Thread getThread() 
+    // send parameter status:
+    private void sendParameterStatus(String param, String value) throws IOException 
     {
-        return thread;
+        startMessage('S');
+        writeString(param);
+        writeString(value);
+        sendMessage();
     }
 
     // set process id:
@@ -1880,6 +2353,12 @@ public class ServerThread implements Runnable
         this.processId = id;
     }
 
+    // get process id:
+    int getProcessId() 
+    {
+        return processId;
+    }
+
     /**
      * Represents a PostgreSQL Prepared object.
      */
@@ -1931,5 +2410,351 @@ public class ServerThread implements Runnable
          * Prepared
          */
         Prepared prepared;
+
+        /**
+         * The statement, open while the portal has rows left to fetch.
+         */
+        PreparedStatement statement;
+
+        /**
+         * The open cursor.
+         */
+        ResultSet resultSet;
+
+        /**
+         * The column encoders of the cursor.
+         */
+        ColumnEncoder[] encoders;
+    }
+
+    /**
+     * Writes the values of one result set column into DataRow messages.
+     * Encoders are resolved once per result set from its metadata and the
+     * requested format codes, so sending a row only fetches the values and
+     * writes their bytes to the output buffer.
+     */
+    abstract class ColumnEncoder 
+    {
+        /**
+         * The format code (0 - text, 1 - binary).
+         */
+        final int format;
+
+        ColumnEncoder(boolean binary) 
+        {
+            this.format = binary ? 1 : 0;
+        }
+
+        /**
+         * Writes length and value of the column of the current row.
+         */
+        abstract void encode(ResultSet rs, int column) throws SQLException, IOException;
+    }
+
+    /**
+     * Encodes TINYINT, SMALLINT, INTEGER and BIGINT (binary int2, int4, int8).
+     */
+    class IntegerEncoder extends ColumnEncoder 
+    {
+        private final int size;
+
+        IntegerEncoder(boolean binary, int type) 
+        {
+            super(binary);
+            switch (type) 
+            {
+                case Types.BIGINT:
+                   size = 8;
+                   break;
+                case Types.INTEGER:
+                   size = 4;
+                   break;
+                default:
+                   size = 2;
+                   break;
+            }
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            long value = rs.getLong(column);
+            if (rs.wasNull()) 
+            {
+                writeInt(-1);
+            }
+            else if (format == 0) 
+            {
+                writeTextLong(value);
+            }
+            else if (size == 8) 
+            {
+                writeInt(8);
+                ensureOutputCapacity(8);
+                outBuffer.putLong(value);
+            }
+            else if (size == 4) 
+            {
+                writeInt(4);
+                writeInt((int) value);
+            }
+            else 
+            {
+                writeInt(2);
+                writeShort((int) value);
+            }
+        }
+    }
+
+    /**
+     * Encodes REAL (binary float4).
+     */
+    class FloatEncoder extends ColumnEncoder 
+    {
+        FloatEncoder(boolean binary) 
+        {
+            super(binary);
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            float value = rs.getFloat(column);
+            if (rs.wasNull()) 
+            {
+                writeInt(-1);
+            }
+            else if (format == 0) 
+            {
+                writeTextAscii(Float.toString(value));
+            }
+            else 
+            {
+                writeInt(4);
+                writeInt(Float.floatToIntBits(value));
+            }
+        }
+    }
+
+    /**
+     * Encodes FLOAT and DOUBLE (binary float8).
+     */
+    class DoubleEncoder extends ColumnEncoder 
+    {
+        DoubleEncoder(boolean binary) 
+        {
+            super(binary);
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            double value = rs.getDouble(column);
+            if (rs.wasNull()) 
+            {
+                writeInt(-1);
+            }
+            else if (format == 0) 
+            {
+                writeTextAscii(Double.toString(value));
+            }
+            else 
+            {
+                writeInt(8);
+                ensureOutputCapacity(8);
+                outBuffer.putDouble(value);
+            }
+        }
+    }
+
+    /**
+     * Encodes DECIMAL and NUMERIC (binary numeric).
+     */
+    class NumericEncoder extends ColumnEncoder 
+    {
+        NumericEncoder(boolean binary) 
+        {
+            super(binary);
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            BigDecimal value = rs.getBigDecimal(column);
+            if (value == null) 
+            {
+                writeInt(-1);
+            }
+            else if (format == 0) 
+            {
+                writeTextAscii(value.toPlainString());
+            }
+            else 
+            {
+                writeBinaryNumeric(value);
+            }
+        }
+    }
+
+    /**
+     * Encodes BOOLEAN ('t' / 'f' or binary bool).
+     */
+    class BooleanEncoder extends ColumnEncoder 
+    {
+        BooleanEncoder(boolean binary) 
+        {
+            super(binary);
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            boolean value = rs.getBoolean(column);
+            if (rs.wasNull()) 
+            {
+                writeInt(-1);
+            }
+            else 
+            {
+                writeInt(1);
+                if (format == 0) 
+                {
+                    write(value ? 't' : 'f');
+                }
+                else 
+                {
+                    write(value ? 1 : 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes DATE (yyyy-MM-dd or binary days since 2000-01-01).
+     */
+    class DateEncoder extends ColumnEncoder 
+    {
+        private final Calendar calendar = new GregorianCalendar();
+        private final TimeZone timeZone = calendar.getTimeZone();
+
+        DateEncoder(boolean binary) 
+        {
+            super(binary);
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            java.sql.Date value = rs.getDate(column);
+            if (value == null) 
+            {
+                writeInt(-1);
+            }
+            else if (format == 0) 
+            {
+                calendar.setTimeInMillis(value.getTime());
+                int pos = putDate(0, calendar);
+                pos = putEra(pos, calendar);
+                writeText(textBuffer, 0, pos);
+            }
+            else 
+            {
+                writeInt(4);
+                writeInt(getPostgresDays(value.getTime(), timeZone));
+            }
+        }
+    }
+
+    /**
+     * Encodes TIMESTAMP (yyyy-MM-dd HH:mm:ss or binary float8 seconds since
+     * 2000-01-01, as the server reports integer_datetimes off).
+     */
+    class TimestampEncoder extends ColumnEncoder 
+    {
+        private final Calendar calendar = new GregorianCalendar();
+        private final TimeZone timeZone = calendar.getTimeZone();
+
+        TimestampEncoder(boolean binary) 
+        {
+            super(binary);
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            Timestamp value = rs.getTimestamp(column);
+            if (value == null) 
+            {
+                writeInt(-1);
+                return;
+            }
+
+            long millis = value.getTime();
+            if (format == 0) 
+            {
+                if (millis == JDBC_DATE_INFINITY) 
+                {
+                    writeTextAscii(POSTGRES_DATE_INFINITY);
+                }
+                else if (millis == JDBC_DATE_MINUS_INFINITY) 
+                {
+                    writeTextAscii(POSTGRES_DATE_MINUS_INFINITY);
+                }
+                else 
+                {
+                    calendar.setTimeInMillis(millis);
+                    int pos = putDate(0, calendar);
+                    textBuffer[pos++] = ' ';
+                    pos = putDigits(pos, calendar.get(Calendar.HOUR_OF_DAY), 2);
+                    textBuffer[pos++] = ':';
+                    pos = putDigits(pos, calendar.get(Calendar.MINUTE), 2);
+                    textBuffer[pos++] = ':';
+                    pos = putDigits(pos, calendar.get(Calendar.SECOND), 2);
+                    pos = putEra(pos, calendar);
+                    writeText(textBuffer, 0, pos);
+                }
+                return;
+            }
+
+            double seconds;
+            if (millis == JDBC_DATE_INFINITY) 
+            {
+                seconds = Double.POSITIVE_INFINITY;
+            }
+            else if (millis == JDBC_DATE_MINUS_INFINITY) 
+            {
+                seconds = Double.NEGATIVE_INFINITY;
+            }
+            else 
+            {
+                // local wall clock time, the same as in text format:
+                long local = millis + timeZone.getOffset(millis) - POSTGRES_EPOCH_MILLIS;
+                seconds = local / 1000.0 + (value.getNanos() % 1000000) / 1e9;
+            }
+            writeInt(8);
+            ensureOutputCapacity(8);
+            outBuffer.putDouble(seconds);
+        }
+    }
+
+    /**
+     * Encodes all other types as text in the client encoding.
+     */
+    class StringEncoder extends ColumnEncoder 
+    {
+        private final String encoding = getEncoding();
+
+        StringEncoder(boolean binary) 
+        {
+            super(binary);
+        }
+
+        void encode(ResultSet rs, int column) throws SQLException, IOException 
+        {
+            String value = rs.getString(column);
+            if (value == null) 
+            {
+                writeInt(-1);
+            }
+            else 
+            {
+                byte[] data = value.getBytes(encoding);
+                writeInt(data.length);
+                write(data);
+            }
+        }
     }
 }
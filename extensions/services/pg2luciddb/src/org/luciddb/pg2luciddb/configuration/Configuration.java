@@ -52,6 +52,12 @@ public class Configuration
 
     // JDBC fetchsize hint:
     private int fetchSize;
+
+    // number of threads serving client requests:
+    private int workerThreads;
+
+    // initial size of each connection's output buffer (in bytes):
+    private int outputBufferSize;
    
     // list of hosts allowed to connect to us - null means any host, not null means only these ones
     private List<String> authorizedHosts = null;
@@ -99,6 +105,10 @@ public class Configuration
         connectionCloseIdleTimeout = Integer.parseInt(prop.getProperty("connectionCloseIdleTimeout", "0").trim());
         // get fetch size:
         fetchSize = Integer.parseInt(prop.getProperty("statementFetchSize", "0").trim());
+        // get number of worker threads:
+        workerThreads = Integer.parseInt(prop.getProperty("workerThreads", "16").trim());
+        // get output buffer size:
+        outputBufferSize = Integer.parseInt(prop.getProperty("outputBufferSize", "65536").trim());
         // database admin's username:
         databaseAdminUsername = prop.getProperty("databaseAdminUsername", "sa");
         // database admin's password:
@@ -235,6 +245,18 @@ public class Configuration
         return fetchSize;
     }
 
+    // get number of worker threads:
+    public int getWorkerThreads() 
+    {
+        return workerThreads;
+    }
+
+    // get output buffer size:
+    public int getOutputBufferSize() 
+    {
+        return outputBufferSize;
+    }
+
     // get list of authorized hosts:
     public List<String> getAuthorizedHosts() 
     {
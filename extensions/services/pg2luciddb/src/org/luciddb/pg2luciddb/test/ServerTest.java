@@ -0,0 +1,982 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+
+package org.luciddb.pg2luciddb.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.luciddb.pg2luciddb.Server;
+
+/**
+ * Tests the PostgreSQL wire protocol of the server: simple and extended
+ * queries, text and binary data rows, portals executed with a row limit,
+ * closing portals and statements, canceling queries and the handling of
+ * long queries and idle connections. The server runs on top of a mock JDBC
+ * driver, so no database is needed.
+ */
+public class ServerTest extends TestCase
+{
+    // the mock result set (N INTEGER, S VARCHAR), S is null in the third row:
+    private static final Object[][] ROWS =
+    {
+        { 1, "r1" }, { 2, "r2" }, { 3, null }, { 4, "r4" }, { 5, "r5" }
+    };
+
+    // queries containing this block until they are canceled:
+    private static final String WAIT_FOR_CANCEL = "wait_for_cancel";
+
+    // fetch size configured for statements without a row limit:
+    private static final int FETCH_SIZE = 3;
+
+    // idle connection timeout used by the tests (in miliseconds):
+    private static final int IDLE_TIMEOUT = 1500;
+
+    // statements created by the mock driver:
+    private static final List<MockStatement> statements = Collections.synchronizedList(new ArrayList<MockStatement>());
+
+    private File dir;
+    private Server server;
+    private int port;
+    private List<Client> clients = new ArrayList<Client>();
+
+    public ServerTest(String name)
+    {
+        super(name);
+    }
+
+    // start a server with a single worker thread:
+    protected void setUp() throws Exception
+    {
+        statements.clear();
+
+        ServerSocket socket = new ServerSocket(0);
+        port = socket.getLocalPort();
+        socket.close();
+
+        dir = File.createTempFile("pg2luciddb", "");
+        dir.delete();
+        dir.mkdir();
+        File users = new File(dir, "allowed.users");
+        write(users, "test=\n");
+        File conf = new File(dir, "PG2LucidDB.properties");
+        write(conf,
+            "serverPort = " + port + "\n"
+            + "jdbcDriver = " + MockDriver.class.getName() + "\n"
+            + "jdbcDriverBaseUrl = jdbc:mock\n"
+            + "connectionCloseIdleTimeout = " + IDLE_TIMEOUT + "\n"
+            + "workerThreads = 1\n"
+            + "statementFetchSize = " + FETCH_SIZE + "\n"
+            + "outputBufferSize = 1024\n"
+            + "allowedUsersFile = " + users.getPath() + "\n"
+            + "authorizedHostsFile = " + new File(dir, "none").getPath() + "\n"
+            + "jdbcDriverOptionsFile = " + new File(dir, "none").getPath() + "\n");
+
+        server = new Server(new String[] { conf.getPath() });
+        Thread thread = new Thread("pg2luciddb test server")
+        {
+            public void run()
+            {
+                try
+                {
+                    server.start();
+                }
+                catch (SQLException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        for (int i = 0; i < 100 && !server.isRunning(false); i++)
+        {
+            Thread.sleep(50);
+        }
+        assertTrue("server not started", server.isRunning(false));
+    }
+
+    protected void tearDown() throws Exception
+    {
+        for (Client c : clients)
+        {
+            c.close();
+        }
+        server.stop();
+        new File(dir, "allowed.users").delete();
+        new File(dir, "PG2LucidDB.properties").delete();
+        dir.delete();
+    }
+
+    // simple query returns the rows in text format:
+    public void testSimpleQuery() throws Exception
+    {
+        Client c = connect();
+        List<Message> result = c.query("select n, s from t");
+        assertEquals("TDDDDDCZ", types(result));
+        assertEquals(2, result.get(0).in().readShort());
+        assertRow(result.get(1), "1", "r1");
+        assertRow(result.get(3), "3", null);
+        assertEquals("SELECT", result.get(6).in().readString());
+    }
+
+    // result format codes select binary values:
+    public void testBinaryFormat() throws Exception
+    {
+        Client c = connect();
+        c.parse("", "select n, s from t");
+        c.bind("", "", new int[] { 1 });
+        c.execute("", 0);
+        List<Message> result = c.sync();
+        assertEquals("12TDDDDDCZ", types(result));
+
+        MessageInput in = result.get(2).in();
+        assertEquals(2, in.readShort());
+        in.readString();
+        in.skipBytes(4 + 2 + 4 + 2 + 4);
+        assertEquals(1, in.readShort());
+
+        in = result.get(3).in();
+        assertEquals(2, in.readShort());
+        assertEquals(4, in.readInt());
+        assertEquals(1, in.readInt());
+        // binary character values are the text itself:
+        assertEquals(2, in.readInt());
+        assertEquals("r1", new String(in.readBytes(2), "UTF-8"));
+
+        in = result.get(5).in();
+        in.skipBytes(2 + 4 + 4);
+        assertEquals(-1, in.readInt());
+    }
+
+    // a row limit suspends the portal, the next execute continues the cursor:
+    public void testPortalSuspended() throws Exception
+    {
+        Client c = connect();
+        c.parse("s1", "select n, s from t");
+        c.bind("p1", "s1", null);
+        c.execute("p1", 2);
+        c.execute("p1", 2);
+        c.execute("p1", 2);
+        List<Message> result = c.sync();
+        assertEquals("12TDDsDDsDCZ", types(result));
+        assertRow(result.get(3), "1", "r1");
+        assertRow(result.get(6), "3", null);
+        assertRow(result.get(9), "5", "r5");
+
+        // one cursor fetching as many rows as requested, closed at the end:
+        MockStatement stat = executed("select n, s from t");
+        assertEquals(2, stat.fetchSize);
+        assertTrue(stat.closed);
+    }
+
+    // a portal returning as many rows as the limit is suspended until the
+    // next execute finds no more rows:
+    public void testPortalExhausted() throws Exception
+    {
+        Client c = connect();
+        c.parse("s1", "select n, s from t");
+        c.bind("p1", "s1", null);
+        c.execute("p1", 5);
+        List<Message> result = c.sync();
+        assertEquals("12TDDDDDsZ", types(result));
+        c.execute("p1", 5);
+        result = c.sync();
+        assertEquals("CZ", types(result));
+    }
+
+    // closing a portal closes its cursor, closing a statement forgets it:
+    public void testClose() throws Exception
+    {
+        Client c = connect();
+        c.parse("s1", "select n, s from t");
+        c.bind("p1", "s1", null);
+        c.execute("p1", 1);
+        c.close('P', "p1");
+        List<Message> result = c.sync();
+        assertEquals("12TDs3Z", types(result));
+        assertTrue(executed("select n, s from t").closed);
+
+        // the portal is gone, the statement can still be bound:
+        c.execute("p1", 1);
+        c.bind("p2", "s1", null);
+        c.execute("p2", 0);
+        result = c.sync();
+        assertEquals("E2TDDDDDCZ", types(result));
+
+        // the statement is gone:
+        c.close('S', "s1");
+        c.bind("p3", "s1", null);
+        result = c.sync();
+        assertEquals("3EZ", types(result));
+
+        // closing unknown names isn't an error:
+        c.close('S', "none");
+        c.close('P', "none");
+        result = c.sync();
+        assertEquals("33Z", types(result));
+    }
+
+    // the row limit of an execute, or else the configured fetch size, is
+    // passed to the driver:
+    public void testFetchSize() throws Exception
+    {
+        Client c = connect();
+        c.query("select n, s from t");
+        assertEquals(FETCH_SIZE, executed("select n, s from t").fetchSize);
+
+        c.parse("s1", "select n from t");
+        c.bind("p1", "s1", null);
+        c.execute("p1", 0);
+        assertEquals("12TDDDDDCZ", types(c.sync()));
+        assertEquals(FETCH_SIZE, executed("select n from t").fetchSize);
+
+        c.parse("s2", "select s from t");
+        c.bind("p2", "s2", null);
+        c.execute("p2", 4);
+        assertEquals("12TDDDDsZ", types(c.sync()));
+        assertEquals(4, executed("select s from t").fetchSize);
+    }
+
+    // binding a portal name again closes the cursor of the old portal:
+    public void testRebindPortal() throws Exception
+    {
+        Client c = connect();
+        c.parse("s1", "select n, s from t");
+        c.bind("p1", "s1", null);
+        c.execute("p1", 1);
+        assertEquals("12TDsZ", types(c.sync()));
+        MockStatement first = executed("select n, s from t");
+        assertFalse(first.closed);
+
+        c.bind("p1", "s1", null);
+        c.execute("p1", 0);
+        List<Message> result = c.sync();
+        assertEquals("2TDDDDDCZ", types(result));
+        assertRow(result.get(2), "1", "r1");
+        assertTrue(first.closed);
+        assertTrue(first != executed("select n, s from t"));
+    }
+
+    // terminating the connection closes the cursors of open portals:
+    public void testTerminate() throws Exception
+    {
+        Client c = connect();
+        c.parse("s1", "select n, s from t");
+        c.bind("p1", "s1", null);
+        c.execute("p1", 1);
+        assertEquals("12TDsZ", types(c.sync()));
+        MockStatement stat = executed("select n, s from t");
+        assertFalse(stat.closed);
+
+        c.send('X', c.message());
+        assertEquals(-1, c.in.read());
+        assertTrue(stat.closed);
+    }
+
+    // a long query doesn't keep the other connections waiting, and can be canceled:
+    public void testCancel() throws Exception
+    {
+        Client c1 = connect();
+        c1.send('Q', c1.message().string("select " + WAIT_FOR_CANCEL + " from t"));
+        waitForExecute(WAIT_FOR_CANCEL);
+
+        // the only worker thread is busy, yet other clients are served:
+        Client c2 = connect();
+        assertEquals("TDDDDDCZ", types(c2.query("select n, s from t")));
+        Client c3 = connect();
+        assertEquals("TDDDDDCZ", types(c3.query("select n, s from t")));
+
+        // wrong key:
+        cancel(c1.processId, c1.secretKey + 1);
+        Thread.sleep(200);
+        assertFalse(executed(WAIT_FOR_CANCEL).canceled);
+
+        cancel(c1.processId, c1.secretKey);
+        List<Message> result = c1.receive('Z');
+        assertEquals("EZ", types(result));
+        assertTrue(executed(WAIT_FOR_CANCEL).canceled);
+
+        // the connection is still usable:
+        assertEquals("TDDDDDCZ", types(c1.query("select n, s from t")));
+    }
+
+    // a connection running a query for longer than the idle timeout isn't
+    // closed, an idle connection is:
+    public void testIdleConnections() throws Exception
+    {
+        Client c1 = connect();
+        Client c2 = connect();
+        c1.send('Q', c1.message().string("select " + WAIT_FOR_CANCEL + " from t"));
+        waitForExecute(WAIT_FOR_CANCEL);
+        Thread.sleep(IDLE_TIMEOUT * 2);
+
+        // c2 has been closed:
+        try
+        {
+            c2.query("select n, s from t");
+            fail("idle connection not closed");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+
+        cancel(c1.processId, c1.secretKey);
+        assertEquals("EZ", types(c1.receive('Z')));
+        assertEquals("TDDDDDCZ", types(c1.query("select n, s from t")));
+    }
+
+    // connect and authenticate:
+    private Client connect() throws IOException
+    {
+        Client c = new Client();
+        clients.add(c);
+        c.startup();
+        return c;
+    }
+
+    // send a CancelRequest on a new connection:
+    private void cancel(int processId, int secretKey) throws IOException
+    {
+        Socket s = new Socket("localhost", port);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            out.writeInt(16);
+            out.writeInt(80877102);
+            out.writeInt(processId);
+            out.writeInt(secretKey);
+            out.flush();
+            // the server closes the connection without a response:
+            assertEquals(-1, s.getInputStream().read());
+        }
+        finally
+        {
+            s.close();
+        }
+    }
+
+    // wait until the server executes a statement:
+    private void waitForExecute(String sql) throws InterruptedException
+    {
+        for (int i = 0; i < 100 && executed(sql) == null; i++)
+        {
+            Thread.sleep(50);
+        }
+        assertNotNull("not executed: " + sql, executed(sql));
+    }
+
+    // the last statement executed containing the given text:
+    private static MockStatement executed(String sql)
+    {
+        MockStatement found = null;
+        synchronized (statements)
+        {
+            for (MockStatement stat : statements)
+            {
+                if (stat.executed != null && stat.executed.indexOf(sql) >= 0)
+                {
+                    found = stat;
+                }
+            }
+        }
+        return found;
+    }
+
+    // check the text values of a data row:
+    private static void assertRow(Message row, String n, String s) throws IOException
+    {
+        assertEquals('D', row.type);
+        MessageInput in = row.in();
+        assertEquals(2, in.readShort());
+        assertEquals(n, readText(in));
+        assertEquals(s, readText(in));
+    }
+
+    // read a text value of a data row:
+    private static String readText(MessageInput in) throws IOException
+    {
+        int len = in.readInt();
+        if (len < 0)
+        {
+            return null;
+        }
+        return new String(in.readBytes(len), "UTF-8");
+    }
+
+    // message types of a response:
+    private static String types(List<Message> messages)
+    {
+        StringBuilder buff = new StringBuilder();
+        for (Message m : messages)
+        {
+            buff.append(m.type);
+        }
+        return buff.toString();
+    }
+
+    private static void write(File file, String s) throws IOException
+    {
+        FileWriter w = new FileWriter(file);
+        try
+        {
+            w.write(s);
+        }
+        finally
+        {
+            w.close();
+        }
+    }
+
+    /**
+     * A message received from the server.
+     */
+    static class Message
+    {
+        final char type;
+        final byte[] data;
+
+        Message(char type, byte[] data)
+        {
+            this.type = type;
+            this.data = data;
+        }
+
+        MessageInput in()
+        {
+            return new MessageInput(new ByteArrayInputStream(data));
+        }
+    }
+
+    /**
+     * Reads the parts of a message body.
+     */
+    static class MessageInput extends DataInputStream
+    {
+        MessageInput(InputStream in)
+        {
+            super(in);
+        }
+
+        String readString() throws IOException
+        {
+            ByteArrayOutputStream buff = new ByteArrayOutputStream();
+            int x;
+            while ((x = read()) > 0)
+            {
+                buff.write(x);
+            }
+            return new String(buff.toByteArray(), "UTF-8");
+        }
+
+        byte[] readBytes(int len) throws IOException
+        {
+            byte[] b = new byte[len];
+            readFully(b);
+            return b;
+        }
+    }
+
+    /**
+     * Builds the body of a message to send.
+     */
+    static class MessageBuilder
+    {
+        final ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(buff);
+
+        MessageBuilder string(String s) throws IOException
+        {
+            out.write(s.getBytes("UTF-8"));
+            out.write(0);
+            return this;
+        }
+
+        MessageBuilder int16(int i) throws IOException
+        {
+            out.writeShort(i);
+            return this;
+        }
+
+        MessageBuilder int32(int i) throws IOException
+        {
+            out.writeInt(i);
+            return this;
+        }
+
+        MessageBuilder int8(int i) throws IOException
+        {
+            out.write(i);
+            return this;
+        }
+    }
+
+    /**
+     * A minimal protocol V3 client.
+     */
+    class Client
+    {
+        final Socket socket;
+        final MessageInput in;
+        final DataOutputStream out;
+        int processId;
+        int secretKey;
+
+        Client() throws IOException
+        {
+            socket = new Socket("localhost", port);
+            socket.setSoTimeout(10000);
+            in = new MessageInput(socket.getInputStream());
+            out = new DataOutputStream(socket.getOutputStream());
+        }
+
+        void startup() throws IOException
+        {
+            byte[] body = message().int32(196608).string("user").string("test").string("database").string("db").int8(0).buff.toByteArray();
+            out.writeInt(body.length + 4);
+            out.write(body);
+            out.flush();
+            List<Message> result = receive('Z');
+            assertEquals('R', result.get(0).type);
+            assertEquals(0, result.get(0).in().readInt());
+            for (Message m : result)
+            {
+                if (m.type == 'K')
+                {
+                    MessageInput key = m.in();
+                    processId = key.readInt();
+                    secretKey = key.readInt();
+                }
+            }
+            assertTrue(processId > 0);
+        }
+
+        MessageBuilder message()
+        {
+            return new MessageBuilder();
+        }
+
+        void send(char type, MessageBuilder m) throws IOException
+        {
+            byte[] body = m.buff.toByteArray();
+            out.write(type);
+            out.writeInt(body.length + 4);
+            out.write(body);
+            out.flush();
+        }
+
+        List<Message> query(String sql) throws IOException
+        {
+            send('Q', message().string(sql));
+            return receive('Z');
+        }
+
+        void parse(String name, String sql) throws IOException
+        {
+            send('P', message().string(name).string(sql).int16(0));
+        }
+
+        void bind(String portal, String name, int[] resultFormats) throws IOException
+        {
+            MessageBuilder m = message().string(portal).string(name).int16(0).int16(0);
+            if (resultFormats == null)
+            {
+                m.int16(0);
+            }
+            else
+            {
+                m.int16(resultFormats.length);
+                for (int format : resultFormats)
+                {
+                    m.int16(format);
+                }
+            }
+            send('B', m);
+        }
+
+        void execute(String portal, int maxRows) throws IOException
+        {
+            send('E', message().string(portal).int32(maxRows));
+        }
+
+        void close(char type, String name) throws IOException
+        {
+            send('C', message().int8(type).string(name));
+        }
+
+        List<Message> sync() throws IOException
+        {
+            send('S', message());
+            return receive('Z');
+        }
+
+        // receive messages up to (including) a message of the given type,
+        // skipping the asynchronous ParameterStatus messages:
+        List<Message> receive(char last) throws IOException
+        {
+            List<Message> result = new ArrayList<Message>();
+            while (true)
+            {
+                int type = in.read();
+                if (type < 0)
+                {
+                    throw new EOFException("Connection closed by the server");
+                }
+                byte[] data = in.readBytes(in.readInt() - 4);
+                if (type == 'S')
+                {
+                    continue;
+                }
+                Message m = new Message((char) type, data);
+                result.add(m);
+                if (type == last)
+                {
+                    return result;
+                }
+            }
+        }
+
+        void close() throws IOException
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * JDBC driver returning the mock result set for every query.
+     */
+    public static class MockDriver implements Driver
+    {
+        public Connection connect(String url, Properties info)
+        {
+            return (Connection) proxy(Connection.class, new MockConnection());
+        }
+
+        public boolean acceptsURL(String url)
+        {
+            return url.startsWith("jdbc:mock");
+        }
+
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+        {
+            return new DriverPropertyInfo[0];
+        }
+
+        public int getMajorVersion()
+        {
+            return 1;
+        }
+
+        public int getMinorVersion()
+        {
+            return 0;
+        }
+
+        public boolean jdbcCompliant()
+        {
+            return false;
+        }
+
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException
+        {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    // create a proxy for a mock object:
+    private static Object proxy(Class<?> iface, InvocationHandler handler)
+    {
+        return Proxy.newProxyInstance(ServerTest.class.getClassLoader(), new Class<?>[] { iface }, handler);
+    }
+
+    // the default value returned by unimplemented methods:
+    private static Object defaultValue(Class<?> type)
+    {
+        if (type == Boolean.TYPE)
+        {
+            return Boolean.FALSE;
+        }
+        if (type == Integer.TYPE)
+        {
+            return 0;
+        }
+        if (type == Long.TYPE)
+        {
+            return 0L;
+        }
+        if (type == Short.TYPE)
+        {
+            return (short) 0;
+        }
+        if (type == Byte.TYPE)
+        {
+            return (byte) 0;
+        }
+        if (type == Float.TYPE)
+        {
+            return 0f;
+        }
+        if (type == Double.TYPE)
+        {
+            return 0d;
+        }
+        return null;
+    }
+
+    /**
+     * Mock Connection.
+     */
+    static class MockConnection implements InvocationHandler
+    {
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+            if (name.equals("createStatement"))
+            {
+                return newStatement(null);
+            }
+            if (name.equals("prepareStatement"))
+            {
+                return newStatement((String) args[0]);
+            }
+            if (name.equals("getMetaData"))
+            {
+                return proxy(DatabaseMetaData.class, new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        // pg_catalog is installed:
+                        if (method.getName().equals("getTables"))
+                        {
+                            return newResultSet();
+                        }
+                        return defaultValue(method.getReturnType());
+                    }
+                });
+            }
+            if (name.equals("getAutoCommit"))
+            {
+                return Boolean.TRUE;
+            }
+            return defaultValue(method.getReturnType());
+        }
+
+        private Object newStatement(String sql)
+        {
+            MockStatement stat = new MockStatement(sql);
+            statements.add(stat);
+            return proxy(PreparedStatement.class, stat);
+        }
+    }
+
+    // create the mock result set:
+    private static ResultSet newResultSet()
+    {
+        return (ResultSet) proxy(ResultSet.class, new MockResultSet());
+    }
+
+    /**
+     * Mock Statement and PreparedStatement.
+     */
+    static class MockStatement implements InvocationHandler
+    {
+        final String sql;
+        volatile String executed;
+        volatile int fetchSize;
+        volatile boolean canceled;
+        volatile boolean closed;
+
+        MockStatement(String sql)
+        {
+            this.sql = sql;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+        {
+            String name = method.getName();
+            if (name.equals("execute") || name.equals("executeQuery"))
+            {
+                String s = (args == null) ? sql : (String) args[0];
+                executed = s;
+                if (s.indexOf(WAIT_FOR_CANCEL) >= 0)
+                {
+                    waitForCancel();
+                }
+                return name.equals("execute") ? (Object) Boolean.TRUE : newResultSet();
+            }
+            if (name.equals("getResultSet"))
+            {
+                return newResultSet();
+            }
+            if (name.equals("getMetaData"))
+            {
+                return MockResultSet.META_DATA;
+            }
+            if (name.equals("getUpdateCount"))
+            {
+                return -1;
+            }
+            if (name.equals("setFetchSize"))
+            {
+                fetchSize = (Integer) args[0];
+                return null;
+            }
+            if (name.equals("cancel"))
+            {
+                synchronized (this)
+                {
+                    canceled = true;
+                    notifyAll();
+                }
+                return null;
+            }
+            if (name.equals("close"))
+            {
+                closed = true;
+                return null;
+            }
+            return defaultValue(method.getReturnType());
+        }
+
+        private synchronized void waitForCancel() throws SQLException
+        {
+            try
+            {
+                while (!canceled)
+                {
+                    wait();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            throw new SQLException("Statement canceled", "57014");
+        }
+    }
+
+    /**
+     * Mock ResultSet returning ROWS.
+     */
+    static class MockResultSet implements InvocationHandler
+    {
+        static final ResultSetMetaData META_DATA = (ResultSetMetaData) proxy(ResultSetMetaData.class, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                String name = method.getName();
+                if (name.equals("getColumnCount"))
+                {
+                    return 2;
+                }
+                if (args == null || !(args[0] instanceof Integer))
+                {
+                    return defaultValue(method.getReturnType());
+                }
+                int column = (Integer) args[0];
+                if (name.equals("getColumnType"))
+                {
+                    return (column == 1) ? Types.INTEGER : Types.VARCHAR;
+                }
+                if (name.equals("getColumnTypeName"))
+                {
+                    return (column == 1) ? "INTEGER" : "VARCHAR";
+                }
+                if (name.equals("getColumnLabel") || name.equals("getColumnName"))
+                {
+                    return (column == 1) ? "N" : "S";
+                }
+                if (name.equals("getPrecision"))
+                {
+                    return 10;
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+
+        private int row = -1;
+        private boolean wasNull;
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+            if (name.equals("next"))
+            {
+                return ++row < ROWS.length;
+            }
+            if (name.equals("getMetaData"))
+            {
+                return META_DATA;
+            }
+            if (name.equals("wasNull"))
+            {
+                return wasNull;
+            }
+            if (name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer)
+            {
+                Object value = ROWS[row][(Integer) args[0] - 1];
+                wasNull = (value == null);
+                if (name.equals("getString"))
+                {
+                    return (value == null) ? null : value.toString();
+                }
+                if (name.equals("getInt"))
+                {
+                    return (value == null) ? 0 : ((Integer) value).intValue();
+                }
+                if (name.equals("getLong"))
+                {
+                    return (value == null) ? 0L : ((Integer) value).longValue();
+                }
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+}
+
+// End ServerTest.java
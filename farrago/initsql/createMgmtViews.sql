@@ -228,6 +228,30 @@ reads sql data
 called on null input
 external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFile';
 
+-- exports tables in a schema to delimited files using several sessions at
+-- once; tables larger than split_rows rows are split by LCS_RID range where
+-- the personality supports it
+create or replace procedure export_schema_to_file_parallel(
+  in cat varchar(128),
+  in schma varchar(128),
+  in exclude boolean,
+  in tlist varchar(65535),
+  in tpattern varchar(65535),
+  in dir varchar(65535),
+  in bcp boolean,
+  in delete_failed_file boolean,
+  in field_delimiter varchar(2),
+  in file_extension varchar(5),
+  in date_format varchar(50),
+  in time_format varchar(50),
+  in timestamp_format varchar(50),
+  in parallelism int,
+  in split_rows bigint)
+language java
+reads sql data
+called on null input
+external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFileParallel';
+
 -- switches default character set to Unicode
 create or replace procedure change_default_character_set_to_unicode()
 language java
@@ -250,6 +274,61 @@ create or replace view session_parameters_view as
 
 grant select on session_parameters_view to public;
 
+create or replace function statement_profile()
+returns table(
+  stream_name varchar(1024),
+  rel_id int,
+  execute_calls bigint,
+  wall_micros bigint,
+  cpu_micros bigint,
+  rows_in bigint,
+  rows_out bigint,
+  bytes_in bigint,
+  bytes_out bigint)
+language java
+parameter style system defined java
+no sql
+external name
+'class net.sf.farrago.syslib.FarragoManagementUDR.statementProfile';
+
+-- per-stream statistics from the last EXPLAIN PLAN WITH STATISTICS
+-- executed in the current session
+create or replace view statement_profile_view as
+  select * from table(statement_profile());
+
+grant select on statement_profile_view to public;
+
+create or replace function statement_statistics()
+returns table(
+  sql_stmt varchar(65535),
+  calls bigint,
+  total_execute_micros bigint,
+  min_execute_micros bigint,
+  max_execute_micros bigint,
+  mean_execute_micros bigint,
+  row_count bigint,
+  prepares bigint,
+  prepare_micros bigint,
+  code_cache_hits bigint,
+  last_execution_time timestamp)
+language java
+parameter style system defined java
+no sql
+external name
+'class net.sf.farrago.syslib.FarragoManagementUDR.statementStatistics';
+
+-- cumulative statistics for statements executed since startup (or the
+-- last call to reset_statement_statistics), keyed by normalized SQL
+create or replace view statement_statistics_view as
+  select * from table(statement_statistics());
+
+create or replace procedure reset_statement_statistics()
+  language java
+  parameter style java
+  no sql
+  external name
+  'class net.sf.farrago.syslib.FarragoManagementUDR.resetStatementStatistics';
+
 --
 -- Statistics
 --
@@ -934,6 +1013,16 @@ create or replace procedure test_all_servers_for_wrapper(
   external name
   'class net.sf.farrago.syslib.FarragoMedUDR.testAllServersForWrapper';
 
+-- Discards the foreign metadata and statistics remembered by a
+-- particular SQL/MED data server.
+create or replace procedure flush_server_metadata_cache(
+  server_name varchar(128))
+  language java
+  parameter style java
+  no sql
+  external name
+  'class net.sf.farrago.syslib.FarragoMedUDR.flushServerMetadataCache';
+
 -- Returns the set of options relevant to a foreign server created
 -- from a given wrapper.
 --
@@ -77,6 +77,27 @@ import org.eigenbase.util.property.*;
 public class FarragoDatabase
     extends FarragoDbSingleton
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Maximum number of distinct normalized statements tracked in {@link
+     * #getStatementStatistics}; least recently executed ones are dropped.
+     */
+    private static final int STMT_STATS_MAX_ENTRIES = 1000;
+
+    /**
+     * Maximum total estimated size of the query results held by {@link
+     * #getResultCache}.
+     */
+    private static final long RESULT_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Maximum estimated size of a single query result held by {@link
+     * #getResultCache}; larger results are not cached.
+     */
+    private static final long RESULT_CACHE_ENTRY_MAX_BYTES =
+        RESULT_CACHE_MAX_BYTES / 8;
+
     //~ Instance fields --------------------------------------------------------
 
     private FarragoRepos systemRepos;
@@ -103,6 +124,21 @@ public class FarragoDatabase
      */
     private FarragoObjectCache codeCache;
 
+    /**
+     * Cumulative execution statistics for statements, keyed by normalized
+     * SQL text.
+     */
+    private final FarragoStmtStatsRegistry stmtStats =
+        new FarragoStmtStatsRegistry(STMT_STATS_MAX_ENTRIES);
+
+    /**
+     * Results of queries executed by sessions with result caching enabled.
+     */
+    private final FarragoResultCache resultCache =
+        new FarragoResultCache(
+            RESULT_CACHE_MAX_BYTES,
+            RESULT_CACHE_ENTRY_MAX_BYTES);
+
     /**
      * File containing trace configuration.
      */
@@ -221,7 +257,7 @@ public class FarragoDatabase
                     new FarragoObjectCache(
                         this,
                         codeCacheMaxBytes,
-                        new FarragoLruVictimPolicy());
+                        new FarragoGreedyDualSizeVictimPolicy());
 
                 ojRexImplementorTable =
                     new FarragoOJRexImplementorTable(
@@ -265,6 +301,24 @@ public class FarragoDatabase
                         checkpointIntervalMillis);
                 }
 
+                // Freeing old pages may wait for catalog locks, so it gets
+                // its own timer rather than delaying checkpoints.
+                int deallocateOldInterval =
+                    FarragoProperties.instance().deallocateOldInterval.get();
+                if ((deallocateOldInterval > 0)
+                    && systemRepos.isFennelEnabled())
+                {
+                    long deallocateOldIntervalMillis =
+                        deallocateOldInterval * 1000L;
+                    Timer deallocateOldTimer =
+                        new Timer("Farrago Deallocate Old Timer");
+                    new FarragoTimerAllocation(this, deallocateOldTimer);
+                    deallocateOldTimer.schedule(
+                        new DeallocateOldTask(),
+                        deallocateOldIntervalMillis,
+                        deallocateOldIntervalMillis);
+                }
+
                 ddlLockManager = new FarragoDdlLockManager();
                 txnMgr = sessionFactory.newTxnMgr();
                 sessionFactory.specializedInitialization(this);
@@ -299,6 +353,22 @@ public class FarragoDatabase
         return codeCache;
     }
 
+    /**
+     * @return cumulative statement statistics for this database
+     */
+    public FarragoStmtStatsRegistry getStatementStatistics()
+    {
+        return stmtStats;
+    }
+
+    /**
+     * @return the shared query result cache for this database
+     */
+    public FarragoResultCache getResultCache()
+    {
+        return resultCache;
+    }
+
     /**
      * Flushes unpinned entries from the cache cache for this database.
      */
@@ -949,7 +1019,12 @@ public class FarragoDatabase
             stmtValidator.getSession().getPersonality().newPreparingStmt(
                 stmtContext,
                 stmtValidator);
-        return prepareStmtImpl(stmt, sqlNode, owner, analyzedSql);
+        return prepareStmtImpl(
+            stmtContext,
+            stmt,
+            sqlNode,
+            owner,
+            analyzedSql);
     }
 
     /**
@@ -984,6 +1059,7 @@ public class FarragoDatabase
     }
 
     private FarragoSessionExecutableStmt prepareStmtImpl(
+        FarragoSessionStmtContext stmtContext,
         final FarragoSessionPreparingStmt stmt,
         final SqlNode sqlNode,
         FarragoAllocationOwner owner,
@@ -1070,9 +1146,16 @@ public class FarragoDatabase
         if (labelCsn != null) {
             key += labelCsn;
         }
+
+        // Don't share statements between sessions whose settings lead the
+        // personality to prepare them differently.
+        key +=
+            session.getPersonality().getCodeCacheKeySuffix(
+                session.getSessionVariables());
         final String stmtKey = key;
 
         FarragoObjectCache.Entry cacheEntry;
+        final boolean [] cacheMiss = { false };
         FarragoObjectCache.CachedObjectFactory stmtFactory =
             new FarragoObjectCache.CachedObjectFactory() {
                 public void initializeEntry(
@@ -1080,6 +1163,7 @@ public class FarragoDatabase
                     FarragoObjectCache.UninitializedEntry entry)
                 {
                     timingTracer.traceTime("code cache miss");
+                    cacheMiss[0] = true;
 
                     assert (key.equals(stmtKey));
                     FarragoSessionExecutableStmt executableStmt =
@@ -1112,6 +1196,10 @@ public class FarragoDatabase
 
         // prepare the statement, caching the results in codeCache
         cacheEntry = codeCache.pin(stmtKey, stmtFactory, !sharable);
+        if (stmtContext instanceof FarragoDbStmtContext) {
+            ((FarragoDbStmtContext) stmtContext).setCodeCacheHit(
+                !cacheMiss[0]);
+        }
         FarragoSessionExecutableStmt executableStmt =
             (FarragoSessionExecutableStmt) cacheEntry.getValue();
         owner.addAllocation(cacheEntry);
@@ -1270,6 +1358,17 @@ public class FarragoDatabase
     }
 
     public void deallocateOld()
+    {
+        deallocateOld(0);
+    }
+
+    /**
+     * Frees old page versions, at most maxPages of them. A call which stops
+     * at the limit is resumed by the next call with a limit.
+     *
+     * @param maxPages maximum number of pages to free, or 0 for no limit
+     */
+    private void deallocateOld(long maxPages)
     {
         if (!systemRepos.isFennelEnabled()) {
             return;
@@ -1289,9 +1388,79 @@ public class FarragoDatabase
         } else {
             cmd.setOldestLabelCsn(labelCsn);
         }
+        cmd.setMaxPages(maxPages);
         fennelDbHandle.executeCmd(cmd);
     }
 
+    /**
+     * Frees old page versions, as {@link #deallocateOld} does, if at least
+     * minPages data pages have been allocated since old pages were last
+     * freed, or if the previous pass stopped at its page limit. Unlike
+     * {@link #deallocateOld}, this acquires its own shared catalog lock, so
+     * that CREATE LABEL can't change the oldest label while old pages are
+     * freed. This is what the background deallocation task runs on each
+     * tick.
+     *
+     * @param minPages number of data pages which must have been allocated
+     * since the last complete deallocation
+     * @param maxPages maximum number of old pages to free in this pass, or 0
+     * for no limit
+     *
+     * @return whether old pages were freed
+     */
+    public boolean deallocateOldIfNeeded(long minPages, long maxPages)
+    {
+        if (!systemRepos.isFennelEnabled()) {
+            return false;
+        }
+        long pagesAllocated =
+            getPerfCounter("DatabasePagesAllocatedSinceDeallocateOld");
+        boolean resume =
+            getPerfCounter("DatabaseDeallocateOldIncomplete") != 0;
+        if (!resume && (pagesAllocated < minPages)) {
+            return false;
+        }
+
+        long pagesBefore = getPerfCounter("DatabasePagesDeallocatedSinceInit");
+        long startTime = System.currentTimeMillis();
+
+        FarragoReposTxnContext txn =
+            new FarragoReposTxnContext(userRepos, true);
+        try {
+            txn.beginLockedTxn(true);
+            deallocateOld(maxPages);
+            txn.commit();
+        } finally {
+            txn.rollback();
+            txn.unlockAfterTxn();
+        }
+
+        tracer.fine(
+            "Deallocated old pages in "
+            + (System.currentTimeMillis() - startTime)
+            + " ms; pages allocated since previous deallocation = "
+            + pagesAllocated
+            + ", pages deallocated since init = "
+            + getPerfCounter("DatabasePagesDeallocatedSinceInit")
+            + " (was " + pagesBefore + ")"
+            + ((getPerfCounter("DatabaseDeallocateOldIncomplete") != 0)
+                ? "; stopped at " + maxPages + " pages" : ""));
+        return true;
+    }
+
+    private long getPerfCounter(String name)
+    {
+        NativeTrace nativeTrace = NativeTrace.instance();
+        if (nativeTrace == null) {
+            return 0;
+        }
+        String value = nativeTrace.getPerfCounters().get(name);
+        if (value == null) {
+            return 0;
+        }
+        return Long.parseLong(value);
+    }
+
     public static FarragoSessionFactory newSessionFactory()
     {
         String libraryName =
@@ -1412,6 +1581,30 @@ public class FarragoDatabase
         }
     }
 
+    /**
+     * Background task which frees old page versions, as ALTER SYSTEM
+     * DEALLOCATE OLD does, once enough pages have been allocated since the
+     * last time. Fennel frees pages in small batches, each followed by a
+     * checkpoint, and keeps pages which are still visible to an active
+     * transaction or label.
+     */
+    private class DeallocateOldTask
+        extends FarragoTimerTask
+    {
+        DeallocateOldTask()
+        {
+            super(tracer);
+        }
+
+        // implement FarragoTimerTask
+        public void runTimer()
+        {
+            deallocateOldIfNeeded(
+                FarragoProperties.instance().deallocateOldMinPages.get(),
+                FarragoProperties.instance().deallocateOldMaxPages.get());
+        }
+    }
+
     private class ReposSwitcher
         implements FarragoAllocation
     {
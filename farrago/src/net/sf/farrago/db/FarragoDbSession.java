@@ -131,6 +131,12 @@ public class FarragoDbSession
      */
     FarragoWarningQueue warningQueue;
 
+    /**
+     * Statistics from the last EXPLAIN PLAN WITH STATISTICS.
+     */
+    private Map<String, FennelStreamProfile> statementProfile =
+        Collections.emptyMap();
+
     /**
      * Was this session produced by cloning?
      */
@@ -167,6 +173,13 @@ public class FarragoDbSession
      * Private cache of executable code pinned by the current txn.
      */
     private Map<String, FarragoObjectCache.Entry> txnCodeCache;
+
+    /**
+     * Tables written by the current txn, for which no query results may be
+     * cached until the txn ends.
+     */
+    private final Set<List<String>> txnModifiedTables =
+        new HashSet<List<String>>();
     private DatabaseMetaData dbMetaData;
     protected FarragoSessionFactory sessionFactory;
 
@@ -475,6 +488,18 @@ public class FarragoDbSession
         return warningQueue;
     }
 
+    // implement FarragoSession
+    public void setStatementProfile(Map<String, FennelStreamProfile> profile)
+    {
+        statementProfile = profile;
+    }
+
+    // implement FarragoSession
+    public Map<String, FennelStreamProfile> getStatementProfile()
+    {
+        return statementProfile;
+    }
+
     // implement FarragoSession
     public synchronized FarragoSessionStmtContext newStmtContext(
         FarragoSessionStmtParamDefFactory paramDefFactory)
@@ -977,9 +1002,36 @@ public class FarragoDbSession
         onEndOfTransaction(FarragoSessionTxnEnd.ROLLBACK);
     }
 
+    /**
+     * Invalidates cached query results which read tables about to be modified
+     * by the current txn, and stops results which read them from being cached
+     * until the txn ends.
+     *
+     * @param tables fully qualified names of the tables
+     */
+    void invalidateCachedResults(Collection<List<String>> tables)
+    {
+        List<List<String>> newTables = new ArrayList<List<String>>();
+        for (List<String> table : tables) {
+            if (txnModifiedTables.add(table)) {
+                newTables.add(table);
+            }
+        }
+        if (!newTables.isEmpty()) {
+            database.getResultCache().beginTableWrites(newTables);
+        }
+    }
+
     protected void onEndOfTransaction(
         FarragoSessionTxnEnd eot)
     {
+        if (!txnModifiedTables.isEmpty()) {
+            // By now the txn's changes have been committed (or rolled back),
+            // so results recorded from here on see them, and results
+            // recorded earlier may not.
+            database.getResultCache().endTableWrites(txnModifiedTables);
+            txnModifiedTables.clear();
+        }
         if (txnIdRef.txnId != null) {
             getTxnMgr().endTxn(txnIdRef.txnId, eot);
             txnIdRef.txnId = null;
@@ -1453,6 +1505,11 @@ public class FarragoDbSession
             reposTxnContext.commit();
             commitImpl();
             rollbackFennel = false;
+            if (ddlStmt.requiresCommit()) {
+                // Cached query results may depend on the catalog in ways
+                // not captured by the tables they read.
+                database.getResultCache().clear();
+            }
             ddlStmt.postCommit(ddlValidator);
 
             if (shutDownRequested) {
@@ -23,7 +23,9 @@ import java.sql.*;
 import java.util.*;
 import java.util.logging.*;
 
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.resource.*;
+import net.sf.farrago.runtime.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.util.*;
 
@@ -65,6 +67,24 @@ public class FarragoDbStmtContext
      */
     private int queryTimeoutMillis = 0;
 
+    /**
+     * Normalized form of {@link #sql} used as the key for cumulative statement
+     * statistics, or null if statistics are not being collected.
+     */
+    private String normalizedSql;
+
+    /**
+     * Whether the most recent prepare was satisfied from the code cache.
+     */
+    private boolean codeCacheHit;
+
+    /**
+     * Value of {@link System#nanoTime} when the current execution started; 0
+     * once the execution has been recorded, or handed to a listener on its
+     * result set.
+     */
+    private long executeStartNanos;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -123,6 +143,8 @@ public class FarragoDbStmtContext
             allocations = new FarragoCompoundAllocation();
             this.sql = sql;
             this.isExecDirect = isExecDirect;
+            codeCacheHit = false;
+            long prepareStartNanos = System.nanoTime();
             executableStmt =
                 session.prepare(
                     this,
@@ -131,6 +153,103 @@ public class FarragoDbStmtContext
                     isExecDirect,
                     null);
             finishPrepare();
+            recordPrepare(System.nanoTime() - prepareStartNanos);
+        }
+    }
+
+    /**
+     * Records whether the statement being prepared was found in the code
+     * cache. Called by {@link FarragoDatabase} during prepare.
+     *
+     * @param codeCacheHit true if the cached implementation was reused
+     */
+    void setCodeCacheHit(boolean codeCacheHit)
+    {
+        this.codeCacheHit = codeCacheHit;
+    }
+
+    private void recordPrepare(long prepareNanos)
+    {
+        normalizedSql = FarragoStmtStatsRegistry.normalizeSql(sql);
+        if (normalizedSql.length() == 0) {
+            normalizedSql = null;
+            return;
+        }
+        FarragoStmtStatsRegistry stats =
+            session.getDatabase().getStatementStatistics();
+        if (isPrepared()) {
+            stats.recordPrepare(normalizedSql, prepareNanos, codeCacheHit);
+        } else {
+            // DDL executes during prepare, so that is all there is to time
+            stats.recordPrepare(normalizedSql, prepareNanos, false);
+            stats.recordExecution(normalizedSql, prepareNanos, 0);
+        }
+    }
+
+    private void recordExecution(long rowCount)
+    {
+        if ((normalizedSql == null) || (executeStartNanos == 0)) {
+            return;
+        }
+        session.getDatabase().getStatementStatistics().recordExecution(
+            normalizedSql,
+            System.nanoTime() - executeStartNanos,
+            rowCount);
+        executeStartNanos = 0;
+    }
+
+    /**
+     * Arranges for the current execution to be recorded in the statement
+     * statistics when its result set is closed, rather than when this
+     * context next closes the result set, which may be much later.
+     */
+    private void recordExecutionOnClose()
+    {
+        if ((normalizedSql == null)
+            || (executeStartNanos == 0)
+            || !(resultSet instanceof FarragoTupleIterResultSet))
+        {
+            return;
+        }
+        ((FarragoTupleIterResultSet) resultSet).setCloseListener(
+            new StatsRecorderListener(
+                session.getDatabase().getStatementStatistics(),
+                normalizedSql,
+                executeStartNanos));
+        executeStartNanos = 0;
+    }
+
+    /**
+     * Prepares the statement again if one of the conditions on which its
+     * plan depends no longer holds (see {@link FarragoSessionPlanGuard}),
+     * keeping any dynamic parameter values already set. Statements prepared
+     * from a plan rather than SQL text cannot be prepared again.
+     */
+    private void revalidate()
+    {
+        if ((sql == null)
+            || (sql.length() == 0)
+            || executableStmt.isValid(session.getRepos()))
+        {
+            return;
+        }
+        tracer.fine("plan no longer valid; preparing again");
+        Object [] paramValues = dynamicParamValues;
+        boolean [] paramValuesSet = dynamicParamValuesSet;
+        prepare(sql, isExecDirect);
+        if (paramValues != null) {
+            System.arraycopy(
+                paramValues,
+                0,
+                dynamicParamValues,
+                0,
+                paramValues.length);
+            System.arraycopy(
+                paramValuesSet,
+                0,
+                dynamicParamValuesSet,
+                0,
+                paramValuesSet.length);
         }
     }
 
@@ -240,10 +359,38 @@ public class FarragoDbStmtContext
             warningQueue.clearWarnings();
         }
         closeResultSet();
+        revalidate();
         traceExecute();
+        executeStartNanos = System.nanoTime();
         boolean isDml = executableStmt.isDml();
         boolean success = false;
 
+        // A result found in the result cache is returned without starting a
+        // txn; otherwise, start recording before any table is read.
+        FarragoResultCache.Recorder resultRecorder = null;
+        Set<List<String>> resultTables = getCacheableResultTables();
+        if (resultTables != null) {
+            checkDynamicParamsSet();
+            FarragoResultCache resultCache =
+                session.getDatabase().getResultCache();
+            List<Object []> rows =
+                resultCache.lookup(executableStmt, dynamicParamValues);
+            if (rows != null) {
+                resultSet =
+                    new FarragoCachedResultSet(
+                        rows,
+                        executableStmt.getRowType(),
+                        executableStmt.getFieldOrigins());
+                recordExecutionOnClose();
+                return;
+            }
+            resultRecorder =
+                resultCache.newRecorder(
+                    executableStmt,
+                    dynamicParamValues,
+                    resultTables);
+        }
+
         if (session.isAutoCommit()) {
             // REVIEW jvs 26-Nov-2006:  What about CALL?  Maybe
             // we can start it as read-only (regardless of
@@ -311,6 +458,16 @@ public class FarragoDbStmtContext
             resultSet = executableStmt.execute(newContext);
             runningContext = newContext;
             newContext = null;
+            if (!isDml) {
+                recordExecutionOnClose();
+            }
+
+            if ((resultRecorder != null)
+                && (resultSet instanceof FarragoTupleIterResultSet))
+            {
+                ((FarragoTupleIterResultSet) resultSet).setRowListener(
+                    new ResultRecorderListener(resultRecorder));
+            }
 
             if (queryTimeoutMillis > 0) {
                 AbstractIterResultSet iteratorRS =
@@ -339,6 +496,7 @@ public class FarragoDbStmtContext
                     rowCounts,
                     executableStmt.getTableModOp());
                 updateCount = updateRowCounts(rowCounts, runningContext);
+                recordExecution(updateCount);
                 success = true;
                 if (tracer.isLoggable(Level.FINE)) {
                     tracer.fine("Update count = " + updateCount);
@@ -364,6 +522,7 @@ public class FarragoDbStmtContext
         // NOTE:  for result sets, autocommit is taken care of by
         // FarragoTupleIterResultSet and FennelTxnContext
         if (resultSet == null) {
+            recordExecution(0);
             session.endTransactionIfAuto(true);
             if (!isDml) {
                 session.getRepos().endReposSession();
@@ -448,6 +607,7 @@ public class FarragoDbStmtContext
                 return;
             }
             try {
+                recordExecution(resultSet.getRow());
                 resultSet.close();
             } catch (Throwable ex) {
                 throw Util.newInternal(ex);
@@ -483,6 +643,8 @@ public class FarragoDbStmtContext
             }
             executableStmt = null;
             isExecDirect = false;
+            normalizedSql = null;
+            executeStartNanos = 0;
 
             super.unprepare();
         }
@@ -529,6 +691,36 @@ public class FarragoDbStmtContext
             runningContext);
     }
 
+    /**
+     * Determines whether the result of the prepared statement may be answered
+     * from, and recorded into, the database's result cache.
+     *
+     * @return fully qualified names of the tables read by the statement, or
+     * null if the result cache must not be used
+     */
+    private Set<List<String>> getCacheableResultTables()
+    {
+        if (!session.getSessionVariables().getBoolean(
+                FarragoDefaultSessionPersonality.CACHE_QUERY_RESULTS))
+        {
+            return null;
+        }
+
+        // Only a statement which starts its own txn is guaranteed to see the
+        // latest committed data, rather than a snapshot chosen by an earlier
+        // statement.  Daemon statements close themselves along with their
+        // runtime context, which a cached result does not have.
+        if (!session.isAutoCommit()
+            || session.isTxnInProgress()
+            || (rootStmtContext != null)
+            || (snapshotCsn != null)
+            || daemon)
+        {
+            return null;
+        }
+        return executableStmt.getCacheableResultTables();
+    }
+
     private List<String> getDmlTarget()
     {
         TableAccessMap tableAccessMap = executableStmt.getTableAccessMap();
@@ -540,6 +732,71 @@ public class FarragoDbStmtContext
         }
         return null;
     }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * StatsRecorderListener records an execution in the statement statistics
+     * when its result set is closed.
+     */
+    private static class StatsRecorderListener
+        implements FarragoTupleIterResultSet.CloseListener
+    {
+        private final FarragoStmtStatsRegistry stats;
+        private final String normalizedSql;
+        private final long executeStartNanos;
+
+        StatsRecorderListener(
+            FarragoStmtStatsRegistry stats,
+            String normalizedSql,
+            long executeStartNanos)
+        {
+            this.stats = stats;
+            this.normalizedSql = normalizedSql;
+            this.executeStartNanos = executeStartNanos;
+        }
+
+        // implement CloseListener
+        public void onClose(long rowCount)
+        {
+            stats.recordExecution(
+                normalizedSql,
+                System.nanoTime() - executeStartNanos,
+                rowCount);
+        }
+    }
+
+    /**
+     * ResultRecorderListener passes the rows fetched from a result set to a
+     * result cache recorder, and stores the result once all rows have been
+     * fetched.
+     */
+    private static class ResultRecorderListener
+        implements FarragoTupleIterResultSet.RowListener
+    {
+        private final FarragoResultCache.Recorder recorder;
+
+        ResultRecorderListener(FarragoResultCache.Recorder recorder)
+        {
+            this.recorder = recorder;
+        }
+
+        // implement RowListener
+        public boolean onRow(Object [] row)
+        {
+            return recorder.addRow(row);
+        }
+
+        // implement RowListener
+        public void onClose(boolean endOfData)
+        {
+            if (endOfData) {
+                recorder.store();
+            } else {
+                recorder.abandon();
+            }
+        }
+    }
 }
 
 // End FarragoDbStmtContext.java
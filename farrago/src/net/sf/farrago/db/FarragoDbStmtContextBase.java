@@ -301,6 +301,12 @@ public abstract class FarragoDbStmtContextBase
         childrenStmtContexts.add(childStmtContext);
     }
 
+    // implement FarragoSessionStmtContext
+    public FarragoSessionStmtContext getRootStmtContext()
+    {
+        return rootStmtContext;
+    }
+
     /**
      * Starts an auto commit transaction.
      *
@@ -407,7 +413,9 @@ public abstract class FarragoDbStmtContextBase
     }
 
     /**
-     * Calls the transaction manager to access a set of tables.
+     * Calls the transaction manager to access a set of tables, and
+     * invalidates cached query results computed from those accessed for
+     * write.
      *
      * @param accessMap map containing the tables being accessed and their
      * access modes
@@ -426,6 +434,18 @@ public abstract class FarragoDbStmtContextBase
         txnMgr.accessTables(
             txnId,
             accessMap);
+
+        // Any table accessed for write is about to be modified, so cached
+        // query results which read it are no longer valid.
+        List<List<String>> modifiedTables = new ArrayList<List<String>>();
+        for (List<String> table : accessMap.getTablesAccessed()) {
+            if (accessMap.isTableAccessedForWrite(table)) {
+                modifiedTables.add(table);
+            }
+        }
+        if (!modifiedTables.isEmpty()) {
+            session.invalidateCachedResults(modifiedTables);
+        }
     }
 
     /**
@@ -90,6 +90,13 @@ public class FarragoDefaultSessionPersonality
     public static final String CACHE_STATEMENTS = "cacheStatements";
     public static final String CACHE_STATEMENTS_DEFAULT = "true";
 
+    /**
+     * Whether results of deterministic queries over local tables are shared
+     * through the database's result cache
+     */
+    public static final String CACHE_QUERY_RESULTS = "cacheQueryResults";
+    public static final String CACHE_QUERY_RESULTS_DEFAULT = "false";
+
     /**
      * Whether DDL validation should be done at prepare time
      */
@@ -104,6 +111,16 @@ public class FarragoDefaultSessionPersonality
     public static final String
         REDUCE_NON_CORRELATED_SUBQUERIES_FARRAGO_DEFAULT = "false";
 
+    /**
+     * Whether non-correlated subqueries converted to constants should be
+     * evaluated when the statement executes rather than when it is prepared,
+     * so that the statement can still be cached
+     */
+    public static final String REDUCE_NON_CORRELATED_SUBQUERIES_AT_EXECUTION =
+        "reduceNonCorrelatedSubqueriesAtExecution";
+    public static final String
+        REDUCE_NON_CORRELATED_SUBQUERIES_AT_EXECUTION_DEFAULT = "false";
+
     /**
      * Degree of parallelism to use for parallel executor; a value of 1 (the
      * default) causes the default non-parallel executor to be used.
@@ -111,6 +128,14 @@ public class FarragoDefaultSessionPersonality
     public static final String DEGREE_OF_PARALLELISM = "degreeOfParallelism";
     public static final String DEGREE_OF_PARALLELISM_DEFAULT = "1";
 
+    /**
+     * Number of rows evaluated per batch by Java calculators in vectorized
+     * mode; a value of 0 (the default) evaluates one row at a time.
+     */
+    public static final String JAVA_CALC_BATCH_SIZE = "javaCalcBatchSize";
+    public static final String JAVA_CALC_BATCH_SIZE_DEFAULT = "0";
+    private static final int MAX_JAVA_CALC_BATCH_SIZE = 65536;
+
     /**
      * The label for the current session
      */
@@ -146,18 +171,29 @@ public class FarragoDefaultSessionPersonality
         paramValidator.registerBoolParam(
             CACHE_STATEMENTS,
             false);
+        paramValidator.registerBoolParam(
+            CACHE_QUERY_RESULTS,
+            false);
         paramValidator.registerBoolParam(
             VALIDATE_DDL_ON_PREPARE,
             false);
         paramValidator.registerBoolParam(
             REDUCE_NON_CORRELATED_SUBQUERIES,
             false);
+        paramValidator.registerBoolParam(
+            REDUCE_NON_CORRELATED_SUBQUERIES_AT_EXECUTION,
+            false);
         paramValidator.registerStringParam(LABEL, true);
         paramValidator.registerIntParam(
             DEGREE_OF_PARALLELISM,
             false,
             1,
             Integer.MAX_VALUE);
+        paramValidator.registerIntParam(
+            JAVA_CALC_BATCH_SIZE,
+            false,
+            0,
+            MAX_JAVA_CALC_BATCH_SIZE);
         paramValidator.registerBoolParam(
             USE_ENKI_MASS_DELETION,
             false);
@@ -486,16 +522,25 @@ public class FarragoDefaultSessionPersonality
         variables.setDefault(
             CACHE_STATEMENTS,
             CACHE_STATEMENTS_DEFAULT);
+        variables.setDefault(
+            CACHE_QUERY_RESULTS,
+            CACHE_QUERY_RESULTS_DEFAULT);
         variables.setDefault(
             VALIDATE_DDL_ON_PREPARE,
             VALIDATE_DDL_ON_PREPARE_DEFAULT);
         variables.setDefault(
             REDUCE_NON_CORRELATED_SUBQUERIES,
             REDUCE_NON_CORRELATED_SUBQUERIES_FARRAGO_DEFAULT);
+        variables.setDefault(
+            REDUCE_NON_CORRELATED_SUBQUERIES_AT_EXECUTION,
+            REDUCE_NON_CORRELATED_SUBQUERIES_AT_EXECUTION_DEFAULT);
         variables.setDefault(LABEL, LABEL_DEFAULT);
         variables.setDefault(
             DEGREE_OF_PARALLELISM,
             DEGREE_OF_PARALLELISM_DEFAULT);
+        variables.setDefault(
+            JAVA_CALC_BATCH_SIZE,
+            JAVA_CALC_BATCH_SIZE_DEFAULT);
         variables.setDefault(
             USE_ENKI_MASS_DELETION,
             USE_ENKI_MASS_DELETION_DEFAULT);
@@ -509,6 +554,18 @@ public class FarragoDefaultSessionPersonality
         return variables.cloneVariables();
     }
 
+    // implement FarragoSessionPersonality
+    public String getCodeCacheKeySuffix(FarragoSessionVariables variables)
+    {
+        // Java calculator code differs in vectorized mode, so don't share it
+        // with sessions which use a different batch size.
+        Integer calcBatchSize = variables.getInteger(JAVA_CALC_BATCH_SIZE);
+        if ((calcBatchSize != null) && (calcBatchSize > 0)) {
+            return ";javaCalcBatchSize=" + calcBatchSize;
+        }
+        return "";
+    }
+
     // implement FarragoSessionPersonality
     public void validateSessionVariable(
         FarragoSessionDdlValidator ddlValidator,
@@ -123,6 +123,49 @@ public class FennelStorage
         String node,
         List<String> inputs);
 
+    /**
+     * Enables or disables per-stream profiling for a stream graph; takes
+     * effect the next time the graph is opened.
+     *
+     * @param hStreamGraph handle to stream graph
+     * @param profiling whether to collect per-stream statistics
+     */
+    static native void tupleStreamGraphSetProfiling(
+        long hStreamGraph,
+        boolean profiling);
+
+    /**
+     * Retrieves the per-stream statistics collected for a profiled stream
+     * graph.
+     *
+     * @param hStreamGraph handle to stream graph
+     * @param profile receives one entry per stream, keyed by stream name; each
+     * value is laid out as described by {@link FennelStreamProfile}
+     */
+    static native void tupleStreamGraphGetProfile(
+        long hStreamGraph,
+        Map<String, long []> profile);
+
+    /**
+     * Creates dynamic parameters in a stream graph and writes their values.
+     * The parameters last until the graph is closed.
+     *
+     * @param hStreamGraph handle to stream graph
+     * @param paramIds ids of the parameters
+     * @param typeOrdinals Fennel type ordinal of each parameter
+     * @param nullables whether each parameter is nullable
+     * @param storageSizes maximum byte length of each parameter
+     * @param tupleBytes marshalled tuple holding one value per parameter
+     */
+    static native void tupleStreamGraphWriteParams(
+        long hStreamGraph,
+        int [] paramIds,
+        int [] typeOrdinals,
+        boolean [] nullables,
+        int [] storageSizes,
+        byte [] tupleBytes)
+        throws SQLException;
+
     /**
      * Opens a stream graph.
      *
@@ -18,6 +18,8 @@
 */
 package net.sf.farrago.fennel;
 
+import java.nio.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -25,6 +27,7 @@ import java.util.logging.*;
 
 import net.sf.farrago.*;
 import net.sf.farrago.fem.fennel.*;
+import net.sf.farrago.fennel.tuple.*;
 import net.sf.farrago.trace.*;
 import net.sf.farrago.util.*;
 
@@ -113,6 +116,89 @@ public class FennelStreamGraph
         return inputList.toArray(new String[inputList.size()]);
     }
 
+    /**
+     * Enables or disables collection of per-stream execution statistics. Must
+     * be called before {@link #open} to take effect.
+     *
+     * @param profiling whether to collect statistics
+     */
+    public void setProfiling(boolean profiling)
+    {
+        traceGraphHandle("set profiling");
+        FennelStorage.tupleStreamGraphSetProfiling(
+            streamGraphHandle,
+            profiling);
+    }
+
+    /**
+     * Retrieves the statistics collected for each stream in this graph since
+     * it was last opened with profiling enabled.
+     *
+     * @return map from stream name to statistics
+     */
+    public Map<String, FennelStreamProfile> getProfile()
+    {
+        traceGraphHandle("get profile");
+        Map<String, long []> rawProfile =
+            new LinkedHashMap<String, long []>();
+        FennelStorage.tupleStreamGraphGetProfile(
+            streamGraphHandle,
+            rawProfile);
+        Map<String, FennelStreamProfile> profile =
+            new LinkedHashMap<String, FennelStreamProfile>();
+        for (Map.Entry<String, long []> entry : rawProfile.entrySet()) {
+            profile.put(
+                entry.getKey(),
+                new FennelStreamProfile(entry.getKey(), entry.getValue()));
+        }
+        return profile;
+    }
+
+    /**
+     * Creates dynamic parameters in this graph and writes their values. Must
+     * be called before {@link #open}; the parameters are deleted when the
+     * graph is closed.
+     *
+     * @param paramIds ids of the parameters, one per attribute of tupleDesc
+     * @param tupleDesc descriptor for the parameter values
+     * @param tupleData parameter values
+     */
+    public void writeDynamicParams(
+        int [] paramIds,
+        FennelTupleDescriptor tupleDesc,
+        FennelTupleData tupleData)
+    {
+        traceGraphHandle("write dynamic params");
+        int nParams = tupleDesc.getAttrCount();
+        assert (paramIds.length == nParams);
+        int [] typeOrdinals = new int[nParams];
+        boolean [] nullables = new boolean[nParams];
+        int [] storageSizes = new int[nParams];
+        for (int i = 0; i < nParams; i++) {
+            FennelTupleAttributeDescriptor attrDesc = tupleDesc.getAttr(i);
+            typeOrdinals[i] = attrDesc.typeDescriptor.getOrdinal();
+            nullables[i] = attrDesc.isNullable;
+            storageSizes[i] = attrDesc.storageSize;
+        }
+        FennelTupleAccessor tupleAccessor = new FennelTupleAccessor();
+        tupleAccessor.compute(tupleDesc);
+        ByteBuffer tupleBuffer =
+            ByteBuffer.allocate(tupleAccessor.getMaxByteCount());
+        tupleBuffer.order(ByteOrder.nativeOrder());
+        tupleAccessor.marshal(tupleData, tupleBuffer);
+        try {
+            FennelStorage.tupleStreamGraphWriteParams(
+                streamGraphHandle,
+                paramIds,
+                typeOrdinals,
+                nullables,
+                storageSizes,
+                tupleBuffer.array());
+        } catch (SQLException ex) {
+            throw fennelDbHandle.handleNativeException(ex);
+        }
+    }
+
     /**
      * @return the underlying FemStreamGraphHandle
      */
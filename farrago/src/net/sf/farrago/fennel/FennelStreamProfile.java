@@ -0,0 +1,151 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.fennel;
+
+/**
+ * FennelStreamProfile holds the execution statistics collected for a single
+ * Fennel ExecStream while its graph is profiled (see {@link
+ * FennelStreamGraph#setProfiling}). Row and byte counts are measured on the
+ * buffers connecting the stream to its neighbors, so a stream's rows out are
+ * its consumer's rows in. CPU time is reported as zero on platforms without
+ * per-thread CPU clocks.
+ *
+ * @version $Id$
+ */
+public class FennelStreamProfile
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    // ordinals in the array returned by FennelStorage; must match
+    // NativeMethods.cpp
+    private static final int EXECUTE_CALLS = 0;
+    private static final int WALL_NANOS = 1;
+    private static final int CPU_NANOS = 2;
+    private static final int ROWS_IN = 3;
+    private static final int ROWS_OUT = 4;
+    private static final int BYTES_IN = 5;
+    private static final int BYTES_OUT = 6;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String streamName;
+
+    private final long [] values;
+
+    //~ Constructors -----------------------------------------------------------
+
+    FennelStreamProfile(String streamName, long [] values)
+    {
+        this.streamName = streamName;
+        this.values = values;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return name of the stream, as assigned by the optimizer
+     */
+    public String getStreamName()
+    {
+        return streamName;
+    }
+
+    /**
+     * Returns the id of the RelNode which produced this stream, as encoded in
+     * the stream name by FarragoRelImplementor.getStreamGlobalName.
+     *
+     * @return rel id, or -1 for an anonymous stream not directly associated
+     * with a RelNode
+     */
+    public int getRelId()
+    {
+        int iStart = streamName.indexOf(".#");
+        if (iStart < 0) {
+            return -1;
+        }
+        iStart += 2;
+        int iEnd = streamName.indexOf(':', iStart);
+        if (iEnd < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(streamName.substring(iStart, iEnd));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return number of times the scheduler executed the stream
+     */
+    public long getExecuteCalls()
+    {
+        return values[EXECUTE_CALLS];
+    }
+
+    /**
+     * @return wall-clock time spent executing the stream, in nanoseconds
+     */
+    public long getWallNanos()
+    {
+        return values[WALL_NANOS];
+    }
+
+    /**
+     * @return thread CPU time spent executing the stream, in nanoseconds
+     */
+    public long getCpuNanos()
+    {
+        return values[CPU_NANOS];
+    }
+
+    /**
+     * @return number of rows read from all inputs
+     */
+    public long getRowsIn()
+    {
+        return values[ROWS_IN];
+    }
+
+    /**
+     * @return number of rows written to all outputs
+     */
+    public long getRowsOut()
+    {
+        return values[ROWS_OUT];
+    }
+
+    /**
+     * @return number of tuple bytes read from all inputs
+     */
+    public long getBytesIn()
+    {
+        return values[BYTES_IN];
+    }
+
+    /**
+     * @return number of tuple bytes written to all outputs
+     */
+    public long getBytesOut()
+    {
+        return values[BYTES_OUT];
+    }
+}
+
+// End FennelStreamProfile.java
@@ -68,6 +68,12 @@ public class RexToCalcTranslator
      */
     private final RelNode rel;
 
+    /**
+     * Statement being prepared, or null if the planner is not a {@link
+     * FarragoSessionPlanner}.
+     */
+    private final FarragoSessionPreparingStmt preparingStmt;
+
     /**
      * Whether the code generator should short-circuit logical operators. The
      * default value is <em>true</em>.
@@ -114,7 +120,7 @@ public class RexToCalcTranslator
 
         RelOptPlanner planner = rel.getCluster().getPlanner();
         if (planner instanceof FarragoSessionPlanner) {
-            FarragoSessionPreparingStmt preparingStmt =
+            preparingStmt =
                 ((FarragoSessionPlanner) planner).getPreparingStmt();
 
             CalcRexImplementorTable comp =
@@ -129,6 +135,7 @@ public class RexToCalcTranslator
         } else {
             // Not a FarragoSessionPlanner?  There's going to be
             // trouble eventually.
+            preparingStmt = null;
             implementorTable = CalcRexImplementorTableImpl.std();
         }
 
@@ -283,6 +290,19 @@ public class RexToCalcTranslator
         }
     }
 
+    /**
+     * Returns whether a dynamic parameter can be translated. Only runtime
+     * parameters can, because their values are written to the stream graph's
+     * dynamic parameters before its streams are opened.
+     *
+     * @param dynamicParam Dynamic parameter
+     */
+    public boolean canTranslate(RexDynamicParam dynamicParam)
+    {
+        return (preparingStmt != null)
+            && preparingStmt.isRuntimeParam(dynamicParam);
+    }
+
     /**
      * Returns whether a program can be translated.
      */
@@ -940,8 +960,11 @@ public class RexToCalcTranslator
     public CalcReg visitDynamicParam(
         RexDynamicParam dynamicParam)
     {
-        throw FarragoResource.instance().ProgramImplementationError.ex(
-            "Don't know how to implement rex node=" + dynamicParam);
+        if (!canTranslate(dynamicParam)) {
+            throw FarragoResource.instance().ProgramImplementationError.ex(
+                "Don't know how to implement rex node=" + dynamicParam);
+        }
+        return implement(dynamicParam);
     }
 
     public CalcReg visitRangeRef(RexRangeRef rangeRef)
@@ -1390,6 +1413,20 @@ public class RexToCalcTranslator
         return result;
     }
 
+    private CalcReg implement(RexDynamicParam node)
+    {
+        final int id =
+            preparingStmt.translateRuntimeParam(node).intValue();
+        CalcReg idReg = builder.newInt4Literal(id);
+        CalcReg result = builder.newLocal(getCalcRegisterDescriptor(node));
+        ExtInstructionDefTable.dynamicVariable.add(
+            builder,
+            result,
+            idReg);
+        setResult(node, result);
+        return result;
+    }
+
     /**
      * @param generateShortCircuit If true, tells the code generator to short
      * circuit logical operators<br>
@@ -1608,7 +1645,12 @@ public class RexToCalcTranslator
         public Void visitDynamicParam(RexDynamicParam dynamicParam)
         {
             // Matches RexToCalcTranslator.visitDynamicParam()
-            throw new RexToCalcTranslator.TranslationException();
+            if (SqlTypeUtil.isUnicode(dynamicParam.getType())
+                || !translator.canTranslate(dynamicParam))
+            {
+                throw new RexToCalcTranslator.TranslationException();
+            }
+            return super.visitDynamicParam(dynamicParam);
         }
 
         public Void visitRangeRef(RexRangeRef rangeRef)
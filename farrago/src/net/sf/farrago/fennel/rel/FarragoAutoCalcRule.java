@@ -256,8 +256,9 @@ public class FarragoAutoCalcRule
 
         protected boolean canImplement(RexDynamicParam param)
         {
-            // Dynamic param rex nodes are Java-only
-            return false;
+            // Runtime parameters are read from Fennel dynamic parameters;
+            // other dynamic param rex nodes are Java-only
+            return translator.canTranslate(param, false);
         }
 
         protected boolean canImplement(RexLiteral literal)
@@ -222,14 +222,22 @@ public class FarragoJdbcEngineStatement
     public void setFetchSize(int rows)
         throws SQLException
     {
-        throw new UnsupportedOperationException();
+        if (rows < 0) {
+            throw FarragoJdbcEngineDriver.newSqlException(
+                ERRMSG_REQ_NON_NEG + "rows=" + rows);
+        }
+
+        // The hint is accepted but ignored: rows are pulled from the
+        // executing stream graph one at a time as the cursor advances, so
+        // there is nothing to batch here.  Remote drivers do their own
+        // batching of the rows they fetch from this result set.
     }
 
     // implement Statement
     public int getFetchSize()
         throws SQLException
     {
-        throw new UnsupportedOperationException();
+        return 0;
     }
 
     // implement Statement
@@ -122,6 +122,16 @@ public abstract class MedAbstractDataServer
     public void releaseResources()
     {
     }
+
+    /**
+     * Discards any foreign metadata or statistics this server has remembered,
+     * so that subsequent statements see the current state of the foreign
+     * data source. The default implementation does nothing, since most
+     * servers do not cache metadata.
+     */
+    public void flushMetadataCache()
+    {
+    }
 }
 
 // End MedAbstractDataServer.java
@@ -50,6 +50,8 @@ public class MedJdbcColumnSet
     RelDataType origRowType;
     RelDataType srcRowType;
     RelDataType currRowType;
+    String splitColumn;
+    int splitCount = MedJdbcDataServer.DEFAULT_SPLIT_COUNT;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -77,10 +79,47 @@ public class MedJdbcColumnSet
     // implement RelOptTable
     public double getRowCount()
     {
-        // TODO:  use getStatistics?
+        Double rowCount = getRemoteRowCount();
+        if (rowCount != null) {
+            return rowCount;
+        }
         return super.getRowCount();
     }
 
+    /**
+     * @return the number of rows in the remote table as reported by the
+     * server's {@link MedJdbcDataServer#PROP_REMOTE_STATISTICS remote
+     * statistics}, or null if unknown
+     */
+    Double getRemoteRowCount()
+    {
+        if ((directory == null) || (directory.server == null)) {
+            return null;
+        }
+        MedJdbcTableStatistics stats =
+            directory.server.getRemoteStatistics(getForeignName());
+        if (stats == null) {
+            return null;
+        }
+        return stats.getRowCount();
+    }
+
+    /**
+     * @param columnName name of a column of the remote table
+     *
+     * @return the number of distinct values in the column as reported by the
+     * server's remote statistics, or null if unknown
+     */
+    Double getRemoteDistinctCount(String columnName)
+    {
+        if ((directory == null) || (directory.server == null)) {
+            return null;
+        }
+        return directory.server.getRemoteDistinctCount(
+            getForeignName(),
+            columnName);
+    }
+
     /**
      * @return the directory from which this columnset originates
      */
@@ -97,6 +136,24 @@ public class MedJdbcColumnSet
         return dialect;
     }
 
+    /**
+     * @return the name of the remote column on which scans of this columnset
+     * may be split into concurrent range queries, or null if none
+     */
+    public String getSplitColumn()
+    {
+        return splitColumn;
+    }
+
+    /**
+     * @return the number of range queries into which scans of this columnset
+     * are split; values less than two mean no splitting
+     */
+    public int getSplitCount()
+    {
+        return splitCount;
+    }
+
     // implement RelOptTable
     public RelNode toRel(
         RelOptCluster cluster,
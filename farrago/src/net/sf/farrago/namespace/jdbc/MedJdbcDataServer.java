@@ -96,6 +96,38 @@ import org.eigenbase.util.*;
  * #closeAllocation()} is invoked.</li>
  * </ol>
  *
+ * <p>When a {@link #PROP_SPLIT_COLUMN split column} and a {@link
+ * #PROP_SPLIT_COUNT split count} greater than one are given (as server options
+ * or, overriding them, as foreign table options), plain scans of a foreign
+ * table are read as several range queries on that column, each over its own
+ * pooled connection; see {@link MedJdbcSplitReader}. Splitting is not done when
+ * connection pooling is disabled. Because the range queries and the query for
+ * the bounds of the split column run in separate remote transactions, a split
+ * scan is not a consistent read: rows inserted, deleted or updated remotely
+ * while it runs may be missed, or returned twice if their split column value
+ * moves from one range to another. Only split tables which are not modified
+ * while they are being read.
+ *
+ * <p>When {@link #PROP_READ_AHEAD_BATCHES} is positive, foreign queries are
+ * read on a background thread (one per range when splitting) which stays up
+ * to that many batches of rows ahead of the consumer, so that remote round
+ * trips overlap with local processing. Read-ahead also requires connection
+ * pooling.
+ *
+ * <p>When a {@link #PROP_METADATA_CACHE_TTL_MILLIS metadata cache TTL} is
+ * given, foreign table metadata and pushdown validity checks are remembered
+ * across statements (for that many milliseconds, or indefinitely if negative)
+ * instead of being fetched from the foreign database each time; see {@link
+ * MedJdbcMetadataCache}. {@link #PROP_REMOTE_STATISTICS} makes row counts and
+ * column distinct counts of foreign tables available to the optimizer, either
+ * from the driver's index statistics or by querying the foreign tables.
+ * Statistics are kept in the same cache whatever the TTL, so in QUERY mode the
+ * COUNT queries against a foreign table run the first time a statement over
+ * it is prepared rather than on every prepare; the optimizer therefore does
+ * not see later changes in the foreign data until the TTL (if positive)
+ * expires or the cache is discarded, either with the
+ * FLUSH_SERVER_METADATA_CACHE procedure or by dropping or altering the server.
+ *
  * @author John V. Sichi
  * @version $Id$
  */
@@ -143,6 +175,15 @@ public class MedJdbcDataServer
     public static final String PROP_VALIDATION_TIMING_WHILE_IDLE = "WHILE_IDLE";
     public static final String PROP_DISABLE_CONNECTION_POOL =
         "DISABLE_CONNECTION_POOL";
+    public static final String PROP_SPLIT_COLUMN = "SPLIT_COLUMN";
+    public static final String PROP_SPLIT_COUNT = "SPLIT_COUNT";
+    public static final String PROP_READ_AHEAD_BATCHES = "READ_AHEAD_BATCHES";
+    public static final String PROP_METADATA_CACHE_TTL_MILLIS =
+        "METADATA_CACHE_TTL_MILLIS";
+    public static final String PROP_REMOTE_STATISTICS = "REMOTE_STATISTICS";
+    public static final String PROP_REMOTE_STATISTICS_NONE = "NONE";
+    public static final String PROP_REMOTE_STATISTICS_DRIVER = "DRIVER";
+    public static final String PROP_REMOTE_STATISTICS_QUERY = "QUERY";
     public static final String PROP_ASSUME_PUSHDOWN_VALID =
         "ASSUME_PUSHDOWN_VALID";
 
@@ -165,6 +206,11 @@ public class MedJdbcDataServer
         PROP_VALIDATION_TIMING_ON_BORROW;
     public static final boolean DEFAULT_DISABLE_CONNECTION_POOL = false;
     public static final boolean DEFAULT_ASSUME_PUSHDOWN_VALID = false;
+    public static final int DEFAULT_SPLIT_COUNT = 1;
+    public static final int DEFAULT_READ_AHEAD_BATCHES = 0;
+    public static final long DEFAULT_METADATA_CACHE_TTL_MILLIS = 0L;
+    public static final String DEFAULT_REMOTE_STATISTICS =
+        PROP_REMOTE_STATISTICS_NONE;
 
     private static final Logger logger =
         FarragoTrace.getClassTracer(MedJdbcDataServer.class);
@@ -221,6 +267,12 @@ public class MedJdbcDataServer
     protected Pattern disabledPushdownPattern;
     private int fetchSize;
     private boolean autocommit;
+    protected String splitColumn;
+    protected int splitCount;
+    private int readAheadBatches;
+    private String remoteStatistics;
+    MedJdbcMetadataCache metadataCache;
+    private SqlDialect dialect;
     protected HashMap<String, Map<String, String>> schemaMaps;
     protected HashMap<String, Map<String, Source>> tableMaps;
     protected Map<String, List<WildcardMapping>> tablePrefixMaps;
@@ -385,6 +437,34 @@ public class MedJdbcDataServer
         }
 
         fetchSize = getIntProperty(props, PROP_FETCH_SIZE, DEFAULT_FETCH_SIZE);
+        splitColumn = props.getProperty(PROP_SPLIT_COLUMN);
+        splitCount =
+            getIntProperty(props, PROP_SPLIT_COUNT, DEFAULT_SPLIT_COUNT);
+        readAheadBatches =
+            getIntProperty(
+                props,
+                PROP_READ_AHEAD_BATCHES,
+                DEFAULT_READ_AHEAD_BATCHES);
+        remoteStatistics =
+            props.getProperty(
+                PROP_REMOTE_STATISTICS,
+                DEFAULT_REMOTE_STATISTICS).trim().toUpperCase();
+        if (!remoteStatistics.equals(PROP_REMOTE_STATISTICS_NONE)
+            && !remoteStatistics.equals(PROP_REMOTE_STATISTICS_DRIVER)
+            && !remoteStatistics.equals(PROP_REMOTE_STATISTICS_QUERY))
+        {
+            throw FarragoResource.instance().PluginInvalidStringProp.ex(
+                remoteStatistics,
+                PROP_REMOTE_STATISTICS);
+        }
+        metadataCache =
+            MedJdbcMetadataCache.forServer(
+                getServerMofId(),
+                props,
+                getLongProperty(
+                    props,
+                    PROP_METADATA_CACHE_TTL_MILLIS,
+                    DEFAULT_METADATA_CACHE_TTL_MILLIS));
         autocommit =
             getBooleanProperty(props, PROP_AUTOCOMMIT, DEFAULT_AUTOCOMMIT);
 
@@ -672,7 +752,7 @@ public class MedJdbcDataServer
      *
      * @return a connection from the datasource
      */
-    private Connection newConnection()
+    Connection newConnection()
         throws SQLException
     {
         if (disableConnectionPool) {
@@ -760,6 +840,222 @@ public class MedJdbcDataServer
         return databaseMetaData;
     }
 
+    /**
+     * @return the number of row batches a background reader may queue ahead
+     * of the consumer; zero if read-ahead is disabled
+     */
+    int getReadAheadBatches()
+    {
+        if (disableConnectionPool) {
+            return 0;
+        }
+        return readAheadBatches;
+    }
+
+    /**
+     * Returns the SQL dialect of this data server's configured database. The
+     * dialect is determined from {@link #getDatabaseMetaData()} on first use
+     * and then remembered for the life of this server instance.
+     *
+     * @return SQL dialect
+     *
+     * @throws SQLException if there's an error obtaining metadata
+     */
+    protected SqlDialect getDialect()
+        throws SQLException
+    {
+        if (dialect == null) {
+            dialect = SqlDialect.create(getDatabaseMetaData());
+        }
+        return dialect;
+    }
+
+    // override MedAbstractDataServer
+    public void flushMetadataCache()
+    {
+        metadataCache.flush();
+    }
+
+    /**
+     * Retrieves statistics for a remote table as configured by the {@link
+     * #PROP_REMOTE_STATISTICS} option. Statistics are collected once and then
+     * kept in this server's metadata cache (for {@link
+     * #PROP_METADATA_CACHE_TTL_MILLIS} if positive, otherwise until the cache
+     * is flushed).
+     *
+     * @param foreignName name of the remote table, qualified as for {@link
+     * MedJdbcColumnSet#getForeignName}
+     *
+     * @return statistics, or null if unavailable
+     */
+    MedJdbcTableStatistics getRemoteStatistics(String [] foreignName)
+    {
+        if (remoteStatistics.equals(PROP_REMOTE_STATISTICS_NONE)) {
+            return null;
+        }
+        String tableKey = Arrays.asList(foreignName).toString();
+        MedJdbcTableStatistics stats = metadataCache.getStatistics(tableKey);
+        if (stats != null) {
+            return stats;
+        }
+        if (remoteStatistics.equals(PROP_REMOTE_STATISTICS_DRIVER)) {
+            stats = readDriverStatistics(foreignName);
+        } else {
+            stats = new MedJdbcTableStatistics(queryCount(foreignName, null));
+        }
+        metadataCache.putStatistics(tableKey, stats);
+        return stats;
+    }
+
+    /**
+     * Retrieves the number of distinct values of a column of a remote table.
+     * In {@link #PROP_REMOTE_STATISTICS_QUERY} mode, the count is queried the
+     * first time it is requested for a column; in {@link
+     * #PROP_REMOTE_STATISTICS_DRIVER} mode, only counts reported for
+     * single-column indexes are known.
+     *
+     * @param foreignName name of the remote table
+     * @param columnName name of the remote column
+     *
+     * @return number of distinct values, or null if unavailable
+     */
+    Double getRemoteDistinctCount(String [] foreignName, String columnName)
+    {
+        MedJdbcTableStatistics stats = getRemoteStatistics(foreignName);
+        if (stats == null) {
+            return null;
+        }
+        if (stats.hasDistinctCount(columnName)
+            || !remoteStatistics.equals(PROP_REMOTE_STATISTICS_QUERY))
+        {
+            return stats.getDistinctCount(columnName);
+        }
+        Double distinctCount = queryCount(foreignName, columnName);
+        stats.setDistinctCount(columnName, distinctCount);
+        return distinctCount;
+    }
+
+    private MedJdbcTableStatistics readDriverStatistics(String [] foreignName)
+    {
+        int n = foreignName.length;
+        String catalog = (n == 3) ? foreignName[0] : catalogName;
+        String schema = (n >= 2) ? foreignName[n - 2] : schemaName;
+        String table = foreignName[n - 1];
+        Double rowCount = null;
+        Map<String, Double> uniqueCounts = new HashMap<String, Double>();
+        Map<String, Double> indexCounts = new HashMap<String, Double>();
+        Map<String, String> indexColumns = new HashMap<String, String>();
+        ResultSet rs = null;
+        try {
+            rs = getDatabaseMetaData().getIndexInfo(
+                catalog,
+                schema,
+                table,
+                false,
+                true);
+            while (rs.next()) {
+                short type = rs.getShort("TYPE");
+                double cardinality = rs.getDouble("CARDINALITY");
+                boolean known = !rs.wasNull() && (cardinality >= 0);
+                if (type == DatabaseMetaData.tableIndexStatistic) {
+                    if (known) {
+                        rowCount = cardinality;
+                    }
+                    continue;
+                }
+                String indexName = rs.getString("INDEX_NAME");
+                String columnName = rs.getString("COLUMN_NAME");
+                if ((indexName == null) || (columnName == null)) {
+                    continue;
+                }
+                if (indexColumns.containsKey(indexName)) {
+                    // multi-column index; its cardinality says nothing
+                    // about any single column
+                    indexColumns.put(indexName, null);
+                    continue;
+                }
+                indexColumns.put(indexName, columnName);
+                if (!rs.getBoolean("NON_UNIQUE")) {
+                    uniqueCounts.put(indexName, null);
+                }
+                if (known) {
+                    indexCounts.put(indexName, cardinality);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.log(
+                Level.FINE,
+                "Unable to read index statistics for "
+                + Arrays.asList(foreignName),
+                ex);
+        } finally {
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException ex) {
+                    // ignore
+                }
+            }
+        }
+        MedJdbcTableStatistics stats = new MedJdbcTableStatistics(rowCount);
+        for (Map.Entry<String, String> entry : indexColumns.entrySet()) {
+            String indexName = entry.getKey();
+            String columnName = entry.getValue();
+            if (columnName == null) {
+                continue;
+            }
+            Double distinctCount = indexCounts.get(indexName);
+            if (uniqueCounts.containsKey(indexName)) {
+                distinctCount = rowCount;
+            }
+            if (distinctCount != null) {
+                stats.setDistinctCount(columnName, distinctCount);
+            }
+        }
+        return stats;
+    }
+
+    private Double queryCount(String [] foreignName, String columnName)
+    {
+        SqlDialect dialect;
+        try {
+            dialect = getDialect();
+        } catch (SQLException ex) {
+            return null;
+        }
+        SqlBuilder buf = new SqlBuilder(dialect);
+        buf.append("SELECT COUNT(");
+        if (columnName == null) {
+            buf.append("*");
+        } else {
+            buf.append("DISTINCT ");
+            buf.identifier(columnName);
+        }
+        buf.append(") FROM ");
+        buf.identifier(foreignName);
+        String sql = buf.getSql();
+        Statement stmt = null;
+        try {
+            stmt = getConnection().createStatement();
+            ResultSet rs = stmt.executeQuery(sql);
+            if (!rs.next()) {
+                return null;
+            }
+            return rs.getDouble(1);
+        } catch (SQLException ex) {
+            logger.log(Level.FINE, "Unable to query statistics: " + sql, ex);
+            return null;
+        } finally {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
     // implement FarragoMedDataServer
     public void releaseResources()
     {
@@ -885,6 +1181,20 @@ public class MedJdbcDataServer
     public Object getRuntimeSupport(Object param)
         throws SQLException
     {
+        if (param instanceof MedJdbcSplitSpec) {
+            MedJdbcSplitSpec spec = (MedJdbcSplitSpec) param;
+            if (!disableConnectionPool) {
+                return new MedJdbcSplitReader(
+                    this,
+                    spec,
+                    fetchSize,
+                    readAheadBatches);
+            }
+
+            // Without a pool there is only the one shared connection, so
+            // read the query unsplit and synchronously.
+            param = spec.getSql();
+        }
         String sql = (String) param;
 
         FarragoStatementAllocation stmtAlloc;
@@ -1063,6 +1373,11 @@ public class MedJdbcDataServer
     {
         closeConnection();
 
+        if (metadataCache != null) {
+            MedJdbcMetadataCache.release(getServerMofId(), metadataCache);
+            metadataCache = null;
+        }
+
         if (connectionPool != null) {
             try {
                 dataSource = null;
@@ -1389,70 +1704,79 @@ public class MedJdbcDataServer
             return true;
         }
         try {
-            SqlDialect dialect =
-                SqlDialect.create(getDatabaseMetaData());
+            SqlDialect dialect = getDialect();
             SqlString sql = sqlNode.toSqlString(dialect);
             sql = MedJdbcNameDirectory.normalizeQueryString(sql);
+            Boolean cachedValidity = metadataCache.getSqlValidity(sql.getSql());
+            if (cachedValidity != null) {
+                return cachedValidity;
+            }
+            boolean valid = isRemoteSqlValid(dialect, sql);
+            metadataCache.putSqlValidity(sql.getSql(), valid);
+            return valid;
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
 
-            // test if sql can be executed against source
-            ResultSet rs = null;
-            PreparedStatement ps = null;
-            Statement testStatement = null;
-            try {
-                // Workaround for Oracle JDBC thin driver, where
-                // PreparedStatement.getMetaData does not actually get metadata
-                // before execution
-                if (dialect.getDatabaseProduct()
-                    == SqlDialect.DatabaseProduct.ORACLE)
-                {
-                    SqlBuilder buf = new SqlBuilder(dialect);
-                    buf.append(
-                        " DECLARE"
-                        + "   test_cursor integer;"
-                        + " BEGIN"
-                        + "   test_cursor := dbms_sql.open_cursor;"
-                        + "   dbms_sql.parse(test_cursor, ");
-                    buf.literal(dialect.quoteStringLiteral(sql.getSql()));
-                    buf.append(
-                        ", "
-                        + "   dbms_sql.native);"
-                        + "   dbms_sql.close_cursor(test_cursor);"
-                        + " EXCEPTION"
-                        + " WHEN OTHERS THEN"
-                        + "   dbms_sql.close_cursor(test_cursor);"
-                        + "   RAISE;"
-                        + " END;");
-                    testStatement = getConnection().createStatement();
-                    SqlString sqlTest = buf.toSqlString();
-                    rs = testStatement.executeQuery(sqlTest.getSql());
-                } else {
-                    ps = getConnection().prepareStatement(sql.getSql());
-                    if (ps != null) {
-                        if (ps.getMetaData() == null) {
-                            return false;
-                        }
-                    }
-                }
-            } catch (SQLException ex) {
-                return false;
-            } catch (RuntimeException ex) {
-                return false;
-            } finally {
-                try {
-                    if (rs != null) {
-                        rs.close();
-                    }
-                    if (testStatement != null) {
-                        testStatement.close();
-                    }
-                    if (ps != null) {
-                        ps.close();
+    private boolean isRemoteSqlValid(SqlDialect dialect, SqlString sql)
+    {
+        // test if sql can be executed against source
+        ResultSet rs = null;
+        PreparedStatement ps = null;
+        Statement testStatement = null;
+        try {
+            // Workaround for Oracle JDBC thin driver, where
+            // PreparedStatement.getMetaData does not actually get metadata
+            // before execution
+            if (dialect.getDatabaseProduct()
+                == SqlDialect.DatabaseProduct.ORACLE)
+            {
+                SqlBuilder buf = new SqlBuilder(dialect);
+                buf.append(
+                    " DECLARE"
+                    + "   test_cursor integer;"
+                    + " BEGIN"
+                    + "   test_cursor := dbms_sql.open_cursor;"
+                    + "   dbms_sql.parse(test_cursor, ");
+                buf.literal(dialect.quoteStringLiteral(sql.getSql()));
+                buf.append(
+                    ", "
+                    + "   dbms_sql.native);"
+                    + "   dbms_sql.close_cursor(test_cursor);"
+                    + " EXCEPTION"
+                    + " WHEN OTHERS THEN"
+                    + "   dbms_sql.close_cursor(test_cursor);"
+                    + "   RAISE;"
+                    + " END;");
+                testStatement = getConnection().createStatement();
+                SqlString sqlTest = buf.toSqlString();
+                rs = testStatement.executeQuery(sqlTest.getSql());
+            } else {
+                ps = getConnection().prepareStatement(sql.getSql());
+                if (ps != null) {
+                    if (ps.getMetaData() == null) {
+                        return false;
                     }
-                } catch (SQLException sqe) {
                 }
             }
         } catch (SQLException ex) {
             return false;
+        } catch (RuntimeException ex) {
+            return false;
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (testStatement != null) {
+                    testStatement.close();
+                }
+                if (ps != null) {
+                    ps.close();
+                }
+            } catch (SQLException sqe) {
+            }
         }
         return true;
     }
@@ -0,0 +1,276 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.sql.*;
+
+import org.eigenbase.jdbc4.*;
+
+
+/**
+ * MedJdbcMetaDataSnapshot is a detached copy of a foreign {@link
+ * ResultSetMetaData}, which remains usable after the statement which produced
+ * it has been closed. It is used by {@link MedJdbcMetadataCache}.
+ *
+ * <p>Attributes which the driver does not support are recorded as unknown
+ * (null, zero or false) rather than failing the copy.
+ *
+ * @version $Id$
+ */
+class MedJdbcMetaDataSnapshot
+    extends Unwrappable
+    implements ResultSetMetaData
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final Column [] columns;
+
+    //~ Constructors -----------------------------------------------------------
+
+    MedJdbcMetaDataSnapshot(ResultSetMetaData md)
+        throws SQLException
+    {
+        columns = new Column[md.getColumnCount()];
+        for (int i = 0; i < columns.length; ++i) {
+            columns[i] = new Column(md, i + 1);
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    private Column getColumn(int column)
+        throws SQLException
+    {
+        if ((column < 1) || (column > columns.length)) {
+            throw new SQLException("invalid column index " + column);
+        }
+        return columns[column - 1];
+    }
+
+    // implement ResultSetMetaData
+    public int getColumnCount()
+    {
+        return columns.length;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isAutoIncrement(int column)
+        throws SQLException
+    {
+        return getColumn(column).autoIncrement;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isCaseSensitive(int column)
+        throws SQLException
+    {
+        return getColumn(column).caseSensitive;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isSearchable(int column)
+        throws SQLException
+    {
+        return getColumn(column).searchable;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isCurrency(int column)
+        throws SQLException
+    {
+        return getColumn(column).currency;
+    }
+
+    // implement ResultSetMetaData
+    public int isNullable(int column)
+        throws SQLException
+    {
+        return getColumn(column).nullable;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isSigned(int column)
+        throws SQLException
+    {
+        return getColumn(column).signed;
+    }
+
+    // implement ResultSetMetaData
+    public int getColumnDisplaySize(int column)
+        throws SQLException
+    {
+        return getColumn(column).displaySize;
+    }
+
+    // implement ResultSetMetaData
+    public String getColumnLabel(int column)
+        throws SQLException
+    {
+        return getColumn(column).label;
+    }
+
+    // implement ResultSetMetaData
+    public String getColumnName(int column)
+        throws SQLException
+    {
+        return getColumn(column).name;
+    }
+
+    // implement ResultSetMetaData
+    public String getSchemaName(int column)
+        throws SQLException
+    {
+        return getColumn(column).schemaName;
+    }
+
+    // implement ResultSetMetaData
+    public int getPrecision(int column)
+        throws SQLException
+    {
+        return getColumn(column).precision;
+    }
+
+    // implement ResultSetMetaData
+    public int getScale(int column)
+        throws SQLException
+    {
+        return getColumn(column).scale;
+    }
+
+    // implement ResultSetMetaData
+    public String getTableName(int column)
+        throws SQLException
+    {
+        return getColumn(column).tableName;
+    }
+
+    // implement ResultSetMetaData
+    public String getCatalogName(int column)
+        throws SQLException
+    {
+        return getColumn(column).catalogName;
+    }
+
+    // implement ResultSetMetaData
+    public int getColumnType(int column)
+        throws SQLException
+    {
+        return getColumn(column).type;
+    }
+
+    // implement ResultSetMetaData
+    public String getColumnTypeName(int column)
+        throws SQLException
+    {
+        return getColumn(column).typeName;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isReadOnly(int column)
+        throws SQLException
+    {
+        return getColumn(column).readOnly;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isWritable(int column)
+        throws SQLException
+    {
+        return getColumn(column).writable;
+    }
+
+    // implement ResultSetMetaData
+    public boolean isDefinitelyWritable(int column)
+        throws SQLException
+    {
+        return getColumn(column).definitelyWritable;
+    }
+
+    // implement ResultSetMetaData
+    public String getColumnClassName(int column)
+        throws SQLException
+    {
+        return getColumn(column).className;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Attributes of one column.
+     */
+    private static class Column
+    {
+        final String name;
+        final int type;
+        final String typeName;
+        final int precision;
+        final int scale;
+        final int nullable;
+        String label;
+        String schemaName;
+        String tableName;
+        String catalogName;
+        String className;
+        int displaySize;
+        boolean autoIncrement;
+        boolean caseSensitive;
+        boolean searchable;
+        boolean currency;
+        boolean signed;
+        boolean readOnly;
+        boolean writable;
+        boolean definitelyWritable;
+
+        Column(ResultSetMetaData md, int i)
+            throws SQLException
+        {
+            // these are needed to derive a row type, so failures propagate
+            name = md.getColumnName(i);
+            type = md.getColumnType(i);
+            typeName = md.getColumnTypeName(i);
+            precision = md.getPrecision(i);
+            scale = md.getScale(i);
+            nullable = md.isNullable(i);
+
+            // the rest are informational
+            try {
+                label = md.getColumnLabel(i);
+                displaySize = md.getColumnDisplaySize(i);
+                schemaName = md.getSchemaName(i);
+                tableName = md.getTableName(i);
+                catalogName = md.getCatalogName(i);
+                autoIncrement = md.isAutoIncrement(i);
+                caseSensitive = md.isCaseSensitive(i);
+                searchable = md.isSearchable(i);
+                currency = md.isCurrency(i);
+                signed = md.isSigned(i);
+                readOnly = md.isReadOnly(i);
+                writable = md.isWritable(i);
+                definitelyWritable = md.isDefinitelyWritable(i);
+                className = md.getColumnClassName(i);
+            } catch (SQLException ex) {
+                // driver doesn't support everything; keep what we got
+            } catch (RuntimeException ex) {
+                // likewise for drivers which throw unchecked exceptions
+            }
+        }
+    }
+}
+
+// End MedJdbcMetaDataSnapshot.java
@@ -0,0 +1,247 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.sql.*;
+
+import java.util.*;
+
+
+/**
+ * MedJdbcMetadataCache holds information fetched from a foreign server at
+ * prepare time, so that preparing a query over foreign tables need not make a
+ * round trip to the server for each lookup. It caches result set metadata for
+ * foreign table queries, the outcome of pushdown validity tests, and remote
+ * table statistics.
+ *
+ * <p>Because the data wrapper cache may hold several instances of the same
+ * data server at once, there is a single cache per server MOFID, shared by all
+ * of its instances. A server whose options change gets a fresh cache, and the
+ * cache is discarded once no instance of the server remains loaded, as after
+ * DROP SERVER.
+ *
+ * <p>Metadata and validity entries are only kept when the server's {@link
+ * MedJdbcDataServer#PROP_METADATA_CACHE_TTL_MILLIS time-to-live} is nonzero.
+ * Statistics are always kept once collected, expiring after the time-to-live
+ * if it is positive. In particular, the COUNT queries issued for {@link
+ * MedJdbcDataServer#PROP_REMOTE_STATISTICS_QUERY} statistics run once per
+ * table (and column), not once per statement prepared against it.
+ *
+ * @version $Id$
+ */
+class MedJdbcMetadataCache
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Map<String, MedJdbcMetadataCache> instances =
+        new HashMap<String, MedJdbcMetadataCache>();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Properties serverProps;
+    private final long ttlMillis;
+    private final Map<String, Timed<ResultSetMetaData>> metaDataMap;
+    private final Map<String, Timed<Boolean>> sqlValidityMap;
+    private final Map<String, Timed<MedJdbcTableStatistics>> statisticsMap;
+
+    /**
+     * Number of server instances which obtained this cache from {@link
+     * #forServer} and have not yet {@link #release released} it.
+     */
+    private int refCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private MedJdbcMetadataCache(Properties serverProps, long ttlMillis)
+    {
+        this.serverProps = serverProps;
+        this.ttlMillis = ttlMillis;
+        metaDataMap = new HashMap<String, Timed<ResultSetMetaData>>();
+        sqlValidityMap = new HashMap<String, Timed<Boolean>>();
+        statisticsMap = new HashMap<String, Timed<MedJdbcTableStatistics>>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the cache shared by all instances of a data server. Each call
+     * must be matched by a call to {@link #release}.
+     *
+     * @param serverMofId MOFID of the server's catalog definition
+     * @param serverProps server options
+     * @param ttlMillis time-to-live for entries; 0 disables metadata caching,
+     * and a negative value means entries never expire
+     *
+     * @return shared cache
+     */
+    static synchronized MedJdbcMetadataCache forServer(
+        String serverMofId,
+        Properties serverProps,
+        long ttlMillis)
+    {
+        MedJdbcMetadataCache cache = instances.get(serverMofId);
+        if ((cache == null)
+            || (cache.ttlMillis != ttlMillis)
+            || !cache.serverProps.equals(serverProps))
+        {
+            cache =
+                new MedJdbcMetadataCache(
+                    (Properties) serverProps.clone(),
+                    ttlMillis);
+            instances.put(serverMofId, cache);
+        }
+        cache.refCount++;
+        return cache;
+    }
+
+    /**
+     * Releases a cache obtained from {@link #forServer} when a server instance
+     * is closed. Once no instance of the server remains, the cache is
+     * discarded, so that a dropped server does not leave its entries behind.
+     *
+     * @param serverMofId MOFID of the server's catalog definition
+     * @param cache cache to release
+     */
+    static synchronized void release(
+        String serverMofId,
+        MedJdbcMetadataCache cache)
+    {
+        cache.refCount--;
+        if ((cache.refCount == 0) && (instances.get(serverMofId) == cache)) {
+            instances.remove(serverMofId);
+        }
+    }
+
+    /**
+     * @return whether metadata and pushdown validity are cached
+     */
+    boolean isMetadataCached()
+    {
+        return ttlMillis != 0;
+    }
+
+    synchronized ResultSetMetaData getMetaData(String sql)
+    {
+        return lookup(metaDataMap, sql);
+    }
+
+    /**
+     * Caches result set metadata for a query. The metadata is copied, since
+     * the original becomes unusable once its statement is closed.
+     *
+     * @param sql foreign query text
+     * @param md metadata describing the query's result set
+     *
+     * @return metadata to use in place of md
+     */
+    ResultSetMetaData putMetaData(String sql, ResultSetMetaData md)
+        throws SQLException
+    {
+        if (!isMetadataCached()) {
+            return md;
+        }
+        ResultSetMetaData snapshot = new MedJdbcMetaDataSnapshot(md);
+        synchronized (this) {
+            metaDataMap.put(
+                sql,
+                new Timed<ResultSetMetaData>(snapshot, expiry(ttlMillis)));
+        }
+        return snapshot;
+    }
+
+    synchronized Boolean getSqlValidity(String sql)
+    {
+        return lookup(sqlValidityMap, sql);
+    }
+
+    synchronized void putSqlValidity(String sql, boolean valid)
+    {
+        if (isMetadataCached()) {
+            sqlValidityMap.put(
+                sql,
+                new Timed<Boolean>(valid, expiry(ttlMillis)));
+        }
+    }
+
+    synchronized MedJdbcTableStatistics getStatistics(String tableKey)
+    {
+        return lookup(statisticsMap, tableKey);
+    }
+
+    synchronized void putStatistics(
+        String tableKey,
+        MedJdbcTableStatistics stats)
+    {
+        statisticsMap.put(
+            tableKey,
+            new Timed<MedJdbcTableStatistics>(
+                stats,
+                expiry((ttlMillis > 0) ? ttlMillis : -1)));
+    }
+
+    /**
+     * Discards all entries.
+     */
+    synchronized void flush()
+    {
+        metaDataMap.clear();
+        sqlValidityMap.clear();
+        statisticsMap.clear();
+    }
+
+    private static long expiry(long ttlMillis)
+    {
+        if (ttlMillis < 0) {
+            return Long.MAX_VALUE;
+        }
+        return System.currentTimeMillis() + ttlMillis;
+    }
+
+    private static <T> T lookup(Map<String, Timed<T>> map, String key)
+    {
+        Timed<T> timed = map.get(key);
+        if (timed == null) {
+            return null;
+        }
+        if (timed.expiry < System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return timed.value;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A cached value together with its expiration time.
+     */
+    private static class Timed<T>
+    {
+        final T value;
+        final long expiry;
+
+        Timed(T value, long expiry)
+        {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+}
+
+// End MedJdbcMetadataCache.java
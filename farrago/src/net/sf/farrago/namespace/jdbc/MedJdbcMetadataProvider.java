@@ -20,6 +20,7 @@ package net.sf.farrago.namespace.jdbc;
 
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
+import org.eigenbase.rex.*;
 
 import net.sf.farrago.namespace.impl.*;
 
@@ -43,6 +44,15 @@ public class MedJdbcMetadataProvider
         args.add((Class) BitSet.class);
         args.add((Class) Boolean.TYPE);
         mapParameterTypes("areColumnsUnique", args);
+
+        args = new ArrayList<Class>();
+        args.add((Class) BitSet.class);
+        args.add((Class) RexNode.class);
+        mapParameterTypes("getDistinctRowCount", args);
+
+        args = new ArrayList<Class>();
+        args.add((Class) BitSet.class);
+        mapParameterTypes("getPopulationSize", args);
     }
 
     public Boolean canRestart(MedJdbcQueryRel rel)
@@ -69,6 +79,45 @@ public class MedJdbcMetadataProvider
         return MedAbstractColumnMetadata.areColumnsUniqueForKeys(
             uniqueColSets, columns);
     }
+
+    public Double getRowCount(MedJdbcQueryRel rel)
+    {
+        return rel.getRemoteRowCount();
+    }
+
+    public Double getPopulationSize(MedJdbcQueryRel rel, BitSet groupKey)
+    {
+        // only single columns have a known remote distinct count
+        if (groupKey.cardinality() != 1) {
+            return null;
+        }
+        Double distinctCount =
+            rel.getRemoteDistinctCount(groupKey.nextSetBit(0));
+        Double rowCount = rel.getRemoteRowCount();
+        if ((distinctCount == null) || (rowCount == null)) {
+            return distinctCount;
+        }
+        return Math.min(distinctCount, rowCount);
+    }
+
+    public Double getDistinctRowCount(
+        MedJdbcQueryRel rel,
+        BitSet groupKey,
+        RexNode predicate)
+    {
+        Double populationSize = getPopulationSize(rel, groupKey);
+        if (populationSize == null) {
+            return null;
+        }
+        double selectivity = RelMdUtil.guessSelectivity(predicate);
+        Double rowCount = rel.getRemoteRowCount();
+        if (rowCount == null) {
+            return populationSize * selectivity;
+        }
+        return RelMdUtil.numDistinctVals(
+            populationSize,
+            rowCount * selectivity);
+    }
 }
 
 // End MedJdbcMetadataProvider.java
@@ -229,7 +229,7 @@ public class MedJdbcNameDirectory
         RelDataType origRowType = null;
         RelDataType mdRowType = null;
 
-        SqlDialect dialect = SqlDialect.create(server.getDatabaseMetaData());
+        SqlDialect dialect = server.getDialect();
         SqlSelect select =
             createSelectStarQuery(foreignQualifiedName, foreignTableProps);
 
@@ -256,32 +256,39 @@ public class MedJdbcNameDirectory
             tracer.fine("get foreign table metadata using " + sql);
         }
 
+        // metadata may be remembered from an earlier lookup of the same
+        // query; see MedJdbcDataServer.PROP_METADATA_CACHE_TTL_MILLIS
+        ResultSetMetaData md = server.metadataCache.getMetaData(sql.getSql());
         PreparedStatement ps = null;
-        try {
-            ps = server.getConnection().prepareStatement(sql.getSql());
-        } catch (Exception ex) {
-            // Some drivers don't support prepareStatement
+        if (md == null) {
+            try {
+                ps = server.getConnection().prepareStatement(sql.getSql());
+            } catch (Exception ex) {
+                // Some drivers don't support prepareStatement
+            }
         }
         Statement stmt = null;
         ResultSet rs = null;
         try {
-            ResultSetMetaData md = null;
-            try {
-                if (ps != null) {
-                    md = ps.getMetaData();
-                }
-            } catch (SQLException ex) {
-                // Some drivers can't return metadata before execution. Fall
-                // through to recovery below.
-            }
             if (md == null) {
-                if (ps != null) {
-                    rs = ps.executeQuery();
-                } else {
-                    stmt = server.getConnection().createStatement();
-                    rs = stmt.executeQuery(sql.getSql());
+                try {
+                    if (ps != null) {
+                        md = ps.getMetaData();
+                    }
+                } catch (SQLException ex) {
+                    // Some drivers can't return metadata before execution. Fall
+                    // through to recovery below.
                 }
-                md = rs.getMetaData();
+                if (md == null) {
+                    if (ps != null) {
+                        rs = ps.executeQuery();
+                    } else {
+                        stmt = server.getConnection().createStatement();
+                        rs = stmt.executeQuery(sql.getSql());
+                    }
+                    md = rs.getMetaData();
+                }
+                md = server.metadataCache.putMetaData(sql.getSql(), md);
             }
             if (rowType == null) {
                 rowType =
@@ -378,15 +385,30 @@ public class MedJdbcNameDirectory
         RelDataType srcRowType,
         Properties foreignTableProps)
     {
-        return new MedJdbcColumnSet(
-            this,
-            foreignName,
-            localName,
-            select,
-            dialect,
-            rowType,
-            origRowType,
-            srcRowType);
+        MedJdbcColumnSet columnSet =
+            new MedJdbcColumnSet(
+                this,
+                foreignName,
+                localName,
+                select,
+                dialect,
+                rowType,
+                origRowType,
+                srcRowType);
+        columnSet.splitColumn = server.splitColumn;
+        columnSet.splitCount = server.splitCount;
+        if (foreignTableProps != null) {
+            columnSet.splitColumn =
+                foreignTableProps.getProperty(
+                    MedJdbcDataServer.PROP_SPLIT_COLUMN,
+                    server.splitColumn);
+            columnSet.splitCount =
+                MedJdbcDataServer.getIntProperty(
+                    foreignTableProps,
+                    MedJdbcDataServer.PROP_SPLIT_COUNT,
+                    server.splitCount);
+        }
+        return columnSet;
     }
 
     /**
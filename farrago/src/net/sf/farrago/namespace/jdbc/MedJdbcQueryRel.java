@@ -29,7 +29,10 @@ import org.eigenbase.oj.stmt.*;
 import org.eigenbase.rel.jdbc.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
+import org.eigenbase.runtime.*;
 import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
 import org.eigenbase.sql.util.SqlString;
 import org.eigenbase.util.*;
 
@@ -98,6 +101,29 @@ public class MedJdbcQueryRel
 
         SqlString sql = MedJdbcNameDirectory.normalizeQueryString(queryString);
 
+        Expression specExpression = null;
+        if (isSplittable()) {
+            specExpression = implementSplitSpec(sql, connectionVariable);
+        } else if (server.getReadAheadBatches() > 0) {
+            specExpression =
+                new AllocationExpression(
+                    OJClass.forClass(MedJdbcSplitSpec.class),
+                    new ExpressionList(
+                        Literal.makeLiteral(sql.getSql()),
+                        connectionVariable));
+        }
+        if (specExpression != null) {
+            return new CastExpression(
+                OJClass.forClass(ResultSetProvider.class),
+                new MethodCall(
+                    connectionVariable,
+                    "getDataServerRuntimeSupport",
+                    new ExpressionList(
+                        Literal.makeLiteral(
+                            server.getServerMofId()),
+                        specExpression)));
+        }
+
         Expression allocExpression =
             new CastExpression(
                 OJClass.forClass(FarragoStatementAllocation.class),
@@ -111,6 +137,276 @@ public class MedJdbcQueryRel
         return allocExpression;
     }
 
+    /**
+     * Determines whether this query can be read as concurrent range queries
+     * on the split column of its column set. Only scans of a single foreign
+     * table, possibly with pushed-down projections and filters, qualify.
+     *
+     * @return whether to split
+     */
+    private boolean isSplittable()
+    {
+        return isSimpleScan()
+            && (columnSet.getSplitColumn() != null)
+            && (columnSet.getSplitCount() >= 2);
+    }
+
+    /**
+     * Determines whether this query is a scan of the single foreign table of
+     * its column set, possibly with pushed-down projections and filters.
+     *
+     * @return whether this is a simple scan
+     */
+    private boolean isSimpleScan()
+    {
+        if (columnSet == null) {
+            return false;
+        }
+        SqlSelect select = getSql();
+        return (select.getFrom() instanceof SqlIdentifier)
+            && !select.isDistinct()
+            && isEmpty(select.getGroup())
+            && (select.getHaving() == null)
+            && isEmpty(select.getWindowList())
+            && isEmpty(select.getOrderList());
+    }
+
+    private static boolean isEmpty(SqlNodeList list)
+    {
+        return (list == null) || (list.size() == 0);
+    }
+
+    /**
+     * Estimates the number of rows returned by this query from the remote
+     * statistics of its column set. Only simple scans are estimated; the
+     * selectivity of a pushed-down filter is guessed the same way {@link
+     * org.eigenbase.rel.metadata.RelMdUtil#guessSelectivity} does for row
+     * expressions, except that equality with a literal uses the remote
+     * distinct count of the column when known.
+     *
+     * @return estimated row count, or null if unknown
+     */
+    Double getRemoteRowCount()
+    {
+        if (!isSimpleScan()) {
+            return null;
+        }
+        Double rowCount = columnSet.getRemoteRowCount();
+        if (rowCount == null) {
+            return null;
+        }
+        return rowCount * guessSelectivity(getSql().getWhere());
+    }
+
+    /**
+     * Estimates the number of distinct values of an output field of this
+     * query from the remote statistics of its column set.
+     *
+     * @param iField ordinal of output field
+     *
+     * @return distinct count in the remote table, or null if unknown
+     */
+    Double getRemoteDistinctCount(int iField)
+    {
+        if (!isSimpleScan()) {
+            return null;
+        }
+        String columnName = getRemoteColumnName(iField);
+        if (columnName == null) {
+            return null;
+        }
+        return columnSet.getRemoteDistinctCount(columnName);
+    }
+
+    /**
+     * Maps an output field of this query to the remote column it reads.
+     *
+     * @param iField ordinal of output field
+     *
+     * @return remote column name, or null if the field is an expression
+     */
+    private String getRemoteColumnName(int iField)
+    {
+        SqlNodeList selectList = getSql().getSelectList();
+        if ((selectList == null)
+            || ((selectList.size() == 1)
+                && (selectList.get(0) instanceof SqlIdentifier)
+                && ((SqlIdentifier) selectList.get(0)).isStar()))
+        {
+            List<RelDataTypeField> fields = columnSet.srcRowType.getFieldList();
+            if (iField >= fields.size()) {
+                return null;
+            }
+            return fields.get(iField).getName();
+        }
+        if (iField >= selectList.size()) {
+            return null;
+        }
+        SqlNode item = selectList.get(iField);
+        if (item.getKind() == SqlKind.AS) {
+            item = ((SqlCall) item).operands[0];
+        }
+        if (!(item instanceof SqlIdentifier)) {
+            return null;
+        }
+        String [] names = ((SqlIdentifier) item).names;
+        return names[names.length - 1];
+    }
+
+    private double guessSelectivity(SqlNode predicate)
+    {
+        if (predicate == null) {
+            return 1.0;
+        }
+        if (predicate.getKind() == SqlKind.AND) {
+            double sel = 1.0;
+            for (SqlNode operand : ((SqlCall) predicate).operands) {
+                sel *= guessSelectivity(operand);
+            }
+            return sel;
+        }
+        if (predicate.getKind() == SqlKind.EQUALS) {
+            SqlNode [] operands = ((SqlCall) predicate).operands;
+            Double distinctCount = null;
+            if ((operands[0] instanceof SqlIdentifier)
+                && (operands[1] instanceof SqlLiteral))
+            {
+                distinctCount = getDistinctCount(operands[0]);
+            } else if (
+                (operands[1] instanceof SqlIdentifier)
+                && (operands[0] instanceof SqlLiteral))
+            {
+                distinctCount = getDistinctCount(operands[1]);
+            }
+            if ((distinctCount != null) && (distinctCount >= 1)) {
+                return 1.0 / distinctCount;
+            }
+            return .15;
+        }
+        if ((predicate instanceof SqlCall)
+            && (((SqlCall) predicate).getOperator()
+                == SqlStdOperatorTable.isNotNullOperator))
+        {
+            return .9;
+        }
+        if (predicate.getKind().belongsTo(SqlKind.COMPARISON)) {
+            return .5;
+        }
+        return .25;
+    }
+
+    private Double getDistinctCount(SqlNode column)
+    {
+        String [] names = ((SqlIdentifier) column).names;
+        return columnSet.getRemoteDistinctCount(names[names.length - 1]);
+    }
+
+    /**
+     * Generates the allocation of a {@link MedJdbcSplitSpec} for this query.
+     * The range queries compare the split column against dynamic parameters,
+     * since the boundaries are only known at execution time.
+     *
+     * @param sql unsplit query
+     * @param connectionVariable runtime context of the executing statement
+     *
+     * @return expression allocating the split spec
+     */
+    private Expression implementSplitSpec(
+        SqlString sql,
+        Variable connectionVariable)
+    {
+        final SqlParserPos pos = SqlParserPos.ZERO;
+        SqlSelect select = getSql();
+        SqlIdentifier splitColumn =
+            new SqlIdentifier(columnSet.getSplitColumn(), pos);
+
+        SqlNode [] bounds = {
+            SqlStdOperatorTable.minOperator.createCall(pos, splitColumn),
+            SqlStdOperatorTable.maxOperator.createCall(pos, splitColumn)
+        };
+        SqlSelect boundsSelect =
+            SqlStdOperatorTable.selectOperator.createCall(
+                null,
+                new SqlNodeList(Arrays.asList(bounds), pos),
+                select.getFrom(),
+                select.getWhere(),
+                null,
+                null,
+                null,
+                null,
+                pos);
+
+        // rows with a null split column go into the first range
+        SqlNode lowPredicate =
+            SqlStdOperatorTable.orOperator.createCall(
+                pos,
+                SqlStdOperatorTable.lessThanOperator.createCall(
+                    pos,
+                    splitColumn,
+                    new SqlDynamicParam(0, pos)),
+                SqlStdOperatorTable.isNullOperator.createCall(
+                    pos,
+                    splitColumn));
+        SqlNode midPredicate =
+            SqlStdOperatorTable.andOperator.createCall(
+                pos,
+                SqlStdOperatorTable.greaterThanOrEqualOperator.createCall(
+                    pos,
+                    splitColumn,
+                    new SqlDynamicParam(0, pos)),
+                SqlStdOperatorTable.lessThanOperator.createCall(
+                    pos,
+                    splitColumn,
+                    new SqlDynamicParam(1, pos)));
+        SqlNode highPredicate =
+            SqlStdOperatorTable.greaterThanOrEqualOperator.createCall(
+                pos,
+                splitColumn,
+                new SqlDynamicParam(0, pos));
+
+        return new AllocationExpression(
+            OJClass.forClass(MedJdbcSplitSpec.class),
+            new ExpressionList(
+                Literal.makeLiteral(sql.getSql()),
+                Literal.makeLiteral(toForeignSql(boundsSelect)),
+                Literal.makeLiteral(
+                    toForeignSql(addPredicate(select, lowPredicate))),
+                Literal.makeLiteral(
+                    toForeignSql(addPredicate(select, midPredicate))),
+                Literal.makeLiteral(
+                    toForeignSql(addPredicate(select, highPredicate))),
+                Literal.makeLiteral(columnSet.getSplitCount()),
+                connectionVariable));
+    }
+
+    private static SqlSelect addPredicate(SqlSelect select, SqlNode predicate)
+    {
+        SqlNode where = select.getWhere();
+        if (where != null) {
+            predicate =
+                SqlStdOperatorTable.andOperator.createCall(
+                    SqlParserPos.ZERO,
+                    where,
+                    predicate);
+        }
+        return SqlStdOperatorTable.selectOperator.createCall(
+            null,
+            select.getSelectList(),
+            select.getFrom(),
+            predicate,
+            null,
+            null,
+            null,
+            null,
+            SqlParserPos.ZERO);
+    }
+
+    private String toForeignSql(SqlSelect select)
+    {
+        return MedJdbcNameDirectory.normalizeQueryString(
+            select.toSqlString(getDialect())).getSql();
+    }
+
     // override JdbcQuery
     public MedJdbcQueryRel clone()
     {
@@ -0,0 +1,725 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.math.*;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.runtime.*;
+import org.eigenbase.util14.*;
+
+
+/**
+ * MedJdbcSplitReader executes a {@link MedJdbcSplitSpec}. At execution time it
+ * asks the remote server for the MIN and MAX of the split column, divides that
+ * interval into equal-width ranges, and runs one range query per pooled
+ * connection, each on its own thread. Rows from all ranges are merged into a
+ * single forward-only ResultSet; order across ranges is not preserved.
+ *
+ * <p>Each range, and the MIN/MAX query, runs on its own connection and hence
+ * in its own remote transaction. JDBC offers no way to share one snapshot
+ * between connections, so the ranges may see different versions of the
+ * remote table if it is modified while they are read.
+ *
+ * <p>If the split column has no usable bounds (e.g. the remote table is empty,
+ * or the column is neither numeric nor a date or timestamp), the unsplit query
+ * is executed instead. A spec which is not {@link MedJdbcSplitSpec#isSplit
+ * split} at all is simply read ahead on a single background thread.
+ *
+ * <p>Readers queue batches of rows, blocking once the queue holds the
+ * configured number of read-ahead batches. While the consumer waits for rows
+ * it checks the statement for cancellation. Queue statistics are traced when
+ * the reader is closed.
+ *
+ * @version $Id$
+ */
+class MedJdbcSplitReader
+    implements FarragoAllocation,
+        ResultSetProvider
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(MedJdbcSplitReader.class);
+
+    /**
+     * Number of rows handed from a reader thread to the consumer at a time.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * How long a reader blocks on a full queue, or the consumer on an empty
+     * one, before rechecking whether the reader has been closed or the
+     * statement canceled.
+     */
+    private static final long WAIT_MILLIS = 100;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private static final Object END_OF_RANGE = new Object();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final MedJdbcDataServer server;
+    private final MedJdbcSplitSpec spec;
+    private final int fetchSize;
+    private final int readAheadBatches;
+    private final List<Connection> connections;
+    private final List<PreparedStatement> stmts;
+    private final List<Thread> threads;
+    private BlockingQueue<Object> queue;
+    private MergedResultSet resultSet;
+    private volatile boolean closed;
+    private volatile Throwable error;
+    private final AtomicInteger batchCount;
+    private final AtomicInteger readerWaitCount;
+    private int consumerWaitCount;
+    private int maxQueueDepth;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new MedJdbcSplitReader.
+     *
+     * @param server server from whose pool connections are borrowed
+     * @param spec description of the split query
+     * @param fetchSize fetch size to set on each range query, or {@link
+     * MedJdbcDataServer#DEFAULT_FETCH_SIZE} to leave the driver default
+     * @param readAheadBatches number of row batches which may be queued ahead
+     * of the consumer; at least two per range are always allowed
+     */
+    MedJdbcSplitReader(
+        MedJdbcDataServer server,
+        MedJdbcSplitSpec spec,
+        int fetchSize,
+        int readAheadBatches)
+    {
+        this.server = server;
+        this.spec = spec;
+        this.fetchSize = fetchSize;
+        this.readAheadBatches = readAheadBatches;
+        batchCount = new AtomicInteger();
+        readerWaitCount = new AtomicInteger();
+        connections = new ArrayList<Connection>();
+        stmts = new ArrayList<PreparedStatement>();
+        threads = new ArrayList<Thread>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement ResultSetProvider
+    public ResultSet getResultSet()
+        throws SQLException
+    {
+        if (resultSet != null) {
+            return resultSet;
+        }
+        List<Range> ranges = computeRanges();
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine(
+                "reading " + ranges.size() + " range(s) for "
+                + spec.getSql());
+        }
+        ResultSetMetaData metaData = null;
+        boolean success = false;
+        try {
+            for (Range range : ranges) {
+                Connection conn = server.newConnection();
+                connections.add(conn);
+                PreparedStatement stmt = conn.prepareStatement(range.sql);
+                stmts.add(stmt);
+                if (fetchSize != MedJdbcDataServer.DEFAULT_FETCH_SIZE) {
+                    stmt.setFetchSize(fetchSize);
+                }
+                for (int i = 0; i < range.params.length; ++i) {
+                    stmt.setObject(i + 1, range.params[i]);
+                }
+                if (metaData == null) {
+                    try {
+                        metaData = stmt.getMetaData();
+                    } catch (SQLException ex) {
+                        // Some drivers can't return metadata before
+                        // execution; it's only informational here.
+                    }
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                closeAllocation();
+            }
+        }
+
+        queue =
+            new ArrayBlockingQueue<Object>(
+                Math.max(2 * ranges.size(), readAheadBatches));
+        resultSet = new MergedResultSet(metaData, ranges.size());
+        for (int i = 0; i < ranges.size(); ++i) {
+            Thread thread =
+                new RangeReaderThread(
+                    connections.get(i),
+                    stmts.get(i),
+                    i);
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        return resultSet;
+    }
+
+    // implement FarragoAllocation
+    public void closeAllocation()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if ((queue != null) && tracer.isLoggable(Level.FINE)) {
+            tracer.fine(
+                "read " + batchCount.get() + " batch(es) of up to "
+                + BATCH_SIZE + " rows through a queue of "
+                + (queue.size() + queue.remainingCapacity())
+                + "; max depth " + maxQueueDepth
+                + ", consumer waited " + consumerWaitCount
+                + " time(s), readers waited " + readerWaitCount.get()
+                + " time(s) for " + spec.getSql());
+        }
+        for (PreparedStatement stmt : stmts) {
+            try {
+                stmt.cancel();
+            } catch (Throwable ex) {
+                // cancel is best-effort; not all drivers support it
+            }
+        }
+        if (queue != null) {
+            queue.clear();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (threads.isEmpty()) {
+            // readers never started, so we still own their resources
+            for (int i = 0; i < connections.size(); ++i) {
+                closeRange(
+                    connections.get(i),
+                    (i < stmts.size()) ? stmts.get(i) : null);
+            }
+        }
+    }
+
+    private static void closeRange(Connection conn, Statement stmt)
+    {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException ex) {
+            // REVIEW:  is it OK to suppress?  Should at least trace.
+        } finally {
+            try {
+                // returns the connection to the pool
+                conn.close();
+            } catch (SQLException ex) {
+                // REVIEW:  is it OK to suppress?  Should at least trace.
+            }
+        }
+    }
+
+    /**
+     * Queries the bounds of the split column and divides them into ranges.
+     *
+     * @return list of ranges to read; a single unsplit range if the split
+     * column has no usable bounds
+     */
+    private List<Range> computeRanges()
+        throws SQLException
+    {
+        List<Range> ranges = new ArrayList<Range>();
+        if (!spec.isSplit()) {
+            ranges.add(new Range(spec.getSql()));
+            return ranges;
+        }
+        List<Object> boundaries;
+        Connection conn = server.newConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            try {
+                ResultSet rs = stmt.executeQuery(spec.getBoundsSql());
+                if (rs.next()) {
+                    boundaries =
+                        computeBoundaries(
+                            rs,
+                            rs.getMetaData().getColumnType(1),
+                            spec.getSplitCount());
+                } else {
+                    boundaries = Collections.emptyList();
+                }
+                rs.close();
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            conn.close();
+        }
+
+        if (boundaries.isEmpty()) {
+            ranges.add(new Range(spec.getSql()));
+            return ranges;
+        }
+        int n = boundaries.size();
+        ranges.add(new Range(spec.getLowSql(), boundaries.get(0)));
+        for (int i = 1; i < n; ++i) {
+            ranges.add(
+                new Range(
+                    spec.getMidSql(),
+                    boundaries.get(i - 1),
+                    boundaries.get(i)));
+        }
+        ranges.add(new Range(spec.getHighSql(), boundaries.get(n - 1)));
+        return ranges;
+    }
+
+    /**
+     * Computes the interior boundaries which divide [MIN, MAX] of the split
+     * column into equal-width ranges.
+     *
+     * @param rs result set positioned on the row containing MIN and MAX
+     * @param type JDBC type of the split column
+     * @param splitCount desired number of ranges
+     *
+     * @return strictly increasing list of at most splitCount - 1 boundaries;
+     * empty if the column cannot be split
+     */
+    static List<Object> computeBoundaries(
+        ResultSet rs,
+        int type,
+        int splitCount)
+        throws SQLException
+    {
+        List<Object> boundaries = new ArrayList<Object>();
+        switch (type) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            {
+                BigDecimal lo = rs.getBigDecimal(1);
+                BigDecimal hi = rs.getBigDecimal(2);
+                if ((lo == null) || (hi == null) || (lo.compareTo(hi) >= 0)) {
+                    break;
+                }
+                boolean integral =
+                    (type == Types.TINYINT) || (type == Types.SMALLINT)
+                    || (type == Types.INTEGER) || (type == Types.BIGINT);
+                int scale = integral ? 0 : Math.max(lo.scale(), hi.scale());
+                BigDecimal width =
+                    hi.subtract(lo).divide(
+                        BigDecimal.valueOf(splitCount),
+                        Math.max(scale, 0),
+                        RoundingMode.CEILING);
+                BigDecimal b = lo;
+                for (int i = 1; i < splitCount; ++i) {
+                    b = b.add(width);
+                    if (b.compareTo(hi) > 0) {
+                        break;
+                    }
+                    if (integral) {
+                        boundaries.add(Long.valueOf(b.longValue()));
+                    } else {
+                        boundaries.add(b);
+                    }
+                }
+                break;
+            }
+        case Types.DATE:
+        case Types.TIMESTAMP:
+            {
+                Timestamp lo = rs.getTimestamp(1);
+                Timestamp hi = rs.getTimestamp(2);
+                if ((lo == null) || (hi == null) || !lo.before(hi)) {
+                    break;
+                }
+                long loMillis = lo.getTime();
+                long hiMillis = hi.getTime();
+                long width =
+                    (hiMillis - loMillis + splitCount - 1) / splitCount;
+                if (type == Types.DATE) {
+                    // keep date boundaries on whole days
+                    width =
+                        ((width + MILLIS_PER_DAY - 1) / MILLIS_PER_DAY)
+                        * MILLIS_PER_DAY;
+                }
+                for (int i = 1; i < splitCount; ++i) {
+                    long b = loMillis + (width * i);
+                    if (b > hiMillis) {
+                        break;
+                    }
+                    if (type == Types.DATE) {
+                        boundaries.add(
+                            java.sql.Date.valueOf(
+                                new java.sql.Date(b).toString()));
+                    } else {
+                        boundaries.add(new Timestamp(b));
+                    }
+                }
+                break;
+            }
+        default:
+            // not a type we know how to divide; read unsplit
+            break;
+        }
+        return boundaries;
+    }
+
+    /**
+     * Reads a column using the getter matching its JDBC type, so that the
+     * values handed across threads are driver-independent.
+     */
+    private static Object readColumn(ResultSet rs, int i, int type)
+        throws SQLException
+    {
+        Object obj;
+        switch (type) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+            return rs.getString(i);
+        case Types.DATE:
+            return rs.getDate(i);
+        case Types.TIME:
+            return rs.getTime(i);
+        case Types.TIMESTAMP:
+            return rs.getTimestamp(i);
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            obj = Long.valueOf(rs.getLong(i));
+            break;
+        case Types.BIT:
+        case Types.BOOLEAN:
+            obj = Boolean.valueOf(rs.getBoolean(i));
+            break;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            obj = Double.valueOf(rs.getDouble(i));
+            break;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return rs.getBigDecimal(i);
+        default:
+            return rs.getObject(i);
+        }
+        return rs.wasNull() ? null : obj;
+    }
+
+    /**
+     * Hands an item to the consumer, waiting while the queue is full.
+     *
+     * @return false if the reader was closed before the item could be queued
+     */
+    private boolean put(Object item)
+    {
+        if (item != END_OF_RANGE) {
+            batchCount.incrementAndGet();
+        }
+        try {
+            if (queue.offer(item)) {
+                return true;
+            }
+            readerWaitCount.incrementAndGet();
+            while (!closed) {
+                if (queue.offer(
+                        item,
+                        WAIT_MILLIS,
+                        TimeUnit.MILLISECONDS))
+                {
+                    return true;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A range query together with its boundary parameters.
+     */
+    private static class Range
+    {
+        final String sql;
+        final Object [] params;
+
+        Range(String sql, Object ... params)
+        {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /**
+     * Thread which executes one range query and queues its rows in batches.
+     * It owns the range's statement and connection once started.
+     */
+    private class RangeReaderThread
+        extends Thread
+    {
+        private final Connection conn;
+        private final PreparedStatement stmt;
+
+        RangeReaderThread(
+            Connection conn,
+            PreparedStatement stmt,
+            int iRange)
+        {
+            super("MedJdbcSplitReader range " + iRange);
+            setDaemon(true);
+            this.conn = conn;
+            this.stmt = stmt;
+        }
+
+        public void run()
+        {
+            try {
+                ResultSet rs = stmt.executeQuery();
+                try {
+                    ResultSetMetaData md = rs.getMetaData();
+                    int nColumns = md.getColumnCount();
+                    int [] types = new int[nColumns];
+                    for (int i = 0; i < nColumns; ++i) {
+                        types[i] = md.getColumnType(i + 1);
+                    }
+                    List<Object []> batch =
+                        new ArrayList<Object []>(BATCH_SIZE);
+                    while (!closed && rs.next()) {
+                        Object [] row = new Object[nColumns];
+                        for (int i = 0; i < nColumns; ++i) {
+                            row[i] = readColumn(rs, i + 1, types[i]);
+                        }
+                        batch.add(row);
+                        if (batch.size() == BATCH_SIZE) {
+                            if (!put(batch)) {
+                                return;
+                            }
+                            batch = new ArrayList<Object []>(BATCH_SIZE);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        put(batch);
+                    }
+                } finally {
+                    rs.close();
+                }
+            } catch (Throwable ex) {
+                if (!closed) {
+                    tracer.log(Level.WARNING, getName() + " failed", ex);
+                    if (error == null) {
+                        error = ex;
+                    }
+                }
+            } finally {
+                closeRange(conn, stmt);
+                put(END_OF_RANGE);
+            }
+        }
+    }
+
+    /**
+     * Forward-only ResultSet over the rows queued by all range readers.
+     */
+    private class MergedResultSet
+        extends AbstractResultSet
+    {
+        private final ResultSetMetaData metaData;
+        private final int rangeCount;
+        private int finishedRanges;
+        private List<Object []> batch;
+        private int batchPos;
+        private Object [] current;
+        private int row;
+
+        MergedResultSet(ResultSetMetaData metaData, int rangeCount)
+        {
+            this.metaData = metaData;
+            this.rangeCount = rangeCount;
+        }
+
+        // implement ResultSet
+        public boolean next()
+            throws SQLException
+        {
+            for (;;) {
+                if ((batch != null) && (++batchPos < batch.size())) {
+                    current = batch.get(batchPos);
+                    ++row;
+                    return true;
+                }
+                batch = null;
+                current = null;
+                if (error != null) {
+                    if (error instanceof SQLException) {
+                        throw (SQLException) error;
+                    }
+                    SQLException ex = new SQLException(error.getMessage());
+                    ex.initCause(error);
+                    throw ex;
+                }
+                if (closed || (finishedRanges == rangeCount)) {
+                    return false;
+                }
+                Object item = take();
+                if (item == null) {
+                    return false;
+                }
+                if (item == END_OF_RANGE) {
+                    ++finishedRanges;
+                } else {
+                    batch = (List<Object []>) item;
+                    batchPos = -1;
+                }
+            }
+        }
+
+        /**
+         * Takes the next item from the queue, checking for cancellation while
+         * waiting.
+         *
+         * @return next item, or null if the reader was closed while waiting
+         */
+        private Object take()
+            throws SQLException
+        {
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            Object item = queue.poll();
+            if (item != null) {
+                return item;
+            }
+            ++consumerWaitCount;
+            FarragoSessionRuntimeContext runtimeContext =
+                spec.getRuntimeContext();
+            try {
+                while (!closed) {
+                    if (runtimeContext != null) {
+                        runtimeContext.checkCancel();
+                    }
+                    item = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (item != null) {
+                        return item;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                SQLException sqlEx = new SQLException("interrupted");
+                sqlEx.initCause(ex);
+                throw sqlEx;
+            }
+            return null;
+        }
+
+        // implement AbstractResultSet
+        protected Object getRaw(int columnIndex)
+            throws SQLException
+        {
+            if (current == null) {
+                throw new SQLException("no current row");
+            }
+            return current[columnIndex - 1];
+        }
+
+        // override AbstractResultSet: raw values are already JDBC datetimes
+        public java.sql.Date getDate(int columnIndex)
+            throws SQLException
+        {
+            Object o = getRaw(columnIndex);
+            if (o instanceof java.sql.Date) {
+                wasNull = false;
+                return (java.sql.Date) o;
+            }
+            return super.getDate(columnIndex);
+        }
+
+        // override AbstractResultSet
+        public Time getTime(int columnIndex)
+            throws SQLException
+        {
+            Object o = getRaw(columnIndex);
+            if (o instanceof Time) {
+                wasNull = false;
+                return (Time) o;
+            }
+            return super.getTime(columnIndex);
+        }
+
+        // override AbstractResultSet
+        public Timestamp getTimestamp(int columnIndex)
+            throws SQLException
+        {
+            Object o = getRaw(columnIndex);
+            if (o instanceof Timestamp) {
+                wasNull = false;
+                return (Timestamp) o;
+            }
+            return super.getTimestamp(columnIndex);
+        }
+
+        // implement ResultSet
+        public ResultSetMetaData getMetaData()
+        {
+            return metaData;
+        }
+
+        // implement ResultSet
+        public int getRow()
+        {
+            return row;
+        }
+
+        // override AbstractResultSet
+        public void close()
+        {
+            closeAllocation();
+        }
+    }
+}
+
+// End MedJdbcSplitReader.java
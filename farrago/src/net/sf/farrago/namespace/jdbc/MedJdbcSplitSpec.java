@@ -0,0 +1,149 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import net.sf.farrago.session.*;
+
+
+/**
+ * MedJdbcSplitSpec describes how a foreign query is to be divided into range
+ * predicates on a split column so that the pieces can be read concurrently.
+ * It is generated by {@link MedJdbcQueryRel} at prepare time and passed as the
+ * runtime parameter to {@link MedJdbcDataServer#getRuntimeSupport}; the actual
+ * range boundaries are computed only at execution time, so that cached plans
+ * do not go stale as the remote data changes.
+ *
+ * <p>The range queries each take dynamic parameters for the boundaries:
+ * {@link #getLowSql} takes the first boundary (and also picks up rows with a
+ * null split column), {@link #getMidSql} takes a lower and an upper boundary,
+ * and {@link #getHighSql} takes the last boundary.
+ *
+ * <p>A spec without a bounds query describes a single unsplit query which is
+ * read ahead on a background thread; see {@link
+ * MedJdbcDataServer#PROP_READ_AHEAD_BATCHES}.
+ *
+ * @version $Id$
+ */
+public class MedJdbcSplitSpec
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final String sql;
+    private final String boundsSql;
+    private final String lowSql;
+    private final String midSql;
+    private final String highSql;
+    private final int splitCount;
+    private final FarragoSessionRuntimeContext runtimeContext;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new MedJdbcSplitSpec.
+     *
+     * @param sql unsplit query, used if the split column turns out to be
+     * unusable at runtime
+     * @param boundsSql query returning MIN and MAX of the split column
+     * @param lowSql query for the first range
+     * @param midSql query for interior ranges
+     * @param highSql query for the last range
+     * @param splitCount desired number of ranges
+     * @param runtimeContext context of the executing statement, checked for
+     * cancellation while waiting for rows
+     */
+    public MedJdbcSplitSpec(
+        String sql,
+        String boundsSql,
+        String lowSql,
+        String midSql,
+        String highSql,
+        int splitCount,
+        FarragoSessionRuntimeContext runtimeContext)
+    {
+        this.sql = sql;
+        this.boundsSql = boundsSql;
+        this.lowSql = lowSql;
+        this.midSql = midSql;
+        this.highSql = highSql;
+        this.splitCount = splitCount;
+        this.runtimeContext = runtimeContext;
+    }
+
+    /**
+     * Creates a new MedJdbcSplitSpec for a query which is read ahead without
+     * being split.
+     *
+     * @param sql query
+     * @param runtimeContext context of the executing statement, checked for
+     * cancellation while waiting for rows
+     */
+    public MedJdbcSplitSpec(
+        String sql,
+        FarragoSessionRuntimeContext runtimeContext)
+    {
+        this(sql, null, null, null, null, 1, runtimeContext);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public String getSql()
+    {
+        return sql;
+    }
+
+    public String getBoundsSql()
+    {
+        return boundsSql;
+    }
+
+    public String getLowSql()
+    {
+        return lowSql;
+    }
+
+    public String getMidSql()
+    {
+        return midSql;
+    }
+
+    public String getHighSql()
+    {
+        return highSql;
+    }
+
+    public int getSplitCount()
+    {
+        return splitCount;
+    }
+
+    /**
+     * @return whether the query is to be split into ranges at all
+     */
+    public boolean isSplit()
+    {
+        return (boundsSql != null) && (splitCount > 1);
+    }
+
+    public FarragoSessionRuntimeContext getRuntimeContext()
+    {
+        return runtimeContext;
+    }
+}
+
+// End MedJdbcSplitSpec.java
@@ -0,0 +1,88 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.util.*;
+
+
+/**
+ * MedJdbcTableStatistics records statistics about a foreign table as reported
+ * by the remote server: its row count, and the number of distinct values of
+ * whichever columns have been looked at so far. Any of these may be unknown.
+ *
+ * @version $Id$
+ */
+class MedJdbcTableStatistics
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final Double rowCount;
+    private final Map<String, Double> distinctCounts;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new MedJdbcTableStatistics.
+     *
+     * @param rowCount number of rows in the table, or null if unknown
+     */
+    MedJdbcTableStatistics(Double rowCount)
+    {
+        this.rowCount = rowCount;
+        distinctCounts = new HashMap<String, Double>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return number of rows in the table, or null if unknown
+     */
+    Double getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * @param columnName name of a column on the foreign server
+     *
+     * @return whether a distinct count (possibly unknown) has been recorded
+     * for the column
+     */
+    synchronized boolean hasDistinctCount(String columnName)
+    {
+        return distinctCounts.containsKey(columnName);
+    }
+
+    /**
+     * @param columnName name of a column on the foreign server
+     *
+     * @return number of distinct values in the column, or null if unknown
+     */
+    synchronized Double getDistinctCount(String columnName)
+    {
+        return distinctCounts.get(columnName);
+    }
+
+    synchronized void setDistinctCount(String columnName, Double distinctCount)
+    {
+        distinctCounts.put(columnName, distinctCount);
+    }
+}
+
+// End MedJdbcTableStatistics.java
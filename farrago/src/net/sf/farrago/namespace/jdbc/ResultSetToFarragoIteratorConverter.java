@@ -126,22 +126,48 @@ class ResultSetToFarragoIteratorConverter
             RelDataType type = field.getType();
             ExpressionList colPosExpList =
                 new ExpressionList(Literal.makeLiteral(i + 1));
+            boolean primitive =
+                SqlTypeUtil.isJavaPrimitive(type)
+                && (factory.getClassForPrimitive(type) != null);
+            if (primitive && type.isNullable()) {
+                // Read nullable primitives with the primitive getter and
+                // wasNull, straight into the row's reusable holder, rather
+                // than boxing through getObject and converting the object
+                // on assignment.
+                Expression holderExp =
+                    new FieldAccess(
+                        varTuple,
+                        Util.toJavaId(
+                            field.getName(),
+                            i));
+                methodBody.add(
+                    new ExpressionStatement(
+                        new AssignmentExpression(
+                            factory.getValueAccessExpression(type, holderExp),
+                            AssignmentExpression.EQUALS,
+                            new MethodCall(
+                                castResultSet,
+                                getPrimitiveMethodName(factory, type),
+                                colPosExpList))));
+                methodBody.add(
+                    new ExpressionStatement(
+                        new MethodCall(
+                            holderExp,
+                            NullableValue.NULL_IND_MUTATOR_NAME,
+                            new ExpressionList(
+                                new MethodCall(
+                                    castResultSet,
+                                    "wasNull",
+                                    new ExpressionList())))));
+                continue;
+            }
             Expression rhsExp;
-            if ((SqlTypeUtil.isJavaPrimitive(type)) && !type.isNullable()) {
-                // TODO:  make this official:  java.sql and java.nio
-                // use the same accessor names, happily,
-                // (except for boolean and tinyint, sadly)
-                String methodName =
-                    ReflectUtil.getByteBufferReadMethod(
-                        factory.getClassForPrimitive(type)).getName();
-                if (type.getSqlTypeName() == SqlTypeName.BOOLEAN) {
-                    methodName = "getBoolean";
-                }
-                if (type.getSqlTypeName() == SqlTypeName.TINYINT) {
-                    methodName = "getByte";
-                }
+            if (primitive) {
                 rhsExp =
-                    new MethodCall(castResultSet, methodName, colPosExpList);
+                    new MethodCall(
+                        castResultSet,
+                        getPrimitiveMethodName(factory, type),
+                        colPosExpList);
             } else {
                 String methodName;
                 if (SqlTypeUtil.inCharFamily(type)) {
@@ -252,6 +278,25 @@ class ResultSetToFarragoIteratorConverter
                     childObj)),
             memberList);
     }
+
+    private static String getPrimitiveMethodName(
+        FarragoTypeFactory factory,
+        RelDataType type)
+    {
+        // TODO:  make this official:  java.sql and java.nio
+        // use the same accessor names, happily,
+        // (except for boolean and tinyint, sadly)
+        String methodName =
+            ReflectUtil.getByteBufferReadMethod(
+                factory.getClassForPrimitive(type)).getName();
+        if (type.getSqlTypeName() == SqlTypeName.BOOLEAN) {
+            methodName = "getBoolean";
+        }
+        if (type.getSqlTypeName() == SqlTypeName.TINYINT) {
+            methodName = "getByte";
+        }
+        return methodName;
+    }
 }
 
 // End ResultSetToFarragoIteratorConverter.java
@@ -730,6 +730,62 @@ public class FarragoRexToOJTranslator
         return ojNullablePrimitive.isAssignableFrom(ojClass);
     }
 
+    // override RexToOJTranslator
+    public boolean isPrimitiveRepresentable(RelDataType type)
+    {
+        if (!SqlTypeUtil.isJavaPrimitive(type)) {
+            return false;
+        }
+        return !type.isNullable() || isNullablePrimitive(type);
+    }
+
+    // override RexToOJTranslator
+    public Expression translatePrimitiveValue(
+        Expression expr,
+        RelDataType type)
+    {
+        return getFarragoTypeFactory().getValueAccessExpression(type, expr);
+    }
+
+    // override RexToOJTranslator
+    public Expression translateNullTest(
+        Expression expr,
+        RelDataType type)
+    {
+        if (!type.isNullable()) {
+            return null;
+        }
+        return new MethodCall(
+            expr,
+            NullableValue.NULL_IND_ACCESSOR_NAME,
+            new ExpressionList());
+    }
+
+    // override RexToOJTranslator
+    public Statement translateSetNull(
+        Expression expr,
+        RelDataType type,
+        Expression isNull)
+    {
+        assert type.isNullable();
+        return new ExpressionStatement(
+            new MethodCall(
+                expr,
+                NullableValue.NULL_IND_MUTATOR_NAME,
+                new ExpressionList(isNull)));
+    }
+
+    // override RexToOJTranslator
+    public Expression translateOverflowException()
+    {
+        return new MethodCall(
+            new Literal(
+                Literal.STRING,
+                "net.sf.farrago.resource.FarragoResource.instance().Overflow"),
+            "ex",
+            new ExpressionList());
+    }
+
     public FieldAccess convertFieldAccess(
         Variable variable,
         RelDataTypeField field)
@@ -0,0 +1,96 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.query;
+
+import net.sf.farrago.session.*;
+
+import org.eigenbase.reltype.*;
+
+
+/**
+ * FarragoDeferredSubquery prepares, without executing, a non-correlated
+ * subquery whose value is to be computed each time the containing statement
+ * executes (see {@link FarragoPreparingStmt#bindRuntimeSubquery}). Preparing
+ * it up front checks that the subquery text can stand on its own as a
+ * statement, and leaves its implementation in the code cache for execution.
+ *
+ * @version $Id$
+ */
+public class FarragoDeferredSubquery
+    extends FarragoReentrantStmt
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final String sql;
+    private final boolean isExists;
+    private boolean failed;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Constructs a FarragoDeferredSubquery.
+     *
+     * @param rootStmtContext statement context for the root statement of the
+     * containing statement
+     * @param sql text of the subquery
+     * @param isExists whether the subquery is part of an EXISTS expression
+     */
+    FarragoDeferredSubquery(
+        FarragoSessionStmtContext rootStmtContext,
+        String sql,
+        boolean isExists)
+    {
+        super(rootStmtContext);
+        this.sql = sql;
+        this.isExists = isExists;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    protected void executeImpl()
+        throws Exception
+    {
+        // As when FarragoRuntimeContext executes the subquery, plan nested
+        // subqueries as joins so that the implementation can be cached.
+        FarragoSessionStmtContext stmtContext = getStmtContext();
+        stmtContext.getSession().disableSubqueryReduction();
+        stmtContext.prepare(sql, true);
+
+        // The subquery cannot have dynamic parameters, and a scalar subquery
+        // must have a single column.
+        RelDataType paramType = stmtContext.getPreparedParamType();
+        RelDataType rowType = stmtContext.getPreparedRowType();
+        if ((paramType.getFieldCount() > 0)
+            || (!isExists && (rowType.getFieldCount() != 1)))
+        {
+            failed = true;
+        }
+    }
+
+    /**
+     * @return whether the subquery was found unable to stand on its own as a
+     * statement; only valid after execution
+     */
+    boolean isFailed()
+    {
+        return failed;
+    }
+}
+
+// End FarragoDeferredSubquery.java
@@ -0,0 +1,267 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.query;
+
+import java.io.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import net.sf.farrago.fennel.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.oj.stmt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoExecutableAnalyzeStmt implements FarragoSessionExecutableStmt for an
+ * EXPLAIN PLAN WITH STATISTICS statement. It wraps the executable form of the
+ * explained query; execution runs the query to completion (discarding its
+ * rows) with Fennel stream profiling enabled, and returns the physical plan
+ * with each RelNode annotated by the statistics of the stream(s) implementing
+ * it. The statistics are also recorded on the session for access via
+ * sys_boot.mgmt.statement_profile_view.
+ *
+ * <p>Only Fennel streams are profiled; RelNodes implemented in Java are shown
+ * without annotations.
+ *
+ * <p>NOTE: be sure to read superclass warnings before modifying this class.
+ *
+ * @version $Id$
+ */
+class FarragoExecutableAnalyzeStmt
+    extends FarragoExecutableStmtImpl
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final FarragoSessionExecutableStmt queryStmt;
+
+    /**
+     * Physical plan, rendered with each line prefixed by "relId:".
+     */
+    private final String idPrefixedPlan;
+
+    //~ Constructors -----------------------------------------------------------
+
+    FarragoExecutableAnalyzeStmt(
+        FarragoSessionExecutableStmt queryStmt,
+        String idPrefixedPlan)
+    {
+        super(
+            queryStmt.getDynamicParamRowType(),
+            false,
+            null,
+            queryStmt.getTableAccessMap());
+
+        this.queryStmt = queryStmt;
+        this.idPrefixedPlan = idPrefixedPlan;
+        addAllocation(queryStmt);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement FarragoSessionExecutableStmt
+    public RelDataType getRowType()
+    {
+        // same as FarragoExecutableExplainStmt
+        throw new UnsupportedOperationException();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public List<List<String>> getFieldOrigins()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    // override FarragoExecutableStmtImpl
+    public Set<String> getReferencedObjectIds()
+    {
+        return queryStmt.getReferencedObjectIds();
+    }
+
+    // override FarragoExecutableStmtImpl
+    public String getReferencedObjectModTime(String mofid)
+    {
+        return queryStmt.getReferencedObjectModTime(mofid);
+    }
+
+    // override FarragoExecutableStmtImpl
+    public Map<String, RelDataType> getResultSetTypeMap()
+    {
+        return queryStmt.getResultSetTypeMap();
+    }
+
+    // override FarragoExecutableStmtImpl
+    public Map<String, RelDataType> getIterCalcTypeMap()
+    {
+        return queryStmt.getIterCalcTypeMap();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public ResultSet execute(FarragoSessionRuntimeContext runtimeContext)
+    {
+        runtimeContext.setStreamProfiling(true);
+        long startNanos = System.nanoTime();
+        long rowCount = 0;
+
+        // Closing the query's result set also closes runtimeContext (which
+        // captures the profile as the stream graph is released) and ends
+        // the repository session attached to it.
+        ResultSet resultSet = queryStmt.execute(runtimeContext);
+        try {
+            try {
+                while (resultSet.next()) {
+                    ++rowCount;
+                }
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException ex) {
+            throw Util.newInternal(ex);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        Map<String, FennelStreamProfile> profile =
+            runtimeContext.getStreamProfile();
+        runtimeContext.getSession().setStatementProfile(profile);
+
+        return PreparedExplanation.executeStatic(
+            annotatePlan(profile, rowCount, elapsedNanos));
+    }
+
+    private String annotatePlan(
+        Map<String, FennelStreamProfile> profile,
+        long rowCount,
+        long elapsedNanos)
+    {
+        // group streams by the RelNode which produced them
+        Map<Integer, List<FennelStreamProfile>> relMap =
+            new HashMap<Integer, List<FennelStreamProfile>>();
+        List<FennelStreamProfile> anonymous =
+            new ArrayList<FennelStreamProfile>();
+        for (FennelStreamProfile streamProfile : profile.values()) {
+            int relId = streamProfile.getRelId();
+            if (relId < 0) {
+                anonymous.add(streamProfile);
+                continue;
+            }
+            List<FennelStreamProfile> list = relMap.get(relId);
+            if (list == null) {
+                list = new ArrayList<FennelStreamProfile>();
+                relMap.put(relId, list);
+            }
+            list.add(streamProfile);
+        }
+
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        LineNumberReader lineReader =
+            new LineNumberReader(new StringReader(idPrefixedPlan));
+        try {
+            for (;;) {
+                String line = lineReader.readLine();
+                if (line == null) {
+                    break;
+                }
+                int iStart = 0;
+                while ((iStart < line.length())
+                    && (line.charAt(iStart) == ' '))
+                {
+                    ++iStart;
+                }
+                int iColon = line.indexOf(':', iStart);
+                Integer relId = null;
+                if (iColon > iStart) {
+                    try {
+                        relId =
+                            Integer.valueOf(line.substring(iStart, iColon));
+                    } catch (NumberFormatException ex) {
+                        // not a rel line (e.g. continuation); leave as is
+                    }
+                }
+                if (relId == null) {
+                    pw.println(line);
+                    continue;
+                }
+                pw.print(line.substring(0, iStart));
+                pw.print(line.substring(iColon + 1));
+                List<FennelStreamProfile> list = relMap.get(relId);
+                if (list != null) {
+                    pw.print(": ");
+                    pw.print(formatStatistics(list));
+                }
+                pw.println();
+            }
+        } catch (IOException ex) {
+            throw Util.newInternal(ex);
+        }
+        for (FennelStreamProfile streamProfile : anonymous) {
+            pw.print("  ");
+            pw.print(streamProfile.getStreamName());
+            pw.print(": ");
+            pw.print(
+                formatStatistics(Collections.singletonList(streamProfile)));
+            pw.println();
+        }
+        pw.print("Rows returned: ");
+        pw.print(rowCount);
+        pw.print(", elapsed: ");
+        pw.print(elapsedNanos / 1000);
+        pw.println("us");
+        pw.flush();
+        return sw.toString();
+    }
+
+    private static String formatStatistics(List<FennelStreamProfile> list)
+    {
+        long rowsIn = 0;
+        long rowsOut = 0;
+        long bytesOut = 0;
+        long executeCalls = 0;
+        long wallNanos = 0;
+        long cpuNanos = 0;
+        for (FennelStreamProfile streamProfile : list) {
+            rowsIn += streamProfile.getRowsIn();
+            rowsOut += streamProfile.getRowsOut();
+            bytesOut += streamProfile.getBytesOut();
+            executeCalls += streamProfile.getExecuteCalls();
+            wallNanos += streamProfile.getWallNanos();
+            cpuNanos += streamProfile.getCpuNanos();
+        }
+        return "[rows in=" + rowsIn
+            + ", rows out=" + rowsOut
+            + ", bytes out=" + bytesOut
+            + ", executions=" + executeCalls
+            + ", wall=" + (wallNanos / 1000) + "us"
+            + ", cpu=" + (cpuNanos / 1000) + "us]";
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public long getMemoryUsage()
+    {
+        return queryStmt.getMemoryUsage()
+            + FarragoUtil.getStringMemoryUsage(idPrefixedPlan);
+    }
+}
+
+// End FarragoExecutableAnalyzeStmt.java
@@ -21,6 +21,7 @@ package net.sf.farrago.query;
 import java.util.*;
 import java.util.logging.*;
 
+import net.sf.farrago.catalog.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.trace.*;
 import net.sf.farrago.util.*;
@@ -52,6 +53,8 @@ abstract class FarragoExecutableStmtImpl
     private final TableModificationRel.Operation tableModOp;
     private final RelDataType dynamicParamRowType;
     private final TableAccessMap tableAccessMap;
+    private Set<List<String>> cacheableResultTables;
+    private List<FarragoSessionPlanGuard> planGuards;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -116,6 +119,46 @@ abstract class FarragoExecutableStmtImpl
     {
         return Collections.EMPTY_MAP;
     }
+
+    // implement FarragoSessionExecutableStmt
+    public Set<List<String>> getCacheableResultTables()
+    {
+        return cacheableResultTables;
+    }
+
+    /**
+     * Marks the result of this statement as cacheable.
+     *
+     * @param cacheableResultTables see {@link #getCacheableResultTables}
+     */
+    void setCacheableResultTables(Set<List<String>> cacheableResultTables)
+    {
+        this.cacheableResultTables = cacheableResultTables;
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public boolean isValid(FarragoRepos repos)
+    {
+        if (planGuards == null) {
+            return true;
+        }
+        for (FarragoSessionPlanGuard guard : planGuards) {
+            if (!guard.isSatisfied(repos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the guards which must hold for this statement to be executed.
+     *
+     * @param planGuards guards, or null if there are none
+     */
+    void setPlanGuards(List<FarragoSessionPlanGuard> planGuards)
+    {
+        this.planGuards = planGuards;
+    }
 }
 
 // End FarragoExecutableStmtImpl.java
@@ -120,9 +120,35 @@ public class FarragoPreparingStmt
     private final Map<String, RelDataType> resultSetTypeMap;
     private final Map<String, RelDataType> iterCalcTypeMap;
     private boolean cachingDisabled;
+    private List<FarragoSessionPlanGuard> planGuards;
     private FarragoPreparingStmt parentStmt;
     private final FarragoSessionStmtContext rootStmtContext;
 
+    /**
+     * Runtime parameters bound by {@link #bindRuntimeParam}, keyed by the
+     * digest of the expression each one stands for.
+     */
+    private final Map<String, RexDynamicParam> runtimeParamMap;
+
+    /**
+     * Expressions bound to runtime parameters, in parameter order; null for a
+     * parameter bound to a subquery by {@link #bindRuntimeSubquery}.
+     */
+    private final List<RexNode> runtimeParamExps;
+
+    /**
+     * Subqueries bound to runtime parameters, keyed by parameter ordinal
+     * relative to the first runtime parameter.
+     */
+    private final Map<Integer, RuntimeSubquery> runtimeParamSubqueries;
+    private int firstRuntimeParamIndex;
+
+    /**
+     * Number of dynamic parameters in the statement text, counted before
+     * conversion starts; runtime parameters are numbered after them.
+     */
+    private int userParamCount;
+
     /**
      * Name of Java package containing code generated for this statement.
      */
@@ -191,6 +217,9 @@ public class FarragoPreparingStmt
 
         resultSetTypeMap = new HashMap<String, RelDataType>();
         iterCalcTypeMap = new HashMap<String, RelDataType>();
+        runtimeParamMap = new HashMap<String, RexDynamicParam>();
+        runtimeParamExps = new ArrayList<RexNode>();
+        runtimeParamSubqueries = new HashMap<Integer, RuntimeSubquery>();
 
         clearDmlValidation();
 
@@ -223,6 +252,202 @@ public class FarragoPreparingStmt
         cachingDisabled = true;
     }
 
+    /**
+     * Makes the plan being prepared depend on a condition which is checked
+     * each time the statement is executed; if the condition no longer holds,
+     * the statement is prepared again. Used by rules whose transformations
+     * are correct only while some state outside the catalog definitions of
+     * the objects referenced stays the same.
+     *
+     * @param guard condition on which the plan depends
+     */
+    public void addPlanGuard(FarragoSessionPlanGuard guard)
+    {
+        if (planGuards == null) {
+            planGuards = new ArrayList<FarragoSessionPlanGuard>();
+        }
+        planGuards.add(guard);
+    }
+
+    // implement FarragoSessionPreparingStmt
+    public RexDynamicParam bindRuntimeParam(
+        RelNode rel,
+        RexNode exp)
+    {
+        // Only bind types whose values survive the round trip through
+        // getDynamicParamValue, and only expressions the Java calculator can
+        // evaluate without further rewrites (decimals need
+        // ReduceDecimalsRule); the rest are reduced to literals as before.
+        RelDataType type = exp.getType();
+        if (!SqlTypeUtil.isNumeric(type)
+            && !SqlTypeUtil.inBooleanFamily(type)
+            && !SqlTypeUtil.inCharFamily(type)
+            && !SqlTypeUtil.isDatetime(type))
+        {
+            return null;
+        }
+        RexBuilder rexBuilder = rel.getCluster().getRexBuilder();
+        if (containsDecimal(exp)
+            || !getRelImplementor(rexBuilder).canTranslate(rel, exp, true))
+        {
+            return null;
+        }
+        String digest = exp.toString();
+        RexDynamicParam param = runtimeParamMap.get(digest);
+        if (param != null) {
+            return param;
+        }
+        param = newRuntimeParam(rexBuilder, type);
+        runtimeParamMap.put(digest, param);
+        runtimeParamExps.add(exp);
+        return param;
+    }
+
+    // implement FarragoSessionPreparingStmt
+    public RexDynamicParam bindRuntimeSubquery(
+        RexBuilder rexBuilder,
+        String sql,
+        RelDataType type,
+        boolean isExists)
+    {
+        // Subquery results arrive as JDBC values, so any type with a JDBC
+        // parameter representation will do.
+        if (!SqlTypeUtil.isNumeric(type)
+            && !SqlTypeUtil.inBooleanFamily(type)
+            && !SqlTypeUtil.inCharFamily(type)
+            && !SqlTypeUtil.inBinaryFamily(type)
+            && !SqlTypeUtil.isDatetime(type))
+        {
+            return null;
+        }
+        String digest = (isExists ? "EXISTS " : "SCALAR ") + sql;
+        RexDynamicParam param = runtimeParamMap.get(digest);
+        if (param != null) {
+            return param;
+        }
+        param = newRuntimeParam(rexBuilder, type);
+        runtimeParamMap.put(digest, param);
+        runtimeParamSubqueries.put(
+            runtimeParamExps.size(),
+            new RuntimeSubquery(sql, isExists));
+        runtimeParamExps.add(null);
+        return param;
+    }
+
+    private RexDynamicParam newRuntimeParam(
+        RexBuilder rexBuilder,
+        RelDataType type)
+    {
+        if (runtimeParamExps.isEmpty()) {
+            // Number runtime parameters after the user-level ones, including
+            // those not yet converted, and after any placeholders EXPLAIN
+            // PLAN allocated for subqueries.
+            SqlToRelConverter converter = getSqlToRelConverter();
+            firstRuntimeParamIndex =
+                Math.max(
+                    Math.max(
+                        userParamCount,
+                        converter.getDynamicParamCount()),
+                    converter.getDynamicParamCountInExplain(false));
+        }
+        if (SqlTypeUtil.isJavaPrimitive(type)) {
+            // Parameter values are always read into nullable holders.
+            type =
+                rexBuilder.getTypeFactory().createTypeWithNullability(
+                    type,
+                    true);
+        }
+        return rexBuilder.makeDynamicParam(
+            type,
+            firstRuntimeParamIndex + runtimeParamExps.size());
+    }
+
+    // implement FarragoSessionPreparingStmt
+    public boolean isRuntimeParam(RexDynamicParam param)
+    {
+        return !runtimeParamExps.isEmpty()
+            && (param.getIndex() >= firstRuntimeParamIndex);
+    }
+
+    // implement FarragoSessionPreparingStmt
+    public FennelDynamicParamId translateRuntimeParam(RexDynamicParam param)
+    {
+        assert isRuntimeParam(param) : param;
+        return relImplementor.translateRuntimeParam(param);
+    }
+
+    /**
+     * @return expressions bound to runtime parameters by {@link
+     * #bindRuntimeParam}, in parameter order
+     */
+    public List<RexNode> getRuntimeParamExps()
+    {
+        return runtimeParamExps;
+    }
+
+    /**
+     * @param ordinal ordinal of a runtime parameter, relative to the first
+     *
+     * @return subquery bound to the parameter by {@link
+     * #bindRuntimeSubquery}, or null if it is bound to an expression
+     */
+    public RuntimeSubquery getRuntimeParamSubquery(int ordinal)
+    {
+        return runtimeParamSubqueries.get(ordinal);
+    }
+
+    /**
+     * @return index of the first runtime parameter bound by {@link
+     * #bindRuntimeParam} or {@link #bindRuntimeSubquery}
+     */
+    public int getFirstRuntimeParamIndex()
+    {
+        return firstRuntimeParamIndex;
+    }
+
+    private static int countDynamicParams(SqlNode sqlNode)
+    {
+        final int [] count = { 0 };
+        sqlNode.accept(
+            new SqlBasicVisitor<Void>() {
+                public Void visit(SqlDynamicParam param)
+                {
+                    count[0] = Math.max(count[0], param.getIndex() + 1);
+                    return null;
+                }
+            });
+        return count[0];
+    }
+
+    private static boolean containsDecimal(RexNode exp)
+    {
+        try {
+            RexVisitor<Void> visitor =
+                new RexVisitorImpl<Void>(true) {
+                    public Void visitCall(RexCall call)
+                    {
+                        if (SqlTypeUtil.isDecimal(call.getType())) {
+                            throw new Util.FoundOne(call);
+                        }
+                        return super.visitCall(call);
+                    }
+
+                    public Void visitLiteral(RexLiteral literal)
+                    {
+                        if (SqlTypeUtil.isDecimal(literal.getType())) {
+                            throw new Util.FoundOne(literal);
+                        }
+                        return null;
+                    }
+                };
+            exp.accept(visitor);
+            return false;
+        } catch (Util.FoundOne e) {
+            Util.swallow(e, null);
+            return true;
+        }
+    }
+
     // implement FarragoSessionPreparingStmt
     public FarragoSessionStmtContext getRootStmtContext()
     {
@@ -331,6 +556,8 @@ public class FarragoPreparingStmt
             needValidation = true;
         }
 
+        userParamCount = countDynamicParams(sqlNode);
+
         definePackageName();
         PreparedResult preparedResult =
             prepareSql(
@@ -536,6 +763,12 @@ public class FarragoPreparingStmt
 
     protected boolean treeContainsJava(RelNode rootRel)
     {
+        // runtime parameters are evaluated by generated Java code, even
+        // when only Fennel streams read them
+        if (!runtimeParamExps.isEmpty()) {
+            return true;
+        }
+
         // if the topmost node isn't a FennelToIteratorConverter, then
         // we know we don't have a pure Fennel plan; otherwise, check
         // the rest of the tree, ignoring the converter, which we'll strip
@@ -661,6 +894,12 @@ public class FarragoPreparingStmt
                         tableAccessMap,
                         resultSetTypeMap);
             }
+            if (!preparedResult.isDml()) {
+                ((FarragoExecutableStmtImpl) executableStmt)
+                    .setCacheableResultTables(getCacheableResultTables());
+            }
+            ((FarragoExecutableStmtImpl) executableStmt).setPlanGuards(
+                planGuards);
         } else {
             assert (preparedResult instanceof PreparedExplanation);
             executableStmt =
@@ -677,9 +916,83 @@ public class FarragoPreparingStmt
             javaCodeDir = null;
         }
 
+        if (statisticsExplain != null) {
+            executableStmt =
+                implementStatisticsExplain(
+                    (PreparedExecution) preparedResult,
+                    executableStmt);
+        }
+
         return executableStmt;
     }
 
+    /**
+     * Determines whether the result of the query being implemented depends only
+     * on the contents of local tables (and its dynamic parameter values), so
+     * that it may be served from the database's result cache.
+     *
+     * @return fully qualified names of the local tables read by the query, or
+     * null if its result must not be cached
+     */
+    private Set<List<String>> getCacheableResultTables()
+    {
+        // Plans which are not cacheable or which bind expressions at
+        // execution time (CURRENT_DATE, subqueries) may produce different
+        // results for the same parameters.
+        if (!mayCacheImplementation() || !runtimeParamExps.isEmpty()) {
+            return null;
+        }
+        Set<List<String>> tables = new HashSet<List<String>>();
+        for (CwmModelElement element : allDependencies) {
+            if (element instanceof FemLocalTable) {
+                if (((FemLocalTable) element).isTemporary()) {
+                    // contents are private to each session
+                    return null;
+                }
+                tables.add(
+                    Arrays.asList(
+                        FarragoCatalogUtil.getQualifiedName(element).names));
+            } else if (!(element instanceof FemLocalView)) {
+                // Routines, foreign tables and the like may return different
+                // data without any local table being modified.
+                return null;
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Wraps the executable form of a query being explained WITH STATISTICS so
+     * that executing it runs the query and returns its annotated plan.
+     *
+     * @param preparedExecution prepared form of the query
+     * @param queryStmt executable form of the query
+     *
+     * @return wrapping executable statement
+     */
+    private FarragoSessionExecutableStmt implementStatisticsExplain(
+        PreparedExecution preparedExecution,
+        FarragoSessionExecutableStmt queryStmt)
+    {
+        if (preparedExecution.isDml()) {
+            queryStmt.closeAllocation();
+            throw FarragoResource.instance()
+                .ValidatorExplainStatisticsNotQuery.ex();
+        }
+
+        // Render the physical plan with rel ids so that statistics can be
+        // matched up with the Fennel streams after execution.
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        RelOptPlanWriter planWriter =
+            new RelOptPlanWriter(pw, statisticsExplain.getDetailLevel());
+        planWriter.setIdPrefix(true);
+        preparedExecution.getRootRel().explain(planWriter);
+        pw.flush();
+
+        return new FarragoExecutableAnalyzeStmt(queryStmt, sw.toString());
+    }
+
     // implement FarragoSessionPreparingStmt
     public void analyzeSql(
         SqlNode sqlNode,
@@ -1034,6 +1347,23 @@ public class FarragoPreparingStmt
         return relNode;
     }
 
+    /**
+     * Converts the text of a query into a relational expression in this
+     * statement's cluster, with views expanded and physical storage plugged
+     * in, so that it has the same form as the statement's own plan at the
+     * start of optimization. Used by rules which substitute stored query
+     * results for part of the plan.
+     *
+     * @param queryString text of query, with all names fully qualified
+     *
+     * @return relational expression
+     */
+    public RelNode expandQuery(String queryString)
+    {
+        RelNode relNode = expandView(null, queryString);
+        return getSqlToRelConverter().flattenTypes(relNode, true);
+    }
+
     RexNode expandInvocationExpression(
         SqlNode sqlExpr,
         FarragoRoutineInvocation invocation)
@@ -1798,6 +2128,38 @@ public class FarragoPreparingStmt
             this.rel = rel;
         }
     }
+
+    /**
+     * RuntimeSubquery describes a non-correlated subquery bound to a runtime
+     * parameter by {@link FarragoPreparingStmt#bindRuntimeSubquery}.
+     */
+    public static class RuntimeSubquery
+    {
+        private final String sql;
+        private final boolean isExists;
+
+        RuntimeSubquery(String sql, boolean isExists)
+        {
+            this.sql = sql;
+            this.isExists = isExists;
+        }
+
+        /**
+         * @return text of the subquery
+         */
+        public String getSql()
+        {
+            return sql;
+        }
+
+        /**
+         * @return whether the parameter stands for EXISTS over the subquery
+         */
+        public boolean isExists()
+        {
+            return isExists;
+        }
+    }
 }
 
 // End FarragoPreparingStmt.java
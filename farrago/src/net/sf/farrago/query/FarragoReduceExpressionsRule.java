@@ -363,18 +363,54 @@ public abstract class FarragoReduceExpressionsRule
             return true;
         }
 
-        // Compute the values they reduce to.
+        // Bind expressions which depend on dynamic functions such as
+        // CURRENT_DATE to runtime parameters rather than reducing them to
+        // literals; a literal would only be valid for this execution, so the
+        // plan could not be cached.  The rest are computed below.
         List<RexNode> reducedValues = new ArrayList<RexNode>();
-        ReentrantValuesStmt reentrantStmt =
-            new ReentrantValuesStmt(
-                preparingStmt.getRootStmtContext(),
-                rexBuilder,
-                constExps,
-                reducedValues);
-        FarragoSession session = getSession(rel);
-        reentrantStmt.execute(session, true);
-        if (reentrantStmt.failed) {
-            return false;
+        List<RexNode> literalExps = new ArrayList<RexNode>();
+        for (int i = 0; i < constExps.size(); i++) {
+            RexNode exp = constExps.get(i);
+            RexNode param = null;
+            if (containsDynamicFunction(exp)) {
+                if (preparingStmt.mayCacheImplementation()) {
+                    param = preparingStmt.bindRuntimeParam(rel, exp);
+                }
+                if (param == null) {
+                    // We can reduce the call to a constant, but we can't
+                    // cache the plan if the function is dynamic
+                    preparingStmt.disableStatementCaching();
+                } else if (param.getType() != exp.getType()) {
+                    // parameter was made nullable
+                    addCasts.set(i, true);
+                }
+            }
+            if (param == null) {
+                literalExps.add(exp);
+            }
+            reducedValues.add(param);
+        }
+
+        // Compute the values the rest reduce to.
+        if (!literalExps.isEmpty()) {
+            List<RexNode> literalValues = new ArrayList<RexNode>();
+            ReentrantValuesStmt reentrantStmt =
+                new ReentrantValuesStmt(
+                    preparingStmt.getRootStmtContext(),
+                    rexBuilder,
+                    literalExps,
+                    literalValues);
+            FarragoSession session = getSession(rel);
+            reentrantStmt.execute(session, true);
+            if (reentrantStmt.failed) {
+                return false;
+            }
+            Iterator<RexNode> literalIter = literalValues.iterator();
+            for (int i = 0; i < reducedValues.size(); i++) {
+                if (reducedValues.get(i) == null) {
+                    reducedValues.set(i, literalIter.next());
+                }
+            }
         }
 
         // For ProjectRel, we have to be sure to preserve the result
@@ -400,6 +436,33 @@ public abstract class FarragoReduceExpressionsRule
         return true;
     }
 
+    /**
+     * Returns whether an expression calls a dynamic function such as
+     * CURRENT_DATE, whose value may change from one execution to the next.
+     *
+     * @param exp a RexNode tree
+     */
+    private static boolean containsDynamicFunction(RexNode exp)
+    {
+        try {
+            RexVisitor<Void> visitor =
+                new RexVisitorImpl<Void>(true) {
+                    public Void visitCall(RexCall call)
+                    {
+                        if (call.getOperator().isDynamicFunction()) {
+                            throw new Util.FoundOne(call);
+                        }
+                        return super.visitCall(call);
+                    }
+                };
+            exp.accept(visitor);
+            return false;
+        } catch (Util.FoundOne e) {
+            Util.swallow(e, null);
+            return true;
+        }
+    }
+
     static FarragoSession getSession(RelNode rel)
     {
         FarragoSessionPlanner planner =
@@ -672,12 +735,10 @@ public abstract class FarragoReduceExpressionsRule
 
             // Even if all operands are constant, the call itself may
             // be non-deterministic.
+            // (Dynamic functions are reducible, but are bound to runtime
+            // parameters rather than literals; see reduceExpressions.)
             if (!call.getOperator().isDeterministic()) {
                 callConstancy = Constancy.NON_CONSTANT;
-            } else if (call.getOperator().isDynamicFunction()) {
-                // We can reduce the call to a constant, but we can't
-                // cache the plan if the function is dynamic
-                preparingStmt.disableStatementCaching();
             }
 
             // Row operator itself can't be reduced to a literal, but if
@@ -202,6 +202,13 @@ public abstract class FarragoReduceValuesRule
             if (conditionExpr != null) {
                 reducedValue = reducibleExps.get((row * fieldsPerRow) + i);
                 ++i;
+                if (!(reducedValue instanceof RexLiteral)
+                    && !RexUtil.isNullLiteral(reducedValue, true))
+                {
+                    // Condition was bound to a runtime parameter, so it
+                    // can't be decided until execution.
+                    return;
+                }
                 if (!reducedValue.isAlwaysTrue()) {
                     ++changeCount;
                     continue;
@@ -23,10 +23,12 @@ import java.util.List;
 import java.util.logging.*;
 
 import net.sf.farrago.catalog.*;
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fennel.*;
 import net.sf.farrago.fennel.rel.*;
 import net.sf.farrago.ojrex.*;
+import net.sf.farrago.runtime.*;
 import net.sf.farrago.trace.*;
 import net.sf.farrago.type.runtime.*;
 
@@ -37,6 +39,7 @@ import openjava.ptree.*;
 import org.eigenbase.jmi.*;
 import org.eigenbase.oj.rel.*;
 import org.eigenbase.oj.rex.*;
+import org.eigenbase.oj.util.*;
 import org.eigenbase.rel.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
@@ -98,6 +101,13 @@ public class FarragoRelImplementor
     // Maps a RelNode to its RelPathEntry list when the
     // isFirstTranslationInstance method was first called on the RelNode
     private Map<RelNode, List<RelPathEntry>> relToFirstRelPathEntryMap;
+
+    // Maps the ordinal of each runtime parameter read by a Fennel calculator
+    // program to the Fennel dynamic parameter which holds its value
+    private SortedMap<Integer, FennelDynamicParamId> runtimeParamIdMap;
+
+    // Types of the runtime parameters in runtimeParamIdMap
+    private Map<Integer, RelDataType> runtimeParamTypeMap;
     //~ Constructors -----------------------------------------------------------
 
     public FarragoRelImplementor(
@@ -130,6 +140,8 @@ public class FarragoRelImplementor
         transformMap = new HashMap<String, FarragoTransformDef>();
         relToStreamDefMap = new HashMap<RelNode, List<FemExecutionStreamDef>>();
         relToFirstRelPathEntryMap = new HashMap<RelNode, List<RelPathEntry>>();
+        runtimeParamIdMap = new TreeMap<Integer, FennelDynamicParamId>();
+        runtimeParamTypeMap = new HashMap<Integer, RelDataType>();
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -220,6 +232,31 @@ public class FarragoRelImplementor
         return dynamicParamId;
     }
 
+    /**
+     * Translates a runtime parameter into the Fennel dynamic parameter which
+     * holds its value. The values of all parameters translated before the
+     * root of the plan is implemented are written to Fennel just before the
+     * streams are opened.
+     *
+     * @param param runtime parameter
+     *
+     * @return physical ID to use in final plan
+     *
+     * @see FarragoPreparingStmt#translateRuntimeParam
+     */
+    public FennelDynamicParamId translateRuntimeParam(RexDynamicParam param)
+    {
+        int ordinal =
+            param.getIndex() - preparingStmt.getFirstRuntimeParamIndex();
+        FennelDynamicParamId dynamicParamId = runtimeParamIdMap.get(ordinal);
+        if (dynamicParamId == null) {
+            dynamicParamId = new FennelDynamicParamId(nextDynamicParamId++);
+            runtimeParamIdMap.put(ordinal, dynamicParamId);
+            runtimeParamTypeMap.put(ordinal, param.getType());
+        }
+        return dynamicParamId;
+    }
+
     // implement FennelRelImplementor
     public void setErrorRecordType(
         FennelRel rel,
@@ -584,14 +621,190 @@ public class FarragoRelImplementor
             null);
     }
 
+    // override JavaRelImplementor
+    public int getCalcBatchSize()
+    {
+        Integer batchSize =
+            preparingStmt.getSession().getSessionVariables().getInteger(
+                FarragoDefaultSessionPersonality.JAVA_CALC_BATCH_SIZE);
+        return (batchSize == null) ? 0 : batchSize;
+    }
+
     // override JavaRelImplementor
     public Expression implementRoot(JavaRel rel)
     {
         Expression exp = super.implementRoot(rel);
+        exp = implementRuntimeParams(rel, exp);
         preparingStmt.prepareForCompilation();
         return exp;
     }
 
+    /**
+     * Wraps the root of a plan so that the runtime parameters bound during
+     * preparation (see {@link FarragoPreparingStmt#bindRuntimeParam} and
+     * {@link FarragoPreparingStmt#bindRuntimeSubquery}) are evaluated when
+     * the plan starts executing. The generated code looks
+     * like:
+     *
+     * <blockquote>
+     * <pre>
+     * connection.bindRuntimeParams(
+     *     firstParamIndex,
+     *     new FarragoRuntimeParamEvaluator() {
+     *         public Object [] evaluate() {
+     *             ...
+     *             return new Object [] {
+     *                 param0,
+     *                 connection.executeRuntimeSubquery(sql1, isExists1),
+     *                 ... };
+     *         }
+     *     },
+     *     rootExp)</pre>
+     * </blockquote>
+     *
+     * @param rel root of plan
+     * @param rootExp implementation of rel
+     *
+     * @return rootExp, wrapped if the plan has any runtime parameters
+     */
+    private Expression implementRuntimeParams(
+        JavaRel rel,
+        Expression rootExp)
+    {
+        List<RexNode> paramExps = preparingStmt.getRuntimeParamExps();
+        if (paramExps.isEmpty()) {
+            return rootExp;
+        }
+        StatementList stmtList = new StatementList();
+        MemberDeclarationList memberList = new MemberDeclarationList();
+        FarragoRexToOJTranslator translator =
+            (FarragoRexToOJTranslator) newStmtTranslator(
+                rel,
+                stmtList,
+                memberList);
+        ExpressionList valueList = new ExpressionList();
+        for (int i = 0; i < paramExps.size(); i++) {
+            FarragoPreparingStmt.RuntimeSubquery subquery =
+                preparingStmt.getRuntimeParamSubquery(i);
+            if (subquery != null) {
+                // The runtime context executes the subquery as a separate
+                // statement and returns its value in parameter form.
+                valueList.add(
+                    new MethodCall(
+                        getConnectionVariable(),
+                        "executeRuntimeSubquery",
+                        new ExpressionList(
+                            Literal.makeLiteral(subquery.getSql()),
+                            subquery.isExists() ? Literal.constantTrue()
+                            : Literal.constantFalse())));
+                continue;
+            }
+            RexNode paramExp = paramExps.get(i);
+
+            // Assign each value to a nullable holder, which the runtime
+            // context converts to the object a dynamic parameter would hold.
+            RelDataType holderType =
+                getTypeFactory().createTypeWithNullability(
+                    paramExp.getType(),
+                    true);
+            valueList.add(
+                translator.convertCastOrAssignmentWithStmtList(
+                    stmtList,
+                    paramExp.toString(),
+                    holderType,
+                    paramExp.getType(),
+                    null,
+                    translator.translateRexNode(paramExp)));
+        }
+        stmtList.add(
+            new ReturnStatement(
+                new ArrayAllocationExpression(
+                    OJUtil.clazzObject,
+                    new ExpressionList(null),
+                    new ArrayInitializer(valueList))));
+        memberList.add(
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PUBLIC),
+                TypeName.forOJClass(OJUtil.clazzObjectArray),
+                "evaluate",
+                new ParameterList(),
+                null,
+                stmtList));
+        Expression evaluatorExp =
+            new AllocationExpression(
+                OJUtil.typeNameForClass(FarragoRuntimeParamEvaluator.class),
+                new ExpressionList(),
+                memberList);
+        return new MethodCall(
+            getConnectionVariable(),
+            "bindRuntimeParams",
+            new ExpressionList(
+                Literal.makeLiteral(preparingStmt.getFirstRuntimeParamIndex()),
+                evaluatorExp,
+                implementFennelRuntimeParamIds(paramExps.size()),
+                implementFennelRuntimeParamTypeLookup(),
+                rootExp));
+    }
+
+    /**
+     * Generates an array holding, for each runtime parameter, the id of the
+     * Fennel dynamic parameter to which its value is written, or 0 if no
+     * Fennel stream reads it.
+     *
+     * @param paramCount number of runtime parameters
+     *
+     * @return array expression, or a null literal if no Fennel stream reads
+     * any runtime parameter
+     */
+    private Expression implementFennelRuntimeParamIds(int paramCount)
+    {
+        if (runtimeParamIdMap.isEmpty()) {
+            return Literal.constantNull();
+        }
+        ExpressionList idList = new ExpressionList();
+        for (int i = 0; i < paramCount; i++) {
+            FennelDynamicParamId dynamicParamId = runtimeParamIdMap.get(i);
+            idList.add(
+                Literal.makeLiteral(
+                    (dynamicParamId == null) ? 0
+                    : dynamicParamId.intValue()));
+        }
+        return new ArrayAllocationExpression(
+            TypeName.forOJClass(OJSystem.INT),
+            new ExpressionList(null),
+            new ArrayInitializer(idList));
+    }
+
+    /**
+     * Stores the row type of the runtime parameters read by Fennel streams,
+     * in parameter order, and generates a call which will retrieve it from
+     * the runtime context.
+     *
+     * @return call expression, or a null literal if no Fennel stream reads
+     * any runtime parameter
+     */
+    private Expression implementFennelRuntimeParamTypeLookup()
+    {
+        if (runtimeParamIdMap.isEmpty()) {
+            return Literal.constantNull();
+        }
+        List<RelDataType> typeList = new ArrayList<RelDataType>();
+        List<String> nameList = new ArrayList<String>();
+        for (Integer ordinal : runtimeParamIdMap.keySet()) {
+            typeList.add(runtimeParamTypeMap.get(ordinal));
+            nameList.add("?" + ordinal);
+        }
+        preparingStmt.mapResultSetType(
+            FarragoRuntimeContext.RUNTIME_PARAM_RESULT_SET_NAME,
+            getTypeFactory().createStructType(typeList, nameList));
+        return new MethodCall(
+            getConnectionVariable(),
+            "getRowTypeForResultSet",
+            new ExpressionList(
+                Literal.makeLiteral(
+                    FarragoRuntimeContext.RUNTIME_PARAM_RESULT_SET_NAME)));
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     /**
@@ -19,12 +19,19 @@
 package net.sf.farrago.query;
 
 import java.util.*;
+import java.util.logging.*;
 
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
 
+import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
 import org.eigenbase.sql.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.sql.validate.*;
 import org.eigenbase.sql2rel.*;
+import org.eigenbase.util.*;
 
 
 /**
@@ -36,12 +43,23 @@ import org.eigenbase.sql2rel.*;
  * EXISTS with a boolean value indicating whether the subquery returns zero
  * (FALSE) or at least one (TRUE) row.
  *
+ * <p>If the session variable reduceNonCorrelatedSubqueriesAtExecution is set,
+ * the subquery is instead replaced with a runtime parameter, which is
+ * evaluated by executing the subquery each time the containing statement
+ * executes. The statement can then be cached, and predicates on the parameter
+ * can still be used for index searches.
+ *
  * @author Zelaine Fong
  * @version $Id$
  */
 public class ScalarSubqueryConverter
     implements SubqueryConverter
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(ScalarSubqueryConverter.class);
+
     //~ Instance fields --------------------------------------------------------
 
     private final FarragoSessionPreparingStmt stmt;
@@ -68,6 +86,23 @@ public class ScalarSubqueryConverter
         boolean isExists,
         boolean isExplain)
     {
+        // EXPLAIN takes the same path, so that it shows the plan which will be
+        // cached; the subquery is prepared but not executed either way.
+        if (stmt.mayCacheImplementation()
+            && stmt.getSession().getSessionVariables().getBoolean(
+                FarragoDefaultSessionPersonality
+                .REDUCE_NON_CORRELATED_SUBQUERIES_AT_EXECUTION))
+        {
+            RexNode param =
+                convertSubqueryAtExecution(
+                    subquery,
+                    parentConverter,
+                    isExists);
+            if (param != null) {
+                return param;
+            }
+        }
+
         // Use a FarragoReentrantSubquery to evaluate the subquery
         List<RexNode> reducedValues = new ArrayList<RexNode>();
         FarragoReentrantSubquery reentrantStmt =
@@ -85,6 +120,70 @@ public class ScalarSubqueryConverter
             return reducedValues.get(0);
         }
     }
+
+    /**
+     * Replaces a subquery with a runtime parameter which is evaluated when
+     * the statement executes.
+     *
+     * @param subquery the subquery
+     * @param parentConverter sqlToRelConverter associated with the parent query
+     * @param isExists whether the subquery is part of an EXISTS expression
+     *
+     * @return expression referencing the runtime parameter, or null if the
+     * subquery can't be evaluated at execution time
+     */
+    private RexNode convertSubqueryAtExecution(
+        SqlCall subquery,
+        SqlToRelConverter parentConverter,
+        boolean isExists)
+    {
+        RexBuilder rexBuilder = parentConverter.getRexBuilder();
+        SqlSelect select = (SqlSelect) subquery.getOperands()[0];
+        RelDataType resultType;
+        if (isExists) {
+            resultType =
+                rexBuilder.getTypeFactory().createSqlType(
+                    SqlTypeName.BOOLEAN);
+        } else {
+            SqlValidator validator = stmt.getSqlValidator();
+            resultType =
+                subquery.getOperator().deriveType(
+                    validator,
+                    validator.getFromScope(select),
+                    subquery);
+        }
+
+        // The validated subquery is fully qualified, so its text can be
+        // prepared as a statement of its own.
+        SqlDialect dialect =
+            SqlDialect.create(stmt.getSession().getDatabaseMetaData());
+        String sql = select.toSqlString(dialect).getSql();
+        FarragoDeferredSubquery deferredStmt =
+            new FarragoDeferredSubquery(
+                stmt.getRootStmtContext(),
+                sql,
+                isExists);
+        try {
+            deferredStmt.execute(stmt.getSession(), true);
+        } catch (EigenbaseException ex) {
+            // For example, the subquery refers to a WITH item of the
+            // containing query; evaluate it while preparing instead.
+            tracer.log(Level.FINE, "cannot defer subquery " + sql, ex);
+            return null;
+        }
+        if (deferredStmt.isFailed()) {
+            return null;
+        }
+        RexDynamicParam param =
+            stmt.bindRuntimeSubquery(rexBuilder, sql, resultType, isExists);
+        if (param == null) {
+            return null;
+        }
+        if (param.getType() != resultType) {
+            return rexBuilder.makeCast(resultType, param);
+        }
+        return param;
+    }
 }
 
 // End ScalarSubqueryConverter.java
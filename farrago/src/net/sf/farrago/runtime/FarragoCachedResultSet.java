@@ -0,0 +1,101 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.runtime;
+
+import java.util.*;
+
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.runtime.*;
+
+
+/**
+ * FarragoCachedResultSet is a refinement of FarragoTupleIterResultSet which
+ * returns rows previously recorded from another result set (see {@link
+ * FarragoTupleIterResultSet#setRowListener}) rather than executing a query.
+ * It holds no runtime context or transaction.
+ *
+ * @version $Id$
+ */
+public class FarragoCachedResultSet
+    extends FarragoTupleIterResultSet
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoCachedResultSet object.
+     *
+     * @param rows recorded rows, each an array of column values
+     * @param rowType type info for rows produced
+     * @param fieldOrigins Origin of each field as a column of a catalog object
+     */
+    public FarragoCachedResultSet(
+        List<Object []> rows,
+        RelDataType rowType,
+        List<List<String>> fieldOrigins)
+    {
+        super(
+            new RestartableCollectionTupleIter(rows),
+            null,
+            rowType,
+            fieldOrigins,
+            null,
+            new ArrayColumnGetter(rowType));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement AbstractResultSet
+    protected Object getRaw(int columnIndex)
+    {
+        Object obj = super.getRaw(columnIndex);
+        wasNull = (obj == null);
+        return obj;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * ColumnGetter that reads columns from an array of values.
+     */
+    private static class ArrayColumnGetter
+        implements ColumnGetter
+    {
+        private final RelDataType rowType;
+
+        ArrayColumnGetter(RelDataType rowType)
+        {
+            this.rowType = rowType;
+        }
+
+        public String [] getColumnNames()
+        {
+            return RelOptUtil.getFieldNames(rowType);
+        }
+
+        public Object get(
+            Object o,
+            int columnIndex)
+        {
+            return ((Object []) o)[columnIndex - 1];
+        }
+    }
+}
+
+// End FarragoCachedResultSet.java
@@ -18,6 +18,10 @@
 */
 package net.sf.farrago.runtime;
 
+import java.io.*;
+
+import java.math.*;
+
 import java.nio.*;
 
 import java.sql.*;
@@ -32,6 +36,7 @@ import net.sf.farrago.catalog.*;
 import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fem.med.*;
 import net.sf.farrago.fennel.*;
+import net.sf.farrago.fennel.tuple.*;
 import net.sf.farrago.namespace.*;
 import net.sf.farrago.namespace.util.*;
 import net.sf.farrago.plugin.*;
@@ -46,8 +51,10 @@ import org.eigenbase.jmi.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.runtime.*;
+import org.eigenbase.sql.type.*;
 import org.eigenbase.trace.*;
 import org.eigenbase.util.*;
+import org.eigenbase.util14.*;
 
 
 /**
@@ -73,6 +80,12 @@ public class FarragoRuntimeContext
         threadInvocationStack =
             new ThreadLocal<List<FarragoUdrInvocationFrame>>();
 
+    /**
+     * Name under which the row type of the runtime parameters read by Fennel
+     * streams is looked up with {@link #getRowTypeForResultSet}.
+     */
+    public static final String RUNTIME_PARAM_RESULT_SET_NAME = "RuntimeParams";
+
     //~ Instance fields --------------------------------------------------------
 
     private final FarragoSession session;
@@ -97,6 +110,32 @@ public class FarragoRuntimeContext
         new HashMap<String, FarragoTransform>();
 
     protected final Object [] dynamicParamValues;
+
+    /**
+     * Values of runtime parameters, computed at the start of execution by
+     * {@link #bindRuntimeParams}; null if the statement has none.
+     */
+    private Object [] runtimeParamValues;
+
+    /**
+     * Index of the first runtime parameter; runtime parameters follow any
+     * user-level dynamic parameters.
+     */
+    private int firstRuntimeParamIndex;
+
+    /**
+     * For each runtime parameter, the id of the Fennel dynamic parameter to
+     * which {@link #openStreams} writes its value, or 0 if no Fennel stream
+     * reads it; null if no Fennel stream reads any runtime parameter.
+     */
+    private int [] runtimeParamFennelIds;
+
+    /**
+     * Row type of the runtime parameters with a nonzero entry in {@link
+     * #runtimeParamFennelIds}, in parameter order.
+     */
+    private RelDataType runtimeParamFennelRowType;
+
     protected FennelStreamGraph streamGraph;
 
     /**
@@ -115,6 +154,9 @@ public class FarragoRuntimeContext
     private ClassLoader statementClassLoader;
     protected Map<String, RelDataType> resultSetTypeMap;
     protected long stmtId;
+    private boolean streamProfiling;
+    private Map<String, FennelStreamProfile> streamProfile =
+        Collections.emptyMap();
 
     private NativeRuntimeContext nativeContext;
 
@@ -255,6 +297,13 @@ public class FarragoRuntimeContext
 
     private void closeStreamGraph()
     {
+        if (streamProfiling && (streamGraph != null)) {
+            // capture statistics before the graph goes back to the cache,
+            // and don't leave profiling enabled for the next user
+            streamProfile = streamGraph.getProfile();
+            streamGraph.setProfiling(false);
+        }
+
         // make sure all streams get closed BEFORE they are deallocated
         streamOwner.closeAllocation();
         if (!isDml) {
@@ -367,9 +416,230 @@ public class FarragoRuntimeContext
      */
     public Object getDynamicParamValue(int paramIndex)
     {
+        if ((runtimeParamValues != null)
+            && (paramIndex >= firstRuntimeParamIndex))
+        {
+            return runtimeParamValues[paramIndex - firstRuntimeParamIndex];
+        }
         return dynamicParamValues[paramIndex];
     }
 
+    /**
+     * Called from generated code at the start of execution. Evaluates the
+     * statement's runtime parameters, after which they can be read like
+     * user-level dynamic parameters via {@link #getDynamicParamValue}.
+     *
+     * @param firstParamIndex 0-based index of the first runtime parameter
+     * @param evaluator generated code which computes the parameter values
+     * @param fennelParamIds for each runtime parameter, the id of the Fennel
+     * dynamic parameter to which its value is written before the streams are
+     * opened, or 0 if none; null if no Fennel stream reads any of them
+     * @param fennelParamRowType row type of the parameters with a nonzero
+     * entry in fennelParamIds, or null
+     * @param result result of the generated execute method
+     *
+     * @return result, unchanged
+     */
+    public Object bindRuntimeParams(
+        int firstParamIndex,
+        FarragoRuntimeParamEvaluator evaluator,
+        int [] fennelParamIds,
+        RelDataType fennelParamRowType,
+        Object result)
+    {
+        Object [] values = evaluator.evaluate();
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value instanceof SpecialDataValue) {
+                // keep datetime values zoneless
+                value = ((SpecialDataValue) value).getSpecialData();
+            } else if (value instanceof DataValue) {
+                value = ((DataValue) value).getNullableData();
+            }
+            values[i] = value;
+        }
+        firstRuntimeParamIndex = firstParamIndex;
+        runtimeParamValues = values;
+        runtimeParamFennelIds = fennelParamIds;
+        runtimeParamFennelRowType = fennelParamRowType;
+        return result;
+    }
+
+    /**
+     * Writes the values of the runtime parameters read by Fennel streams to
+     * the stream graph's dynamic parameters.
+     */
+    private void writeRuntimeParams()
+    {
+        RelDataTypeField [] fields = runtimeParamFennelRowType.getFields();
+        FennelTupleDescriptor tupleDesc =
+            FennelUtil.convertRowTypeToFennelTupleDesc(
+                runtimeParamFennelRowType);
+        FennelTupleData tupleData = new FennelTupleData(tupleDesc);
+        int [] paramIds = new int[fields.length];
+        int iField = 0;
+        for (int i = 0; i < runtimeParamFennelIds.length; i++) {
+            if (runtimeParamFennelIds[i] == 0) {
+                continue;
+            }
+            paramIds[iField] = runtimeParamFennelIds[i];
+            setRuntimeParamDatum(
+                tupleData.getDatum(iField),
+                fields[iField].getType(),
+                runtimeParamValues[i]);
+            ++iField;
+        }
+        assert (iField == fields.length);
+        streamGraph.writeDynamicParams(paramIds, tupleDesc, tupleData);
+    }
+
+    /**
+     * Converts the value of a runtime parameter into its Fennel
+     * representation.
+     *
+     * @param datum receives the value
+     * @param type type of the parameter
+     * @param value value in the form returned by {@link
+     * #getDynamicParamValue}
+     */
+    private static void setRuntimeParamDatum(
+        FennelTupleDatum datum,
+        RelDataType type,
+        Object value)
+    {
+        datum.reset();
+        if (value == null) {
+            return;
+        }
+        switch (type.getSqlTypeName()) {
+        case BOOLEAN:
+            datum.setBoolean((Boolean) value);
+            break;
+        case REAL:
+            datum.setFloat(((Number) value).floatValue());
+            break;
+        case FLOAT:
+        case DOUBLE:
+            datum.setDouble(((Number) value).doubleValue());
+            break;
+        case DECIMAL:
+            datum.setLong(
+                ((BigDecimal) value).setScale(
+                    type.getScale(),
+                    RoundingMode.HALF_UP).unscaledValue().longValue());
+            break;
+        case DATE:
+        case TIME:
+        case TIMESTAMP:
+            datum.setLong(((ZonelessDatetime) value).getTime());
+            break;
+        case CHAR:
+        case VARCHAR:
+            String s = (String) value;
+            if (type.getSqlTypeName() == SqlTypeName.CHAR) {
+                s = Util.rpad(s, type.getPrecision());
+            }
+            try {
+                datum.setString(
+                    s,
+                    datum.isUnicode() ? ConversionUtil.NATIVE_UTF16_CHARSET_NAME
+                    : "ISO-8859-1");
+            } catch (UnsupportedEncodingException ex) {
+                throw Util.newInternal(ex);
+            }
+            break;
+        case BINARY:
+            byte [] bytes = (byte []) value;
+            byte [] padded = new byte[type.getPrecision()];
+            System.arraycopy(
+                bytes,
+                0,
+                padded,
+                0,
+                Math.min(bytes.length, padded.length));
+            datum.setBytes(padded);
+            break;
+        case VARBINARY:
+            datum.setBytes((byte []) value);
+            break;
+        default:
+            datum.setLong(((Number) value).longValue());
+            break;
+        }
+    }
+
+    /**
+     * Called from generated code while evaluating runtime parameters.
+     * Executes a non-correlated subquery as a separate statement on a
+     * reentrant session. The subquery's plan is looked up in the code cache
+     * like that of any other statement, so it is only compiled once.
+     *
+     * @param sql text of the subquery
+     * @param isExists if true, return whether the subquery returns any rows;
+     * otherwise, return its single value, or null if it returns no rows
+     *
+     * @return result of the subquery, in the form of a dynamic parameter
+     * value
+     */
+    public Object executeRuntimeSubquery(String sql, boolean isExists)
+    {
+        FarragoSession reentrantSession =
+            session.getSessionFactory().newReentrantSession(session);
+        FarragoSessionStmtContext subqueryContext = null;
+        try {
+            // Plan nested subqueries as joins rather than evaluating them
+            // while preparing, which would keep the plan out of the cache.
+            reentrantSession.disableSubqueryReduction();
+            FarragoSessionStmtContext rootContext = null;
+            if (stmtContext != null) {
+                rootContext = stmtContext.getRootStmtContext();
+                if (rootContext == null) {
+                    rootContext = stmtContext;
+                }
+            }
+            subqueryContext =
+                reentrantSession.newStmtContext(null, rootContext);
+            subqueryContext.prepare(sql, true);
+            subqueryContext.execute();
+            ResultSet resultSet = subqueryContext.getResultSet();
+            try {
+                if (isExists) {
+                    return Boolean.valueOf(resultSet.next());
+                }
+                if (!resultSet.next()) {
+                    return null;
+                }
+                Object value = getRawValue(resultSet);
+                if (resultSet.next()) {
+                    throw FarragoResource.instance()
+                    .SessionScalarSubqueryMultipleRows.ex();
+                }
+                return value;
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException ex) {
+            throw FarragoResource.instance().SessionReentrantStmtFailed.ex(ex);
+        } finally {
+            if (subqueryContext != null) {
+                subqueryContext.closeAllocation();
+            }
+            session.getSessionFactory().releaseReentrantSession(
+                reentrantSession);
+        }
+    }
+
+    private static Object getRawValue(ResultSet resultSet)
+        throws SQLException
+    {
+        // Read the value in its internal form (e.g. ZonelessDate rather than
+        // java.sql.Date), which is the form of user-level parameter values.
+        if (resultSet instanceof FarragoTupleIterResultSet) {
+            return ((FarragoTupleIterResultSet) resultSet).getRaw(1);
+        }
+        return resultSet.getObject(1);
+    }
+
     /**
      * Called from generated code.
      *
@@ -661,6 +931,12 @@ public class FarragoRuntimeContext
     public void openStreams()
     {
         assert (streamGraph != null);
+        if (streamProfiling) {
+            streamGraph.setProfiling(true);
+        }
+        if (runtimeParamFennelIds != null) {
+            writeRuntimeParams();
+        }
         streamGraph.open(fennelTxnContext, this, this);
     }
 
@@ -670,6 +946,18 @@ public class FarragoRuntimeContext
         return streamGraph;
     }
 
+    // implement FarragoSessionRuntimeContext
+    public void setStreamProfiling(boolean profiling)
+    {
+        streamProfiling = profiling;
+    }
+
+    // implement FarragoSessionRuntimeContext
+    public Map<String, FennelStreamProfile> getStreamProfile()
+    {
+        return streamProfile;
+    }
+
     /**
      * Creates a FennelTupleIter for executing a plan represented as XML. This
      * is called at execution from code generated by FennelToIteratorConverter.
@@ -0,0 +1,46 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.runtime;
+
+/**
+ * FarragoRuntimeParamEvaluator is implemented by generated code which computes
+ * the values of runtime parameters. A runtime parameter stands in for a
+ * constant expression which depends on a dynamic function such as
+ * CURRENT_DATE; the planner binds such expressions to parameters so that the
+ * resulting plan can be cached, and the generated evaluator computes them
+ * once at the start of each execution. See {@link
+ * FarragoRuntimeContext#bindRuntimeParams}.
+ *
+ * @version $Id$
+ */
+public interface FarragoRuntimeParamEvaluator
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Evaluates the runtime parameters of a statement.
+     *
+     * @return parameter values, in parameter order; each value is either a
+     * boxed primitive or a runtime holder such as a {@link
+     * net.sf.farrago.type.runtime.NullableValue}
+     */
+    Object [] evaluate();
+}
+
+// End FarragoRuntimeParamEvaluator.java
@@ -56,6 +56,17 @@ public class FarragoTupleIterResultSet
     private final RelDataType rowType;
     private final List<List<String>> fieldOrigins;
 
+    /**
+     * Receives a copy of each row fetched, or null if rows are not being
+     * copied.
+     */
+    private RowListener rowListener;
+
+    /**
+     * Notified when this result set is closed, or null.
+     */
+    private CloseListener closeListener;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -137,6 +148,17 @@ public class FarragoTupleIterResultSet
         }
     }
 
+    /**
+     * Requests that a copy of each row subsequently fetched be passed to a
+     * listener. Call before the first row is fetched.
+     *
+     * @param rowListener listener to receive rows
+     */
+    public void setRowListener(RowListener rowListener)
+    {
+        this.rowListener = rowListener;
+    }
+
     // implement ResultSet
     public boolean next()
         throws SQLException
@@ -157,6 +179,9 @@ public class FarragoTupleIterResultSet
                 detachMdrSession = true;
             }
             boolean rc = super.next();
+            if (rowListener != null) {
+                notifyRowListener(rc);
+            }
             if (!rc) {
                 if (runtimeContext != null) {
                     FarragoSession session = runtimeContext.getSession();
@@ -205,6 +230,17 @@ public class FarragoTupleIterResultSet
         return new FarragoResultSetMetaData(rowType, fieldOrigins);
     }
 
+    /**
+     * Sets a listener to be notified when this result set is closed, whether
+     * by its own close method or by the statement which produced it.
+     *
+     * @param closeListener listener, or null to remove the current listener
+     */
+    public void setCloseListener(CloseListener closeListener)
+    {
+        this.closeListener = closeListener;
+    }
+
     // implement ResultSet
     public void close()
         throws SQLException
@@ -212,6 +248,16 @@ public class FarragoTupleIterResultSet
         if (tracer.isLoggable(Level.FINE)) {
             tracer.fine(toString());
         }
+        if (closeListener != null) {
+            CloseListener listener = closeListener;
+            closeListener = null;
+            listener.onClose(getRow());
+        }
+        if (rowListener != null) {
+            // closed before the last row was fetched
+            rowListener.onClose(false);
+            rowListener = null;
+        }
         FarragoSessionRuntimeContext allocationToClose = runtimeContext;
         if (allocationToClose != null) {
             // NOTE:  this may be called reentrantly for daemon stmts,
@@ -229,6 +275,22 @@ public class FarragoTupleIterResultSet
         super.close();
     }
 
+    private void notifyRowListener(boolean hasRow)
+    {
+        if (!hasRow) {
+            rowListener.onClose(true);
+            rowListener = null;
+            return;
+        }
+        Object [] row = new Object[rowType.getFieldCount()];
+        for (int i = 0; i < row.length; ++i) {
+            row[i] = getRaw(i + 1);
+        }
+        if (!rowListener.onRow(row)) {
+            rowListener = null;
+        }
+    }
+
     // implement AbstractResultSet
     protected Object getRaw(int columnIndex)
     {
@@ -246,6 +308,48 @@ public class FarragoTupleIterResultSet
         }
         return obj;
     }
+
+    //~ Inner Interfaces -------------------------------------------------------
+
+    /**
+     * RowListener receives copies of the rows fetched from a
+     * FarragoTupleIterResultSet; see {@link #setRowListener}.
+     */
+    public interface RowListener
+    {
+        /**
+         * Receives a row which has just been fetched.
+         *
+         * @param row values of the row, as returned by {@link #getRaw}; the
+         * array belongs to the listener
+         *
+         * @return false if the listener does not want any more rows
+         */
+        public boolean onRow(Object [] row);
+
+        /**
+         * Notifies the listener that no more rows will be passed to it. Not
+         * called once {@link #onRow} has returned false.
+         *
+         * @param endOfData true if all rows have been fetched; false if the
+         * result set was closed early
+         */
+        public void onClose(boolean endOfData);
+    }
+
+    /**
+     * CloseListener is notified when a FarragoTupleIterResultSet is closed;
+     * see {@link #setCloseListener}.
+     */
+    public interface CloseListener
+    {
+        /**
+         * Notifies the listener that the result set is being closed.
+         *
+         * @param rowCount number of rows fetched before the close
+         */
+        public void onClose(long rowCount);
+    }
 }
 
 // End FarragoTupleIterResultSet.java
@@ -29,6 +29,7 @@ import javax.jmi.reflect.*;
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.plugin.*;
 import net.sf.farrago.fennel.FennelDbHandle;
+import net.sf.farrago.fennel.FennelStreamProfile;
 import net.sf.farrago.namespace.util.FarragoDataWrapperCache;
 import net.sf.farrago.util.*;
 
@@ -366,6 +367,22 @@ public interface FarragoSession
      */
     public FarragoWarningQueue getWarningQueue();
 
+    /**
+     * Records the per-stream statistics collected by the most recent EXPLAIN
+     * PLAN WITH STATISTICS executed in this session.
+     *
+     * @param profile map from global stream name to statistics
+     */
+    public void setStatementProfile(Map<String, FennelStreamProfile> profile);
+
+    /**
+     * Gets the statistics recorded by {@link #setStatementProfile}.
+     *
+     * @return map from global stream name to statistics; empty if no
+     * statement has been profiled in this session
+     */
+    public Map<String, FennelStreamProfile> getStatementProfile();
+
     /**
      * Disables subquery reduction for the current session.
      */
@@ -22,6 +22,7 @@ import java.sql.*;
 
 import java.util.*;
 
+import net.sf.farrago.catalog.*;
 import net.sf.farrago.util.*;
 
 import org.eigenbase.rel.*;
@@ -124,6 +125,27 @@ public interface FarragoSessionExecutableStmt
      * Map from IterCalcRel tag to row type.
      */
     public Map<String, RelDataType> getIterCalcTypeMap();
+
+    /**
+     * Returns the tables which determine the result of this statement, if its
+     * result depends only on their contents and its dynamic parameter values,
+     * so that it may be cached and reused until one of them is modified.
+     *
+     * @return fully qualified names of the tables read by this statement, or
+     * null if its result must not be cached
+     */
+    public Set<List<String>> getCacheableResultTables();
+
+    /**
+     * Checks the {@link FarragoSessionPlanGuard guards} registered while this
+     * statement was prepared. Called before each execution.
+     *
+     * @param repos repository
+     *
+     * @return false if the statement must be prepared again before it is
+     * executed
+     */
+    public boolean isValid(FarragoRepos repos);
 }
 
 // End FarragoSessionExecutableStmt.java
@@ -270,6 +270,19 @@ public interface FarragoSessionPersonality
     public FarragoSessionVariables createInheritedSessionVariables(
         FarragoSessionVariables variables);
 
+    /**
+     * Returns a string identifying the values of any session variables which
+     * influence how this personality prepares statements. It is appended to
+     * the key under which prepared statements are cached, so that a statement
+     * prepared under one setting is not reused under another.
+     *
+     * @param variables the session variables object
+     *
+     * @return key suffix, or the empty string if preparation does not depend
+     * on any session variables
+     */
+    public String getCodeCacheKeySuffix(FarragoSessionVariables variables);
+
     /**
      * Checks whether a parameter value is appropriate for a session variable
      * and, if the value is appropriate, sets the session variable. If an error
@@ -0,0 +1,51 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.session;
+
+import net.sf.farrago.catalog.*;
+
+
+/**
+ * FarragoSessionPlanGuard is a condition on which the correctness of a
+ * prepared plan depends, other than the catalog definitions of the objects it
+ * references. For example, a plan which reads a stored aggregate in place of
+ * part of a query is correct only while the stored aggregate is current. The
+ * condition is checked each time the plan is executed, and the statement is
+ * prepared again if it no longer holds.
+ *
+ * @version $Id$
+ * @see FarragoSessionExecutableStmt#isValid
+ */
+public interface FarragoSessionPlanGuard
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Checks whether the condition still holds. Called before each execution
+     * of a statement whose plan depends on it; implementations which read
+     * the catalog must do so in their own repository transaction.
+     *
+     * @param repos repository
+     *
+     * @return true if a plan which depends on this guard may be executed
+     */
+    public boolean isSatisfied(FarragoRepos repos);
+}
+
+// End FarragoSessionPlanGuard.java
@@ -26,6 +26,7 @@ import net.sf.farrago.util.*;
 import org.eigenbase.oj.rel.*;
 import org.eigenbase.rel.*;
 import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.advise.*;
@@ -124,6 +125,66 @@ public interface FarragoSessionPreparingStmt
      */
     public void disableStatementCaching();
 
+    /**
+     * Binds a constant expression which depends on dynamic functions (such as
+     * CURRENT_DATE) to a runtime parameter. The generated plan evaluates the
+     * expression once at the start of each execution, so unlike reducing it
+     * to a literal, binding it does not prevent the plan from being cached.
+     *
+     * @param rel relational expression containing exp
+     * @param exp expression to bind
+     *
+     * @return dynamic parameter standing for exp (the same parameter for
+     * every occurrence of exp), or null if exp cannot be evaluated as a
+     * runtime parameter
+     */
+    public RexDynamicParam bindRuntimeParam(
+        RelNode rel,
+        RexNode exp);
+
+    /**
+     * Binds a non-correlated subquery to a runtime parameter. The generated
+     * plan executes the subquery as a separate statement at the start of
+     * each execution, before any of the statement's own streams are opened.
+     *
+     * @param rexBuilder builder for the parameter
+     * @param sql text of the subquery, fully qualified
+     * @param type type of the subquery's result
+     * @param isExists whether the parameter stands for EXISTS over the
+     * subquery rather than for its single value
+     *
+     * @return dynamic parameter standing for the subquery, or null if the
+     * subquery's result cannot be passed as a runtime parameter
+     */
+    public RexDynamicParam bindRuntimeSubquery(
+        RexBuilder rexBuilder,
+        String sql,
+        RelDataType type,
+        boolean isExists);
+
+    /**
+     * Determines whether a dynamic parameter was bound by {@link
+     * #bindRuntimeParam} or {@link #bindRuntimeSubquery}. Fennel calculator
+     * programs can read such a parameter, since its value is written to a
+     * Fennel dynamic parameter before the statement's streams are opened.
+     *
+     * @param param dynamic parameter
+     *
+     * @return whether param is a runtime parameter
+     */
+    public boolean isRuntimeParam(RexDynamicParam param);
+
+    /**
+     * Translates a runtime parameter into the Fennel dynamic parameter which
+     * holds its value during execution.
+     *
+     * @param param runtime parameter
+     *
+     * @return Fennel dynamic parameter id (the same one for every call with
+     * the same parameter)
+     */
+    public FennelDynamicParamId translateRuntimeParam(RexDynamicParam param);
+
     /**
      * @return generic stmt validator
      */
@@ -18,6 +18,8 @@
 */
 package net.sf.farrago.session;
 
+import java.util.*;
+
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fennel.*;
 import net.sf.farrago.util.*;
@@ -92,6 +94,25 @@ public interface FarragoSessionRuntimeContext
      */
     public FennelStreamGraph getFennelStreamGraph();
 
+    /**
+     * Requests collection of per-stream execution statistics for the Fennel
+     * stream graph opened by this context. Must be called before {@link
+     * #openStreams}.
+     *
+     * @param profiling whether to collect statistics
+     */
+    public void setStreamProfiling(boolean profiling);
+
+    /**
+     * Retrieves the per-stream statistics collected when stream profiling was
+     * enabled. The statistics are captured as the stream graph is closed, so
+     * they remain available after this context has been closed.
+     *
+     * @return map from global stream name to statistics, in dataflow order;
+     * empty if profiling was not enabled or no Fennel plan was executed
+     */
+    public Map<String, FennelStreamProfile> getStreamProfile();
+
     /**
      * Retrieves the FennelStreamHandle corresponding to a stream
      *
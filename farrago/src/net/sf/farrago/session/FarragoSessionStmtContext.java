@@ -255,6 +255,12 @@ public interface FarragoSessionStmtContext
      * @param childStmtContext
      */
     public void addChildStmtContext(FarragoSessionStmtContext childStmtContext);
+
+    /**
+     * @return the root context of an internally generated statement, or null
+     * if this context is itself a root context
+     */
+    public FarragoSessionStmtContext getRootStmtContext();
 }
 
 // End FarragoSessionStmtContext.java
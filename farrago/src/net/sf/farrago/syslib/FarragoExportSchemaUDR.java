@@ -29,6 +29,11 @@ import java.util.logging.*;
 
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.cwm.relational.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.sql2003.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.runtime.*;
 import net.sf.farrago.session.*;
@@ -295,6 +300,143 @@ public abstract class FarragoExportSchemaUDR
             true); // deleteFailedFiles
     }
 
+    /**
+     * Exports tables within a schema to flat files with BCP files, running
+     * several tables, or several row ranges of large tables, at once. Each
+     * worker uses its own session, but all of them run in the transaction of
+     * the calling statement, so every table and row range is read from the
+     * same snapshot even if the tables are being modified. Output files are
+     * the same as for {@link #exportSchemaToFile}.
+     *
+     * @param catalog name of the catalog where schema resides, if null, default
+     * catalog
+     * @param schema name of local schema
+     * @param exclude if true, tables matching either the table_list of the
+     * table_pattern will be excluded. if false, tables will be included
+     * @param tableList comma separated list of tables or null value if
+     * table_pattern is being used
+     * @param tablePattern table name pattern where '_' represents any single
+     * character
+     * @param directory the directory in which to place the exported CSV and BCP
+     * files
+     * @param withBcp indicates whether BCP files should be created. If true,
+     * BCP files will be created. If false, they will not be created
+     * @param deleteFailedFiles if true, csv and bcp files for tables which fail
+     * during export will be deleted, otherwise they will remain
+     * @param fieldDelimiter used to delimit column fields in the flat file if
+     * null, defaults to tab separated
+     * @param fileExtension the file extension for the created flat file, if
+     * null, defaults to .txt
+     * @param dateFormat format for DATE fields ({@link SimpleDateFormat})
+     * @param timeFormat format for TIME fields ({@link SimpleDateFormat})
+     * @param timestampFormat format for TIMESTAMP fields ({@link
+     * SimpleDateFormat})
+     * @param parallelism maximum number of tables or table splits to export
+     * at once; if null or not positive, the number of available processors
+     * @param splitRows approximate number of rows per split when a stored
+     * table is split by LCS_RID range; if null or not positive, tables are
+     * not split. Tables whose personality does not support LCS_RID are
+     * never split.
+     */
+    public static void exportSchemaToFileParallel(
+        String catalog,
+        String schema,
+        boolean exclude,
+        String tableList,
+        String tablePattern,
+        String directory,
+        boolean withBcp,
+        boolean deleteFailedFiles,
+        String fieldDelimiter,
+        String fileExtension,
+        String dateFormat,
+        String timeFormat,
+        String timestampFormat,
+        Integer parallelism,
+        Long splitRows)
+        throws SQLException
+    {
+        Connection conn =
+            DriverManager.getConnection("jdbc:default:connection");
+
+        // sort so that the log lists tables in a predictable order
+        Set<String> tableNames =
+            new TreeSet<String>(
+                getLocalTableNames(
+                    catalog,
+                    schema,
+                    exclude,
+                    tableList,
+                    tablePattern,
+                    conn));
+
+        if ((parallelism == null) || (parallelism <= 0)) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        if ((fieldDelimiter == null) || (fieldDelimiter.contains("\\t"))) {
+            fieldDelimiter = TAB;
+        }
+        if (fileExtension == null) {
+            fileExtension = ".txt";
+        }
+
+        directory = FarragoProperties.instance().expandProperties(directory);
+        File csvDir = new File(directory);
+        createExportDir(csvDir);
+        File logFile = newLogFile(FULL_EXPORT, csvDir);
+        String logFileName = logFile.toString();
+        Writer logOut = openLogFile(logFile);
+
+        FarragoParallelExport export =
+            new FarragoParallelExport(
+                parallelism,
+                withBcp,
+                deleteFailedFiles,
+                fieldDelimiter,
+                dateFormat,
+                timeFormat,
+                timestampFormat);
+        for (String tblName : tableNames) {
+            String querySql =
+                buildQuerySql(
+                    FULL_EXPORT,
+                    catalog,
+                    schema,
+                    tblName,
+                    null,
+                    null,
+                    null,
+                    null);
+            List<String> splitQueries =
+                buildSplitQueries(
+                    catalog,
+                    schema,
+                    tblName,
+                    querySql,
+                    (splitRows == null) ? 0 : splitRows,
+                    conn);
+            export.addTable(
+                tblName,
+                splitQueries,
+                new File(csvDir, tblName + fileExtension),
+                new File(csvDir, tblName + ".bcp"));
+        }
+
+        try {
+            export.execute(logOut, logFileName);
+        } finally {
+            try {
+                logOut.flush();
+                logOut.close();
+            } catch (IOException ie) {
+                throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
+                    logFileName,
+                    ie.getMessage(),
+                    ie);
+            }
+        }
+    }
+
     /**
      * Exports tables within a foreign schema to CSV/BCP files
      *
@@ -1070,53 +1212,12 @@ public abstract class FarragoExportSchemaUDR
             // we need to strip off the base filename.
             csvDir = csvDir.getParentFile();
         }
-        try {
-            csvDir.mkdirs();
-        } catch (Throwable e) {
-            throw FarragoResource.instance().ExportSchemaCreateDirFailed.ex(
-                csvDir.toString(),
-                e.getMessage(),
-                e);
-        }
-        if (!csvDir.exists() || !csvDir.isDirectory()) {
-            throw FarragoResource.instance().ExportSchemaCreateDirFailed.ex(
-                csvDir.toString(),
-                "mkdir");
-        }
+        createExportDir(csvDir);
 
         // create export log file
-        File logDir = null;
-        FarragoSessionVariables sessionVariables =
-            FarragoUdrRuntime.getSession().getSessionVariables();
-        String logDirVarName = FarragoSessionVariables.LOG_DIR;
-        if (sessionVariables.containsVariable(logDirVarName)) {
-            String logDirString = sessionVariables.get(logDirVarName);
-            if (logDirString != null) {
-                logDir = new File(logDirString);
-            }
-        }
-
-        if (logDir == null) {
-            // logDir isn't set so use the same directory as csv
-            logDir = csvDir;
-        }
-
-        logFile =
-            new File(
-                logDir,
-                LOGFILE_PREFIX + EXPORT_TYPES[expType]
-                + "_" + getTimestampString() + ".log");
+        logFile = newLogFile(expType, csvDir);
         String logFileName = logFile.toString();
-        try {
-            logOut = new FileWriter(logFile, false);
-        } catch (IOException e) {
-            throw FarragoResource.instance().ExportSchemaCreateFileWriterFailed
-            .ex(
-                logFileName,
-                e.getMessage(),
-                e);
-        }
-        logOut = new BufferedWriter(logOut);
+        logOut = openLogFile(logFile);
 
         Iterator<String> tableIter;
         if (tableNames != null) {
@@ -1130,29 +1231,6 @@ public abstract class FarragoExportSchemaUDR
         ResultSet tblData;
         ResultSetMetaData tblMeta;
 
-        try {
-            logOut.write(
-                QUOTE + "TableName" + QUOTE + TAB + QUOTE
-                + "StartTime" + QUOTE + TAB + QUOTE + "ExportType" + QUOTE
-                + TAB + QUOTE + "Status" + QUOTE + TAB + QUOTE + "EndTime"
-                + QUOTE + TAB + QUOTE + "Reason" + QUOTE + NEWLINE);
-        } catch (IOException ie) {
-            try {
-                logOut.flush();
-                logOut.close();
-                logFile.delete();
-            } catch (IOException ie2) {
-                throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
-                    logFileName,
-                    ie.getMessage() + ie2.getMessage(),
-                    ie);
-            }
-            throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
-                logFileName,
-                ie.getMessage(),
-                ie);
-        }
-
         // field delimiter for data file defaults to tab
         if ((fieldDelimiter == null) || (fieldDelimiter.contains("\\t"))) {
             fieldDelimiter = TAB;
@@ -1500,6 +1578,211 @@ public abstract class FarragoExportSchemaUDR
         }
     }
 
+    /**
+     * Helper function which divides the query for a stored table into
+     * queries over consecutive LCS_RID ranges, based on the table's row
+     * counts in the catalog. The first and last ranges are open-ended, so
+     * the splits return all rows even if the row counts are stale. In
+     * LucidDB, each range is pushed into the table scan, so a split only
+     * reads its own rows. If the table is small, is not a stored table, or
+     * its personality does not support LCS_RID, the unsplit query is
+     * returned.
+     *
+     * @param catalog name of catalog
+     * @param schema name of local schema
+     * @param tblName name of table
+     * @param querySql query returning all rows of the table
+     * @param splitRows approximate number of rows per split; 0 for no split
+     * @param conn connection to the database
+     *
+     * @return list of queries which together return all rows of the table
+     */
+    private static List<String> buildSplitQueries(
+        String catalog,
+        String schema,
+        String tblName,
+        String querySql,
+        long splitRows,
+        Connection conn)
+    {
+        List<String> queries = new ArrayList<String>();
+        queries.add(querySql);
+        if (splitRows <= 0) {
+            return queries;
+        }
+
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        if (catalog == null) {
+            catalog = session.getSessionVariables().catalogName;
+        }
+        CwmCatalog cwmCatalog = session.getRepos().getCatalog(catalog);
+        if (cwmCatalog == null) {
+            return queries;
+        }
+        FemLocalSchema femSchema =
+            FarragoCatalogUtil.getSchemaByName(cwmCatalog, schema);
+        if (femSchema == null) {
+            return queries;
+        }
+        FemLocalTable table =
+            FarragoCatalogUtil.getModelElementByNameAndType(
+                femSchema.getOwnedElement(),
+                tblName,
+                FemLocalTable.class);
+        if (table == null) {
+            return queries;
+        }
+        Long [] rowCounts = new Long[2];
+        FarragoCatalogUtil.getRowCounts(table, null, rowCounts);
+        long nRids = 0;
+        for (Long rowCount : rowCounts) {
+            if (rowCount != null) {
+                nRids += rowCount;
+            }
+        }
+        long nSplits = (nRids + splitRows - 1) / splitRows;
+        if (nSplits <= 1) {
+            return queries;
+        }
+
+        // LCS_RID of any column gives the row's rid
+        String ridExpr =
+            "lcs_rid("
+            + SqlDialect.EIGENBASE.quoteIdentifier(
+                Util.cast(table.getFeature(), FemAbstractColumn.class).get(0)
+                .getName())
+            + ")";
+        List<String> splitQueries = new ArrayList<String>();
+        for (long i = 0; i < nSplits; i++) {
+            StringBuilder sb = new StringBuilder(querySql);
+            sb.append(" where ");
+            if (i > 0) {
+                sb.append(ridExpr).append(" >= ").append(i * splitRows);
+            }
+            if (i < (nSplits - 1)) {
+                if (i > 0) {
+                    sb.append(" and ");
+                }
+                sb.append(ridExpr).append(" < ").append((i + 1) * splitRows);
+            }
+            splitQueries.add(sb.toString());
+        }
+
+        // make sure the personality understands LCS_RID
+        try {
+            conn.prepareStatement(splitQueries.get(0)).close();
+        } catch (SQLException ex) {
+            tracer.fine(
+                "not splitting " + tblName + ": " + ex.getMessage());
+            return queries;
+        }
+        return splitQueries;
+    }
+
+    /**
+     * Helper function which creates the export directory if it does not
+     * already exist
+     *
+     * @param csvDir directory to create
+     */
+    private static void createExportDir(File csvDir)
+    {
+        try {
+            csvDir.mkdirs();
+        } catch (Throwable e) {
+            throw FarragoResource.instance().ExportSchemaCreateDirFailed.ex(
+                csvDir.toString(),
+                e.getMessage(),
+                e);
+        }
+        if (!csvDir.exists() || !csvDir.isDirectory()) {
+            throw FarragoResource.instance().ExportSchemaCreateDirFailed.ex(
+                csvDir.toString(),
+                "mkdir");
+        }
+    }
+
+    /**
+     * Helper function which chooses the name of the export log file, in the
+     * session's log directory if one is set, otherwise in the export
+     * directory
+     *
+     * @param expType type of export
+     * @param csvDir export directory
+     *
+     * @return log file
+     */
+    private static File newLogFile(int expType, File csvDir)
+    {
+        File logDir = null;
+        FarragoSessionVariables sessionVariables =
+            FarragoUdrRuntime.getSession().getSessionVariables();
+        String logDirVarName = FarragoSessionVariables.LOG_DIR;
+        if (sessionVariables.containsVariable(logDirVarName)) {
+            String logDirString = sessionVariables.get(logDirVarName);
+            if (logDirString != null) {
+                logDir = new File(logDirString);
+            }
+        }
+
+        if (logDir == null) {
+            // logDir isn't set so use the same directory as csv
+            logDir = csvDir;
+        }
+
+        return new File(
+            logDir,
+            LOGFILE_PREFIX + EXPORT_TYPES[expType]
+            + "_" + getTimestampString() + ".log");
+    }
+
+    /**
+     * Helper function which opens the export log file and writes its header
+     *
+     * @param logFile log file
+     *
+     * @return writer for the log file
+     */
+    private static Writer openLogFile(File logFile)
+    {
+        String logFileName = logFile.toString();
+        Writer logOut;
+        try {
+            logOut = new FileWriter(logFile, false);
+        } catch (IOException e) {
+            throw FarragoResource.instance().ExportSchemaCreateFileWriterFailed
+            .ex(
+                logFileName,
+                e.getMessage(),
+                e);
+        }
+        logOut = new BufferedWriter(logOut);
+
+        try {
+            logOut.write(
+                QUOTE + "TableName" + QUOTE + TAB + QUOTE
+                + "StartTime" + QUOTE + TAB + QUOTE + "ExportType" + QUOTE
+                + TAB + QUOTE + "Status" + QUOTE + TAB + QUOTE + "EndTime"
+                + QUOTE + TAB + QUOTE + "Reason" + QUOTE + NEWLINE);
+        } catch (IOException ie) {
+            try {
+                logOut.flush();
+                logOut.close();
+                logFile.delete();
+            } catch (IOException ie2) {
+                throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
+                    logFileName,
+                    ie.getMessage() + ie2.getMessage(),
+                    ie);
+            }
+            throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
+                logFileName,
+                ie.getMessage(),
+                ie);
+        }
+        return logOut;
+    }
+
     // TODO jvs 25-Sept-2006: Versions of two methods below in UDX form so that
     // querySql doesn't have to be quoted.  Or, better, enhance procedure
     // support to take CURSOR parameters.
@@ -33,6 +33,7 @@ import net.sf.farrago.cwm.relational.*;
 import net.sf.farrago.db.*;
 import net.sf.farrago.defimpl.*;
 import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.fennel.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.runtime.*;
 import net.sf.farrago.session.*;
@@ -112,6 +113,15 @@ public abstract class FarragoManagementUDR
         perf_counter_info.put(
             "DatabasePagesExtendedSinceInit",
             new String[]{"Storage", null, "pages"});
+        perf_counter_info.put(
+            "DatabasePagesDeallocatedSinceInit",
+            new String[]{"Storage", null, "pages"});
+        perf_counter_info.put(
+            "DatabasePagesAllocatedSinceDeallocateOld",
+            new String[]{"Storage", null, "pages"});
+        perf_counter_info.put(
+            "DatabaseDeallocateOldIncomplete",
+            new String[]{"Storage", null, null});
         perf_counter_info.put(
             "TempPagesAllocated", new String[]{"Storage", null, "pages"});
         perf_counter_info.put(
@@ -203,6 +213,36 @@ public abstract class FarragoManagementUDR
             new String[]{"Buffer Pool Statistics", "Write-Specific", "pages"});
         perf_counter_info.put(
             "JvmNanoTime", new String[]{"Miscellaneous", null, "ns"});
+        perf_counter_info.put(
+            "CodeCacheBytesCached",
+            new String[]{"Code Cache Statistics", null, "bytes"});
+        perf_counter_info.put(
+            "CodeCacheHits",
+            new String[]{"Code Cache Statistics", null, null});
+        perf_counter_info.put(
+            "CodeCacheMisses",
+            new String[]{"Code Cache Statistics", null, null});
+        perf_counter_info.put(
+            "CodeCacheEvictions",
+            new String[]{"Code Cache Statistics", null, null});
+        perf_counter_info.put(
+            "CodeCachePinWaits",
+            new String[]{"Code Cache Statistics", null, null});
+        perf_counter_info.put(
+            "CodeCachePinWaitTime",
+            new String[]{"Code Cache Statistics", null, "ms"});
+        perf_counter_info.put(
+            "ResultCacheBytesCached",
+            new String[]{"Result Cache Statistics", null, "bytes"});
+        perf_counter_info.put(
+            "ResultCacheHits",
+            new String[]{"Result Cache Statistics", null, null});
+        perf_counter_info.put(
+            "ResultCacheMisses",
+            new String[]{"Result Cache Statistics", null, null});
+        perf_counter_info.put(
+            "ResultCacheEvictions",
+            new String[]{"Result Cache Statistics", null, null});
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -344,6 +384,82 @@ public abstract class FarragoManagementUDR
         }
     }
 
+    /**
+     * Lists the per-stream statistics collected by the last EXPLAIN PLAN WITH
+     * STATISTICS executed in the current session.
+     *
+     * @param resultInserter inserts one row per Fennel stream
+     */
+    public static void statementProfile(PreparedStatement resultInserter)
+        throws SQLException
+    {
+        Map<String, FennelStreamProfile> profile =
+            FarragoUdrRuntime.getSession().getStatementProfile();
+        for (FennelStreamProfile streamProfile : profile.values()) {
+            int i = 0;
+            resultInserter.setString(++i, streamProfile.getStreamName());
+            int relId = streamProfile.getRelId();
+            if (relId < 0) {
+                resultInserter.setNull(++i, Types.INTEGER);
+            } else {
+                resultInserter.setInt(++i, relId);
+            }
+            resultInserter.setLong(++i, streamProfile.getExecuteCalls());
+            resultInserter.setLong(++i, streamProfile.getWallNanos() / 1000);
+            resultInserter.setLong(++i, streamProfile.getCpuNanos() / 1000);
+            resultInserter.setLong(++i, streamProfile.getRowsIn());
+            resultInserter.setLong(++i, streamProfile.getRowsOut());
+            resultInserter.setLong(++i, streamProfile.getBytesIn());
+            resultInserter.setLong(++i, streamProfile.getBytesOut());
+            resultInserter.executeUpdate();
+        }
+    }
+
+    /**
+     * Populates a table of cumulative execution statistics for statements,
+     * keyed by normalized SQL text.
+     */
+    public static void statementStatistics(PreparedStatement resultInserter)
+        throws SQLException
+    {
+        FarragoSession callerSession = FarragoUdrRuntime.getSession();
+        FarragoDatabase db = ((FarragoDbSession) callerSession).getDatabase();
+        for (
+            FarragoStmtStatsRegistry.Entry entry
+            : db.getStatementStatistics().getEntries())
+        {
+            int i = 0;
+            resultInserter.setString(++i, entry.getSql());
+            resultInserter.setLong(++i, entry.getCalls());
+            resultInserter.setLong(++i, entry.getExecuteNanos() / 1000);
+            resultInserter.setLong(++i, entry.getMinExecuteNanos() / 1000);
+            resultInserter.setLong(++i, entry.getMaxExecuteNanos() / 1000);
+            resultInserter.setLong(++i, entry.getMeanExecuteNanos() / 1000);
+            resultInserter.setLong(++i, entry.getRows());
+            resultInserter.setLong(++i, entry.getPrepares());
+            resultInserter.setLong(++i, entry.getPrepareNanos() / 1000);
+            resultInserter.setLong(++i, entry.getCodeCacheHits());
+            if (entry.getLastExecutionMillis() == 0) {
+                resultInserter.setNull(++i, Types.TIMESTAMP);
+            } else {
+                resultInserter.setTimestamp(
+                    ++i,
+                    new Timestamp(entry.getLastExecutionMillis()));
+            }
+            resultInserter.executeUpdate();
+        }
+    }
+
+    /**
+     * Discards all cumulative statement statistics.
+     */
+    public static void resetStatementStatistics()
+    {
+        FarragoSession callerSession = FarragoUdrRuntime.getSession();
+        FarragoDatabase db = ((FarragoDbSession) callerSession).getDatabase();
+        db.getStatementStatistics().clear();
+    }
+
     /**
      * Sleeps for a given number of milliseconds (checking for query
      * cancellation every second).
@@ -608,6 +724,55 @@ public abstract class FarragoManagementUDR
             Long.toString(System.nanoTime()),
             "ns");
 
+        // Read values from the code cache
+        FarragoSession callerSession = FarragoUdrRuntime.getSession();
+        FarragoObjectCache codeCache =
+            ((FarragoDbSession) callerSession).getDatabase().getCodeCache();
+        addFarragoCounter(
+            resultInserter,
+            "CodeCacheBytesCached",
+            codeCache.getBytesCached());
+        addFarragoCounter(
+            resultInserter,
+            "CodeCacheHits",
+            codeCache.getHitCount());
+        addFarragoCounter(
+            resultInserter,
+            "CodeCacheMisses",
+            codeCache.getMissCount());
+        addFarragoCounter(
+            resultInserter,
+            "CodeCacheEvictions",
+            codeCache.getEvictionCount());
+        addFarragoCounter(
+            resultInserter,
+            "CodeCachePinWaits",
+            codeCache.getPinWaitCount());
+        addFarragoCounter(
+            resultInserter,
+            "CodeCachePinWaitTime",
+            codeCache.getPinWaitMillis());
+
+        // Read values from the result cache
+        FarragoResultCache resultCache =
+            ((FarragoDbSession) callerSession).getDatabase().getResultCache();
+        addFarragoCounter(
+            resultInserter,
+            "ResultCacheBytesCached",
+            resultCache.getBytesCached());
+        addFarragoCounter(
+            resultInserter,
+            "ResultCacheHits",
+            resultCache.getHitCount());
+        addFarragoCounter(
+            resultInserter,
+            "ResultCacheMisses",
+            resultCache.getMissCount());
+        addFarragoCounter(
+            resultInserter,
+            "ResultCacheEvictions",
+            resultCache.getEvictionCount());
+
         // Read values from Fennel
         Map<String, String> perfCounters =
             NativeTrace.instance().getPerfCounters();
@@ -721,6 +886,23 @@ public abstract class FarragoManagementUDR
         resultInserter.executeUpdate();
     }
 
+    private static void addFarragoCounter(
+        PreparedStatement resultInserter,
+        String counterName,
+        long value)
+        throws Exception
+    {
+        String [] info = perf_counter_info.get(counterName);
+        addSysInfo(
+            resultInserter,
+            info[0],
+            info[1],
+            "Farrago",
+            counterName,
+            Long.toString(value),
+            info[2]);
+    }
+
     private static void readLinuxMeminfo(
         PreparedStatement resultInserter,
         FileReader fileReader,
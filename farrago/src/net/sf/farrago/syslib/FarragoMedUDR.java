@@ -27,6 +27,7 @@ import net.sf.farrago.db.*;
 import net.sf.farrago.fem.med.*;
 import net.sf.farrago.jdbc.*;
 import net.sf.farrago.namespace.*;
+import net.sf.farrago.namespace.impl.*;
 import net.sf.farrago.namespace.util.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.runtime.*;
@@ -113,6 +114,38 @@ public abstract class FarragoMedUDR
         }
     }
 
+    /**
+     * Discards the foreign metadata and statistics remembered by a particular
+     * SQL/MED data server, so that subsequent statements see the current
+     * definitions in the foreign data source. Servers which do not cache
+     * metadata are unaffected.
+     *
+     * @param serverName name of data server to flush
+     */
+    public static void flushServerMetadataCache(
+        String serverName)
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        FarragoReposTxnContext txn =
+            new FarragoReposTxnContext(session.getRepos(), true);
+        txn.beginReadTxn();
+        FarragoSessionStmtValidator stmtValidator = session.newStmtValidator();
+        try {
+            FemDataServer femServer =
+                stmtValidator.findDataServer(
+                    new SqlIdentifier(serverName, SqlParserPos.ZERO));
+            FarragoMedDataServer medServer =
+                stmtValidator.getDataWrapperCache().loadServerFromCatalog(
+                    femServer);
+            if (medServer instanceof MedAbstractDataServer) {
+                ((MedAbstractDataServer) medServer).flushMetadataCache();
+            }
+        } finally {
+            txn.commit();
+            stmtValidator.closeAllocation();
+        }
+    }
+
     /**
      * Queries SQL/MED connection information for a foreign data server.
      *
@@ -0,0 +1,700 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.syslib;
+
+import java.io.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+
+import java.sql.*;
+
+import java.text.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+import net.sf.farrago.db.*;
+import net.sf.farrago.resource.*;
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.util.*;
+import org.eigenbase.util14.*;
+
+
+/**
+ * FarragoParallelExport writes the results of a set of table queries to flat
+ * files using a pool of worker threads, each with its own loopback session.
+ * It is the engine behind {@link
+ * FarragoExportSchemaUDR#exportSchemaToFileParallel}.
+ *
+ * <p>Each table is exported by one or more splits. A table with a single split
+ * is written directly to its data file; otherwise each split writes a part
+ * file, and the parts are appended to the first split's file, in order, once
+ * all of them have finished. Splits are queued in table order and picked up
+ * by whichever worker is free, so small tables run alongside the splits of
+ * large ones.
+ *
+ * <p>Rows are encoded into a reusable byte buffer per worker and written with
+ * a {@link FileChannel}, bypassing the per-field string concatenation and
+ * writer layers used by the serial export. The file format is the same:
+ * ISO-8859-1 text, a quoted header row, quoted non-null fields and
+ * <code>\r\n</code> line endings.
+ *
+ * <p>All splits read the same snapshot. Worker sessions are cloned from the
+ * calling session while its transaction is in progress, so instead of
+ * autocommitting transactions of their own, they run their queries in that
+ * one transaction and read the data as of its start (or as of the session
+ * label, if one is set). Rows modified while a table is being exported are
+ * therefore neither lost nor duplicated at split boundaries.
+ *
+ * @version $Id$
+ */
+class FarragoParallelExport
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer = FarragoTrace.getSyslibTracer();
+
+    private static final String TAB = "\t";
+    private static final String NEWLINE = "\r\n";
+
+    /**
+     * Size of the encoding buffer owned by each worker.
+     */
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Interval at which the coordinating thread checks for cancellation while
+     * waiting for workers.
+     */
+    private static final long CANCEL_POLL_MILLIS = 1000;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int parallelism;
+    private final boolean withBcp;
+    private final boolean deleteFailedFiles;
+    private final byte [] fieldDelimiter;
+    private final String bcpFieldDelimiter;
+    private final String dateFormat;
+    private final String timeFormat;
+    private final String timestampFormat;
+
+    private final List<TableExport> tables = new ArrayList<TableExport>();
+    private final Queue<Split> pendingSplits =
+        new ConcurrentLinkedQueue<Split>();
+    private volatile boolean aborted;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a parallel export.
+     *
+     * @param parallelism maximum number of worker threads
+     * @param withBcp whether to write a BCP control file per table
+     * @param deleteFailedFiles whether to delete the files of tables whose
+     * export fails
+     * @param fieldDelimiter field delimiter for data files
+     * @param dateFormat format for DATE fields, or null for the default
+     * @param timeFormat format for TIME fields, or null for the default
+     * @param timestampFormat format for TIMESTAMP fields, or null for the
+     * default
+     */
+    FarragoParallelExport(
+        int parallelism,
+        boolean withBcp,
+        boolean deleteFailedFiles,
+        String fieldDelimiter,
+        String dateFormat,
+        String timeFormat,
+        String timestampFormat)
+    {
+        assert (parallelism > 0);
+        this.parallelism = parallelism;
+        this.withBcp = withBcp;
+        this.deleteFailedFiles = deleteFailedFiles;
+        this.fieldDelimiter = encode(fieldDelimiter);
+        this.bcpFieldDelimiter = fieldDelimiter;
+        this.dateFormat = dateFormat;
+        this.timeFormat = timeFormat;
+        this.timestampFormat = timestampFormat;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Adds a table to be exported.
+     *
+     * @param tableName name of the table, used in the log
+     * @param splitQueries queries which together return the table's rows, in
+     * the order their results should appear in the data file; the first one
+     * also supplies the column metadata for the header and BCP file
+     * @param csvFile data file to write
+     * @param bcpFile BCP control file to write
+     */
+    void addTable(
+        String tableName,
+        List<String> splitQueries,
+        File csvFile,
+        File bcpFile)
+    {
+        assert (!splitQueries.isEmpty());
+        TableExport table = new TableExport(tableName, csvFile, bcpFile);
+        for (int i = 0; i < splitQueries.size(); i++) {
+            File file =
+                (i == 0) ? csvFile
+                : new File(csvFile.getPath() + ".part" + i);
+            Split split = new Split(table, i, splitQueries.get(i), file);
+            table.splits.add(split);
+            pendingSplits.add(split);
+        }
+        tables.add(table);
+    }
+
+    /**
+     * Runs the export, writing one line per table to the export log as each
+     * table completes. Must be called from the thread executing the calling
+     * routine, since worker sessions are cloned from its session.
+     *
+     * @param logOut export log
+     * @param logFileName name of the export log, for error messages
+     */
+    void execute(Writer logOut, String logFileName)
+        throws SQLException
+    {
+        int nWorkers = Math.min(parallelism, pendingSplits.size());
+        List<Worker> workers = new ArrayList<Worker>();
+        try {
+            FarragoSession session = FarragoUdrRuntime.getSession();
+            beginSharedTxn(session);
+            FarragoSessionConnectionSource connectionSource =
+                session.getConnectionSource();
+            for (int i = 0; i < nWorkers; i++) {
+                Worker worker =
+                    new Worker(i, connectionSource.newConnection());
+                workers.add(worker);
+
+                // a worker which autocommitted its own transactions would
+                // read a later snapshot than the others
+                if (hasSplitTables() && worker.conn.getAutoCommit()) {
+                    throw Util.newInternal(
+                        "parallel export worker is not in the transaction "
+                        + "of the calling statement");
+                }
+            }
+            for (Worker worker : workers) {
+                worker.start();
+            }
+            for (TableExport table : tables) {
+                for (Split split : table.splits) {
+                    awaitSplit(split);
+                }
+                finishTable(table, logOut, logFileName);
+            }
+        } finally {
+            aborted = true;
+            for (Worker worker : workers) {
+                worker.cancel();
+            }
+            for (Worker worker : workers) {
+                worker.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Makes sure a transaction is in progress on the calling session before
+     * worker sessions are cloned from it, so that they join it rather than
+     * starting their own.
+     *
+     * @param session calling session
+     */
+    private static void beginSharedTxn(FarragoSession session)
+    {
+        // Begin the Fennel transaction here rather than letting the first
+        // worker begin it lazily, racing with the others; the calling
+        // statement commits it as usual when it completes.
+        ((FarragoDbSession) session).getFennelTxnContext().getTxnHandle();
+    }
+
+    private boolean hasSplitTables()
+    {
+        for (TableExport table : tables) {
+            if (table.splits.size() > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void awaitSplit(Split split)
+        throws SQLException
+    {
+        try {
+            while (!split.done.await(
+                    CANCEL_POLL_MILLIS,
+                    TimeUnit.MILLISECONDS))
+            {
+                FarragoUdrRuntime.checkCancel();
+            }
+        } catch (InterruptedException ex) {
+            throw Util.newInternal(ex);
+        }
+    }
+
+    private void finishTable(
+        TableExport table,
+        Writer logOut,
+        String logFileName)
+    {
+        Throwable error = null;
+        long startMillis = Long.MAX_VALUE;
+        for (Split split : table.splits) {
+            if ((error == null) && (split.error != null)) {
+                error = split.error;
+            }
+            startMillis = Math.min(startMillis, split.startMillis);
+        }
+        if (error == null) {
+            try {
+                appendParts(table);
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+        for (Split split : table.splits) {
+            if (split.index > 0) {
+                split.file.delete();
+            }
+        }
+        if ((error != null) && deleteFailedFiles) {
+            table.csvFile.delete();
+            table.bcpFile.delete();
+        }
+        try {
+            logOut.write(
+                table.name + TAB + formatTimestamp(startMillis) + TAB
+                + "Full" + TAB + ((error == null) ? "PASS" : "FAIL") + TAB
+                + formatTimestamp(System.currentTimeMillis()) + TAB
+                + ((error == null) ? "None" : error.toString()) + NEWLINE);
+            logOut.flush();
+        } catch (IOException ex) {
+            throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
+                logFileName,
+                ex.getMessage(),
+                ex);
+        }
+    }
+
+    private void appendParts(TableExport table)
+        throws IOException
+    {
+        if (table.splits.size() == 1) {
+            return;
+        }
+        FileChannel out =
+            new FileOutputStream(table.csvFile, true).getChannel();
+        try {
+            for (Split split : table.splits) {
+                if (split.index == 0) {
+                    continue;
+                }
+                FileChannel in = new FileInputStream(split.file).getChannel();
+                try {
+                    long size = in.size();
+                    long pos = 0;
+                    while (pos < size) {
+                        pos += in.transferTo(pos, size - pos, out);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String formatTimestamp(long millis)
+    {
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMddHHmmss");
+        return formatter.format(new java.util.Date(millis));
+    }
+
+    private static byte [] encode(String s)
+    {
+        try {
+            return s.getBytes("ISO-8859-1");
+        } catch (UnsupportedEncodingException ex) {
+            throw Util.newInternal(ex);
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * State of the export of one table.
+     */
+    private static class TableExport
+    {
+        final String name;
+        final File csvFile;
+        final File bcpFile;
+        final List<Split> splits = new ArrayList<Split>();
+
+        TableExport(String name, File csvFile, File bcpFile)
+        {
+            this.name = name;
+            this.csvFile = csvFile;
+            this.bcpFile = bcpFile;
+        }
+    }
+
+    /**
+     * One query whose results form a contiguous part of a table's data file.
+     * Fields other than the final ones are written by the worker running the
+     * split and read by the coordinating thread after {@link #done} is
+     * released.
+     */
+    private static class Split
+    {
+        final TableExport table;
+        final int index;
+        final String sql;
+        final File file;
+        final CountDownLatch done = new CountDownLatch(1);
+        long startMillis = Long.MAX_VALUE;
+        long nRows;
+        Throwable error;
+
+        Split(TableExport table, int index, String sql, File file)
+        {
+            this.table = table;
+            this.index = index;
+            this.sql = sql;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Worker thread which runs splits from the shared queue over its own
+     * connection until the queue is empty.
+     */
+    private class Worker
+        extends Thread
+    {
+        private final Connection conn;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final DateFormat dateFormatter;
+        private final DateFormat timeFormatter;
+        private final DateFormat timestampFormatter;
+        private FileChannel channel;
+        private volatile Statement currentStmt;
+
+        Worker(int id, Connection conn)
+        {
+            super("FarragoParallelExport.Worker#" + id);
+            setDaemon(true);
+            this.conn = conn;
+
+            // formatters are not thread-safe, so each worker has its own
+            dateFormatter =
+                (dateFormat == null) ? null
+                : DateTimeUtil.newDateFormat(dateFormat);
+            timeFormatter =
+                (timeFormat == null) ? null
+                : DateTimeUtil.newDateFormat(timeFormat);
+            timestampFormatter =
+                (timestampFormat == null) ? null
+                : DateTimeUtil.newDateFormat(timestampFormat);
+        }
+
+        public void run()
+        {
+            for (;;) {
+                Split split = pendingSplits.poll();
+                if (split == null) {
+                    return;
+                }
+                if (aborted) {
+                    split.done.countDown();
+                    continue;
+                }
+                try {
+                    runSplit(split);
+                } catch (Throwable ex) {
+                    split.error = ex;
+                    tracer.log(
+                        Level.FINE,
+                        "export of " + split.table.name + " failed",
+                        ex);
+                } finally {
+                    split.done.countDown();
+                }
+            }
+        }
+
+        void cancel()
+        {
+            Statement stmt = currentStmt;
+            if (stmt != null) {
+                try {
+                    stmt.cancel();
+                } catch (SQLException ex) {
+                    // the statement may already have finished
+                    tracer.log(Level.FINE, "cancel failed", ex);
+                }
+            }
+        }
+
+        void shutdown()
+        {
+            try {
+                join();
+            } catch (InterruptedException ex) {
+                throw Util.newInternal(ex);
+            } finally {
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    tracer.log(Level.FINE, "close failed", ex);
+                }
+            }
+        }
+
+        private void runSplit(Split split)
+            throws SQLException, IOException
+        {
+            split.startMillis = System.currentTimeMillis();
+            Statement stmt = conn.createStatement();
+            currentStmt = stmt;
+            try {
+                ResultSet rs = stmt.executeQuery(split.sql);
+                ResultSetMetaData meta = rs.getMetaData();
+                int numCols = meta.getColumnCount();
+                int [] columnTypes = new int[numCols + 1];
+                for (int i = 1; i <= numCols; i++) {
+                    columnTypes[i] = meta.getColumnType(i);
+                }
+                if ((split.index == 0) && withBcp) {
+                    writeBcp(split.table.bcpFile, meta);
+                }
+                channel = new FileOutputStream(split.file).getChannel();
+                try {
+                    if (split.index == 0) {
+                        for (int i = 1; i <= numCols; i++) {
+                            putQuoted(meta.getColumnName(i));
+                            putDelimiter(i, numCols);
+                        }
+                    }
+                    while (rs.next()) {
+                        putRow(rs, columnTypes, numCols);
+                        ++split.nRows;
+                    }
+                    flush();
+                } finally {
+                    buf.clear();
+                    channel.close();
+                    channel = null;
+                }
+                rs.close();
+            } finally {
+                currentStmt = null;
+                stmt.close();
+            }
+            if (tracer.isLoggable(Level.FINE)) {
+                tracer.fine(
+                    "Exported " + split.nRows + " rows of "
+                    + split.table.name + " split #" + split.index);
+            }
+        }
+
+        private void writeBcp(File bcpFile, ResultSetMetaData meta)
+            throws SQLException, IOException
+        {
+            int numCols = meta.getColumnCount();
+            Writer bcpOut =
+                new BufferedWriter(
+                    new OutputStreamWriter(
+                        new FileOutputStream(bcpFile),
+                        "ISO-8859-1"));
+            try {
+                // version using BroadBase
+                bcpOut.write("6.0" + NEWLINE);
+                bcpOut.write(numCols + NEWLINE);
+                for (int i = 1; i <= numCols; i++) {
+                    bcpOut.write(
+                        FarragoExportSchemaUDR.getBcpLine(
+                            i,
+                            meta,
+                            bcpFieldDelimiter));
+                }
+            } finally {
+                bcpOut.close();
+            }
+        }
+
+        private void putRow(ResultSet rs, int [] columnTypes, int numCols)
+            throws SQLException, IOException
+        {
+            for (int i = 1; i <= numCols; i++) {
+                switch (columnTypes[i]) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    long n = rs.getLong(i);
+                    if (!rs.wasNull()) {
+                        put((byte) '"');
+                        putLong(n);
+                        put((byte) '"');
+                    }
+                    break;
+                case Types.DATE:
+                    putFormatted(rs.getDate(i), dateFormatter, rs, i);
+                    break;
+                case Types.TIME:
+                    putFormatted(rs.getTime(i), timeFormatter, rs, i);
+                    break;
+                case Types.TIMESTAMP:
+                    putFormatted(
+                        rs.getTimestamp(i),
+                        timestampFormatter,
+                        rs,
+                        i);
+                    break;
+                default:
+                    String s = rs.getString(i);
+                    if (s != null) {
+                        putQuoted(s);
+                    }
+                }
+                putDelimiter(i, numCols);
+            }
+        }
+
+        private void putFormatted(
+            java.util.Date value,
+            DateFormat formatter,
+            ResultSet rs,
+            int i)
+            throws SQLException, IOException
+        {
+            if (value == null) {
+                return;
+            }
+            if (formatter == null) {
+                putQuoted(rs.getString(i));
+            } else {
+                putQuoted(formatter.format(value));
+            }
+        }
+
+        private void putDelimiter(int i, int numCols)
+            throws IOException
+        {
+            if (i != numCols) {
+                for (byte b : fieldDelimiter) {
+                    put(b);
+                }
+            } else {
+                put((byte) '\r');
+                put((byte) '\n');
+            }
+        }
+
+        /**
+         * Writes a string enclosed in quotes, doubling any embedded quotes.
+         * Characters outside ISO-8859-1 are replaced with '?', as the charset
+         * encoder used by the serial export does.
+         */
+        private void putQuoted(String s)
+            throws IOException
+        {
+            put((byte) '"');
+            int n = s.length();
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c == '"') {
+                    put((byte) '"');
+                } else if (c > 0xFF) {
+                    c = '?';
+                }
+                put((byte) c);
+            }
+            put((byte) '"');
+        }
+
+        private void putLong(long n)
+            throws IOException
+        {
+            if (n == Long.MIN_VALUE) {
+                for (byte b : encode(Long.toString(n))) {
+                    put(b);
+                }
+                return;
+            }
+            if (n < 0) {
+                put((byte) '-');
+                n = -n;
+            }
+            if (buf.remaining() < 20) {
+                flush();
+            }
+
+            // write digits backwards into the buffer, then reverse them
+            int start = buf.position();
+            do {
+                buf.put((byte) ('0' + (n % 10)));
+                n /= 10;
+            } while (n != 0);
+            for (int lo = start, hi = buf.position() - 1; lo < hi; ++lo, --hi)
+            {
+                byte b = buf.get(lo);
+                buf.put(lo, buf.get(hi));
+                buf.put(hi, b);
+            }
+        }
+
+        private void put(byte b)
+            throws IOException
+        {
+            if (!buf.hasRemaining()) {
+                flush();
+            }
+            buf.put(b);
+        }
+
+        private void flush()
+            throws IOException
+        {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+    }
+}
+
+// End FarragoParallelExport.java
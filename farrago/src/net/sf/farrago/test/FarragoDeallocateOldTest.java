@@ -0,0 +1,169 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.test;
+
+import java.sql.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.db.*;
+
+
+/**
+ * FarragoDeallocateOldTest tests {@link
+ * FarragoDatabase#deallocateOldIfNeeded}, which the background deallocation
+ * task runs when net.sf.farrago.db.FarragoDatabase.deallocateOldInterval is
+ * set.
+ *
+ * @version $Id$
+ */
+public class FarragoDeallocateOldTest
+    extends FarragoTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoDeallocateOldTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoDeallocateOldTest.class);
+    }
+
+    private FarragoDatabase getDatabase()
+    {
+        return ((FarragoDbSession) getSession()).getDatabase();
+    }
+
+    /**
+     * Tests that a pass is skipped until enough pages have been allocated.
+     */
+    public void testThreshold()
+        throws Exception
+    {
+        FarragoDatabase db = getDatabase();
+        assertFalse(db.deallocateOldIfNeeded(Long.MAX_VALUE, 0));
+        assertTrue(db.deallocateOldIfNeeded(0, 0));
+
+        // a pass is harmless when there is nothing left to free
+        assertTrue(db.deallocateOldIfNeeded(0, 0));
+    }
+
+    /**
+     * Tests that a pass can run while a query holds its shared catalog lock
+     * and an open cursor, and that the cursor still returns all of its rows
+     * afterwards.
+     */
+    public void testWithOpenCursor()
+        throws Exception
+    {
+        stmt.executeUpdate("create schema deallocate_old_test");
+        try {
+            stmt.executeUpdate(
+                "create table deallocate_old_test.t"
+                + "(i int not null primary key)");
+            stmt.executeUpdate(
+                "insert into deallocate_old_test.t"
+                + " select empno from sales.emps");
+            stmt.executeUpdate(
+                "insert into deallocate_old_test.t"
+                + " select empno + 1000 from sales.emps");
+            stmt.executeUpdate(
+                "delete from deallocate_old_test.t where i > 1000");
+            int expected = countRows("select * from sales.emps");
+
+            resultSet =
+                stmt.executeQuery("select i from deallocate_old_test.t");
+            assertTrue(resultSet.next());
+            assertTrue(getDatabase().deallocateOldIfNeeded(0, 0));
+            int n = 1;
+            while (resultSet.next()) {
+                ++n;
+            }
+            resultSet.close();
+            resultSet = null;
+            assertEquals(expected, n);
+            assertEquals(
+                expected,
+                countRows("select * from deallocate_old_test.t"));
+        } finally {
+            stmt.executeUpdate("drop schema deallocate_old_test cascade");
+        }
+    }
+
+    /**
+     * Tests that passes limited to a single page resume each other, ignoring
+     * the threshold, until all old pages have been freed.
+     */
+    public void testMaxPages()
+        throws Exception
+    {
+        stmt.executeUpdate("create schema deallocate_old_test");
+        try {
+            stmt.executeUpdate(
+                "create table deallocate_old_test.t"
+                + "(i int not null primary key, v varchar(100))");
+            for (int i = 0; i < 5; ++i) {
+                stmt.executeUpdate(
+                    "insert into deallocate_old_test.t"
+                    + " select empno + " + (i * 1000) + ", name"
+                    + " from sales.emps");
+                stmt.executeUpdate(
+                    "update deallocate_old_test.t set v = v || 'x'");
+            }
+            int expected = countRows("select * from deallocate_old_test.t");
+
+            FarragoDatabase db = getDatabase();
+            assertTrue(db.deallocateOldIfNeeded(0, 1));
+            int nPasses = 1;
+            while (db.deallocateOldIfNeeded(Long.MAX_VALUE, 1)) {
+                ++nPasses;
+                assertTrue("sweep doesn't complete", nPasses < 10000);
+            }
+
+            // the sweep is complete, so the threshold applies again
+            assertFalse(db.deallocateOldIfNeeded(Long.MAX_VALUE, 1));
+            assertEquals(
+                expected,
+                countRows("select * from deallocate_old_test.t"));
+        } finally {
+            stmt.executeUpdate("drop schema deallocate_old_test cascade");
+        }
+    }
+
+    private int countRows(String sql)
+        throws SQLException
+    {
+        ResultSet rs = stmt.executeQuery(sql);
+        int n = 0;
+        while (rs.next()) {
+            ++n;
+        }
+        rs.close();
+        return n;
+    }
+}
+
+// End FarragoDeallocateOldTest.java
@@ -3573,6 +3573,30 @@ public class FarragoJdbcTest
         compareResultSet(refSet);
     }
 
+    /**
+     * Tests that {@link Statement#setFetchSize} is accepted as a hint and
+     * doesn't limit the rows returned.
+     */
+    public void testFetchSize()
+        throws Exception
+    {
+        stmt.setFetchSize(1);
+        assertEquals(0, stmt.getFetchSize());
+        String sql = "select name from sales.depts order by 1";
+        resultSet = stmt.executeQuery(sql);
+        Set<String> refSet = new HashSet<String>();
+        refSet.add("Accounts");
+        refSet.add("Marketing");
+        refSet.add("Sales");
+        compareResultSet(refSet);
+        try {
+            stmt.setFetchSize(-1);
+            fail("expected error for negative fetch size");
+        } catch (SQLException ex) {
+            // expected
+        }
+    }
+
     protected void quietlyDropSchema(String schemaName)
     {
        String sql = "drop schema "
@@ -3804,6 +3828,88 @@ public class FarragoJdbcTest
         assertEquals("", metaData.getCatalogName(1));
     }
 
+    /**
+     * Tests EXPLAIN PLAN WITH STATISTICS, which executes the query and
+     * annotates its plan with per-stream statistics.
+     */
+    public void testExplainWithStatistics()
+        throws SQLException
+    {
+        String sql =
+            "explain plan with statistics for select * from sales.depts";
+        resultSet = stmt.executeQuery(sql);
+        List<String> lines = new ArrayList<String>();
+        while (resultSet.next()) {
+            lines.add(resultSet.getString(1));
+        }
+        resultSet.close();
+        assertTrue(lines.size() > 1);
+        assertTrue(
+            lines.get(lines.size() - 1),
+            lines.get(lines.size() - 1).startsWith("Rows returned: 3,"));
+        assertTrue(
+            lines.get(0),
+            lines.get(0).indexOf("rows out=3,") >= 0);
+
+        // the same statistics are available from the management view
+        resultSet =
+            stmt.executeQuery(
+                "select max(rows_out), min(execute_calls) "
+                + "from sys_boot.mgmt.statement_profile_view");
+        assertTrue(resultSet.next());
+        assertEquals(3, resultSet.getLong(1));
+        assertTrue(resultSet.getLong(2) > 0);
+        resultSet.close();
+
+        // DML is not executed by EXPLAIN
+        try {
+            stmt.executeQuery(
+                "explain plan with statistics for "
+                + "delete from sales.depts");
+            fail("Expected failure for EXPLAIN WITH STATISTICS of DML");
+        } catch (SQLException ex) {
+            assertExceptionMatches(
+                ex,
+                ".*WITH STATISTICS can only be used with a query.*");
+        }
+    }
+
+    /**
+     * Tests that statement statistics record a query's execution when its
+     * result set is closed, even though its statement stays open.
+     */
+    public void testStatementStatisticsAtResultSetClose()
+        throws SQLException
+    {
+        String sql = "select name as stats_at_close from sales.depts";
+        FarragoStmtStatsRegistry stats =
+            ((FarragoDbSession) ((FarragoJdbcEngineConnection) connection)
+                .getSession()).getDatabase().getStatementStatistics();
+        preparedStmt = connection.prepareStatement(sql);
+        for (int i = 1; i <= 2; ++i) {
+            resultSet = preparedStmt.executeQuery();
+            int n = 0;
+            while (resultSet.next()) {
+                ++n;
+            }
+            assertEquals(3, n);
+            resultSet.close();
+            resultSet = null;
+
+            FarragoStmtStatsRegistry.Entry entry = null;
+            for (FarragoStmtStatsRegistry.Entry e : stats.getEntries()) {
+                if (e.getSql().indexOf("STATS_AT_CLOSE") >= 0) {
+                    entry = e;
+                }
+            }
+            assertNotNull(entry);
+            assertEquals(i, entry.getCalls());
+            assertEquals(3 * i, entry.getRows());
+        }
+        preparedStmt.close();
+        preparedStmt = null;
+    }
+
     //~ Inner Interfaces -------------------------------------------------------
 
     public static interface JdbcTester
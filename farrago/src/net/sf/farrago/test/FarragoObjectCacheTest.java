@@ -47,7 +47,6 @@ import org.eigenbase.util.*;
  * <li>test explicit discard
  * <li>test that discardAll forces new creations subsequently
  * <li>test with non-uniform numbers of tires
- * <li>test other victimization policies once they exist
  * </ul>
  *
  * @author John Sichi
@@ -76,6 +75,12 @@ public class FarragoObjectCacheTest
 
     AtomicInteger nCarsDestroyed;
 
+    /**
+     * Simulated clock which the fleet uses to measure how long cars take to
+     * build, in nanoseconds.
+     */
+    AtomicLong clockNanos;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -88,6 +93,7 @@ public class FarragoObjectCacheTest
 
         nCarsCreated = new AtomicInteger();
         nCarsDestroyed = new AtomicInteger();
+        clockNanos = new AtomicLong();
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -385,6 +391,85 @@ public class FarragoObjectCacheTest
         // Let tearDown take care of cleanup verification.
     }
 
+    /**
+     * Tests that the cache keeps an accurate count of hits, misses and
+     * evictions.
+     */
+    public void testStatistics()
+    {
+        // Room for two cars.
+        agency = new RentalCarAgency(true, 8);
+        FarragoObjectCache fleet = agency.getFleet();
+
+        // First rental has to build a car; the next two reuse it.
+        for (int i = 0; i < 3; ++i) {
+            agency.returnCar(agency.rentCar("Hatchback"));
+        }
+        assertEquals(1, fleet.getMissCount());
+        assertEquals(2, fleet.getHitCount());
+        assertEquals(0, fleet.getEvictionCount());
+
+        // Two more models fill up the lot, forcing out the hatchback.
+        agency.returnCar(agency.rentCar("Coupe"));
+        agency.returnCar(agency.rentCar("Convertible"));
+        assertEquals(3, fleet.getMissCount());
+        assertEquals(1, fleet.getEvictionCount());
+        assertEquals(8, agency.getTiresInFleet());
+
+        // Nobody ever had to wait for a car to come off the line.
+        assertEquals(0, fleet.getPinWaitCount());
+    }
+
+    /**
+     * Tests that the GreedyDual-Size policy holds on to an entry which was
+     * expensive to build while cheap entries churn through the cache.
+     */
+    public void testGreedyDualSizeVictimization()
+    {
+        // Room for ten cars.
+        agency =
+            new RentalCarAgency(
+                true,
+                40,
+                new FarragoGreedyDualSizeVictimPolicy());
+
+        // The limousine should still be around, with its mileage intact.
+        assertEquals(100, churnAroundLimousine());
+        agency.decommissionEntireFleet();
+        agency.shutDown();
+
+        // Under LRU, the limousine is the first to go.
+        agency = new RentalCarAgency(true, 40);
+        assertEquals(0, churnAroundLimousine());
+    }
+
+    /**
+     * Rents and drives a custom limousine, churns through lots of cheap cars,
+     * then rents the limousine again.
+     *
+     * @return mileage of the limousine rented the second time; 0 if it had
+     * been recycled in the meantime
+     */
+    private int churnAroundLimousine()
+    {
+        // Custom cars take a long time to build.
+        String description = "Limousine (Custom)";
+        RentalCarAgreement a1 = agency.rentCar(description);
+        a1.getCar().drive(100);
+        agency.returnCar(a1);
+
+        for (int i = 0; i < 100; ++i) {
+            agency.returnCar(agency.rentCar("Economy" + i));
+        }
+        assertTrue(agency.getFleet().getEvictionCount() > 0);
+        assertTrue(agency.getTiresInFleet() <= 40);
+
+        a1 = agency.rentCar(description);
+        int mileage = a1.getCar().getMileage();
+        agency.returnCar(a1);
+        return mileage;
+    }
+
     /**
      * Tests a scenario where an exception is thrown during initialization.
      */
@@ -501,6 +586,10 @@ public class FarragoObjectCacheTest
         {
             this.description = description;
             nCarsCreated.incrementAndGet();
+            if (isCustomVehicle()) {
+                // Custom jobs take a while (200 ms on the simulated clock).
+                clockNanos.addAndGet(200000000L);
+            }
             if (hasEscapePod()) {
                 // NOTE jvs 15-Jun-2007:  This mimics the pattern
                 // in SQL statement preparation where we do reentrant
@@ -571,6 +660,15 @@ public class FarragoObjectCacheTest
             return description.indexOf("Smoking") > -1;
         }
 
+        /**
+         * @return whether this car is built to order, making it expensive to
+         * replace
+         */
+        public boolean isCustomVehicle()
+        {
+            return description.indexOf("Custom") > -1;
+        }
+
         /**
          * @return whether this vehicle comes with an "escape pod" (another
          * rental car inside of it!)
@@ -668,14 +766,34 @@ public class FarragoObjectCacheTest
          * any one time
          */
         RentalCarAgency(boolean exclusiveRentals, long maxTires)
+        {
+            this(exclusiveRentals, maxTires, new FarragoLruVictimPolicy());
+        }
+
+        /**
+         * Creates a new agency with a specific policy for choosing which cars
+         * to recycle.
+         *
+         * @param exclusiveRentals see {@link #RentalCarAgency(boolean, long)}
+         * @param maxTires maximum number of tires which can exist in fleet at
+         * any one time
+         * @param victimPolicy policy for choosing cars to recycle
+         */
+        RentalCarAgency(
+            boolean exclusiveRentals,
+            long maxTires,
+            FarragoCacheVictimPolicy victimPolicy)
         {
             this.exclusiveRentals = exclusiveRentals;
             owner = new FarragoCompoundAllocation();
             fleet =
-                new FarragoObjectCache(
-                    owner,
-                    maxTires,
-                    new FarragoLruVictimPolicy());
+                new FarragoObjectCache(owner, maxTires, victimPolicy) {
+                    // override FarragoObjectCache
+                    protected long getCurrentNanos()
+                    {
+                        return clockNanos.get();
+                    }
+                };
             assertEquals(maxTires, fleet.getBytesMax());
         }
 
@@ -750,6 +868,14 @@ public class FarragoObjectCacheTest
             fleet.discardAll();
         }
 
+        /**
+         * @return cache implementing the fleet
+         */
+        FarragoObjectCache getFleet()
+        {
+            return fleet;
+        }
+
         /**
          * @return whether this agency rents cars exclusively
          */
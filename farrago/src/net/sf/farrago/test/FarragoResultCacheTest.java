@@ -0,0 +1,207 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.test;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoResultCacheTest is a unit test for {@link FarragoResultCache}.
+ *
+ * @version $Id$
+ */
+public class FarragoResultCacheTest
+    extends TestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final List<String> T1 = Arrays.asList("CAT", "S", "T1");
+    private static final List<String> T2 = Arrays.asList("CAT", "S", "T2");
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoResultCacheTest(String name)
+        throws Exception
+    {
+        super(name);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests that results are keyed by plan identity and parameter values.
+     */
+    public void testLookup()
+    {
+        FarragoResultCache cache = new FarragoResultCache(100000, 10000);
+        Object plan = new Object();
+        Object [] params = { "x", new byte[] { 1, 2 } };
+        assertNull(cache.lookup(plan, params));
+        record(cache, plan, params, 3, Collections.singleton(T1)).store();
+
+        // parameter arrays are compared by value, plans by identity
+        List<Object []> rows =
+            cache.lookup(plan, new Object[] { "x", new byte[] { 1, 2 } });
+        assertNotNull(rows);
+        assertEquals(3, rows.size());
+        assertEquals(Integer.valueOf(2), rows.get(2)[0]);
+        assertNull(cache.lookup(plan, new Object[] { "y", null }));
+        assertNull(cache.lookup(new Object(), params));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+        assertTrue(cache.getBytesCached() > 0);
+
+        cache.clear();
+        assertNull(cache.lookup(plan, params));
+        assertEquals(0, cache.getBytesCached());
+    }
+
+    /**
+     * Tests invalidation of cached and in-progress results by table.
+     */
+    public void testInvalidation()
+    {
+        FarragoResultCache cache = new FarragoResultCache(100000, 10000);
+        Object plan1 = new Object();
+        Object plan2 = new Object();
+        Object [] params = {};
+        record(cache, plan1, params, 1, Collections.singleton(T1)).store();
+        record(cache, plan2, params, 1, Arrays.asList(T1, T2)).store();
+
+        cache.invalidateTables(Collections.singleton(T2));
+        assertNotNull(cache.lookup(plan1, params));
+        assertNull(cache.lookup(plan2, params));
+
+        // a table modified while a result was being recorded prevents the
+        // result from being stored
+        FarragoResultCache.Recorder recorder =
+            record(cache, plan2, params, 1, Arrays.asList(T1, T2));
+        cache.invalidateTables(Collections.singleton(T1));
+        recorder.store();
+        assertNull(cache.lookup(plan1, params));
+        assertNull(cache.lookup(plan2, params));
+
+        // so does clear
+        recorder = record(cache, plan1, params, 1, Collections.singleton(T1));
+        cache.clear();
+        recorder.store();
+        assertNull(cache.lookup(plan1, params));
+
+        // but a recording started after the modification is fine
+        record(cache, plan1, params, 1, Collections.singleton(T1)).store();
+        assertNotNull(cache.lookup(plan1, params));
+    }
+
+    /**
+     * Tests that no result is cached from a table while a txn modifying it is
+     * open, nor from a recording started before the txn ended.
+     */
+    public void testTableWrites()
+    {
+        FarragoResultCache cache = new FarragoResultCache(100000, 10000);
+        Object plan = new Object();
+        Object otherPlan = new Object();
+        Object [] params = {};
+        Collection<List<String>> tables = Collections.singleton(T1);
+        record(cache, plan, params, 1, tables).store();
+        record(cache, otherPlan, params, 1, Collections.singleton(T2)).store();
+
+        cache.beginTableWrites(tables);
+        assertNull(cache.lookup(plan, params));
+
+        // a result recorded entirely within the txn may have read the
+        // table as it was before the commit
+        record(cache, plan, params, 1, tables).store();
+        assertNull(cache.lookup(plan, params));
+
+        // likewise while a second txn is still modifying the table
+        cache.beginTableWrites(tables);
+        cache.endTableWrites(tables);
+        record(cache, plan, params, 1, tables).store();
+        assertNull(cache.lookup(plan, params));
+
+        // a result recorded before the txn ended is not stored after it
+        FarragoResultCache.Recorder recorder =
+            record(cache, plan, params, 1, tables);
+        cache.endTableWrites(tables);
+        recorder.store();
+        assertNull(cache.lookup(plan, params));
+
+        // once all writers are done the table can be cached again; other
+        // tables were unaffected throughout
+        record(cache, plan, params, 1, tables).store();
+        assertNotNull(cache.lookup(plan, params));
+        assertNotNull(cache.lookup(otherPlan, params));
+    }
+
+    /**
+     * Tests that results are evicted to stay within the size limits, and
+     * that results over the per-entry limit are not cached.
+     */
+    public void testEviction()
+    {
+        FarragoResultCache cache = new FarragoResultCache(1000, 500);
+        Object [] params = {};
+        Object bigPlan = new Object();
+        FarragoResultCache.Recorder recorder =
+            cache.newRecorder(bigPlan, params, Collections.singleton(T1));
+        boolean added = true;
+        for (int i = 0; added && (i < 100); ++i) {
+            added = recorder.addRow(new Object[] { i });
+        }
+        assertFalse(added);
+        recorder.store();
+        assertNull(cache.lookup(bigPlan, params));
+
+        List<Object> plans = new ArrayList<Object>();
+        for (int i = 0; i < 10; ++i) {
+            Object plan = new Object();
+            plans.add(plan);
+            record(cache, plan, params, 2, Collections.singleton(T1)).store();
+            assertTrue(cache.getBytesCached() <= 1000);
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getEntryCount() < 10);
+
+        // the most recently stored result survives
+        assertNotNull(cache.lookup(plans.get(9), params));
+    }
+
+    private FarragoResultCache.Recorder record(
+        FarragoResultCache cache,
+        Object plan,
+        Object [] params,
+        int rowCount,
+        Collection<List<String>> tables)
+    {
+        FarragoResultCache.Recorder recorder =
+            cache.newRecorder(plan, params, tables);
+        for (int i = 0; i < rowCount; ++i) {
+            assertTrue(recorder.addRow(new Object[] { i, "row" + i }));
+        }
+        return recorder;
+    }
+}
+
+// End FarragoResultCacheTest.java
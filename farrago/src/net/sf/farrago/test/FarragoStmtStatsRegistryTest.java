@@ -0,0 +1,131 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.test;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoStmtStatsRegistryTest is a unit test for {@link
+ * FarragoStmtStatsRegistry}.
+ *
+ * @version $Id$
+ */
+public class FarragoStmtStatsRegistryTest
+    extends TestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoStmtStatsRegistryTest(String name)
+        throws Exception
+    {
+        super(name);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests that statements differing only in literals, whitespace, comments
+     * and case normalize to the same text.
+     */
+    public void testNormalizeSql()
+    {
+        String expected =
+            "SELECT \"name\" FROM EMPS WHERE EMPNO=? AND NAME=? "
+            + "AND HIREDATE>DATE ? AND X=? AND SAL<-?";
+        assertEquals(
+            expected,
+            FarragoStmtStatsRegistry.normalizeSql(
+                "select \"name\" from emps where empno = 100 "
+                + "and name = 'Fred' and hiredate > date '2001-01-01' "
+                + "and x = X'ff' and sal < -1.5e3"));
+        assertEquals(
+            expected,
+            FarragoStmtStatsRegistry.normalizeSql(
+                "  SELECT \"name\"\n  FROM Emps -- comment\n"
+                + "WHERE empno=200\tAND name = 'O''Brien' "
+                + "AND /* inline */ hiredate > DATE '1999-12-31' "
+                + "and x = x'00' and sal < -7"));
+        assertEquals(
+            "SELECT*FROM T1 WHERE C=?",
+            FarragoStmtStatsRegistry.normalizeSql(
+                "select * from t1 where c = 'abc' 'def'"));
+        assertEquals("", FarragoStmtStatsRegistry.normalizeSql("  -- x"));
+    }
+
+    /**
+     * Tests accumulation of prepare and execution statistics.
+     */
+    public void testAccumulate()
+    {
+        FarragoStmtStatsRegistry registry = new FarragoStmtStatsRegistry(10);
+        registry.recordPrepare("Q", 500, false);
+        registry.recordPrepare("Q", 100, true);
+        registry.recordExecution("Q", 3000, 5);
+        registry.recordExecution("Q", 1000, 7);
+        registry.recordExecution("Q", 2000, 0);
+
+        List<FarragoStmtStatsRegistry.Entry> entries = registry.getEntries();
+        assertEquals(1, entries.size());
+        FarragoStmtStatsRegistry.Entry entry = entries.get(0);
+        assertEquals("Q", entry.getSql());
+        assertEquals(3, entry.getCalls());
+        assertEquals(6000, entry.getExecuteNanos());
+        assertEquals(1000, entry.getMinExecuteNanos());
+        assertEquals(3000, entry.getMaxExecuteNanos());
+        assertEquals(2000, entry.getMeanExecuteNanos());
+        assertEquals(12, entry.getRows());
+        assertEquals(2, entry.getPrepares());
+        assertEquals(600, entry.getPrepareNanos());
+        assertEquals(1, entry.getCodeCacheHits());
+        assertTrue(entry.getLastExecutionMillis() > 0);
+
+        // snapshots are not affected by later updates
+        registry.recordExecution("Q", 1000, 1);
+        assertEquals(3, entry.getCalls());
+
+        registry.clear();
+        assertTrue(registry.getEntries().isEmpty());
+    }
+
+    /**
+     * Tests that the least recently used statement is dropped when the
+     * registry is full.
+     */
+    public void testEviction()
+    {
+        FarragoStmtStatsRegistry registry = new FarragoStmtStatsRegistry(2);
+        registry.recordExecution("A", 1, 1);
+        registry.recordExecution("B", 1, 1);
+        registry.recordExecution("A", 1, 1);
+        registry.recordExecution("C", 1, 1);
+
+        List<FarragoStmtStatsRegistry.Entry> entries = registry.getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("A", entries.get(0).getSql());
+        assertEquals(2, entries.get(0).getCalls());
+        assertEquals("C", entries.get(1).getSql());
+    }
+}
+
+// End FarragoStmtStatsRegistryTest.java
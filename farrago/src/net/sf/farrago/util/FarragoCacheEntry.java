@@ -33,8 +33,9 @@ public class FarragoCacheEntry
     //~ Instance fields --------------------------------------------------------
 
     // NOTE jvs 15-July-2004: entry attribute synchronization is fine-grained;
-    // pinCount is protected by FarragoObjectCache.mapKeyToEntry's monitor,
-    // while the others are protected by the entry's monitor.
+    // pinCount and isDiscarded are protected by the monitor of the
+    // FarragoObjectCache stripe which maps the key, while the others are
+    // protected by the entry's monitor.
     Object key;
     Object value;
     int pinCount;
@@ -42,6 +43,14 @@ public class FarragoCacheEntry
     Thread constructionThread;
     boolean isReusable;
     boolean isInitialized;
+    volatile boolean isDiscarded;
+
+    /**
+     * Measured time in nanoseconds spent constructing the value, used by
+     * cost-aware victimization policies; written by the constructing thread
+     * before it makes the entry visible to other pinners
+     */
+    volatile long constructionNanos;
 
     /**
      * The cache this entry is associated with
@@ -113,6 +122,23 @@ public class FarragoCacheEntry
             + ", pinCount=" + pinCount;
     }
 
+    /**
+     * @return measured construction time in nanoseconds (0 if the entry has
+     * not been constructed yet)
+     */
+    public long getConstructionNanos()
+    {
+        return constructionNanos;
+    }
+
+    /**
+     * @return approximate number of bytes of memory used by this entry
+     */
+    public long getMemoryUsage()
+    {
+        return memoryUsage.get();
+    }
+
     /**
      * @return whether {@link #initialize} has been called yet
      */
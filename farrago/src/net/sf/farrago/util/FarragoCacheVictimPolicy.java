@@ -29,6 +29,11 @@ import java.util.*;
  * determine the order in which entries should be victimized from the cache,
  * when the cache becomes full.
  *
+ * <p>FarragoObjectCache serializes all calls to a policy except {@link
+ * #newEntry}, which must be safe to call concurrently with the others.
+ * Registration, access and unregistration notifications may be delivered
+ * some time after the fact, but always in order for any one entry.
+ *
  * @author Zelaine Fong
  * @version $Id$
  */
@@ -0,0 +1,207 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.util;
+
+import java.util.*;
+
+
+/**
+ * FarragoGreedyDualSizeVictimPolicy implements the GreedyDual-Size caching
+ * policy for the FarragoObjectCache. Each entry is assigned a priority of
+ * <code>L + cost / size</code>, where cost is the measured time it took to
+ * construct the entry, size is its memory usage, and L is an inflation value
+ * which is raised to the priority of each entry victimized. Entries with the
+ * lowest priority are victimized first, so cheap-to-rebuild or large entries
+ * go before expensive or small ones, while the inflation value ages out
+ * entries which have not been accessed for a while (as with LRU).
+ *
+ * <p>This class assumes that synchronization is handled by its caller.
+ *
+ * @version $Id$
+ */
+public class FarragoGreedyDualSizeVictimPolicy
+    implements FarragoCacheVictimPolicy
+{
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Entries in victimization order: by priority, then by time of last
+     * access.
+     */
+    private final TreeSet<GdsEntry> priorityOrder;
+
+    /**
+     * Priority of the most recently victimized entry.
+     */
+    private double inflation;
+
+    /**
+     * Counter used to break ties between entries of equal priority in LRU
+     * order.
+     */
+    private long accessSeq;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoGreedyDualSizeVictimPolicy()
+    {
+        priorityOrder =
+            new TreeSet<GdsEntry>(
+                new Comparator<GdsEntry>() {
+                    public int compare(GdsEntry e1, GdsEntry e2)
+                    {
+                        if (e1.priority < e2.priority) {
+                            return -1;
+                        } else if (e1.priority > e2.priority) {
+                            return 1;
+                        } else if (e1.seq < e2.seq) {
+                            return -1;
+                        } else if (e1.seq > e2.seq) {
+                            return 1;
+                        }
+                        return 0;
+                    }
+                });
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement FarragoCacheVictimPolicy
+    public FarragoCacheEntry newEntry(FarragoObjectCache parentCache)
+    {
+        return new GdsEntry(parentCache);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void registerEntry(FarragoCacheEntry entry)
+    {
+        GdsEntry gdsEntry = (GdsEntry) entry;
+        assignPriority(gdsEntry);
+        boolean rc = priorityOrder.add(gdsEntry);
+        assert (rc);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(Iterator victimRange)
+    {
+        // victimRange is always one of our VictimIterators, which
+        // raises the inflation value as a side-effect
+        victimRange.remove();
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(FarragoCacheEntry entry)
+    {
+        boolean rc = priorityOrder.remove(entry);
+        assert (rc);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void accessEntry(FarragoCacheEntry entry)
+    {
+        // priority is part of the ordering key, so it can only be changed
+        // while the entry is out of the set
+        GdsEntry gdsEntry = (GdsEntry) entry;
+        boolean rc = priorityOrder.remove(gdsEntry);
+        assert (rc);
+        assignPriority(gdsEntry);
+        priorityOrder.add(gdsEntry);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public Iterator<FarragoCacheEntry> getVictimIterator()
+    {
+        return new VictimIterator(priorityOrder.iterator());
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void clearCache()
+    {
+        priorityOrder.clear();
+        inflation = 0;
+    }
+
+    private void assignPriority(GdsEntry entry)
+    {
+        // Until an entry has been constructed, its cost and size are both
+        // unknown; it is pinned during that time anyway, so it doesn't matter
+        // where it sorts.  Cost is taken in microseconds to keep the ratio in
+        // a reasonable range for typical entry sizes.
+        double cost = Math.max(entry.getConstructionNanos() / 1000.0, 1.0);
+        long size = Math.max(entry.getMemoryUsage(), 1);
+        entry.priority = inflation + (cost / size);
+        entry.seq = accessSeq++;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * GdsEntry extends FarragoCacheEntry with the attributes used to order
+     * it for victimization.
+     */
+    private static class GdsEntry
+        extends FarragoCacheEntry
+    {
+        double priority;
+        long seq;
+
+        GdsEntry(FarragoObjectCache parentCache)
+        {
+            super(parentCache);
+        }
+    }
+
+    /**
+     * VictimIterator walks entries in victimization order, raising the
+     * inflation value whenever an entry is removed through it.
+     */
+    private class VictimIterator
+        implements Iterator<FarragoCacheEntry>
+    {
+        private final Iterator<GdsEntry> iter;
+        private GdsEntry current;
+
+        VictimIterator(Iterator<GdsEntry> iter)
+        {
+            this.iter = iter;
+        }
+
+        public boolean hasNext()
+        {
+            return iter.hasNext();
+        }
+
+        public FarragoCacheEntry next()
+        {
+            current = iter.next();
+            return current;
+        }
+
+        public void remove()
+        {
+            iter.remove();
+            if (current.priority > inflation) {
+                inflation = current.priority;
+            }
+            current = null;
+        }
+    }
+}
+
+// End FarragoGreedyDualSizeVictimPolicy.java
@@ -19,6 +19,9 @@
 package net.sf.farrago.util;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 import java.util.logging.*;
 
 import net.sf.farrago.trace.*;
@@ -34,6 +37,16 @@ import org.eigenbase.util.*;
  * <p>Key objects must implement hashCode/equals properly since
  * FarragoObjectCache is based on a HashMap internally.
  *
+ * <p>Keys are partitioned over a fixed number of stripes, each with its own
+ * map and monitor, so that pins and unpins of unrelated keys do not contend
+ * with each other. The {@link FarragoCacheVictimPolicy} is not required to be
+ * thread-safe; notifications to it are queued and applied in batches by
+ * whichever thread next holds the policy lock, so a cache hit never waits for
+ * victimization in progress.
+ *
+ * <p>The cache counts hits, misses, evictions and waits for entries under
+ * construction by other threads; see {@link #getHitCount} and friends.
+ *
  * <p>See {@link net.sf.farrago.test.FarragoObjectCacheTest} for examples of
  * usage patterns.
  *
@@ -50,26 +63,68 @@ public class FarragoObjectCache
 
     private static final Logger tracer = FarragoTrace.getObjectCacheTracer();
 
+    /**
+     * Number of stripes the key space is partitioned into; must be a power of
+     * two.
+     */
+    private static final int STRIPE_COUNT = 16;
+
+    /**
+     * Number of queued policy notifications beyond which a pinning thread
+     * applies them itself (if it can get the policy lock without waiting)
+     * rather than leaving them for the next victimization pass.
+     */
+    private static final int POLICY_DRAIN_THRESHOLD = 64;
+
+    private static final int EVENT_REGISTER = 0;
+    private static final int EVENT_ACCESS = 1;
+    private static final int EVENT_UNREGISTER = 2;
+
     //~ Instance fields --------------------------------------------------------
 
     /**
-     * Map from cache key to EntryImpl. To avoid deadlock, synchronize on either
-     * map or entry but not both at once. See code comments in tryPin for more
-     * info on this.
+     * Partitions of the map from cache key to FarragoCacheEntry. To avoid
+     * deadlock, synchronize on either a stripe or an entry but not both at
+     * once, and never acquire policyLock while holding a stripe monitor
+     * (victimization locks in the order policyLock, then stripe). See code
+     * comments in tryPin for more info on this.
+     */
+    private final Stripe [] stripes;
+
+    private volatile long bytesMax;
+
+    /**
+     * Number of bytes currently in use by cached objects. Entries are
+     * subtracted as soon as they are removed from their stripe, so that
+     * concurrent victimization passes don't both discard for the same
+     * overdraft.
      */
-    protected MultiMap<Object, FarragoCacheEntry> mapKeyToEntry;
-    private long bytesMax;
+    private final AtomicLong bytesUsed;
 
     /**
-     * Number of bytes currently in use by cached objects. This and bytesMax are
-     * synchronized via mapKeyToEntry monitor.
+     * Victimization policy for this cache; only accessed while holding
+     * policyLock.
      */
-    private long bytesUsed;
+    private final FarragoCacheVictimPolicy victimPolicy;
+
+    private final ReentrantLock policyLock;
 
     /**
-     * Victimization policy for this cache
+     * Notifications which have not yet been applied to victimPolicy.
      */
-    private FarragoCacheVictimPolicy victimPolicy;
+    private final Queue<PolicyEvent> pendingEvents;
+
+    private final AtomicInteger nPendingEvents;
+
+    private final AtomicLong nHits;
+
+    private final AtomicLong nMisses;
+
+    private final AtomicLong nEvictions;
+
+    private final AtomicLong nPinWaits;
+
+    private final AtomicLong pinWaitNanos;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -86,11 +141,22 @@ public class FarragoObjectCache
         long bytesMax,
         FarragoCacheVictimPolicy victimPolicy)
     {
-        mapKeyToEntry = new MultiMap<Object, FarragoCacheEntry>();
+        stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; ++i) {
+            stripes[i] = new Stripe();
+        }
         owner.addAllocation(this);
         this.bytesMax = bytesMax;
-        bytesUsed = 0;
+        bytesUsed = new AtomicLong();
         this.victimPolicy = victimPolicy;
+        policyLock = new ReentrantLock();
+        pendingEvents = new ConcurrentLinkedQueue<PolicyEvent>();
+        nPendingEvents = new AtomicInteger();
+        nHits = new AtomicLong();
+        nMisses = new AtomicLong();
+        nEvictions = new AtomicLong();
+        nPinWaits = new AtomicLong();
+        pinWaitNanos = new AtomicLong();
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -154,8 +220,8 @@ public class FarragoObjectCache
         Thread currentThread = Thread.currentThread();
 
         // Look up entry in map, or create a new one.  Either way, it comes
-        // back pinned.  Note that we both acquire and release map lock in here
-        // since construction work below may be time-consuming.
+        // back pinned.  Note that we both acquire and release stripe lock in
+        // here since construction work below may be time-consuming.
         FarragoCacheEntry entry =
             findOrCreateEntry(currentThread, key, factory, exclusive);
 
@@ -166,6 +232,7 @@ public class FarragoObjectCache
                     if (entry.constructionThread == currentThread) {
                         // we're responsible for construction
                         boolean success = false;
+                        long startTime = getCurrentNanos();
                         try {
                             // NOTE jvs 14-Jun-2007: An important
                             // synchronization issue here is that we don't know
@@ -174,9 +241,9 @@ public class FarragoObjectCache
                             // order to build a top-level cached object
                             // composed of several underlying cached objects.
                             // This means that we may end up with the
-                            // lock sequence entry-then-map.  That's why
+                            // lock sequence entry-then-stripe.  That's why
                             // we don't allow locking of entries when a
-                            // lock on the map is held.
+                            // lock on a stripe is held.
                             factory.initializeEntry(key, entry);
                             assert (entry.isInitialized());
 
@@ -188,6 +255,12 @@ public class FarragoObjectCache
                                 "initialized new cache entry " + entry.getKey()
                                 + "=" + entry.getValue());
                         } finally {
+                            // Record what it cost to build the value (this
+                            // includes any nested pins) so that cost-aware
+                            // policies can weigh it against memory usage.
+                            entry.constructionNanos =
+                                getCurrentNanos() - startTime;
+
                             // NOTE: an exception can leave a failed entry lying
                             // around.  It would be nice to get rid of it
                             // immediately, but it's tricky since someone else
@@ -212,20 +285,25 @@ public class FarragoObjectCache
                         }
 
                         // now we need to adjust memory usage, but can only do
-                        // that after releasing entry lock since map lock is
-                        // required
+                        // that after releasing entry lock since policy lock
+                        // may be required
                         break;
                     }
 
-                    while (entry.constructionThread != null) {
-                        tracer.finer("waiting for entry initialization");
-
-                        // someone else is supposed to construct the object
-                        try {
-                            entry.wait();
-                        } catch (InterruptedException ex) {
-                            throw new AssertionError();
+                    if (entry.constructionThread != null) {
+                        nPinWaits.incrementAndGet();
+                        long waitStart = System.nanoTime();
+                        while (entry.constructionThread != null) {
+                            tracer.finer("waiting for entry initialization");
+
+                            // someone else is supposed to construct the object
+                            try {
+                                entry.wait();
+                            } catch (InterruptedException ex) {
+                                throw new AssertionError();
+                            }
                         }
+                        pinWaitNanos.addAndGet(System.nanoTime() - waitStart);
                     }
 
                     if (entry.value != null) {
@@ -257,7 +335,7 @@ public class FarragoObjectCache
             }
         } finally {
             if (unpinEntry) {
-                synchronized (mapKeyToEntry) {
+                synchronized (getStripe(entry.key)) {
                     entry.pinCount--;
                 }
             }
@@ -273,12 +351,16 @@ public class FarragoObjectCache
         assert (!unpinEntry);
 
         if (tracer.isLoggable(Level.FINE)) {
-            long cacheSize = bytesUsed + entry.memoryUsage.get();
+            long cacheSize = bytesUsed.get() + entry.memoryUsage.get();
             tracer.fine(
                 "returning new entry, pin count " + entry.pinCount
                 + ", size " + entry.memoryUsage.get() + ", cache size "
                 + cacheSize + ", key " + entry.key);
         }
+
+        // The policy registered the entry before its size and cost were
+        // known; report an access so that it can reposition the entry.
+        queueEvent(entry, EVENT_ACCESS);
         adjustMemoryUsage(entry.memoryUsage.get());
         return entry;
     }
@@ -293,8 +375,9 @@ public class FarragoObjectCache
 
         List<FarragoCacheEntry> staleList = null;
 
-        synchronized (mapKeyToEntry) {
-            List<FarragoCacheEntry> candidateList = mapKeyToEntry.getMulti(key);
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            List<FarragoCacheEntry> candidateList = stripe.map.getMulti(key);
             int nCandidates = candidateList.size();
             Iterator<FarragoCacheEntry> iter = candidateList.iterator();
             while (iter.hasNext()) {
@@ -327,7 +410,8 @@ public class FarragoObjectCache
                                     // this special case.
                                     iter.remove();
                                 }
-                                victimPolicy.unregisterEntry(entry);
+                                markDiscarded(entry);
+                                queueEvent(entry, EVENT_UNREGISTER);
                             } else {
                                 tracer.finer(
                                     "found stale+pinned cache entry:  "
@@ -340,10 +424,10 @@ public class FarragoObjectCache
 
                     tracer.finer("found cache entry");
 
-                    // pin the entry so that it can't be discarded after map
+                    // pin the entry so that it can't be discarded after stripe
                     // lock is released below
                     entry.pinCount++;
-                    victimPolicy.accessEntry(entry);
+                    queueEvent(entry, EVENT_ACCESS);
                     break;
                 }
             }
@@ -351,19 +435,22 @@ public class FarragoObjectCache
                 // NOTE jvs 10-Jun-2007: This special case is required because
                 // of the non-uniform return behavior of MultiMap (singleton
                 // entries are returned via an immutable list).
-                mapKeyToEntry.remove(key);
+                stripe.map.remove(key);
             }
             if (entry == null) {
                 // create a new entry and add it to the map
                 entry = victimPolicy.newEntry(this);
                 entry.key = key;
                 entry.pinCount = 1;
-                victimPolicy.registerEntry(entry);
+                queueEvent(entry, EVENT_REGISTER);
 
                 // let others know we're planning to construct it, so they
                 // shouldn't
                 entry.constructionThread = currentThread;
-                mapKeyToEntry.putMulti(key, entry);
+                stripe.map.putMulti(key, entry);
+                nMisses.incrementAndGet();
+            } else {
+                nHits.incrementAndGet();
             }
         }
 
@@ -375,51 +462,66 @@ public class FarragoObjectCache
             }
         }
 
+        drainIfBacklogged();
+
         return entry;
     }
 
     private void adjustMemoryUsage(long incBytes)
     {
+        long bytesNow = bytesUsed.addAndGet(incBytes);
         if (tracer.isLoggable(Level.FINER)) {
             tracer.finer(
-                "cache size before discards = " + bytesUsed
+                "cache size before discards = " + (bytesNow - incBytes)
                 + " increasing by " + incBytes);
         }
-        List<FarragoCacheEntry> discards;
 
-        synchronized (mapKeyToEntry) {
-            bytesUsed += incBytes;
+        if (bytesNow <= bytesMax) {
+            drainIfBacklogged();
+            return;
+        }
 
-            long overdraft = bytesUsed - bytesMax;
+        List<FarragoCacheEntry> discards = new ArrayList<FarragoCacheEntry>();
 
-            if (overdraft <= 0) {
-                return;
-            }
+        policyLock.lock();
+        try {
+            drainPendingEvents();
 
-            discards = new ArrayList<FarragoCacheEntry>();
+            // recompute now that we hold the lock, since another thread may
+            // have victimized on our behalf while we were waiting
+            long overdraft = bytesUsed.get() - bytesMax;
 
             // get an ordered list of potential cache victims and search
             // for unused entries
-            Iterator<FarragoCacheEntry> lruList =
+            Iterator<FarragoCacheEntry> victimRange =
                 victimPolicy.getVictimIterator();
-            while ((overdraft > 0) && lruList.hasNext()) {
-                FarragoCacheEntry entry = lruList.next();
-                if (entry.pinCount > 0) {
-                    continue;
+            while ((overdraft > 0) && victimRange.hasNext()) {
+                FarragoCacheEntry entry = victimRange.next();
+                Stripe stripe = getStripe(entry.key);
+                synchronized (stripe) {
+                    // skip pinned entries, and entries already removed from
+                    // their stripe whose unregistration is still queued
+                    if ((entry.pinCount > 0) || entry.isDiscarded) {
+                        continue;
+                    }
+                    stripe.map.removeMulti(entry.key, entry);
+                    markDiscarded(entry);
                 }
-                victimPolicy.unregisterEntry(lruList);
-                mapKeyToEntry.removeMulti(entry.getKey(), entry);
+                victimPolicy.unregisterEntry(victimRange);
                 discards.add(entry);
                 overdraft -= entry.memoryUsage.get();
             }
+        } finally {
+            policyLock.unlock();
         }
+        nEvictions.addAndGet(discards.size());
 
-        // release map lock since actual discard could be time-consuming
+        // release policy lock since actual discard could be time-consuming
         for (FarragoCacheEntry discard : discards) {
             discardEntry(discard);
         }
         if (tracer.isLoggable(Level.FINER)) {
-            tracer.finer("cache size after discards = " + bytesUsed);
+            tracer.finer("cache size after discards = " + bytesUsed.get());
         }
 
         // REVIEW:  in some circumstances, we want to fail if overdraft is
@@ -433,9 +535,7 @@ public class FarragoObjectCache
      */
     public void setMaxBytes(long bytesMaxNew)
     {
-        synchronized (mapKeyToEntry) {
-            bytesMax = bytesMaxNew;
-        }
+        bytesMax = bytesMaxNew;
 
         adjustMemoryUsage(0);
     }
@@ -454,7 +554,51 @@ public class FarragoObjectCache
      */
     public long getBytesCached()
     {
-        return bytesUsed;
+        return bytesUsed.get();
+    }
+
+    /**
+     * @return number of pin requests satisfied by an existing entry
+     */
+    public long getHitCount()
+    {
+        return nHits.get();
+    }
+
+    /**
+     * @return number of pin requests which required construction of a new
+     * entry
+     */
+    public long getMissCount()
+    {
+        return nMisses.get();
+    }
+
+    /**
+     * @return number of entries discarded to stay within the size limit (not
+     * counting stale entries or explicit discards)
+     */
+    public long getEvictionCount()
+    {
+        return nEvictions.get();
+    }
+
+    /**
+     * @return number of pin requests which had to wait for another thread to
+     * finish constructing the entry
+     */
+    public long getPinWaitCount()
+    {
+        return nPinWaits.get();
+    }
+
+    /**
+     * @return total time in milliseconds spent in waits counted by {@link
+     * #getPinWaitCount}
+     */
+    public long getPinWaitMillis()
+    {
+        return pinWaitNanos.get() / 1000000;
     }
 
     /**
@@ -467,7 +611,7 @@ public class FarragoObjectCache
     public void unpin(Entry pinnedEntry)
     {
         FarragoCacheEntry entry = (FarragoCacheEntry) pinnedEntry;
-        synchronized (mapKeyToEntry) {
+        synchronized (getStripe(entry.key)) {
             if (tracer.isLoggable(Level.FINE)) {
                 tracer.fine("Unpinning key " + entry.key.toString());
                 tracer.fine("pin count before unpin = " + entry.pinCount);
@@ -491,8 +635,11 @@ public class FarragoObjectCache
      */
     public void tryUnpin(String key)
     {
-        synchronized (mapKeyToEntry) {
-            List<FarragoCacheEntry> entryList = mapKeyToEntry.getMulti(key);
+        List<FarragoCacheEntry> unpinnedList =
+            new ArrayList<FarragoCacheEntry>();
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            List<FarragoCacheEntry> entryList = stripe.map.getMulti(key);
             assert (entryList != null);
             tracer.fine("unpinning cache entries " + entryList);
 
@@ -506,14 +653,20 @@ public class FarragoObjectCache
                 entry.pinCount--;
 
                 if (0 == entry.pinCount) {
-                    if (entry.getValue() instanceof FarragoAllocation) {
-                        ((FarragoAllocation) entry.getValue())
-                        .closeAllocation();
-                    }
-                    discard(key);
+                    unpinnedList.add(entry);
                 }
             }
         }
+
+        // close outside of the stripe lock, since entry locks may be needed
+        for (FarragoCacheEntry entry : unpinnedList) {
+            if (entry.getValue() instanceof FarragoAllocation) {
+                ((FarragoAllocation) entry.getValue()).closeAllocation();
+            }
+        }
+        if (!unpinnedList.isEmpty()) {
+            discard(key);
+        }
     }
 
     /**
@@ -530,11 +683,13 @@ public class FarragoObjectCache
     public void discard(Object key)
     {
         List<FarragoCacheEntry> list;
-        synchronized (mapKeyToEntry) {
-            list = mapKeyToEntry.getMulti(key);
-            mapKeyToEntry.remove(key);
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            list = stripe.map.getMulti(key);
+            stripe.map.remove(key);
             for (FarragoCacheEntry entry : list) {
-                victimPolicy.unregisterEntry(entry);
+                markDiscarded(entry);
+                queueEvent(entry, EVENT_UNREGISTER);
             }
         }
 
@@ -552,16 +707,32 @@ public class FarragoObjectCache
     public void discardAll()
     {
         tracer.fine("discarding all entries");
-        synchronized (mapKeyToEntry) {
-            Iterator<Map.Entry<Object, FarragoCacheEntry>> iter =
-                mapKeyToEntry.entryIterMulti();
-            while (iter.hasNext()) {
-                Map.Entry<Object, FarragoCacheEntry> mapEntry = iter.next();
-                FarragoCacheEntry entry = mapEntry.getValue();
-                discardEntry(entry);
+        List<FarragoCacheEntry> discards = new ArrayList<FarragoCacheEntry>();
+        policyLock.lock();
+        try {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    Iterator<Map.Entry<Object, FarragoCacheEntry>> iter =
+                        stripe.map.entryIterMulti();
+                    while (iter.hasNext()) {
+                        Map.Entry<Object, FarragoCacheEntry> mapEntry =
+                            iter.next();
+                        FarragoCacheEntry entry = mapEntry.getValue();
+                        markDiscarded(entry);
+                        discards.add(entry);
+                    }
+                    stripe.map.clear();
+                }
+            }
+            while (pendingEvents.poll() != null) {
+                nPendingEvents.decrementAndGet();
             }
-            mapKeyToEntry.clear();
             victimPolicy.clearCache();
+        } finally {
+            policyLock.unlock();
+        }
+        for (FarragoCacheEntry entry : discards) {
+            discardEntry(entry);
         }
     }
 
@@ -582,9 +753,93 @@ public class FarragoObjectCache
                 ((FarragoAllocation) entry.value).closeAllocation();
             }
         }
+    }
 
-        synchronized (mapKeyToEntry) {
-            bytesUsed -= entry.memoryUsage.get();
+    /**
+     * Marks an entry which has just been removed from its stripe (whose lock
+     * must be held by the caller) and releases its memory from the cache
+     * total.
+     */
+    private void markDiscarded(FarragoCacheEntry entry)
+    {
+        assert (!entry.isDiscarded) : entry;
+        entry.isDiscarded = true;
+        bytesUsed.addAndGet(-entry.memoryUsage.get());
+    }
+
+    /**
+     * Reads the clock used to measure how long entries take to construct,
+     * which cost-aware victim policies weigh against memory usage. Tests
+     * override this to make the order of victimization independent of
+     * timing.
+     *
+     * @return current time in nanoseconds, from an arbitrary origin
+     */
+    protected long getCurrentNanos()
+    {
+        return System.nanoTime();
+    }
+
+    private Stripe getStripe(Object key)
+    {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPE_COUNT - 1)];
+    }
+
+    private void queueEvent(FarragoCacheEntry entry, int kind)
+    {
+        pendingEvents.add(new PolicyEvent(entry, kind));
+        nPendingEvents.incrementAndGet();
+    }
+
+    /**
+     * Applies queued notifications to the victim policy, if there are enough
+     * of them and no other thread is currently holding the policy lock.
+     */
+    private void drainIfBacklogged()
+    {
+        if (nPendingEvents.get() < POLICY_DRAIN_THRESHOLD) {
+            return;
+        }
+        if (!policyLock.tryLock()) {
+            // whoever has it will drain soon enough
+            return;
+        }
+        try {
+            drainPendingEvents();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void drainPendingEvents()
+    {
+        assert (policyLock.isHeldByCurrentThread());
+        for (;;) {
+            PolicyEvent event = pendingEvents.poll();
+            if (event == null) {
+                return;
+            }
+            nPendingEvents.decrementAndGet();
+            switch (event.kind) {
+            case EVENT_REGISTER:
+                victimPolicy.registerEntry(event.entry);
+                break;
+            case EVENT_ACCESS:
+                // Events for a given entry are queued in order, except that
+                // an access may be queued after victimization has already
+                // unregistered the entry; such accesses are dropped.
+                if (!event.entry.isDiscarded) {
+                    victimPolicy.accessEntry(event.entry);
+                }
+                break;
+            case EVENT_UNREGISTER:
+                victimPolicy.unregisterEntry(event.entry);
+                break;
+            default:
+                throw Util.newInternal("unknown cache event " + event.kind);
+            }
         }
     }
 
@@ -592,18 +847,23 @@ public class FarragoObjectCache
     public void closeAllocation()
     {
         discardAll();
-        assert (bytesUsed == 0);
+        assert (bytesUsed.get() == 0);
     }
 
     public void dumpCache()
     {
-        Iterator<Map.Entry<Object, FarragoCacheEntry>> it =
-            mapKeyToEntry.entryIterMulti();
-        while (it.hasNext()) {
-            Map.Entry<Object, FarragoCacheEntry> entry = it.next();
-            tracer.fine(
-                "objectCache[" + entry.getKey().getClass().getName()
-                + "," + entry.getKey() + "]=" + entry.getValue().getValue());
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Map.Entry<Object, FarragoCacheEntry>> it =
+                    stripe.map.entryIterMulti();
+                while (it.hasNext()) {
+                    Map.Entry<Object, FarragoCacheEntry> entry = it.next();
+                    tracer.fine(
+                        "objectCache[" + entry.getKey().getClass().getName()
+                        + "," + entry.getKey() + "]="
+                        + entry.getValue().getValue());
+                }
+            }
         }
     }
 
@@ -683,6 +943,33 @@ public class FarragoObjectCache
          */
         public Object getValue();
     }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Stripe is one partition of the cache's key space. Its monitor protects
+     * its map as well as the pin counts of the entries it contains.
+     */
+    private static class Stripe
+    {
+        final MultiMap<Object, FarragoCacheEntry> map =
+            new MultiMap<Object, FarragoCacheEntry>();
+    }
+
+    /**
+     * PolicyEvent is a victim policy notification waiting to be applied.
+     */
+    private static class PolicyEvent
+    {
+        final FarragoCacheEntry entry;
+        final int kind;
+
+        PolicyEvent(FarragoCacheEntry entry, int kind)
+        {
+            this.entry = entry;
+            this.kind = kind;
+        }
+    }
 }
 
 // End FarragoObjectCache.java
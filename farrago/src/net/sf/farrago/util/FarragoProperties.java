@@ -84,6 +84,44 @@ public class FarragoProperties
             "net.sf.farrago.defaultSessionFactoryLibraryName",
             "class net.sf.farrago.defimpl.FarragoDefaultSessionFactory");
 
+    /**
+     * The integer property
+     * "net.sf.farrago.db.FarragoDatabase.deallocateOldInterval" specifies the
+     * number of seconds between background passes which free old page
+     * versions, as ALTER SYSTEM DEALLOCATE OLD does. If 0 (the default), old
+     * pages are only freed by that statement.
+     */
+    public final IntegerProperty deallocateOldInterval =
+        new IntegerProperty(
+            this,
+            "net.sf.farrago.db.FarragoDatabase.deallocateOldInterval",
+            0);
+
+    /**
+     * The integer property
+     * "net.sf.farrago.db.FarragoDatabase.deallocateOldMinPages" specifies how
+     * many data pages must have been allocated since old pages were last
+     * freed before a background pass frees them again. Defaults to 1000.
+     */
+    public final IntegerProperty deallocateOldMinPages =
+        new IntegerProperty(
+            this,
+            "net.sf.farrago.db.FarragoDatabase.deallocateOldMinPages",
+            1000);
+
+    /**
+     * The integer property
+     * "net.sf.farrago.db.FarragoDatabase.deallocateOldMaxPages" specifies how
+     * many old page versions a background pass frees at most; the next pass
+     * resumes where it stopped. If 0, a pass frees all old pages. Defaults
+     * to 10000.
+     */
+    public final IntegerProperty deallocateOldMaxPages =
+        new IntegerProperty(
+            this,
+            "net.sf.farrago.db.FarragoDatabase.deallocateOldMaxPages",
+            10000);
+
     /**
      * The string property "net.sf.farrago.test.jdbcDriverClass" specifies the
      * fully qualified name of the JDBC driver to use during testing. If not
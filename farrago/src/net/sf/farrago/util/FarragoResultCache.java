@@ -0,0 +1,538 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.util;
+
+import java.math.*;
+
+import java.util.*;
+
+
+/**
+ * FarragoResultCache holds the complete results of queries so that repeated
+ * executions can be answered without running them. A result is keyed by the
+ * plan which produced it (compared by identity, so a plan which is replaced in
+ * the code cache never matches results of its predecessor) together with the
+ * values of the plan's dynamic parameters.
+ *
+ * <p>Every result records the tables it was computed from. A txn calls {@link
+ * #beginTableWrites} before it modifies a table and {@link #endTableWrites}
+ * once its changes have been committed or rolled back. Each discards the
+ * affected results and advances a per-table version. In between, no result
+ * read from the table is stored, since it might have been computed from a
+ * snapshot older than the commit; and the final version advance keeps any
+ * result recorded before the commit became visible from being stored after
+ * it (see {@link Recorder#store}). {@link #clear} discards everything, for
+ * changes which cannot be attributed to particular tables.
+ *
+ * <p>Memory usage is bounded. Entries are victimized in GreedyDual-Size order
+ * (see {@link FarragoGreedyDualSizeVictimPolicy}), weighing the time it took
+ * to compute a result against its estimated size, and results larger than a
+ * per-entry limit are not cached at all. All methods are thread-safe.
+ *
+ * @version $Id$
+ */
+public class FarragoResultCache
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final long bytesMax;
+    private final long entryBytesMax;
+
+    /**
+     * Map from key to cached result; guarded by this.
+     */
+    private final Map<Key, Entry> map;
+
+    /**
+     * Entries in victimization order: by priority, then by time of last
+     * access; guarded by this.
+     */
+    private final TreeSet<Entry> priorityOrder;
+
+    /**
+     * Map from table name to the number of the last invalidation which
+     * affected it; guarded by this.
+     */
+    private final Map<List<String>, Long> tableVersions;
+
+    /**
+     * Map from table name to the number of txns which are modifying it;
+     * guarded by this.
+     */
+    private final Map<List<String>, Integer> tableWriterCounts;
+
+    /**
+     * Number of the last invalidation of any kind; guarded by this.
+     */
+    private long invalidationSeq;
+
+    /**
+     * Number of the last call to {@link #clear}; guarded by this.
+     */
+    private long clearSeq;
+
+    /**
+     * Priority of the most recently victimized entry; guarded by this.
+     */
+    private double inflation;
+
+    /**
+     * Counter used to break ties between entries of equal priority in LRU
+     * order; guarded by this.
+     */
+    private long accessSeq;
+
+    private long bytesCached;
+    private long nHits;
+    private long nMisses;
+    private long nEvictions;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param bytesMax maximum total estimated size of cached results
+     * @param entryBytesMax maximum estimated size of a single result
+     */
+    public FarragoResultCache(long bytesMax, long entryBytesMax)
+    {
+        assert (entryBytesMax <= bytesMax);
+        this.bytesMax = bytesMax;
+        this.entryBytesMax = entryBytesMax;
+        map = new HashMap<Key, Entry>();
+        priorityOrder =
+            new TreeSet<Entry>(
+                new Comparator<Entry>() {
+                    public int compare(Entry e1, Entry e2)
+                    {
+                        if (e1.priority < e2.priority) {
+                            return -1;
+                        } else if (e1.priority > e2.priority) {
+                            return 1;
+                        } else if (e1.seq < e2.seq) {
+                            return -1;
+                        } else if (e1.seq > e2.seq) {
+                            return 1;
+                        }
+                        return 0;
+                    }
+                });
+        tableVersions = new HashMap<List<String>, Long>();
+        tableWriterCounts = new HashMap<List<String>, Integer>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Looks up the result of a plan.
+     *
+     * @param plan plan which computes the result
+     * @param paramValues values of the plan's dynamic parameters
+     *
+     * @return rows of the cached result (which must not be modified), or null
+     * if none is cached
+     */
+    public synchronized List<Object []> lookup(
+        Object plan,
+        Object [] paramValues)
+    {
+        Entry entry = map.get(new Key(plan, paramValues));
+        if (entry == null) {
+            ++nMisses;
+            return null;
+        }
+        ++nHits;
+
+        // priority is part of the ordering key, so it can only be changed
+        // while the entry is out of the set
+        priorityOrder.remove(entry);
+        assignPriority(entry);
+        priorityOrder.add(entry);
+        return entry.rows;
+    }
+
+    /**
+     * Starts recording the result of a plan. Call before the plan begins
+     * reading its tables.
+     *
+     * @param plan plan which computes the result
+     * @param paramValues values of the plan's dynamic parameters
+     * @param tables names of all tables read by the plan
+     *
+     * @return new recorder
+     */
+    public synchronized Recorder newRecorder(
+        Object plan,
+        Object [] paramValues,
+        Collection<List<String>> tables)
+    {
+        List<List<String>> tableList = new ArrayList<List<String>>(tables);
+        long [] versions = new long[tableList.size()];
+        for (int i = 0; i < versions.length; ++i) {
+            versions[i] = getTableVersion(tableList.get(i));
+        }
+        return new Recorder(
+            new Key(plan, paramValues),
+            tableList,
+            versions,
+            clearSeq);
+    }
+
+    /**
+     * Discards all results computed from any of the given tables, and prevents
+     * results currently being recorded from them from being stored.
+     *
+     * @param tables names of modified tables
+     */
+    public synchronized void invalidateTables(Collection<List<String>> tables)
+    {
+        if (tables.isEmpty()) {
+            return;
+        }
+        ++invalidationSeq;
+        for (List<String> table : tables) {
+            tableVersions.put(table, invalidationSeq);
+        }
+        Iterator<Entry> iter = map.values().iterator();
+        while (iter.hasNext()) {
+            Entry entry = iter.next();
+            if (!Collections.disjoint(entry.tables, tables)) {
+                iter.remove();
+                priorityOrder.remove(entry);
+                bytesCached -= entry.bytes;
+            }
+        }
+    }
+
+    /**
+     * Notes that a txn is about to modify tables. Results computed from them
+     * are discarded, and none are stored until every such txn has called
+     * {@link #endTableWrites}. Call at most once per table per txn.
+     *
+     * @param tables names of tables to be modified
+     */
+    public synchronized void beginTableWrites(Collection<List<String>> tables)
+    {
+        invalidateTables(tables);
+        for (List<String> table : tables) {
+            Integer count = tableWriterCounts.get(table);
+            tableWriterCounts.put(
+                table,
+                (count == null) ? 1 : (count.intValue() + 1));
+        }
+    }
+
+    /**
+     * Notes that a txn which called {@link #beginTableWrites} has committed
+     * or rolled back. Call only once the outcome is visible to other txns,
+     * so that results recorded before then are never stored.
+     *
+     * @param tables names of the tables passed to beginTableWrites
+     */
+    public synchronized void endTableWrites(Collection<List<String>> tables)
+    {
+        invalidateTables(tables);
+        for (List<String> table : tables) {
+            int count = tableWriterCounts.get(table);
+            if (count == 1) {
+                tableWriterCounts.remove(table);
+            } else {
+                tableWriterCounts.put(table, count - 1);
+            }
+        }
+    }
+
+    /**
+     * Discards all results, and prevents results currently being recorded
+     * from being stored.
+     */
+    public synchronized void clear()
+    {
+        ++clearSeq;
+        map.clear();
+        priorityOrder.clear();
+        bytesCached = 0;
+        inflation = 0;
+    }
+
+    /**
+     * @return maximum total estimated size of cached results
+     */
+    public long getBytesMax()
+    {
+        return bytesMax;
+    }
+
+    /**
+     * @return total estimated size of cached results
+     */
+    public synchronized long getBytesCached()
+    {
+        return bytesCached;
+    }
+
+    /**
+     * @return number of results currently cached
+     */
+    public synchronized int getEntryCount()
+    {
+        return map.size();
+    }
+
+    /**
+     * @return number of lookups which found a cached result
+     */
+    public synchronized long getHitCount()
+    {
+        return nHits;
+    }
+
+    /**
+     * @return number of lookups which found no cached result
+     */
+    public synchronized long getMissCount()
+    {
+        return nMisses;
+    }
+
+    /**
+     * @return number of results discarded to make room for others
+     */
+    public synchronized long getEvictionCount()
+    {
+        return nEvictions;
+    }
+
+    private long getTableVersion(List<String> table)
+    {
+        Long version = tableVersions.get(table);
+        return (version == null) ? 0 : version.longValue();
+    }
+
+    private synchronized void store(Recorder recorder)
+    {
+        if (recorder.clearSeq != clearSeq) {
+            return;
+        }
+        for (int i = 0; i < recorder.versions.length; ++i) {
+            List<String> table = recorder.tables.get(i);
+            if ((getTableVersion(table) != recorder.versions[i])
+                || tableWriterCounts.containsKey(table))
+            {
+                return;
+            }
+        }
+        Entry entry = new Entry();
+        entry.key = recorder.key;
+        entry.rows = Collections.unmodifiableList(recorder.rows);
+        entry.bytes = recorder.bytes;
+        entry.tables = recorder.tables;
+        entry.costNanos = System.nanoTime() - recorder.startNanos;
+
+        Entry oldEntry = map.put(recorder.key, entry);
+        if (oldEntry != null) {
+            priorityOrder.remove(oldEntry);
+            bytesCached -= oldEntry.bytes;
+        }
+        bytesCached += entry.bytes;
+        while ((bytesCached > bytesMax) && !priorityOrder.isEmpty()) {
+            Entry victim = priorityOrder.first();
+            priorityOrder.remove(victim);
+            map.remove(victim.key);
+            bytesCached -= victim.bytes;
+            if (victim.priority > inflation) {
+                inflation = victim.priority;
+            }
+            ++nEvictions;
+        }
+        assignPriority(entry);
+        priorityOrder.add(entry);
+    }
+
+    private void assignPriority(Entry entry)
+    {
+        // As in FarragoGreedyDualSizeVictimPolicy, cost is taken in
+        // microseconds to keep the ratio in a reasonable range.
+        double cost = Math.max(entry.costNanos / 1000.0, 1.0);
+        long size = Math.max(entry.bytes, 1);
+        entry.priority = inflation + (cost / size);
+        entry.seq = accessSeq++;
+    }
+
+    /**
+     * Estimates the memory used by a value in a result row, not counting the
+     * reference to it.
+     *
+     * @param value value, as returned by a result set
+     *
+     * @return estimated size in bytes
+     */
+    public static long getValueMemoryUsage(Object value)
+    {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + FarragoUtil.getStringMemoryUsage((String) value);
+        } else if (value instanceof byte []) {
+            return 16 + ((byte []) value).length;
+        } else if (value instanceof BigDecimal) {
+            return 64;
+        } else {
+            return 24;
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Key identifies a result by plan identity and parameter values.
+     */
+    private static class Key
+    {
+        private final Object plan;
+        private final Object [] paramValues;
+        private final int hash;
+
+        Key(Object plan, Object [] paramValues)
+        {
+            this.plan = plan;
+            this.paramValues = paramValues.clone();
+            hash =
+                (System.identityHashCode(plan) * 31)
+                + Arrays.deepHashCode(this.paramValues);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return (plan == other.plan)
+                && Arrays.deepEquals(paramValues, other.paramValues);
+        }
+    }
+
+    /**
+     * Entry is a cached result.
+     */
+    private static class Entry
+    {
+        Key key;
+        List<Object []> rows;
+        long bytes;
+        List<List<String>> tables;
+        long costNanos;
+        double priority;
+        long seq;
+    }
+
+    /**
+     * Recorder accumulates the rows of a result as they are fetched. Once the
+     * last row has been fetched, calling {@link #store} caches the result,
+     * unless it was invalidated in the meantime. A recorder is used by a single
+     * thread.
+     */
+    public class Recorder
+    {
+        private final Key key;
+        private final List<List<String>> tables;
+        private final long [] versions;
+        private final long clearSeq;
+        private final long startNanos;
+        private ArrayList<Object []> rows;
+        private long bytes;
+
+        Recorder(
+            Key key,
+            List<List<String>> tables,
+            long [] versions,
+            long clearSeq)
+        {
+            this.key = key;
+            this.tables = tables;
+            this.versions = versions;
+            this.clearSeq = clearSeq;
+            startNanos = System.nanoTime();
+            rows = new ArrayList<Object []>();
+        }
+
+        /**
+         * Adds a row to the result. Byte array values are copied; other
+         * values must be immutable.
+         *
+         * @param row values of the row
+         *
+         * @return false if the result has become too large to cache, in which
+         * case the recorder has been abandoned and no further rows should be
+         * added
+         */
+        public boolean addRow(Object [] row)
+        {
+            if (rows == null) {
+                return false;
+            }
+            long rowBytes = 16 + (8 * row.length);
+            for (int i = 0; i < row.length; ++i) {
+                if (row[i] instanceof byte []) {
+                    row[i] = ((byte []) row[i]).clone();
+                }
+                rowBytes += getValueMemoryUsage(row[i]);
+            }
+            bytes += rowBytes;
+            if (bytes > entryBytesMax) {
+                abandon();
+                return false;
+            }
+            rows.add(row);
+            return true;
+        }
+
+        /**
+         * Caches the recorded result. Call after the last row has been added.
+         * Nothing is cached if a table the result read has been invalidated
+         * since recording started, or is being modified by an open txn.
+         */
+        public void store()
+        {
+            if (rows == null) {
+                return;
+            }
+            rows.trimToSize();
+            FarragoResultCache.this.store(this);
+            rows = null;
+        }
+
+        /**
+         * Discards the recorded rows without caching them.
+         */
+        public void abandon()
+        {
+            rows = null;
+        }
+    }
+}
+
+// End FarragoResultCache.java
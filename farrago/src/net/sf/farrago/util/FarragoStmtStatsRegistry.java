@@ -0,0 +1,455 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.util;
+
+import java.util.*;
+
+
+/**
+ * FarragoStmtStatsRegistry accumulates execution statistics for SQL
+ * statements, keyed by normalized statement text (see {@link #normalizeSql}),
+ * so that executions which differ only in literal values, whitespace,
+ * comments or the case of unquoted identifiers are counted together.
+ *
+ * <p>The registry holds at most a fixed number of distinct statements; when
+ * it is full, the statement executed least recently is dropped to make room.
+ * All methods are thread-safe.
+ *
+ * @version $Id$
+ */
+public class FarragoStmtStatsRegistry
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final int maxEntries;
+
+    /**
+     * Map from normalized SQL to statistics, in access order; guarded by
+     * itself.
+     */
+    private final LinkedHashMap<String, Entry> map;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty registry.
+     *
+     * @param maxEntries maximum number of distinct statements to track
+     */
+    public FarragoStmtStatsRegistry(int maxEntries)
+    {
+        assert (maxEntries > 0);
+        this.maxEntries = maxEntries;
+        map =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(
+                    Map.Entry<String, Entry> eldest)
+                {
+                    return size() > FarragoStmtStatsRegistry.this.maxEntries;
+                }
+            };
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Records the preparation of a statement.
+     *
+     * @param normalizedSql statement text, as returned by {@link
+     * #normalizeSql}
+     * @param prepareNanos time taken to prepare the statement
+     * @param codeCacheHit whether the prepared plan was found in the code
+     * cache
+     */
+    public void recordPrepare(
+        String normalizedSql,
+        long prepareNanos,
+        boolean codeCacheHit)
+    {
+        synchronized (map) {
+            Entry entry = lookup(normalizedSql);
+            ++entry.prepares;
+            entry.prepareNanos += prepareNanos;
+            if (codeCacheHit) {
+                ++entry.codeCacheHits;
+            }
+        }
+    }
+
+    /**
+     * Records one execution of a statement.
+     *
+     * @param normalizedSql statement text, as returned by {@link
+     * #normalizeSql}
+     * @param executeNanos time from the start of execution until its result
+     * set was closed (or until execution finished, for statements without a
+     * result set)
+     * @param rowCount number of rows fetched or affected
+     */
+    public void recordExecution(
+        String normalizedSql,
+        long executeNanos,
+        long rowCount)
+    {
+        synchronized (map) {
+            Entry entry = lookup(normalizedSql);
+            if (entry.calls == 0) {
+                entry.minExecuteNanos = executeNanos;
+                entry.maxExecuteNanos = executeNanos;
+            } else {
+                entry.minExecuteNanos =
+                    Math.min(entry.minExecuteNanos, executeNanos);
+                entry.maxExecuteNanos =
+                    Math.max(entry.maxExecuteNanos, executeNanos);
+            }
+            ++entry.calls;
+            entry.executeNanos += executeNanos;
+            entry.rows += rowCount;
+            entry.lastExecutionMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return a snapshot of the statistics for all statements currently
+     * tracked, from least to most recently used
+     */
+    public List<Entry> getEntries()
+    {
+        synchronized (map) {
+            List<Entry> list = new ArrayList<Entry>(map.size());
+            for (Entry entry : map.values()) {
+                list.add(entry.copy());
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Discards all accumulated statistics.
+     */
+    public void clear()
+    {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    private Entry lookup(String normalizedSql)
+    {
+        Entry entry = map.get(normalizedSql);
+        if (entry == null) {
+            entry = new Entry(normalizedSql);
+            map.put(normalizedSql, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Normalizes SQL text for use as a statistics key. Literals (including
+     * typed literals such as <code>DATE '2001-01-01'</code> and numeric
+     * literals) are replaced with <code>?</code>, comments are removed,
+     * whitespace is reduced to a single space between adjacent words and
+     * dropped elsewhere, and unquoted identifiers and keywords are converted
+     * to upper case. Quoted identifiers are preserved as is.
+     *
+     * @param sql SQL text
+     *
+     * @return normalized text
+     */
+    public static String normalizeSql(String sql)
+    {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        boolean pendingSpace = false;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                ++i;
+                continue;
+            }
+            if ((c == '-') && (i + 1 < n) && (sql.charAt(i + 1) == '-')) {
+                while ((i < n) && (sql.charAt(i) != '\n')) {
+                    ++i;
+                }
+                pendingSpace = true;
+                continue;
+            }
+            if ((c == '/') && (i + 1 < n) && (sql.charAt(i + 1) == '*')) {
+                int end = sql.indexOf("*/", i + 2);
+                i = (end < 0) ? n : (end + 2);
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && (sb.length() > 0)
+                && isWordChar(sb.charAt(sb.length() - 1))
+                && isWordChar(c))
+            {
+                // whitespace is only significant between words
+                sb.append(' ');
+            }
+            pendingSpace = false;
+            if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                sb.append('?');
+            } else if (c == '"') {
+                int end = skipQuoted(sql, i, '"');
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c)
+                || ((c == '.') && (i + 1 < n)
+                    && Character.isDigit(sql.charAt(i + 1))))
+            {
+                i = skipNumber(sql, i);
+                sb.append('?');
+            } else if (Character.isLetter(c) || (c == '_') || (c == '$')) {
+                int start = i;
+                while ((i < n) && isIdentifierPart(sql.charAt(i))) {
+                    ++i;
+                }
+                if ((i < n) && (sql.charAt(i) == '\'')
+                    && isLiteralPrefix(sql.substring(start, i)))
+                {
+                    // N'...', X'...' and the like
+                    i = skipQuoted(sql, i, '\'');
+                    sb.append('?');
+                } else {
+                    sb.append(sql.substring(start, i).toUpperCase());
+                }
+            } else {
+                sb.append(c);
+                ++i;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isIdentifierPart(char c)
+    {
+        return Character.isLetterOrDigit(c) || (c == '_') || (c == '$');
+    }
+
+    private static boolean isWordChar(char c)
+    {
+        return isIdentifierPart(c) || (c == '"') || (c == '\'')
+            || (c == '?') || (c == '.');
+    }
+
+    private static boolean isLiteralPrefix(String s)
+    {
+        return s.equalsIgnoreCase("N") || s.equalsIgnoreCase("X")
+            || s.equalsIgnoreCase("B");
+    }
+
+    /**
+     * Skips a quoted token starting at <code>i</code>, including doubled
+     * quotes and (for string literals) continuations of the form
+     * <code>'abc' 'def'</code>.
+     *
+     * @return index just past the token
+     */
+    private static int skipQuoted(String sql, int i, char quote)
+    {
+        int n = sql.length();
+        for (;;) {
+            ++i;
+            while (i < n) {
+                if (sql.charAt(i) == quote) {
+                    if ((i + 1 < n) && (sql.charAt(i + 1) == quote)) {
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                ++i;
+            }
+            if (i < n) {
+                ++i;
+            }
+            if (quote != '\'') {
+                return i;
+            }
+            int j = i;
+            while ((j < n) && Character.isWhitespace(sql.charAt(j))) {
+                ++j;
+            }
+            if ((j == i) || (j >= n) || (sql.charAt(j) != '\'')) {
+                return i;
+            }
+            i = j;
+        }
+    }
+
+    private static int skipNumber(String sql, int i)
+    {
+        int n = sql.length();
+        while ((i < n)
+            && (Character.isDigit(sql.charAt(i)) || (sql.charAt(i) == '.')))
+        {
+            ++i;
+        }
+        if ((i < n) && ((sql.charAt(i) == 'e') || (sql.charAt(i) == 'E'))) {
+            int j = i + 1;
+            if ((j < n)
+                && ((sql.charAt(j) == '+') || (sql.charAt(j) == '-')))
+            {
+                ++j;
+            }
+            if ((j < n) && Character.isDigit(sql.charAt(j))) {
+                i = j;
+                while ((i < n) && Character.isDigit(sql.charAt(i))) {
+                    ++i;
+                }
+            }
+        }
+        return i;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Statistics accumulated for one normalized statement. Instances returned
+     * by {@link FarragoStmtStatsRegistry#getEntries} are snapshots.
+     */
+    public static class Entry
+    {
+        private final String sql;
+        private long calls;
+        private long executeNanos;
+        private long minExecuteNanos;
+        private long maxExecuteNanos;
+        private long rows;
+        private long prepares;
+        private long prepareNanos;
+        private long codeCacheHits;
+        private long lastExecutionMillis;
+
+        Entry(String sql)
+        {
+            this.sql = sql;
+        }
+
+        Entry copy()
+        {
+            Entry entry = new Entry(sql);
+            entry.calls = calls;
+            entry.executeNanos = executeNanos;
+            entry.minExecuteNanos = minExecuteNanos;
+            entry.maxExecuteNanos = maxExecuteNanos;
+            entry.rows = rows;
+            entry.prepares = prepares;
+            entry.prepareNanos = prepareNanos;
+            entry.codeCacheHits = codeCacheHits;
+            entry.lastExecutionMillis = lastExecutionMillis;
+            return entry;
+        }
+
+        /**
+         * @return normalized statement text
+         */
+        public String getSql()
+        {
+            return sql;
+        }
+
+        /**
+         * @return number of executions
+         */
+        public long getCalls()
+        {
+            return calls;
+        }
+
+        /**
+         * @return total execution time over all calls, in nanoseconds
+         */
+        public long getExecuteNanos()
+        {
+            return executeNanos;
+        }
+
+        /**
+         * @return shortest execution time, in nanoseconds (0 if no calls)
+         */
+        public long getMinExecuteNanos()
+        {
+            return minExecuteNanos;
+        }
+
+        /**
+         * @return longest execution time, in nanoseconds (0 if no calls)
+         */
+        public long getMaxExecuteNanos()
+        {
+            return maxExecuteNanos;
+        }
+
+        /**
+         * @return mean execution time, in nanoseconds (0 if no calls)
+         */
+        public long getMeanExecuteNanos()
+        {
+            return (calls == 0) ? 0 : (executeNanos / calls);
+        }
+
+        /**
+         * @return total rows fetched or affected over all calls
+         */
+        public long getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * @return number of times the statement was prepared
+         */
+        public long getPrepares()
+        {
+            return prepares;
+        }
+
+        /**
+         * @return total preparation time, in nanoseconds
+         */
+        public long getPrepareNanos()
+        {
+            return prepareNanos;
+        }
+
+        /**
+         * @return number of preparations satisfied from the code cache
+         */
+        public long getCodeCacheHits()
+        {
+            return codeCacheHits;
+        }
+
+        /**
+         * @return time of the last execution, as returned by {@link
+         * System#currentTimeMillis}, or 0 if never executed
+         */
+        public long getLastExecutionMillis()
+        {
+            return lastExecutionMillis;
+        }
+    }
+}
+
+// End FarragoStmtStatsRegistry.java
@@ -35,6 +35,7 @@ import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
 import org.eigenbase.runtime.*;
 import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
 import org.eigenbase.trace.*;
 import org.eigenbase.util.*;
 
@@ -46,6 +47,12 @@ import org.eigenbase.util.*;
  * and returned. Note that the same object is always returned (with different
  * values), so parents must not buffer the result.
  *
+ * <p>If the implementor specifies a {@link
+ * JavaRelImplementor#getCalcBatchSize calculator batch size}, and the program
+ * only uses operations supported by {@link VectorCalcProgramBuilder}, the
+ * generated iterator evaluates the program over batches of rows instead (see
+ * {@link VectorCalcTupleIter}).
+ *
  * <p>Rules:
  *
  * <ul>
@@ -274,6 +281,25 @@ public class IterCalcRel
         // Error buffering should not be enabled unless error recovery is
         assert !errorBuffering || errorRecovery;
 
+        // Vectorized evaluation reports an error for a batch rather than
+        // for a particular row, so only use it when errors abort.
+        int batchSize = implementor.getCalcBatchSize();
+        if (!errorRecovery && (batchSize > 0)) {
+            Expression vectorExp =
+                implementVectorTupleIter(
+                    implementor,
+                    rel,
+                    childExp,
+                    varInputRow,
+                    inputRowType,
+                    outputRowType,
+                    program,
+                    batchSize);
+            if (vectorExp != null) {
+                return vectorExp;
+            }
+        }
+
         // Allow backwards compatibility until all Farrago extensions are
         // satisfied with the new error handling semantics. The new semantics
         // include:
@@ -607,6 +633,274 @@ public class IterCalcRel
         return newTupleIterExp;
     }
 
+    /**
+     * Generates code for a Java expression satisfying the {@link
+     * org.eigenbase.runtime.TupleIter} interface which evaluates the program
+     * a batch of rows at a time. The generated code allocates a {@link
+     * VectorCalcTupleIter} whose <code>gatherRow</code> method copies the
+     * input fields referenced by the program into the registers of a {@link
+     * VectorCalcProgram}, and whose <code>scatterRow</code> method copies the
+     * results for a selected row into the output row.
+     *
+     * @param implementor an object that implements relations as Java code
+     * @param rel the relation to be implemented
+     * @param childExp the implemented child of the relation
+     * @param varInputRow the Java variable to use for the input row
+     * @param inputRowType the rel data type of the input row
+     * @param outputRowType the rel data type of the output row
+     * @param program the rex program to implemented by the relation
+     * @param batchSize number of rows per batch
+     *
+     * @return a Java expression satisfying the TupleIter interface, or null
+     * if the program cannot be vectorized
+     */
+    private static Expression implementVectorTupleIter(
+        JavaRelImplementor implementor,
+        JavaRel rel,
+        Expression childExp,
+        Variable varInputRow,
+        final RelDataType inputRowType,
+        final RelDataType outputRowType,
+        RexProgram program,
+        int batchSize)
+    {
+        MemberDeclarationList memberList = new MemberDeclarationList();
+        StatementList gatherBody = new StatementList();
+        RexToOJTranslator translator =
+            implementor.newStmtTranslator(rel, gatherBody, memberList);
+        VectorCalcProgramBuilder builder =
+            new VectorCalcProgramBuilder(program, translator);
+        if (!builder.build()) {
+            return null;
+        }
+
+        RelDataTypeFactory typeFactory = implementor.getTypeFactory();
+        OJClass outputRowClass =
+            OJUtil.typeToOJClass(
+                outputRowType,
+                typeFactory);
+        OJClass inputRowClass =
+            OJUtil.typeToOJClass(
+                inputRowType,
+                typeFactory);
+
+        Variable varOutputRow = implementor.newVariable();
+        Variable varInputObj = implementor.newVariable();
+        Variable varRow = implementor.newVariable();
+
+        // Hoist each register's arrays into members of the generated class,
+        // so that gathering and scattering index them directly.
+        final int [] registerTypes = builder.getRegisterTypes();
+        Variable [] valueVars = new Variable[registerTypes.length];
+        Variable [] nullVars = new Variable[registerTypes.length];
+        for (int reg = 0; reg < registerTypes.length; ++reg) {
+            valueVars[reg] = implementor.newVariable();
+            memberList.add(
+                new FieldDeclaration(
+                    new ModifierList(ModifierList.PRIVATE),
+                    new TypeName(builder.isLong(reg) ? "long" : "double", 1),
+                    valueVars[reg].toString(),
+                    new ArrayAccess(
+                        new FieldAccess(
+                            new FieldAccess("program"),
+                            builder.isLong(reg) ? "longs" : "doubles"),
+                        Literal.makeLiteral(reg))));
+            if (builder.isNullable(reg)) {
+                nullVars[reg] = implementor.newVariable();
+                memberList.add(
+                    new FieldDeclaration(
+                        new ModifierList(ModifierList.PRIVATE),
+                        new TypeName("boolean", 1),
+                        nullVars[reg].toString(),
+                        new ArrayAccess(
+                            new FieldAccess(
+                                new FieldAccess("program"),
+                                "nulls"),
+                            Literal.makeLiteral(reg))));
+            }
+        }
+
+        // gatherRow:
+        //     varInputRow = (InputRowClass) varInputObj;
+        //     [for each referenced input field]
+        //     vN[varRow] = varInputRow.field[.value];
+        //     nN[varRow] = varInputRow.field.isNull();
+        gatherBody.add(
+            assignInputRow(inputRowClass, varInputRow, varInputObj));
+        final RelDataTypeField [] inputFields = inputRowType.getFields();
+        for (Map.Entry<Integer, Integer> entry
+            : builder.getInputRegisters().entrySet())
+        {
+            final int ordinal = entry.getKey();
+            final int reg = entry.getValue();
+            final RelDataType type = inputFields[ordinal].getType();
+            Expression fieldExp =
+                new FieldAccess(
+                    varInputRow,
+                    Util.toJavaId(
+                        inputFields[ordinal].getName(),
+                        ordinal));
+            Expression valueExp =
+                translator.translatePrimitiveValue(fieldExp, type);
+            if (type.getSqlTypeName() == SqlTypeName.BOOLEAN) {
+                valueExp =
+                    new ConditionalExpression(
+                        valueExp,
+                        Literal.makeLiteral(1),
+                        Literal.makeLiteral(0));
+            }
+            gatherBody.add(
+                assignElement(valueVars[reg], varRow, valueExp));
+            if (nullVars[reg] != null) {
+                gatherBody.add(
+                    assignElement(
+                        nullVars[reg],
+                        varRow,
+                        translator.translateNullTest(fieldExp, type)));
+            }
+        }
+
+        // scatterRow:
+        //     [for each output field]
+        //     varOutputRow.field.setNull(nN[varRow]);
+        //     varOutputRow.field[.value] = (type) vN[varRow];
+        //     return varOutputRow;
+        StatementList scatterBody = new StatementList();
+        final RelDataTypeField [] outputFields = outputRowType.getFields();
+        final int [] outputRegisters = builder.getOutputRegisters();
+        for (int i = 0; i < outputFields.length; ++i) {
+            final int reg = outputRegisters[i];
+            final RelDataType type = outputFields[i].getType();
+            Expression lhs =
+                new FieldAccess(
+                    varOutputRow,
+                    Util.toJavaId(
+                        outputFields[i].getName(),
+                        i));
+            if (type.isNullable()) {
+                Expression nullExp;
+                if (nullVars[reg] != null) {
+                    nullExp = new ArrayAccess(nullVars[reg], varRow);
+                } else {
+                    nullExp = Literal.makeLiteral(false);
+                }
+                scatterBody.add(translator.translateSetNull(lhs, type, nullExp));
+            }
+            Expression valueExp = new ArrayAccess(valueVars[reg], varRow);
+            if (type.getSqlTypeName() == SqlTypeName.BOOLEAN) {
+                valueExp =
+                    new BinaryExpression(
+                        valueExp,
+                        BinaryExpression.NOTEQUAL,
+                        Literal.makeLiteral(0));
+            } else {
+                valueExp =
+                    new CastExpression(
+                        getPrimitiveClass(type),
+                        valueExp);
+            }
+            scatterBody.add(
+                new ExpressionStatement(
+                    new AssignmentExpression(
+                        translator.translatePrimitiveValue(lhs, type),
+                        AssignmentExpression.EQUALS,
+                        valueExp)));
+        }
+        scatterBody.add(new ReturnStatement(varOutputRow));
+
+        ParameterList gatherParams = new ParameterList();
+        gatherParams.add(
+            new Parameter(
+                new ModifierList(0),
+                OJUtil.typeNameForClass(Object.class),
+                varInputObj.toString()));
+        gatherParams.add(
+            new Parameter(
+                new ModifierList(0),
+                OJUtil.typeNameForClass(int.class),
+                varRow.toString()));
+        ParameterList scatterParams = new ParameterList();
+        scatterParams.add(
+            new Parameter(
+                new ModifierList(0),
+                OJUtil.typeNameForClass(int.class),
+                varRow.toString()));
+
+        memberList.add(
+            new FieldDeclaration(
+                new ModifierList(ModifierList.PRIVATE),
+                TypeName.forOJClass(inputRowClass),
+                varInputRow.toString(),
+                null));
+        memberList.add(
+            new FieldDeclaration(
+                new ModifierList(ModifierList.PRIVATE),
+                TypeName.forOJClass(outputRowClass),
+                varOutputRow.toString(),
+                new AllocationExpression(
+                    outputRowClass,
+                    new ExpressionList())));
+        memberList.add(
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PROTECTED),
+                TypeName.forOJClass(OJSystem.VOID),
+                "gatherRow",
+                gatherParams,
+                null,
+                gatherBody));
+        memberList.add(
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PROTECTED),
+                OJUtil.typeNameForClass(Object.class),
+                "scatterRow",
+                scatterParams,
+                null,
+                scatterBody));
+
+        // The program itself, with overflow reported the same way as
+        // row-at-a-time code reports it.
+        MemberDeclarationList programMemberList = new MemberDeclarationList();
+        programMemberList.add(
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PROTECTED),
+                OJUtil.typeNameForClass(RuntimeException.class),
+                "newOverflowException",
+                new ParameterList(),
+                null,
+                new StatementList(
+                    new ReturnStatement(
+                        translator.translateOverflowException()))));
+        ExpressionList longLiterals = new ExpressionList();
+        for (long value : builder.getLongLiterals()) {
+            longLiterals.add(Literal.makeLiteral(value));
+        }
+        ExpressionList doubleLiterals = new ExpressionList();
+        for (double value : builder.getDoubleLiterals()) {
+            doubleLiterals.add(Literal.makeLiteral(value));
+        }
+        Expression programExp =
+            new AllocationExpression(
+                OJUtil.typeNameForClass(VectorCalcProgram.class),
+                new ExpressionList(
+                    Literal.makeLiteral(batchSize),
+                    makeIntArray(registerTypes),
+                    makeIntArray(builder.getCode()),
+                    new ArrayAllocationExpression(
+                        TypeName.forOJClass(OJSystem.LONG),
+                        new ExpressionList(null),
+                        new ArrayInitializer(longLiterals)),
+                    new ArrayAllocationExpression(
+                        TypeName.forOJClass(OJSystem.DOUBLE),
+                        new ExpressionList(null),
+                        new ArrayInitializer(doubleLiterals))),
+                programMemberList);
+
+        return new AllocationExpression(
+            OJUtil.typeNameForClass(VectorCalcTupleIter.class),
+            new ExpressionList(childExp, programExp),
+            memberList);
+    }
+
     public ParseTree implement(JavaRelImplementor implementor)
     {
         Expression childExp =
@@ -640,6 +934,51 @@ public class IterCalcRel
         return tag;
     }
 
+    private static Statement assignElement(
+        Variable varArray,
+        Variable varIndex,
+        Expression value)
+    {
+        return new ExpressionStatement(
+            new AssignmentExpression(
+                new ArrayAccess(varArray, varIndex),
+                AssignmentExpression.EQUALS,
+                value));
+    }
+
+    private static Expression makeIntArray(int [] values)
+    {
+        ExpressionList list = new ExpressionList();
+        for (int value : values) {
+            list.add(Literal.makeLiteral(value));
+        }
+        return new ArrayAllocationExpression(
+            TypeName.forOJClass(OJSystem.INT),
+            new ExpressionList(null),
+            new ArrayInitializer(list));
+    }
+
+    private static OJClass getPrimitiveClass(RelDataType type)
+    {
+        switch (type.getSqlTypeName()) {
+        case TINYINT:
+            return OJSystem.BYTE;
+        case SMALLINT:
+            return OJSystem.SHORT;
+        case INTEGER:
+            return OJSystem.INT;
+        case BIGINT:
+            return OJSystem.LONG;
+        case REAL:
+            return OJSystem.FLOAT;
+        case FLOAT:
+        case DOUBLE:
+            return OJSystem.DOUBLE;
+        default:
+            throw Util.unexpected(type.getSqlTypeName());
+        }
+    }
+
     private static Statement assignInputRow(
         OJClass inputRowClass,
         Variable varInputRow,
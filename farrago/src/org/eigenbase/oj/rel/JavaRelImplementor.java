@@ -626,6 +626,20 @@ public class JavaRelImplementor
         return newTranslator(rel);
     }
 
+    /**
+     * Returns the number of rows which a Java calculator ({@link IterCalcRel})
+     * should evaluate per batch in vectorized mode, or 0 to evaluate one row
+     * at a time.
+     *
+     * <p>The default implementation returns 0.
+     *
+     * @return batch size, or 0 if vectorized evaluation is disabled
+     */
+    public int getCalcBatchSize()
+    {
+        return 0;
+    }
+
     /**
      * Creates an expression which references the <i>ordinal</i><sup>th</sup>
      * input.
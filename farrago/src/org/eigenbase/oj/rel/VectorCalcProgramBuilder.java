@@ -0,0 +1,651 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.oj.rel;
+
+import java.math.*;
+
+import java.util.*;
+import java.util.List;
+
+import org.eigenbase.oj.rex.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.runtime.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
+
+import static org.eigenbase.runtime.VectorCalcProgram.*;
+
+
+/**
+ * VectorCalcProgramBuilder translates a {@link RexProgram} into the register
+ * code executed by a {@link VectorCalcProgram}, for the vectorized mode of
+ * {@link IterCalcRel}.
+ *
+ * <p>Only a subset of programs can be vectorized: every input field the
+ * program references, every expression it computes and every field it
+ * projects must be a boolean, exact integer or approximate numeric value
+ * which the translator can read and write as a Java primitive, and every
+ * operator must be one of the arithmetic, comparison, logical, null-test or
+ * widening-cast operators handled below. Results match row-at-a-time
+ * evaluation: arithmetic follows Java's binary numeric promotion, and
+ * overflow checks are kept where the row-at-a-time code has them. If a
+ * program is outside the subset, {@link #build} returns false and the caller
+ * falls back to row-at-a-time code.
+ *
+ * @version $Id$
+ */
+public class VectorCalcProgramBuilder
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final RexProgram program;
+    private final RexToOJTranslator translator;
+
+    private final List<Integer> registerTypes = new ArrayList<Integer>();
+    private final List<Integer> code = new ArrayList<Integer>();
+    private final List<Long> longLiterals = new ArrayList<Long>();
+    private final List<Double> doubleLiterals = new ArrayList<Double>();
+
+    /**
+     * Maps the ordinal of an expression in the program to the register which
+     * holds its value.
+     */
+    private final Map<Integer, Integer> exprRegisters =
+        new HashMap<Integer, Integer>();
+
+    /**
+     * Maps the ordinal of each referenced input field to the register it is
+     * gathered into.
+     */
+    private final SortedMap<Integer, Integer> inputRegisters =
+        new TreeMap<Integer, Integer>();
+
+    private int [] outputRegisters;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a builder.
+     *
+     * @param program program to translate
+     * @param translator translator which will generate the code that reads
+     * inputs and writes outputs; decides which types are primitive
+     */
+    public VectorCalcProgramBuilder(
+        RexProgram program,
+        RexToOJTranslator translator)
+    {
+        this.program = program;
+        this.translator = translator;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Translates the program.
+     *
+     * @return whether the program could be vectorized
+     */
+    public boolean build()
+    {
+        try {
+            if (program.getCondition() != null) {
+                int condition = compileLocal(program.getCondition());
+                emit(OP_SELECT, 0, condition, 0);
+            }
+            final RelDataTypeField [] fields =
+                program.getOutputRowType().getFields();
+            final List<RexLocalRef> projectList = program.getProjectList();
+            outputRegisters = new int[projectList.size()];
+            for (int i = 0; i < outputRegisters.length; ++i) {
+                RelDataType fieldType = fields[i].getType();
+                RexLocalRef ref = projectList.get(i);
+                int reg = compileLocal(ref);
+                checkPrimitive(fieldType);
+                if ((getKind(fieldType) != getKind(ref.getType()))
+                    || (fieldType.getSqlTypeName()
+                        != ref.getType().getSqlTypeName()))
+                {
+                    throw new CannotVectorize();
+                }
+                if (!fieldType.isNullable() && isNullable(reg)) {
+                    // Row-at-a-time code checks for nulls assigned to NOT
+                    // NULL fields; leave that to it.
+                    throw new CannotVectorize();
+                }
+                outputRegisters[i] = reg;
+            }
+            return true;
+        } catch (CannotVectorize e) {
+            return false;
+        }
+    }
+
+    public int [] getRegisterTypes()
+    {
+        return toIntArray(registerTypes);
+    }
+
+    public int [] getCode()
+    {
+        return toIntArray(code);
+    }
+
+    public long [] getLongLiterals()
+    {
+        long [] a = new long[longLiterals.size()];
+        for (int i = 0; i < a.length; ++i) {
+            a[i] = longLiterals.get(i);
+        }
+        return a;
+    }
+
+    public double [] getDoubleLiterals()
+    {
+        double [] a = new double[doubleLiterals.size()];
+        for (int i = 0; i < a.length; ++i) {
+            a[i] = doubleLiterals.get(i);
+        }
+        return a;
+    }
+
+    /**
+     * Returns a map from the ordinal of each input field referenced by the
+     * program to the register it must be gathered into.
+     */
+    public SortedMap<Integer, Integer> getInputRegisters()
+    {
+        return inputRegisters;
+    }
+
+    /**
+     * Returns the register holding each output field.
+     */
+    public int [] getOutputRegisters()
+    {
+        return outputRegisters;
+    }
+
+    /**
+     * Returns whether a register has a null vector.
+     */
+    public boolean isNullable(int register)
+    {
+        return (registerTypes.get(register) & TYPE_NULLABLE) != 0;
+    }
+
+    /**
+     * Returns whether a register holds exact numeric or boolean values (as
+     * opposed to approximate numeric values).
+     */
+    public boolean isLong(int register)
+    {
+        return (registerTypes.get(register) & TYPE_LONG) != 0;
+    }
+
+    private int compileLocal(RexLocalRef ref)
+    {
+        final int index = ref.getIndex();
+        Integer reg = exprRegisters.get(index);
+        if (reg != null) {
+            return reg;
+        }
+        final RexNode expr = program.getExprList().get(index);
+        final int r;
+        if (expr instanceof RexInputRef) {
+            r = compileInput((RexInputRef) expr);
+        } else if (expr instanceof RexLiteral) {
+            r = compileLiteral((RexLiteral) expr);
+        } else if (expr instanceof RexCall) {
+            r = compileCall((RexCall) expr);
+        } else {
+            throw new CannotVectorize();
+        }
+        exprRegisters.put(index, r);
+        return r;
+    }
+
+    private int compileOperand(RexNode operand)
+    {
+        if (!(operand instanceof RexLocalRef)) {
+            throw new CannotVectorize();
+        }
+        return compileLocal((RexLocalRef) operand);
+    }
+
+    private int compileInput(RexInputRef inputRef)
+    {
+        final RelDataType type = inputRef.getType();
+        checkPrimitive(type);
+        int r = newRegister(type, type.isNullable());
+        inputRegisters.put(inputRef.getIndex(), r);
+        return r;
+    }
+
+    private int compileLiteral(RexLiteral literal)
+    {
+        final RelDataType type = literal.getType();
+        final Kind kind = getKind(type);
+        final Object value = literal.getValue();
+        int r = newRegister(type, value == null);
+        if (value == null) {
+            emit(OP_LOAD_NULL, r, 0, 0);
+            return r;
+        }
+        switch (kind) {
+        case BOOLEAN:
+            longLiterals.add(((Boolean) value) ? 1L : 0L);
+            emit(OP_LOAD_LONG, r, longLiterals.size() - 1, 0);
+            break;
+        case EXACT:
+            BigDecimal bd = (BigDecimal) value;
+            if (bd.scale() != 0) {
+                throw new CannotVectorize();
+            }
+            longLiterals.add(bd.longValue());
+            emit(OP_LOAD_LONG, r, longLiterals.size() - 1, 0);
+            break;
+        case APPROX:
+            BigDecimal approx = (BigDecimal) value;
+            if (type.getSqlTypeName() == SqlTypeName.REAL) {
+                doubleLiterals.add((double) approx.floatValue());
+            } else {
+                doubleLiterals.add(approx.doubleValue());
+            }
+            emit(OP_LOAD_DOUBLE, r, doubleLiterals.size() - 1, 0);
+            break;
+        default:
+            throw new CannotVectorize();
+        }
+        return r;
+    }
+
+    private int compileCall(RexCall call)
+    {
+        final SqlOperator op = call.getOperator();
+        if (op == SqlStdOperatorTable.plusOperator) {
+            return compileArithmetic(call, OP_ADD_LONG, OP_ADD_DOUBLE);
+        } else if (op == SqlStdOperatorTable.minusOperator) {
+            return compileArithmetic(call, OP_SUB_LONG, OP_SUB_DOUBLE);
+        } else if (op == SqlStdOperatorTable.multiplyOperator) {
+            return compileArithmetic(call, OP_MUL_LONG, OP_MUL_DOUBLE);
+        } else if ((op == SqlStdOperatorTable.divideOperator)
+            || (op == SqlStdOperatorTable.divideIntegerOperator))
+        {
+            return compileArithmetic(call, OP_DIV_LONG, OP_DIV_DOUBLE);
+        } else if (op == SqlStdOperatorTable.equalsOperator) {
+            return compileComparison(call, OP_EQ_LONG, OP_EQ_DOUBLE);
+        } else if (op == SqlStdOperatorTable.notEqualsOperator) {
+            return compileComparison(call, OP_NE_LONG, OP_NE_DOUBLE);
+        } else if (op == SqlStdOperatorTable.lessThanOperator) {
+            return compileComparison(call, OP_LT_LONG, OP_LT_DOUBLE);
+        } else if (op == SqlStdOperatorTable.lessThanOrEqualOperator) {
+            return compileComparison(call, OP_LE_LONG, OP_LE_DOUBLE);
+        } else if (op == SqlStdOperatorTable.greaterThanOperator) {
+            return compileComparison(call, OP_GT_LONG, OP_GT_DOUBLE);
+        } else if (op == SqlStdOperatorTable.greaterThanOrEqualOperator) {
+            return compileComparison(call, OP_GE_LONG, OP_GE_DOUBLE);
+        } else if (op == SqlStdOperatorTable.andOperator) {
+            return compileLogical(call, OP_AND);
+        } else if (op == SqlStdOperatorTable.orOperator) {
+            return compileLogical(call, OP_OR);
+        } else if (op == SqlStdOperatorTable.notOperator) {
+            int a = compileBooleanOperand(call.operands[0]);
+            int d = newRegister(call.getType(), isNullable(a));
+            emit(OP_NOT, d, a, 0);
+            return d;
+        } else if (op == SqlStdOperatorTable.isNullOperator) {
+            return compileTruthTest(call, OP_IS_NULL);
+        } else if (op == SqlStdOperatorTable.isNotNullOperator) {
+            return compileTruthTest(call, OP_IS_NOT_NULL);
+        } else if (op == SqlStdOperatorTable.isTrueOperator) {
+            return compileTruthTest(call, OP_IS_TRUE);
+        } else if (op == SqlStdOperatorTable.isNotTrueOperator) {
+            return compileTruthTest(call, OP_IS_NOT_TRUE);
+        } else if (op == SqlStdOperatorTable.isFalseOperator) {
+            return compileTruthTest(call, OP_IS_FALSE);
+        } else if (op == SqlStdOperatorTable.isNotFalseOperator) {
+            return compileTruthTest(call, OP_IS_NOT_FALSE);
+        } else if (op == SqlStdOperatorTable.prefixMinusOperator) {
+            return compileNegate(call);
+        } else if (op == SqlStdOperatorTable.castFunc) {
+            return compileCast(call);
+        }
+        throw new CannotVectorize();
+    }
+
+    private int compileArithmetic(RexCall call, int longOp, int doubleOp)
+    {
+        final RelDataType type = call.getType();
+        final RelDataType ta = call.operands[0].getType();
+        final RelDataType tb = call.operands[1].getType();
+        int a = compileOperand(call.operands[0]);
+        int b = compileOperand(call.operands[1]);
+        boolean nullable = type.isNullable() || isNullable(a) || isNullable(b);
+        switch (getKind(type)) {
+        case EXACT:
+            if ((getKind(ta) != Kind.EXACT) || (getKind(tb) != Kind.EXACT)) {
+                throw new CannotVectorize();
+            }
+            int d = newRegister(type, nullable);
+            emit(longOp, d, a, b);
+
+            // Java promotes int operands to int, not long, so wrap at 32
+            // bits unless either operand is a long; then cast to the result.
+            int promotedBits =
+                ((getBits(ta) == 64) || (getBits(tb) == 64)) ? 64 : 32;
+            narrow(d, promotedBits, 64);
+            narrow(d, getBits(type), promotedBits);
+            return d;
+        case APPROX:
+            if ((getKind(ta) == Kind.BOOLEAN) || (getKind(tb) == Kind.BOOLEAN)
+                || ((getKind(ta) == Kind.EXACT)
+                    && (getKind(tb) == Kind.EXACT)))
+            {
+                throw new CannotVectorize();
+            }
+
+            // Java promotes to float unless either operand is a double.
+            boolean promotedFloat = !isDouble(ta) && !isDouble(tb);
+            a = toApprox(a, ta, promotedFloat);
+            b = toApprox(b, tb, promotedFloat);
+            int r = newRegister(type, nullable);
+            emit(doubleOp, r, a, b);
+            if (promotedFloat || (type.getSqlTypeName() == SqlTypeName.REAL)) {
+                emit(OP_ROUND_FLOAT, r, r, 0);
+            }
+            if ((doubleOp == OP_MUL_DOUBLE) || (doubleOp == OP_DIV_DOUBLE)) {
+                emit(OP_CHECK_OVERFLOW, 0, r, 0);
+            }
+            return r;
+        default:
+            throw new CannotVectorize();
+        }
+    }
+
+    private int compileComparison(RexCall call, int longOp, int doubleOp)
+    {
+        final RelDataType ta = call.operands[0].getType();
+        final RelDataType tb = call.operands[1].getType();
+        int a = compileOperand(call.operands[0]);
+        int b = compileOperand(call.operands[1]);
+        final Kind ka = getKind(ta);
+        final Kind kb = getKind(tb);
+        boolean nullable =
+            call.getType().isNullable() || isNullable(a) || isNullable(b);
+        if ((ka == Kind.BOOLEAN) != (kb == Kind.BOOLEAN)) {
+            throw new CannotVectorize();
+        }
+        int d = newRegister(call.getType(), nullable);
+        if ((ka != Kind.APPROX) && (kb != Kind.APPROX)) {
+            emit(longOp, d, a, b);
+        } else {
+            boolean promotedFloat = !isDouble(ta) && !isDouble(tb);
+            a = toApprox(a, ta, promotedFloat);
+            b = toApprox(b, tb, promotedFloat);
+            emit(doubleOp, d, a, b);
+        }
+        return d;
+    }
+
+    private int compileLogical(RexCall call, int op)
+    {
+        int a = compileBooleanOperand(call.operands[0]);
+        for (int i = 1; i < call.operands.length; ++i) {
+            int b = compileBooleanOperand(call.operands[i]);
+            int d =
+                newRegister(
+                    call.getType(),
+                    call.getType().isNullable() || isNullable(a)
+                    || isNullable(b));
+            emit(op, d, a, b);
+            a = d;
+        }
+        return a;
+    }
+
+    private int compileTruthTest(RexCall call, int op)
+    {
+        final int a;
+        if ((op == OP_IS_NULL) || (op == OP_IS_NOT_NULL)) {
+            a = compileOperand(call.operands[0]);
+        } else {
+            a = compileBooleanOperand(call.operands[0]);
+        }
+        int d = newRegister(call.getType(), false);
+        emit(op, d, a, 0);
+        return d;
+    }
+
+    private int compileBooleanOperand(RexNode operand)
+    {
+        if (getKind(operand.getType()) != Kind.BOOLEAN) {
+            throw new CannotVectorize();
+        }
+        return compileOperand(operand);
+    }
+
+    private int compileNegate(RexCall call)
+    {
+        final RelDataType type = call.getType();
+        final RelDataType ta = call.operands[0].getType();
+        int a = compileOperand(call.operands[0]);
+        if (getKind(ta) != getKind(type)) {
+            throw new CannotVectorize();
+        }
+        int d = newRegister(type, type.isNullable() || isNullable(a));
+        switch (getKind(type)) {
+        case EXACT:
+            emit(OP_NEG_LONG, d, a, 0);
+            int promotedBits = (getBits(ta) == 64) ? 64 : 32;
+            narrow(d, promotedBits, 64);
+            narrow(d, getBits(type), promotedBits);
+            return d;
+        case APPROX:
+            emit(OP_NEG_DOUBLE, d, a, 0);
+            return d;
+        default:
+            throw new CannotVectorize();
+        }
+    }
+
+    /**
+     * Compiles a cast which can neither overflow nor fail: a change of
+     * nullability from NOT NULL to nullable, a widening integer conversion,
+     * or a conversion from an integer to an approximate type.
+     */
+    private int compileCast(RexCall call)
+    {
+        final RelDataType type = call.getType();
+        final RelDataType ta = call.operands[0].getType();
+        int a = compileOperand(call.operands[0]);
+        if (!type.isNullable() && isNullable(a)) {
+            throw new CannotVectorize();
+        }
+        final Kind kind = getKind(type);
+        final Kind ka = getKind(ta);
+        int d;
+        if ((kind == Kind.BOOLEAN) && (ka == Kind.BOOLEAN)) {
+            d = newRegister(type, type.isNullable());
+            emit(OP_MOVE_LONG, d, a, 0);
+        } else if ((kind == Kind.EXACT) && (ka == Kind.EXACT)) {
+            if (getBits(type) < getBits(ta)) {
+                throw new CannotVectorize();
+            }
+            d = newRegister(type, type.isNullable());
+            emit(OP_MOVE_LONG, d, a, 0);
+        } else if ((kind == Kind.APPROX) && (ka == Kind.EXACT)) {
+            d = newRegister(type, type.isNullable());
+            emit(OP_LONG_TO_DOUBLE, d, a, 0);
+            if (type.getSqlTypeName() == SqlTypeName.REAL) {
+                emit(OP_ROUND_FLOAT, d, d, 0);
+            }
+        } else if ((kind == Kind.APPROX)
+            && (type.getSqlTypeName() == ta.getSqlTypeName()))
+        {
+            d = newRegister(type, type.isNullable());
+            emit(OP_MOVE_DOUBLE, d, a, 0);
+        } else {
+            throw new CannotVectorize();
+        }
+        return d;
+    }
+
+    /**
+     * Converts a register to an approximate value as Java's binary numeric
+     * promotion would.
+     */
+    private int toApprox(int reg, RelDataType type, boolean toFloat)
+    {
+        if (getKind(type) != Kind.EXACT) {
+            return reg;
+        }
+        int d =
+            newRegister(
+                toFloat ? SqlTypeName.REAL : SqlTypeName.DOUBLE,
+                isNullable(reg));
+        emit(OP_LONG_TO_DOUBLE, d, reg, 0);
+        if (toFloat) {
+            emit(OP_ROUND_FLOAT, d, d, 0);
+        }
+        return d;
+    }
+
+    private void narrow(int reg, int bits, int fromBits)
+    {
+        if (bits < fromBits) {
+            emit(OP_NARROW_LONG, reg, reg, bits);
+        }
+    }
+
+    private void checkPrimitive(RelDataType type)
+    {
+        if ((getKind(type) == null)
+            || !translator.isPrimitiveRepresentable(type))
+        {
+            throw new CannotVectorize();
+        }
+    }
+
+    private int newRegister(RelDataType type, boolean nullable)
+    {
+        return newRegister(type.getSqlTypeName(), nullable);
+    }
+
+    private int newRegister(SqlTypeName typeName, boolean nullable)
+    {
+        Kind kind = getKind(typeName);
+        if (kind == null) {
+            throw new CannotVectorize();
+        }
+        int type = (kind == Kind.APPROX) ? TYPE_DOUBLE : TYPE_LONG;
+        if (nullable) {
+            type |= TYPE_NULLABLE;
+        }
+        registerTypes.add(type);
+        return registerTypes.size() - 1;
+    }
+
+    private void emit(int op, int dst, int a, int b)
+    {
+        code.add(op);
+        code.add(dst);
+        code.add(a);
+        code.add(b);
+    }
+
+    private static Kind getKind(RelDataType type)
+    {
+        return getKind(type.getSqlTypeName());
+    }
+
+    private static Kind getKind(SqlTypeName typeName)
+    {
+        if (typeName == null) {
+            return null;
+        }
+        switch (typeName) {
+        case BOOLEAN:
+            return Kind.BOOLEAN;
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+            return Kind.EXACT;
+        case REAL:
+        case FLOAT:
+        case DOUBLE:
+            return Kind.APPROX;
+        default:
+            return null;
+        }
+    }
+
+    private static int getBits(RelDataType type)
+    {
+        switch (type.getSqlTypeName()) {
+        case TINYINT:
+            return 8;
+        case SMALLINT:
+            return 16;
+        case INTEGER:
+            return 32;
+        default:
+            return 64;
+        }
+    }
+
+    private static boolean isDouble(RelDataType type)
+    {
+        return (type.getSqlTypeName() == SqlTypeName.DOUBLE)
+            || (type.getSqlTypeName() == SqlTypeName.FLOAT);
+    }
+
+    private static int [] toIntArray(List<Integer> list)
+    {
+        int [] a = new int[list.size()];
+        for (int i = 0; i < a.length; ++i) {
+            a[i] = list.get(i);
+        }
+        return a;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * How values of a SQL type are held in registers.
+     */
+    private enum Kind
+    {
+        BOOLEAN, EXACT, APPROX
+    }
+
+    /**
+     * Thrown when a program cannot be vectorized. It is always handled by
+     * {@link VectorCalcProgramBuilder#build}, and is not really an error.
+     */
+    private static class CannotVectorize
+        extends RuntimeException
+    {
+    }
+}
+
+// End VectorCalcProgramBuilder.java
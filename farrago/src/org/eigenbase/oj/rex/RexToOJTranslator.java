@@ -555,6 +555,89 @@ public class RexToOJTranslator
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Returns whether values of a given type can be read via {@link
+     * #translatePrimitiveValue} and {@link #translateNullTest}, and written via
+     * {@link #translatePrimitiveValue} and {@link #translateSetNull}. The
+     * vectorized mode of {@link IterCalcRel} uses these methods to move values
+     * between row objects and primitive arrays.
+     *
+     * <p>The default implementation supports NOT NULL Java primitives only.
+     *
+     * @param type type of value
+     *
+     * @return whether the type has a primitive representation
+     */
+    public boolean isPrimitiveRepresentable(RelDataType type)
+    {
+        return SqlTypeUtil.isJavaPrimitive(type) && !type.isNullable();
+    }
+
+    /**
+     * Generates an expression for the primitive value held by an expression
+     * of a given type. The result may also be used as the target of an
+     * assignment.
+     *
+     * @param expr expression holding a value
+     * @param type type of the value
+     *
+     * @return expression for the primitive value
+     */
+    public Expression translatePrimitiveValue(
+        Expression expr,
+        RelDataType type)
+    {
+        return expr;
+    }
+
+    /**
+     * Generates a boolean expression which tests whether an expression of a
+     * given type holds null.
+     *
+     * @param expr expression holding a value
+     * @param type type of the value
+     *
+     * @return null test, or null if the type is NOT NULL
+     */
+    public Expression translateNullTest(
+        Expression expr,
+        RelDataType type)
+    {
+        assert !type.isNullable();
+        return null;
+    }
+
+    /**
+     * Generates a statement which sets the null indicator of an expression of
+     * a nullable type.
+     *
+     * @param expr expression holding a value
+     * @param type type of the value
+     * @param isNull boolean expression for the new null indicator
+     *
+     * @return assignment statement
+     */
+    public Statement translateSetNull(
+        Expression expr,
+        RelDataType type,
+        Expression isNull)
+    {
+        throw Util.needToImplement(type);
+    }
+
+    /**
+     * Generates an expression which creates the exception to be thrown when
+     * an approximate numeric calculation overflows.
+     *
+     * @return exception allocation expression
+     */
+    public Expression translateOverflowException()
+    {
+        return new AllocationExpression(
+            OJUtil.typeNameForClass(ArithmeticException.class),
+            new ExpressionList(Literal.makeLiteral("overflow")));
+    }
+
     /**
      * Returns a sub-translator to deal with a sub-block.
      *
@@ -80,6 +80,13 @@ public abstract class OJPreparingStmt
 
     protected java.util.List<java.util.List<String>> fieldOrigins;
 
+    /**
+     * For EXPLAIN PLAN WITH STATISTICS, the EXPLAIN node whose explicandum is
+     * being prepared for execution; null otherwise. Subclasses which support
+     * statistics collection use this to wrap the implemented statement.
+     */
+    protected SqlExplain statisticsExplain;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -261,7 +268,15 @@ public abstract class OJPreparingStmt
             // dig out the underlying SQL statement
             sqlExplain = (SqlExplain) sqlQuery;
             sqlQuery = sqlExplain.getExplicandum();
-            sqlToRelConverter.setIsExplain(sqlExplain.getDynamicParamCount());
+            if (sqlExplain.withStatistics()) {
+                // the statement will really be executed, so prepare it
+                // normally and let the subclass annotate the plan
+                statisticsExplain = sqlExplain;
+                sqlExplain = null;
+            } else {
+                sqlToRelConverter.setIsExplain(
+                    sqlExplain.getDynamicParamCount());
+            }
         }
 
         RelNode rootRel =
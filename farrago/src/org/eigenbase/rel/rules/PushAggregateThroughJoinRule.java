@@ -0,0 +1,463 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.rel.rules;
+
+import java.util.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.fun.*;
+
+
+/**
+ * PushAggregateThroughJoinRule implements eager aggregation: it pushes a
+ * partial {@link AggregateRel} below an inner {@link JoinRel}, onto the input
+ * which supplies all of the aggregate arguments.
+ *
+ * <p>The partial aggregate groups that input on every column referenced by the
+ * join condition or by the GROUP BY, so each of its rows joins with exactly
+ * the rows of the other input which the rows it replaces would have joined
+ * with. The original aggregate above the join then combines the partial
+ * results: SUM of SUMs, SUM of COUNTs, MIN of MINs and MAX of MAXs. For
+ * example,
+ *
+ * <blockquote><code>SELECT d.region, SUM(f.amount) FROM fact f JOIN dim d ON
+ * f.dim_id = d.id GROUP BY d.region</code></blockquote>
+ *
+ * becomes
+ *
+ * <blockquote><code>SELECT d.region, SUM(f.s) FROM (SELECT dim_id, SUM(amount)
+ * AS s FROM fact GROUP BY dim_id) f JOIN dim d ON f.dim_id = d.id GROUP BY
+ * d.region</code></blockquote>
+ *
+ * <p>The transformation is cost-based: it is only applied when the distinct
+ * row count estimated for the partial aggregate's grouping columns is at most
+ * {@link #MAX_GROUP_RATIO} times the row count of its input. Because a join
+ * tree produced by join ordering contains joins nested within joins, applying
+ * the rule repeatedly pushes the partial aggregate as far down the fact side
+ * of the tree as such reductions are expected.
+ *
+ * <p>Aggregates without GROUP BY are not pushed, since SUM of COUNTs over an
+ * empty join would return null rather than 0.
+ *
+ * @version $Id$
+ */
+public class PushAggregateThroughJoinRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Largest ratio between the estimated number of groups of the partial
+     * aggregate and the number of rows it aggregates for which the partial
+     * aggregate is considered worthwhile.
+     */
+    public static final double MAX_GROUP_RATIO = 0.1;
+
+    public static final PushAggregateThroughJoinRule instanceProject =
+        new PushAggregateThroughJoinRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(
+                    ProjectRel.class,
+                    new RelOptRuleOperand(JoinRel.class, ANY))),
+            "PushAggregateThroughJoinRule: with ProjectRel");
+
+    public static final PushAggregateThroughJoinRule instanceJoin =
+        new PushAggregateThroughJoinRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(JoinRel.class, ANY)),
+            "PushAggregateThroughJoinRule: without ProjectRel");
+
+    //~ Constructors -----------------------------------------------------------
+
+    public PushAggregateThroughJoinRule(
+        RelOptRuleOperand operand,
+        String description)
+    {
+        super(operand, description);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        AggregateRel aggRel = (AggregateRel) call.rels[0];
+        JoinRel joinRel;
+        RexNode [] projExprs;
+        if (call.rels.length == 3) {
+            joinRel = (JoinRel) call.rels[2];
+            projExprs = ((ProjectRel) call.rels[1]).getProjectExps();
+        } else {
+            joinRel = (JoinRel) call.rels[1];
+            RelDataTypeField [] joinFields = joinRel.getRowType().getFields();
+            projExprs = new RexNode[joinFields.length];
+            for (int i = 0; i < joinFields.length; i++) {
+                projExprs[i] =
+                    joinRel.getCluster().getRexBuilder().makeInputRef(
+                        joinFields[i].getType(),
+                        i);
+            }
+        }
+
+        if ((joinRel.getJoinType() != JoinRelType.INNER)
+            || !joinRel.getSystemFieldList().isEmpty())
+        {
+            return;
+        }
+        int groupCount = aggRel.getGroupCount();
+        if (groupCount == 0) {
+            return;
+        }
+        for (int i = 0; i < groupCount; i++) {
+            if (!(projExprs[i] instanceof RexInputRef)) {
+                return;
+            }
+        }
+
+        // Find the join fields referenced by aggregate arguments, and make
+        // sure every aggregate can be split into a partial and a final one.
+        BitSet argFields = new BitSet();
+        RelOptUtil.InputFinder argFinder =
+            new RelOptUtil.InputFinder(argFields);
+        for (AggregateCall aggCall : aggRel.getAggCallList()) {
+            if (aggCall.isDistinct() || (aggCall.getArgList().size() > 1)) {
+                return;
+            }
+            String aggName = aggCall.getAggregation().getName();
+            if (!aggName.equals("SUM")
+                && !aggName.equals("COUNT")
+                && !aggName.equals("MIN")
+                && !aggName.equals("MAX"))
+            {
+                return;
+            }
+            for (Integer arg : aggCall.getArgList()) {
+                projExprs[arg].accept(argFinder);
+            }
+        }
+
+        // Aggregate whichever input supplies all the arguments and promises
+        // the best reduction; if there are no arguments (COUNT(*) only),
+        // either input will do.
+        int nLeftFields = joinRel.getLeft().getRowType().getFieldCount();
+        int nJoinFields = joinRel.getRowType().getFieldCount();
+        BitSet leftFields = new BitSet();
+        leftFields.set(0, nLeftFields);
+        BitSet rightFields = new BitSet();
+        rightFields.set(nLeftFields, nJoinFields);
+
+        BitSet keyFields = new BitSet();
+        joinRel.getCondition().accept(new RelOptUtil.InputFinder(keyFields));
+        for (int i = 0; i < groupCount; i++) {
+            keyFields.set(((RexInputRef) projExprs[i]).getIndex());
+        }
+
+        Boolean aggregateLeft = null;
+        double bestRatio = MAX_GROUP_RATIO;
+        for (boolean left : new boolean[] { true, false }) {
+            BitSet sideFields = left ? leftFields : rightFields;
+            int offset = left ? 0 : nLeftFields;
+            if (!contains(sideFields, argFields)) {
+                continue;
+            }
+            Double ratio =
+                computeGroupRatio(
+                    left ? joinRel.getLeft() : joinRel.getRight(),
+                    shift(intersect(keyFields, sideFields), -offset));
+            if ((ratio != null) && (ratio <= bestRatio)) {
+                bestRatio = ratio;
+                aggregateLeft = left;
+            }
+        }
+        if (aggregateLeft == null) {
+            return;
+        }
+
+        call.transformTo(
+            pushAggregate(
+                aggRel,
+                joinRel,
+                projExprs,
+                aggregateLeft,
+                intersect(
+                    keyFields,
+                    aggregateLeft ? leftFields : rightFields)));
+    }
+
+    /**
+     * Estimates how much a partial aggregate would reduce one of the join
+     * inputs.
+     *
+     * @param input join input
+     * @param groupKey input-relative columns to group by
+     *
+     * @return estimated ratio of groups to rows, or null if the aggregate is
+     * not worth considering
+     */
+    private Double computeGroupRatio(RelNode input, BitSet groupKey)
+    {
+        if (groupKey.isEmpty()) {
+            // no join condition on this input; leave the Cartesian product
+            // alone
+            return null;
+        }
+        if (RelMdUtil.areColumnsDefinitelyUnique(input, groupKey)) {
+            // nothing to gain (this also keeps the rule from firing again on
+            // a partial aggregate it created)
+            return null;
+        }
+        Double rowCount = RelMetadataQuery.getRowCount(input);
+        Double groupCount =
+            RelMetadataQuery.getDistinctRowCount(input, groupKey, null);
+        if ((rowCount == null) || (groupCount == null) || (rowCount <= 0)) {
+            return null;
+        }
+        return groupCount / rowCount;
+    }
+
+    /**
+     * Creates the replacement for an aggregate over a join.
+     *
+     * @param aggRel original aggregate
+     * @param joinRel join beneath the aggregate
+     * @param projExprs expressions computing the aggregate's input from the
+     * join's output
+     * @param aggregateLeft whether to aggregate the left input, rather than
+     * the right one
+     * @param keyFields join fields of the aggregated input which the partial
+     * aggregate groups by
+     *
+     * @return new expression, with the same row type as aggRel
+     */
+    private RelNode pushAggregate(
+        AggregateRel aggRel,
+        JoinRel joinRel,
+        RexNode [] projExprs,
+        boolean aggregateLeft,
+        BitSet keyFields)
+    {
+        RelOptCluster cluster = aggRel.getCluster();
+        RexBuilder rexBuilder = cluster.getRexBuilder();
+        RelDataTypeFactory typeFactory = cluster.getTypeFactory();
+        List<AggregateCall> aggCalls = aggRel.getAggCallList();
+        RelNode aggInput =
+            aggregateLeft ? joinRel.getLeft() : joinRel.getRight();
+        RelNode otherInput =
+            aggregateLeft ? joinRel.getRight() : joinRel.getLeft();
+        int nLeftFields = joinRel.getLeft().getRowType().getFieldCount();
+        int nJoinFields = joinRel.getRowType().getFieldCount();
+        int aggInputOffset = aggregateLeft ? 0 : nLeftFields;
+        int otherOffset = aggregateLeft ? nLeftFields : 0;
+        RelDataTypeField [] joinFields = joinRel.getRowType().getFields();
+        RelDataTypeField [] aggInputFields = aggInput.getRowType().getFields();
+
+        // Project the grouping columns and the aggregate arguments from the
+        // aggregated input.  Each distinct expression is projected once, and
+        // columns keep their names, so that the projection can be absorbed
+        // by a table scan.
+        int [] toAggInput = new int[nJoinFields];
+        Arrays.fill(toAggInput, -aggInputOffset);
+        RelOptUtil.RexInputConverter toAggInputConverter =
+            new RelOptUtil.RexInputConverter(
+                rexBuilder,
+                joinFields,
+                aggInputFields,
+                toAggInput);
+        List<RexNode> partialExprs = new ArrayList<RexNode>();
+        List<String> partialNames = new ArrayList<String>();
+        Map<String, Integer> partialExprMap = new HashMap<String, Integer>();
+        for (int i = keyFields.nextSetBit(0);
+            i >= 0;
+            i = keyFields.nextSetBit(i + 1))
+        {
+            int field = i - aggInputOffset;
+            RexNode keyExpr =
+                rexBuilder.makeInputRef(
+                    aggInputFields[field].getType(),
+                    field);
+            partialExprMap.put(keyExpr.toString(), partialExprs.size());
+            partialExprs.add(keyExpr);
+            partialNames.add(aggInputFields[field].getName());
+        }
+        int nKeys = partialExprs.size();
+        List<AggregateCall> partialCalls = new ArrayList<AggregateCall>();
+        for (AggregateCall aggCall : aggCalls) {
+            List<Integer> args = new ArrayList<Integer>();
+            for (Integer arg : aggCall.getArgList()) {
+                RexNode argExpr = projExprs[arg].accept(toAggInputConverter);
+                Integer iExpr = partialExprMap.get(argExpr.toString());
+                if (iExpr == null) {
+                    iExpr = partialExprs.size();
+                    partialExprMap.put(argExpr.toString(), iExpr);
+                    partialExprs.add(argExpr);
+                    if (argExpr instanceof RexInputRef) {
+                        partialNames.add(
+                            aggInputFields[((RexInputRef) argExpr).getIndex()]
+                            .getName());
+                    } else {
+                        partialNames.add(null);
+                    }
+                }
+                args.add(iExpr);
+            }
+            partialCalls.add(
+                new AggregateCall(
+                    aggCall.getAggregation(),
+                    false,
+                    args,
+                    aggCall.getType(),
+                    null));
+        }
+        RelNode partialAggRel =
+            new AggregateRel(
+                cluster,
+                CalcRel.createProject(aggInput, partialExprs, partialNames),
+                nKeys,
+                partialCalls);
+
+        // Join the partial aggregate in place of the input it aggregates.
+        // Its grouping columns take the place of the columns they came from.
+        int nPartialFields = nKeys + aggCalls.size();
+        int nOtherFields = otherInput.getRowType().getFieldCount();
+        int partialOffset = aggregateLeft ? 0 : nOtherFields;
+        int [] toNewJoin = new int[nJoinFields];
+        int iKey = 0;
+        for (int i = 0; i < nJoinFields; i++) {
+            if ((i >= aggInputOffset)
+                && (i < aggInputOffset + aggInputFields.length))
+            {
+                if (keyFields.get(i)) {
+                    toNewJoin[i] = partialOffset + iKey - i;
+                    ++iKey;
+                }
+            } else {
+                int newOtherOffset = aggregateLeft ? nPartialFields : 0;
+                toNewJoin[i] = newOtherOffset + (i - otherOffset) - i;
+            }
+        }
+        RelNode newLeft = aggregateLeft ? partialAggRel : otherInput;
+        RelNode newRight = aggregateLeft ? otherInput : partialAggRel;
+        RexNode newCondition =
+            joinRel.getCondition().accept(
+                new RelOptUtil.RexInputConverter(
+                    rexBuilder,
+                    joinFields,
+                    newLeft.getRowType().getFields(),
+                    newRight.getRowType().getFields(),
+                    toNewJoin));
+        JoinRel newJoinRel =
+            new JoinRel(
+                cluster,
+                newLeft,
+                newRight,
+                newCondition,
+                JoinRelType.INNER,
+                Collections.<String>emptySet(),
+                joinRel.isSemiJoinDone(),
+                joinRel.getSystemFieldList());
+        RelDataTypeField [] newJoinFields = newJoinRel.getRowType().getFields();
+
+        // Combine the partial results.  COUNTs are combined by SUM, which
+        // unlike COUNT is nullable; the cast below restores the original type.
+        List<RexNode> finalExprs = new ArrayList<RexNode>();
+        List<String> finalNames = new ArrayList<String>();
+        RelDataTypeField [] aggInputRowFields =
+            aggRel.getChild().getRowType().getFields();
+        for (int i = 0; i < aggRel.getGroupCount(); i++) {
+            int field = ((RexInputRef) projExprs[i]).getIndex();
+            int newField = field + toNewJoin[field];
+            finalExprs.add(
+                rexBuilder.makeInputRef(
+                    newJoinFields[newField].getType(),
+                    newField));
+            finalNames.add(aggInputRowFields[i].getName());
+        }
+        List<AggregateCall> finalCalls = new ArrayList<AggregateCall>();
+        for (int i = 0; i < aggCalls.size(); i++) {
+            AggregateCall aggCall = aggCalls.get(i);
+            int partialField = partialOffset + nKeys + i;
+            finalExprs.add(
+                rexBuilder.makeInputRef(
+                    newJoinFields[partialField].getType(),
+                    partialField));
+            finalNames.add(null);
+            Aggregation aggFun;
+            RelDataType aggType;
+            if (aggCall.getAggregation().getName().equals("COUNT")) {
+                aggType =
+                    typeFactory.createTypeWithNullability(
+                        aggCall.getType(),
+                        true);
+                aggFun = new SqlSumAggFunction(aggType);
+            } else {
+                aggFun = aggCall.getAggregation();
+                aggType = aggCall.getType();
+            }
+            finalCalls.add(
+                new AggregateCall(
+                    aggFun,
+                    false,
+                    Collections.singletonList(aggRel.getGroupCount() + i),
+                    aggType,
+                    aggCall.getName()));
+        }
+        AggregateRel finalAggRel =
+            new AggregateRel(
+                cluster,
+                CalcRel.createProject(newJoinRel, finalExprs, finalNames),
+                aggRel.getGroupCount(),
+                finalCalls);
+
+        return RelOptUtil.createCastRel(
+            finalAggRel,
+            aggRel.getRowType(),
+            false);
+    }
+
+    private static boolean contains(BitSet set, BitSet subset)
+    {
+        BitSet extra = (BitSet) subset.clone();
+        extra.andNot(set);
+        return extra.isEmpty();
+    }
+
+    private static BitSet intersect(BitSet set1, BitSet set2)
+    {
+        BitSet result = (BitSet) set1.clone();
+        result.and(set2);
+        return result;
+    }
+
+    private static BitSet shift(BitSet set, int offset)
+    {
+        BitSet result = new BitSet();
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            result.set(i + offset);
+        }
+        return result;
+    }
+}
+
+// End PushAggregateThroughJoinRule.java
@@ -86,6 +86,15 @@ public class HepRelVertex
         return currentRel.isDistinct();
     }
 
+    // implement RelNode
+    public void explain(RelOptPlanWriter pw)
+    {
+        // Explain the current implementation in place of the vertex, so that
+        // a subtree still in the planner explains the same as a standalone
+        // tree.
+        currentRel.explain(pw);
+    }
+
     // implement RelNode
     protected String computeDigest()
     {
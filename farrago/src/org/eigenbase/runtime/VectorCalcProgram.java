@@ -0,0 +1,837 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.runtime;
+
+import java.util.*;
+
+
+/**
+ * VectorCalcProgram evaluates a filter and projection over a batch of rows
+ * held column-wise in primitive arrays. It is the runtime half of the
+ * vectorized mode of {@link org.eigenbase.oj.rel.IterCalcRel}; the program
+ * itself is produced at prepare time by {@link
+ * org.eigenbase.oj.rel.VectorCalcProgramBuilder}.
+ *
+ * <p>Each register holds one column of the batch. Exact numeric and boolean
+ * values live in a <code>long[]</code> (booleans as 0 or 1), approximate
+ * numeric values in a <code>double[]</code> (REAL values are kept rounded to
+ * float precision). A nullable register also has a <code>boolean[]</code>
+ * null vector; values at null positions are undefined.
+ *
+ * <p>Instructions are encoded four ints apiece: opcode, destination register,
+ * first source register and second source register (or literal index, or
+ * bit width for {@link #OP_NARROW_LONG}). Instructions are executed in order
+ * over the rows in the current {@link #selection}; {@link #OP_SELECT} narrows
+ * the selection to rows whose boolean operand is TRUE, so instructions
+ * following it are not evaluated for rows which the filter rejected. Literal
+ * loads are executed once, when the program is constructed.
+ *
+ * @version $Id$
+ */
+public class VectorCalcProgram
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final int TYPE_LONG = 1;
+    public static final int TYPE_DOUBLE = 2;
+    public static final int TYPE_NULLABLE = 4;
+
+    public static final int OP_LOAD_LONG = 1;
+    public static final int OP_LOAD_DOUBLE = 2;
+    public static final int OP_LOAD_NULL = 3;
+    public static final int OP_MOVE_LONG = 4;
+    public static final int OP_MOVE_DOUBLE = 5;
+    public static final int OP_LONG_TO_DOUBLE = 6;
+    public static final int OP_NARROW_LONG = 7;
+    public static final int OP_ROUND_FLOAT = 8;
+    public static final int OP_CHECK_OVERFLOW = 9;
+    public static final int OP_ADD_LONG = 10;
+    public static final int OP_SUB_LONG = 11;
+    public static final int OP_MUL_LONG = 12;
+    public static final int OP_DIV_LONG = 13;
+    public static final int OP_NEG_LONG = 14;
+    public static final int OP_ADD_DOUBLE = 20;
+    public static final int OP_SUB_DOUBLE = 21;
+    public static final int OP_MUL_DOUBLE = 22;
+    public static final int OP_DIV_DOUBLE = 23;
+    public static final int OP_NEG_DOUBLE = 24;
+    public static final int OP_EQ_LONG = 30;
+    public static final int OP_NE_LONG = 31;
+    public static final int OP_LT_LONG = 32;
+    public static final int OP_LE_LONG = 33;
+    public static final int OP_GT_LONG = 34;
+    public static final int OP_GE_LONG = 35;
+    public static final int OP_EQ_DOUBLE = 40;
+    public static final int OP_NE_DOUBLE = 41;
+    public static final int OP_LT_DOUBLE = 42;
+    public static final int OP_LE_DOUBLE = 43;
+    public static final int OP_GT_DOUBLE = 44;
+    public static final int OP_GE_DOUBLE = 45;
+    public static final int OP_AND = 50;
+    public static final int OP_OR = 51;
+    public static final int OP_NOT = 52;
+    public static final int OP_IS_NULL = 53;
+    public static final int OP_IS_NOT_NULL = 54;
+    public static final int OP_IS_TRUE = 55;
+    public static final int OP_IS_NOT_TRUE = 56;
+    public static final int OP_IS_FALSE = 57;
+    public static final int OP_IS_NOT_FALSE = 58;
+    public static final int OP_SELECT = 60;
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Maximum number of rows in a batch.
+     */
+    public final int batchSize;
+
+    /**
+     * Values of exact numeric and boolean registers, indexed by register and
+     * then by row; null for other registers.
+     */
+    public final long [][] longs;
+
+    /**
+     * Values of approximate numeric registers, indexed by register and then by
+     * row; null for other registers.
+     */
+    public final double [][] doubles;
+
+    /**
+     * Null vectors, indexed by register and then by row; null for registers
+     * which are NOT NULL.
+     */
+    public final boolean [][] nulls;
+
+    /**
+     * Rows of the current batch which are selected, in ascending order. After
+     * {@link #execute}, the first n entries (where n is its return value) are
+     * the rows which passed the filter.
+     */
+    public final int [] selection;
+
+    private final int [] code;
+    private final long [] longLiterals;
+    private final double [] doubleLiterals;
+
+    /**
+     * Number of rows in {@link #selection}.
+     */
+    private int count;
+
+    /**
+     * Whether {@link #selection} is currently the identity mapping, in which
+     * case kernels iterate over rows directly.
+     */
+    private boolean dense;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a program.
+     *
+     * @param batchSize maximum number of rows in a batch
+     * @param registerTypes type of each register, a combination of {@link
+     * #TYPE_LONG} or {@link #TYPE_DOUBLE} with optional {@link #TYPE_NULLABLE}
+     * @param code instructions, four ints apiece
+     * @param longLiterals literal pool for {@link #OP_LOAD_LONG}
+     * @param doubleLiterals literal pool for {@link #OP_LOAD_DOUBLE}
+     */
+    public VectorCalcProgram(
+        int batchSize,
+        int [] registerTypes,
+        int [] code,
+        long [] longLiterals,
+        double [] doubleLiterals)
+    {
+        assert batchSize > 0;
+        assert (code.length % 4) == 0;
+        this.batchSize = batchSize;
+        this.code = code;
+        this.longLiterals = longLiterals;
+        this.doubleLiterals = doubleLiterals;
+        int n = registerTypes.length;
+        longs = new long[n][];
+        doubles = new double[n][];
+        nulls = new boolean[n][];
+        for (int i = 0; i < n; ++i) {
+            int type = registerTypes[i];
+            if ((type & TYPE_LONG) != 0) {
+                longs[i] = new long[batchSize];
+            } else {
+                assert (type & TYPE_DOUBLE) != 0;
+                doubles[i] = new double[batchSize];
+            }
+            if ((type & TYPE_NULLABLE) != 0) {
+                nulls[i] = new boolean[batchSize];
+            }
+        }
+        selection = new int[batchSize];
+        loadLiterals();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Evaluates the program over the first <code>rowCount</code> rows of the
+     * input registers.
+     *
+     * @param rowCount number of rows in the batch
+     *
+     * @return number of rows which passed the filter; their ordinals are the
+     * first entries of {@link #selection}
+     */
+    public int execute(int rowCount)
+    {
+        assert rowCount <= batchSize;
+        for (int i = 0; i < rowCount; ++i) {
+            selection[i] = i;
+        }
+        count = rowCount;
+        dense = true;
+        for (int pc = 0; pc < code.length; pc += 4) {
+            int op = code[pc];
+            int dst = code[pc + 1];
+            int a = code[pc + 2];
+            int b = code[pc + 3];
+            switch (op) {
+            case OP_LOAD_LONG:
+            case OP_LOAD_DOUBLE:
+            case OP_LOAD_NULL:
+                // done once by loadLiterals
+                break;
+            case OP_MOVE_LONG:
+                propagateNulls(dst, a, -1);
+                copy(longs[dst], longs[a]);
+                break;
+            case OP_MOVE_DOUBLE:
+                propagateNulls(dst, a, -1);
+                copy(doubles[dst], doubles[a]);
+                break;
+            case OP_LONG_TO_DOUBLE:
+                propagateNulls(dst, a, -1);
+                longToDouble(doubles[dst], longs[a]);
+                break;
+            case OP_NARROW_LONG:
+                propagateNulls(dst, a, -1);
+                narrow(longs[dst], longs[a], b);
+                break;
+            case OP_ROUND_FLOAT:
+                propagateNulls(dst, a, -1);
+                roundFloat(doubles[dst], doubles[a]);
+                break;
+            case OP_CHECK_OVERFLOW:
+                checkOverflow(doubles[a], nulls[a]);
+                break;
+            case OP_ADD_LONG:
+            case OP_SUB_LONG:
+            case OP_MUL_LONG:
+            case OP_DIV_LONG:
+                propagateNulls(dst, a, b);
+                longArithmetic(op, dst, a, b);
+                break;
+            case OP_NEG_LONG:
+                propagateNulls(dst, a, -1);
+                negate(longs[dst], longs[a]);
+                break;
+            case OP_ADD_DOUBLE:
+            case OP_SUB_DOUBLE:
+            case OP_MUL_DOUBLE:
+            case OP_DIV_DOUBLE:
+                propagateNulls(dst, a, b);
+                doubleArithmetic(op, doubles[dst], doubles[a], doubles[b]);
+                break;
+            case OP_NEG_DOUBLE:
+                propagateNulls(dst, a, -1);
+                negate(doubles[dst], doubles[a]);
+                break;
+            case OP_EQ_LONG:
+            case OP_NE_LONG:
+            case OP_LT_LONG:
+            case OP_LE_LONG:
+            case OP_GT_LONG:
+            case OP_GE_LONG:
+                propagateNulls(dst, a, b);
+                compareLong(op, longs[dst], longs[a], longs[b]);
+                break;
+            case OP_EQ_DOUBLE:
+            case OP_NE_DOUBLE:
+            case OP_LT_DOUBLE:
+            case OP_LE_DOUBLE:
+            case OP_GT_DOUBLE:
+            case OP_GE_DOUBLE:
+                propagateNulls(dst, a, b);
+                compareDouble(op, longs[dst], doubles[a], doubles[b]);
+                break;
+            case OP_AND:
+            case OP_OR:
+                logical3VL(op, dst, a, b);
+                break;
+            case OP_NOT:
+                propagateNulls(dst, a, -1);
+                not(longs[dst], longs[a]);
+                break;
+            case OP_IS_NULL:
+            case OP_IS_NOT_NULL:
+            case OP_IS_TRUE:
+            case OP_IS_NOT_TRUE:
+            case OP_IS_FALSE:
+            case OP_IS_NOT_FALSE:
+                assert nulls[dst] == null;
+                truthTest(op, longs[dst], a);
+                break;
+            case OP_SELECT:
+                select(longs[a], nulls[a]);
+                break;
+            default:
+                throw new AssertionError("unknown opcode " + op);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates the exception to be thrown when an approximate numeric
+     * multiplication or division overflows. Generated subclasses override
+     * this to throw the same error as row-at-a-time evaluation.
+     *
+     * @return exception to throw
+     */
+    protected RuntimeException newOverflowException()
+    {
+        return new ArithmeticException("overflow");
+    }
+
+    private void loadLiterals()
+    {
+        for (int pc = 0; pc < code.length; pc += 4) {
+            int dst = code[pc + 1];
+            int lit = code[pc + 2];
+            switch (code[pc]) {
+            case OP_LOAD_LONG:
+                Arrays.fill(longs[dst], longLiterals[lit]);
+                break;
+            case OP_LOAD_DOUBLE:
+                Arrays.fill(doubles[dst], doubleLiterals[lit]);
+                break;
+            case OP_LOAD_NULL:
+                Arrays.fill(nulls[dst], true);
+                continue;
+            default:
+                continue;
+            }
+            if (nulls[dst] != null) {
+                Arrays.fill(nulls[dst], false);
+            }
+        }
+    }
+
+    /**
+     * Computes the null vector of a register from the null vectors of its
+     * operands. Does nothing if the register is NOT NULL.
+     */
+    private void propagateNulls(int dst, int a, int b)
+    {
+        final boolean [] dn = nulls[dst];
+        if (dn == null) {
+            return;
+        }
+        final boolean [] an = nulls[a];
+        final boolean [] bn = (b < 0) ? null : nulls[b];
+        final int [] sel = selection;
+        final int n = count;
+        if ((an == null) && (bn == null)) {
+            for (int k = 0; k < n; ++k) {
+                dn[sel[k]] = false;
+            }
+        } else if (bn == null) {
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                dn[i] = an[i];
+            }
+        } else if (an == null) {
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                dn[i] = bn[i];
+            }
+        } else {
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                dn[i] = an[i] | bn[i];
+            }
+        }
+    }
+
+    private void copy(long [] d, long [] a)
+    {
+        final int n = count;
+        if (dense) {
+            System.arraycopy(a, 0, d, 0, n);
+        } else {
+            final int [] sel = selection;
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                d[i] = a[i];
+            }
+        }
+    }
+
+    private void copy(double [] d, double [] a)
+    {
+        final int n = count;
+        if (dense) {
+            System.arraycopy(a, 0, d, 0, n);
+        } else {
+            final int [] sel = selection;
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                d[i] = a[i];
+            }
+        }
+    }
+
+    private void longToDouble(double [] d, long [] a)
+    {
+        final int n = count;
+        if (dense) {
+            for (int i = 0; i < n; ++i) {
+                d[i] = (double) a[i];
+            }
+        } else {
+            final int [] sel = selection;
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                d[i] = (double) a[i];
+            }
+        }
+    }
+
+    private void narrow(long [] d, long [] a, int bits)
+    {
+        final int n = count;
+        final int [] sel = selection;
+        switch (bits) {
+        case 8:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (byte) a[i];
+            }
+            break;
+        case 16:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (short) a[i];
+            }
+            break;
+        case 32:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (int) a[i];
+            }
+            break;
+        default:
+            throw new AssertionError("bad width " + bits);
+        }
+    }
+
+    private void roundFloat(double [] d, double [] a)
+    {
+        final int n = count;
+        if (dense) {
+            for (int i = 0; i < n; ++i) {
+                d[i] = (float) a[i];
+            }
+        } else {
+            final int [] sel = selection;
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                d[i] = (float) a[i];
+            }
+        }
+    }
+
+    private void checkOverflow(double [] a, boolean [] an)
+    {
+        final int n = count;
+        final int [] sel = selection;
+        for (int k = 0; k < n; ++k) {
+            int i = sel[k];
+            if (Double.isInfinite(a[i]) && ((an == null) || !an[i])) {
+                throw newOverflowException();
+            }
+        }
+    }
+
+    private void negate(long [] d, long [] a)
+    {
+        final int n = count;
+        if (dense) {
+            for (int i = 0; i < n; ++i) {
+                d[i] = -a[i];
+            }
+        } else {
+            final int [] sel = selection;
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                d[i] = -a[i];
+            }
+        }
+    }
+
+    private void negate(double [] d, double [] a)
+    {
+        final int n = count;
+        if (dense) {
+            for (int i = 0; i < n; ++i) {
+                d[i] = -a[i];
+            }
+        } else {
+            final int [] sel = selection;
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                d[i] = -a[i];
+            }
+        }
+    }
+
+    private void longArithmetic(int op, int dst, int ra, int rb)
+    {
+        final long [] d = longs[dst];
+        final long [] a = longs[ra];
+        final long [] b = longs[rb];
+        final int n = count;
+        final int [] sel = selection;
+        switch (op) {
+        case OP_ADD_LONG:
+            if (dense) {
+                for (int i = 0; i < n; ++i) {
+                    d[i] = a[i] + b[i];
+                }
+            } else {
+                for (int k = 0; k < n; ++k) {
+                    int i = sel[k];
+                    d[i] = a[i] + b[i];
+                }
+            }
+            break;
+        case OP_SUB_LONG:
+            if (dense) {
+                for (int i = 0; i < n; ++i) {
+                    d[i] = a[i] - b[i];
+                }
+            } else {
+                for (int k = 0; k < n; ++k) {
+                    int i = sel[k];
+                    d[i] = a[i] - b[i];
+                }
+            }
+            break;
+        case OP_MUL_LONG:
+            if (dense) {
+                for (int i = 0; i < n; ++i) {
+                    d[i] = a[i] * b[i];
+                }
+            } else {
+                for (int k = 0; k < n; ++k) {
+                    int i = sel[k];
+                    d[i] = a[i] * b[i];
+                }
+            }
+            break;
+        case OP_DIV_LONG:
+            // Values at null positions are undefined and may be zero, so
+            // rows with a null operand must be skipped here.
+            final boolean [] an = nulls[ra];
+            final boolean [] bn = nulls[rb];
+            for (int k = 0; k < n; ++k) {
+                int i = sel[k];
+                if (((an != null) && an[i]) || ((bn != null) && bn[i])) {
+                    continue;
+                }
+                d[i] = a[i] / b[i];
+            }
+            break;
+        default:
+            throw new AssertionError();
+        }
+    }
+
+    private void doubleArithmetic(
+        int op,
+        double [] d,
+        double [] a,
+        double [] b)
+    {
+        final int n = count;
+        final int [] sel = selection;
+        switch (op) {
+        case OP_ADD_DOUBLE:
+            if (dense) {
+                for (int i = 0; i < n; ++i) {
+                    d[i] = a[i] + b[i];
+                }
+            } else {
+                for (int k = 0; k < n; ++k) {
+                    int i = sel[k];
+                    d[i] = a[i] + b[i];
+                }
+            }
+            break;
+        case OP_SUB_DOUBLE:
+            if (dense) {
+                for (int i = 0; i < n; ++i) {
+                    d[i] = a[i] - b[i];
+                }
+            } else {
+                for (int k = 0; k < n; ++k) {
+                    int i = sel[k];
+                    d[i] = a[i] - b[i];
+                }
+            }
+            break;
+        case OP_MUL_DOUBLE:
+            if (dense) {
+                for (int i = 0; i < n; ++i) {
+                    d[i] = a[i] * b[i];
+                }
+            } else {
+                for (int k = 0; k < n; ++k) {
+                    int i = sel[k];
+                    d[i] = a[i] * b[i];
+                }
+            }
+            break;
+        case OP_DIV_DOUBLE:
+            if (dense) {
+                for (int i = 0; i < n; ++i) {
+                    d[i] = a[i] / b[i];
+                }
+            } else {
+                for (int k = 0; k < n; ++k) {
+                    int i = sel[k];
+                    d[i] = a[i] / b[i];
+                }
+            }
+            break;
+        default:
+            throw new AssertionError();
+        }
+    }
+
+    private void compareLong(int op, long [] d, long [] a, long [] b)
+    {
+        final int n = count;
+        final int [] sel = selection;
+        switch (op) {
+        case OP_EQ_LONG:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] == b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_NE_LONG:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] != b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_LT_LONG:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] < b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_LE_LONG:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] <= b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_GT_LONG:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] > b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_GE_LONG:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] >= b[i]) ? 1 : 0;
+            }
+            break;
+        default:
+            throw new AssertionError();
+        }
+    }
+
+    private void compareDouble(int op, long [] d, double [] a, double [] b)
+    {
+        final int n = count;
+        final int [] sel = selection;
+        switch (op) {
+        case OP_EQ_DOUBLE:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] == b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_NE_DOUBLE:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] != b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_LT_DOUBLE:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] < b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_LE_DOUBLE:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] <= b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_GT_DOUBLE:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] > b[i]) ? 1 : 0;
+            }
+            break;
+        case OP_GE_DOUBLE:
+            for (int k = 0; k < n; ++k) {
+                int i = dense ? k : sel[k];
+                d[i] = (a[i] >= b[i]) ? 1 : 0;
+            }
+            break;
+        default:
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * Implements AND and OR with SQL three-valued logic: FALSE AND UNKNOWN is
+     * FALSE, and TRUE OR UNKNOWN is TRUE.
+     */
+    private void logical3VL(int op, int dst, int ra, int rb)
+    {
+        final long [] d = longs[dst];
+        final boolean [] dn = nulls[dst];
+        final long [] a = longs[ra];
+        final long [] b = longs[rb];
+        final boolean [] an = nulls[ra];
+        final boolean [] bn = nulls[rb];
+        final long dominant = (op == OP_AND) ? 0 : 1;
+        final int n = count;
+        final int [] sel = selection;
+        for (int k = 0; k < n; ++k) {
+            int i = sel[k];
+            boolean aNull = (an != null) && an[i];
+            boolean bNull = (bn != null) && bn[i];
+            if ((!aNull && (a[i] == dominant))
+                || (!bNull && (b[i] == dominant)))
+            {
+                d[i] = dominant;
+                if (dn != null) {
+                    dn[i] = false;
+                }
+            } else if (aNull || bNull) {
+                dn[i] = true;
+            } else {
+                d[i] = 1 - dominant;
+                if (dn != null) {
+                    dn[i] = false;
+                }
+            }
+        }
+    }
+
+    private void not(long [] d, long [] a)
+    {
+        final int n = count;
+        final int [] sel = selection;
+        for (int k = 0; k < n; ++k) {
+            int i = dense ? k : sel[k];
+            d[i] = 1 - a[i];
+        }
+    }
+
+    /**
+     * Implements the IS [NOT] NULL/TRUE/FALSE operators, whose results are
+     * never null.
+     */
+    private void truthTest(int op, long [] d, int ra)
+    {
+        final boolean [] an = nulls[ra];
+        final long [] a = longs[ra];
+        final int n = count;
+        final int [] sel = selection;
+        for (int k = 0; k < n; ++k) {
+            int i = sel[k];
+            boolean isNull = (an != null) && an[i];
+            boolean result;
+            switch (op) {
+            case OP_IS_NULL:
+                result = isNull;
+                break;
+            case OP_IS_NOT_NULL:
+                result = !isNull;
+                break;
+            case OP_IS_TRUE:
+                result = !isNull && (a[i] != 0);
+                break;
+            case OP_IS_NOT_TRUE:
+                result = isNull || (a[i] == 0);
+                break;
+            case OP_IS_FALSE:
+                result = !isNull && (a[i] == 0);
+                break;
+            case OP_IS_NOT_FALSE:
+                result = isNull || (a[i] != 0);
+                break;
+            default:
+                throw new AssertionError();
+            }
+            d[i] = result ? 1 : 0;
+        }
+    }
+
+    /**
+     * Removes from the selection every row whose condition is not TRUE.
+     */
+    private void select(long [] a, boolean [] an)
+    {
+        final int n = count;
+        final int [] sel = selection;
+        int j = 0;
+        for (int k = 0; k < n; ++k) {
+            int i = sel[k];
+            if ((a[i] != 0) && ((an == null) || !an[i])) {
+                sel[j++] = i;
+            }
+        }
+        if (j < n) {
+            dense = false;
+        }
+        count = j;
+    }
+}
+
+// End VectorCalcProgram.java
@@ -0,0 +1,213 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.runtime;
+
+import junit.framework.*;
+
+
+/**
+ * Unit test for {@link VectorCalcProgram}.
+ *
+ * @version $Id$
+ */
+public class VectorCalcProgramTest
+    extends TestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final long [] NO_LONGS = {};
+    private static final double [] NO_DOUBLES = {};
+
+    //~ Constructors -----------------------------------------------------------
+
+    public VectorCalcProgramTest(String name)
+    {
+        super(name);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests a filter followed by a projection: "SELECT a + 10 WHERE a &gt;
+     * b". Only rows which pass the filter are selected.
+     */
+    public void testFilterProject()
+    {
+        // registers: 0 = a, 1 = b, 2 = a > b, 3 = 10, 4 = a + 10
+        VectorCalcProgram program =
+            new VectorCalcProgram(
+                4,
+                new int[] {
+                    VectorCalcProgram.TYPE_LONG,
+                    VectorCalcProgram.TYPE_LONG,
+                    VectorCalcProgram.TYPE_LONG,
+                    VectorCalcProgram.TYPE_LONG,
+                    VectorCalcProgram.TYPE_LONG
+                },
+                new int[] {
+                    VectorCalcProgram.OP_LOAD_LONG, 3, 0, 0,
+                    VectorCalcProgram.OP_GT_LONG, 2, 0, 1,
+                    VectorCalcProgram.OP_SELECT, 0, 2, 0,
+                    VectorCalcProgram.OP_ADD_LONG, 4, 0, 3
+                },
+                new long[] { 10 },
+                NO_DOUBLES);
+        long [] a = { 5, 1, 7, 3 };
+        long [] b = { 4, 2, 7, 0 };
+        System.arraycopy(a, 0, program.longs[0], 0, 4);
+        System.arraycopy(b, 0, program.longs[1], 0, 4);
+        int n = program.execute(4);
+        assertEquals(2, n);
+        assertEquals(0, program.selection[0]);
+        assertEquals(3, program.selection[1]);
+        assertEquals(15, program.longs[4][0]);
+        assertEquals(13, program.longs[4][3]);
+
+        // A second batch with fewer rows reuses the literal.
+        program.longs[0][0] = 20;
+        program.longs[1][0] = 0;
+        n = program.execute(1);
+        assertEquals(1, n);
+        assertEquals(30, program.longs[4][0]);
+    }
+
+    /**
+     * Tests that AND and OR follow three-valued logic, and that IS TRUE
+     * never yields null.
+     */
+    public void testThreeValuedLogic()
+    {
+        final int nullableLong =
+            VectorCalcProgram.TYPE_LONG | VectorCalcProgram.TYPE_NULLABLE;
+
+        // registers: 0 = x, 1 = y, 2 = x AND y, 3 = x OR y,
+        // 4 = (x AND y) IS TRUE
+        VectorCalcProgram program =
+            new VectorCalcProgram(
+                3,
+                new int[] {
+                    nullableLong,
+                    nullableLong,
+                    nullableLong,
+                    nullableLong,
+                    VectorCalcProgram.TYPE_LONG
+                },
+                new int[] {
+                    VectorCalcProgram.OP_AND, 2, 0, 1,
+                    VectorCalcProgram.OP_OR, 3, 0, 1,
+                    VectorCalcProgram.OP_IS_TRUE, 4, 2, 0
+                },
+                NO_LONGS,
+                NO_DOUBLES);
+
+        // row 0: NULL AND FALSE, row 1: NULL AND TRUE, row 2: TRUE AND TRUE
+        program.nulls[0][0] = true;
+        program.nulls[0][1] = true;
+        program.longs[0][2] = 1;
+        program.longs[1][0] = 0;
+        program.longs[1][1] = 1;
+        program.longs[1][2] = 1;
+        assertEquals(3, program.execute(3));
+
+        assertFalse(program.nulls[2][0]);
+        assertEquals(0, program.longs[2][0]);
+        assertTrue(program.nulls[2][1]);
+        assertFalse(program.nulls[2][2]);
+        assertEquals(1, program.longs[2][2]);
+
+        assertTrue(program.nulls[3][0]);
+        assertFalse(program.nulls[3][1]);
+        assertEquals(1, program.longs[3][1]);
+
+        assertEquals(0, program.longs[4][0]);
+        assertEquals(0, program.longs[4][1]);
+        assertEquals(1, program.longs[4][2]);
+    }
+
+    /**
+     * Tests that integer division skips null rows and rows which the filter
+     * rejected, but fails on a selected row with a zero divisor.
+     */
+    public void testDivideByZero()
+    {
+        final int nullableLong =
+            VectorCalcProgram.TYPE_LONG | VectorCalcProgram.TYPE_NULLABLE;
+
+        // registers: 0 = a, 1 = b, 2 = a / b
+        VectorCalcProgram program =
+            new VectorCalcProgram(
+                2,
+                new int[] { nullableLong, nullableLong, nullableLong },
+                new int[] {
+                    VectorCalcProgram.OP_DIV_LONG, 2, 0, 1
+                },
+                NO_LONGS,
+                NO_DOUBLES);
+        program.longs[0][0] = 6;
+        program.longs[1][0] = 3;
+        program.nulls[1][1] = true;
+        assertEquals(2, program.execute(2));
+        assertEquals(2, program.longs[2][0]);
+        assertTrue(program.nulls[2][1]);
+
+        program.nulls[1][1] = false;
+        try {
+            program.execute(2);
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that approximate overflow is reported via {@link
+     * VectorCalcProgram#newOverflowException}.
+     */
+    public void testOverflow()
+    {
+        // registers: 0 = x, 1 = x * x
+        VectorCalcProgram program =
+            new VectorCalcProgram(
+                1,
+                new int[] {
+                    VectorCalcProgram.TYPE_DOUBLE,
+                    VectorCalcProgram.TYPE_DOUBLE
+                },
+                new int[] {
+                    VectorCalcProgram.OP_MUL_DOUBLE, 1, 0, 0,
+                    VectorCalcProgram.OP_CHECK_OVERFLOW, 1, 1, 0
+                },
+                NO_LONGS,
+                NO_DOUBLES) {
+                protected RuntimeException newOverflowException()
+                {
+                    return new IllegalStateException("overflow");
+                }
+            };
+        program.doubles[0][0] = 1e200;
+        try {
+            program.execute(1);
+            fail("expected overflow");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+}
+
+// End VectorCalcProgramTest.java
@@ -0,0 +1,138 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.runtime;
+
+/**
+ * <code>VectorCalcTupleIter</code> is an abstract base for iterators
+ * generated by {@link org.eigenbase.oj.rel.IterCalcRel} in vectorized mode.
+ *
+ * <p>Rather than evaluating the calculator program once per input row, it
+ * reads up to {@link VectorCalcProgram#batchSize} rows from its input,
+ * copying the referenced fields into the registers of a {@link
+ * VectorCalcProgram} ({@link #gatherRow}), evaluates the program over the
+ * whole batch, and then returns one output row per selected row ({@link
+ * #scatterRow}). Row objects are only touched at these two boundaries.
+ *
+ * <p>If the input returns {@link TupleIter.NoDataReason#UNDERFLOW} or {@link
+ * TupleIter.NoDataReason#END_OF_DATA} part way through a batch, the partial
+ * batch is evaluated and returned first, and the reason is returned after
+ * it.
+ *
+ * @version $Id$
+ */
+public abstract class VectorCalcTupleIter
+    extends CalcTupleIter
+{
+    //~ Instance fields --------------------------------------------------------
+
+    protected final VectorCalcProgram program;
+
+    /**
+     * Number of rows of the current batch which passed the filter.
+     */
+    private int selectedCount;
+
+    /**
+     * Position within the selected rows of the next row to return.
+     */
+    private int position;
+
+    /**
+     * Reason returned by the input which ended the current batch, or null.
+     */
+    private Object pendingReason;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Constructor.
+     *
+     * @param inputIterator iterator producing results to be transformed
+     * @param program program which evaluates the calculator over a batch
+     */
+    protected VectorCalcTupleIter(
+        TupleIter inputIterator,
+        VectorCalcProgram program)
+    {
+        super(inputIterator);
+        this.program = program;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TupleIter
+    public Object fetchNext()
+    {
+        while (true) {
+            if (position < selectedCount) {
+                return scatterRow(program.selection[position++]);
+            }
+            if (pendingReason != null) {
+                Object reason = pendingReason;
+                pendingReason = null;
+                return reason;
+            }
+            int rowCount = 0;
+            while (rowCount < program.batchSize) {
+                Object inputRow = inputIterator.fetchNext();
+                if (inputRow instanceof NoDataReason) {
+                    pendingReason = inputRow;
+                    break;
+                }
+                gatherRow(inputRow, rowCount++);
+            }
+            position = 0;
+            if (rowCount == 0) {
+                selectedCount = 0;
+            } else {
+                selectedCount = program.execute(rowCount);
+            }
+        }
+    }
+
+    // implement TupleIter
+    public void restart()
+    {
+        super.restart();
+        selectedCount = 0;
+        position = 0;
+        pendingReason = null;
+    }
+
+    /**
+     * Copies the fields referenced by the program from an input row into
+     * the input registers of the program.
+     *
+     * @param inputRow row returned by the input iterator
+     * @param row ordinal of the row within the batch
+     */
+    protected abstract void gatherRow(Object inputRow, int row);
+
+    /**
+     * Copies the output registers of the program for a given row of the
+     * batch into the output row object.
+     *
+     * @param row ordinal of the row within the batch
+     *
+     * @return output row
+     */
+    protected abstract Object scatterRow(int row);
+}
+
+// End VectorCalcTupleIter.java
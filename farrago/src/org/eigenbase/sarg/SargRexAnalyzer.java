@@ -608,12 +608,29 @@ public class SargRexAnalyzer
                     setOp);
 
             // Pop the correct number of operands off the stack
-            // and transfer them to the new set expression.
+            // and transfer them to the new set expression.  An operand
+            // which applies the same UNION or INTERSECTION is flattened
+            // into this one, so that a long chain of ORs (e.g. from a large
+            // IN list) becomes a single union evaluated with one sort
+            // rather than a nest of unions, each re-sorting its input.
             ListIterator<SargExpr> iter =
                 exprStack.listIterator(
                     exprStack.size() - nOperands);
             while (iter.hasNext()) {
-                expr.addChild(iter.next());
+                SargExpr child = iter.next();
+                if ((setOp != SargSetOperator.COMPLEMENT)
+                    && (child instanceof SargSetExpr)
+                    && (((SargSetExpr) child).getSetOp() == setOp))
+                {
+                    for (
+                        SargExpr grandChild
+                        : ((SargSetExpr) child).getChildren())
+                    {
+                        expr.addChild(grandChild);
+                    }
+                } else {
+                    expr.addChild(child);
+                }
                 iter.remove();
             }
 
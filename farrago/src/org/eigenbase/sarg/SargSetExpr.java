@@ -72,6 +72,14 @@ public class SargSetExpr
         return Collections.unmodifiableList(children);
     }
 
+    /**
+     * @return the set operator applied to this expression's children
+     */
+    public SargSetOperator getSetOp()
+    {
+        return setOp;
+    }
+
     /**
      * Adds a child to this expression.
      *
@@ -45,7 +45,7 @@ public class SqlExplain
     public static enum Depth
         implements SqlLiteral.SqlSymbol
     {
-        Type, Logical, Physical,
+        Type, Logical, Physical, Statistics,
     }
 
     //~ Instance fields --------------------------------------------------------
@@ -117,6 +117,15 @@ public class SqlExplain
         return getDepth() == Depth.Physical;
     }
 
+    /**
+     * @return whether the statement should be executed and its plan
+     * annotated with runtime statistics
+     */
+    public boolean withStatistics()
+    {
+        return getDepth() == Depth.Statistics;
+    }
+
     /**
      * @return whether type should be returned
      */
@@ -161,6 +170,9 @@ public class SqlExplain
         case Physical:
             writer.keyword("WITH IMPLEMENTATION");
             break;
+        case Statistics:
+            writer.keyword("WITH STATISTICS");
+            break;
         default:
             throw new UnsupportedOperationException();
         }
@@ -1810,6 +1810,18 @@ public class SqlParserTest
                 }));
     }
 
+    public void testExplainWithStatistics()
+    {
+        check(
+            "explain plan with statistics for select * from emps",
+            TestUtil.fold(
+                new String[] {
+                    "EXPLAIN PLAN INCLUDING ATTRIBUTES WITH STATISTICS FOR",
+                    "SELECT *",
+                    "FROM `EMPS`"
+                }));
+    }
+
     public void testInsertSelect()
     {
         check(
@@ -18,8 +18,13 @@
 */
 package org.eigenbase.test;
 
+import java.util.*;
+
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.rel.rules.*;
+import org.eigenbase.relopt.hep.*;
+import org.eigenbase.rex.*;
 
 
 /**
@@ -144,6 +149,89 @@ public class RelOptRulesTest
             + "emp r1, "
             + "(select * from emp e1 union all select * from emp e2) r2");
     }
+
+    public void testPushAggregateThroughJoin()
+    {
+        // SUMs and MINs are combined by themselves, COUNTs by SUM (cast back
+        // to NOT NULL); SAL is projected once for both of its aggregates, and
+        // the rule must fire exactly once
+        checkPlanning(
+            createEmpStatsPlanner(
+                createProgram(
+                    PushAggregateThroughJoinRule.instanceProject,
+                    PushAggregateThroughJoinRule.instanceJoin)),
+            "select d.name, sum(e.sal), count(e.comm), min(e.sal), count(*) "
+            + "from emp e join dept d on e.deptno = d.deptno "
+            + "group by d.name");
+    }
+
+    public void testPushAggregateThroughJoinUnique()
+    {
+        // the aggregated input is already unique on the join key, as it is
+        // after the rule has fired once, so the rule must not fire
+        checkPlanning(
+            createEmpStatsPlanner(
+                createProgram(
+                    PushAggregateThroughJoinRule.instanceProject,
+                    PushAggregateThroughJoinRule.instanceJoin)),
+            "select d.name, sum(e.s) "
+            + "from (select deptno, sum(sal) as s from emp group by deptno) e "
+            + "join dept d on e.deptno = d.deptno "
+            + "group by d.name");
+    }
+
+    /**
+     * Creates a planner whose metadata includes {@link
+     * EmpDistinctRowCountProvider}.
+     *
+     * @param program Planner program
+     *
+     * @return Planner
+     */
+    private static HepPlanner createEmpStatsPlanner(HepProgram program)
+    {
+        return new HepPlanner(program) {
+            public void registerMetadataProviders(
+                ChainedRelMetadataProvider chain)
+            {
+                super.registerMetadataProviders(chain);
+                chain.addProvider(new EmpDistinctRowCountProvider());
+            }
+        };
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Metadata provider which estimates 10 distinct values for any non-empty
+     * set of columns of EMP, which the mock catalog does not supply.
+     */
+    public static class EmpDistinctRowCountProvider
+        extends ReflectiveRelMetadataProvider
+    {
+        public EmpDistinctRowCountProvider()
+        {
+            List<Class> args = new ArrayList<Class>();
+            args.add((Class) BitSet.class);
+            args.add((Class) RexNode.class);
+            mapParameterTypes("getDistinctRowCount", args);
+        }
+
+        public Double getDistinctRowCount(
+            TableAccessRel rel,
+            BitSet groupKey,
+            RexNode predicate)
+        {
+            String [] names = rel.getTable().getQualifiedName();
+            if (groupKey.isEmpty()
+                || (predicate != null)
+                || !names[names.length - 1].equals("EMP"))
+            {
+                return null;
+            }
+            return 10.0;
+        }
+    }
 }
 
 // End RelOptRulesTest.java
@@ -868,6 +868,24 @@ public class SargTest
             "UNION( (-infinity, 7) (-infinity, 490] )",
             binding.getExpr().toString());
 
+        // test that a chain of ORs is flattened into a single UNION
+        pred3 =
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.orOperator,
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.orOperator,
+                    pred1,
+                    pred2),
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.equalsOperator,
+                    inputRef8,
+                    intLiteral490));
+        binding = rexAnalyzer.analyze(pred3);
+        assertNotNull(binding);
+        assertEquals(
+            "UNION( (-infinity, 7) (-infinity, 490] [490] )",
+            binding.getExpr().toString());
+
         // test NOT
         pred3 =
             rexBuilder.makeCall(
@@ -155,17 +155,36 @@ public class LcsAddDeletionScanRule
                     origRowScan.residualColumns,
                     origRowScan.inputSelectivity);
         } else if (origRowScan instanceof LcsRowAggRel) {
+            LcsRowAggRel aggRel = (LcsRowAggRel) origRowScan;
             newRowScan =
                 new LcsRowAggRel(
-                    origRowScan.getCluster(),
+                    aggRel.getCluster(),
                     newInputs,
-                    origRowScan.lcsTable,
-                    origRowScan.clusteredIndexes,
-                    origRowScan.getConnection(),
-                    origRowScan.projectedColumns,
-                    origRowScan.isFullScan,
-                    origRowScan.residualColumns,
-                    origRowScan.inputSelectivity);
+                    aggRel.lcsTable,
+                    aggRel.clusteredIndexes,
+                    aggRel.getConnection(),
+                    aggRel.projectedColumns,
+                    aggRel.isFullScan,
+                    aggRel.residualColumns,
+                    aggRel.inputSelectivity,
+                    aggRel.getGroupCount(),
+                    aggRel.getAggCallList());
+        } else if (origRowScan instanceof LcsPartitionedRowScanRel) {
+            LcsPartitionedRowScanRel partRel =
+                (LcsPartitionedRowScanRel) origRowScan;
+            newRowScan =
+                new LcsPartitionedRowScanRel(
+                    partRel.getCluster(),
+                    newInputs,
+                    partRel.lcsTable,
+                    partRel.clusteredIndexes,
+                    partRel.getConnection(),
+                    partRel.projectedColumns,
+                    partRel.residualColumns,
+                    partRel.inputSelectivity,
+                    partRel.ridRangeStart,
+                    partRel.ridRangeEnd,
+                    partRel.partitionCount);
         } else {
             LcsSamplingRowScanRel sampleRel =
                 (LcsSamplingRowScanRel) origRowScan;
@@ -0,0 +1,502 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.session.*;
+
+
+/**
+ * LcsAggregateView describes a stored table which holds the result of an
+ * aggregate query over other stored tables, i.e. a materialized aggregate
+ * view. The definition is kept in tag annotations: the view table carries the
+ * canonical text of its query and the state of each base table as of its
+ * last refresh, and each base table lists the views defined over it, so that
+ * {@link LcsAggregateViewRule} can find candidate views from the tables a
+ * query reads.
+ *
+ * <p>A view is fresh when none of its base tables has changed since its last
+ * refresh. A change which only appended rows to a base table can be applied
+ * incrementally, because LCS rids are assigned sequentially on append: the
+ * new rows are those whose rid is at least the number of rows (current plus
+ * deleted) recorded at the refresh. Deletions change the deleted row count,
+ * and rebuild and truncate change the table's modification timestamp, so
+ * both force the view to be recomputed.
+ *
+ * @version $Id$
+ */
+public class LcsAggregateView
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Tag on a view table holding the canonical text of its query.
+     */
+    public static final String QUERY_TAG = "aggregateViewQuery";
+
+    /**
+     * Tag on a view table holding the state of its base tables as of its
+     * last refresh.
+     */
+    public static final String STATE_TAG = "aggregateViewState";
+
+    /**
+     * Tag on a base table holding the MOF ID's of the views over it.
+     */
+    public static final String VIEWS_TAG = "aggregateViews";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FemLocalTable table;
+    private final String sql;
+    private final Map<String, TableState> refreshedState;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private LcsAggregateView(
+        FemLocalTable table,
+        String sql,
+        Map<String, TableState> refreshedState)
+    {
+        this.table = table;
+        this.sql = sql;
+        this.refreshedState = refreshedState;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Looks up the aggregate view definition of a table.
+     *
+     * @param repos repository
+     * @param table stored table
+     *
+     * @return view definition, or null if the table is not an aggregate view
+     */
+    public static LcsAggregateView getView(
+        FarragoRepos repos,
+        FemLocalTable table)
+    {
+        String sql = repos.getTagAnnotationValue(table, QUERY_TAG);
+        if (sql == null) {
+            return null;
+        }
+        Map<String, TableState> state = new HashMap<String, TableState>();
+        String stateString = repos.getTagAnnotationValue(table, STATE_TAG);
+        if (stateString != null) {
+            for (String entry : stateString.split(";")) {
+                if (entry.length() == 0) {
+                    continue;
+                }
+                String [] fields = entry.split(",", 4);
+                state.put(
+                    fields[0],
+                    new TableState(
+                        Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]),
+                        (fields[3].length() == 0) ? null : fields[3]));
+            }
+        }
+        return new LcsAggregateView(table, sql, state);
+    }
+
+    /**
+     * Finds the aggregate views defined over a table.
+     *
+     * @param repos repository
+     * @param baseTable base table
+     *
+     * @return views, in order of definition
+     */
+    public static List<LcsAggregateView> getViewsOverTable(
+        FarragoRepos repos,
+        FemAbstractColumnSet baseTable)
+    {
+        List<LcsAggregateView> views = new ArrayList<LcsAggregateView>();
+        for (FemLocalTable viewTable : getViewTables(repos, baseTable)) {
+            LcsAggregateView view = getView(repos, viewTable);
+            if (view != null) {
+                views.add(view);
+            }
+        }
+        return views;
+    }
+
+    private static List<FemLocalTable> getViewTables(
+        FarragoRepos repos,
+        FemAbstractColumnSet baseTable)
+    {
+        List<FemLocalTable> viewTables = new ArrayList<FemLocalTable>();
+        String mofIds = repos.getTagAnnotationValue(baseTable, VIEWS_TAG);
+        if (mofIds == null) {
+            return viewTables;
+        }
+        for (String mofId : mofIds.split(",")) {
+            // Views which have since been dropped are skipped.
+            RefBaseObject obj = repos.getMdrRepos().getByMofId(mofId);
+            if (obj instanceof FemLocalTable) {
+                viewTables.add((FemLocalTable) obj);
+            }
+        }
+        return viewTables;
+    }
+
+    /**
+     * Registers a table as an aggregate view. The caller must already have
+     * populated the table, and must have captured the state of the base
+     * tables (with {@link #getCurrentState}) before doing so. Must be called
+     * in a repository write transaction.
+     *
+     * @param repos repository
+     * @param table table holding the result of the query
+     * @param sql canonical text of the query
+     * @param baseTables tables read by the query
+     * @param state state of the base tables the table's contents reflect
+     */
+    public static void register(
+        FarragoRepos repos,
+        FemLocalTable table,
+        String sql,
+        Collection<FemAbstractColumnSet> baseTables,
+        Map<String, TableState> state)
+    {
+        repos.setTagAnnotationValue(table, QUERY_TAG, sql);
+        recordState(repos, table, state);
+        for (FemAbstractColumnSet baseTable : baseTables) {
+            StringBuilder sb = new StringBuilder();
+            for (FemLocalTable viewTable : getViewTables(repos, baseTable)) {
+                if (viewTable.equals(table)) {
+                    continue;
+                }
+                sb.append(viewTable.refMofId()).append(',');
+            }
+            sb.append(table.refMofId());
+            repos.setTagAnnotationValue(baseTable, VIEWS_TAG, sb.toString());
+        }
+    }
+
+    /**
+     * Records the state of the base tables which the contents of a view
+     * reflect, after a refresh. Must be called in a repository write
+     * transaction.
+     *
+     * @param repos repository
+     * @param table view table
+     * @param state state of the base tables, as returned by {@link
+     * #getCurrentState} before the refresh
+     */
+    public static void recordState(
+        FarragoRepos repos,
+        FemLocalTable table,
+        Map<String, TableState> state)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, TableState> entry : state.entrySet()) {
+            TableState tableState = entry.getValue();
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(entry.getKey()).append(',')
+            .append(tableState.rowCount).append(',')
+            .append(tableState.deletedRowCount).append(',');
+            if (tableState.modificationTimestamp != null) {
+                sb.append(tableState.modificationTimestamp);
+            }
+        }
+        repos.setTagAnnotationValue(table, STATE_TAG, sb.toString());
+    }
+
+    /**
+     * Captures the current state of a set of tables.
+     *
+     * @param tables tables
+     *
+     * @return map from MOF ID to the state of each table
+     */
+    public static Map<String, TableState> getCurrentState(
+        Collection<FemAbstractColumnSet> tables)
+    {
+        Map<String, TableState> state = new HashMap<String, TableState>();
+        for (FemAbstractColumnSet table : tables) {
+            Long [] rowCounts = new Long[2];
+            FarragoCatalogUtil.getRowCounts(table, null, rowCounts);
+            state.put(
+                table.refMofId(),
+                new TableState(
+                    (rowCounts[0] == null) ? 0 : rowCounts[0],
+                    (rowCounts[1] == null) ? 0 : rowCounts[1],
+                    table.getModificationTimestamp()));
+        }
+        return state;
+    }
+
+    /**
+     * Makes a state which no table can be in. Recorded for a view whose
+     * contents may not reflect any single state of its base tables, it
+     * keeps the view from being used until its next refresh, which then
+     * recomputes it.
+     *
+     * @param mofIds MOF ID's of the base tables
+     *
+     * @return map from MOF ID to an impossible state
+     */
+    public static Map<String, TableState> getUnknownState(
+        Collection<String> mofIds)
+    {
+        Map<String, TableState> state = new HashMap<String, TableState>();
+        for (String mofId : mofIds) {
+            state.put(mofId, new TableState(-1, -1, null));
+        }
+        return state;
+    }
+
+    /**
+     * Captures the current state of this view's base tables.
+     *
+     * @param repos repository
+     *
+     * @return map from MOF ID to the state of each base table; null if a
+     * base table no longer exists
+     */
+    public Map<String, TableState> getCurrentState(FarragoRepos repos)
+    {
+        List<FemAbstractColumnSet> tables =
+            new ArrayList<FemAbstractColumnSet>();
+        for (String mofId : refreshedState.keySet()) {
+            RefBaseObject obj = repos.getMdrRepos().getByMofId(mofId);
+            if (!(obj instanceof FemAbstractColumnSet)) {
+                return null;
+            }
+            tables.add((FemAbstractColumnSet) obj);
+        }
+        return getCurrentState(tables);
+    }
+
+    /**
+     * Notes that the storage of a table has been reset (e.g. by TRUNCATE),
+     * so that views over it are not refreshed incrementally from rids which
+     * have been reused. Must be called in a repository write transaction.
+     *
+     * @param repos repository
+     * @param table table whose storage was reset
+     */
+    public static void noteStorageReset(
+        FarragoRepos repos,
+        FemAbstractColumnSet table)
+    {
+        if (repos.getTagAnnotationValue(table, VIEWS_TAG) == null) {
+            return;
+        }
+        FarragoCatalogUtil.updateAnnotatedElement(
+            table,
+            FarragoCatalogUtil.createTimestamp(),
+            false);
+    }
+
+    /**
+     * @return table holding the view's contents
+     */
+    public FemLocalTable getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return canonical text of the view's query
+     */
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * @return map from base table MOF ID to the state of the base table
+     * which the view's contents reflect
+     */
+    public Map<String, TableState> getRefreshedState()
+    {
+        return refreshedState;
+    }
+
+    /**
+     * Determines whether the view's contents are current.
+     *
+     * @param repos repository
+     *
+     * @return true if none of the base tables has changed since the last
+     * refresh
+     */
+    public boolean isFresh(FarragoRepos repos)
+    {
+        return !refreshedState.isEmpty()
+            && refreshedState.equals(getCurrentState(repos));
+    }
+
+    /**
+     * Creates a guard for plans which read this view in place of its query,
+     * so that they are prepared again once the view is no longer fresh.
+     *
+     * @return guard which holds while the view is fresh
+     */
+    public FarragoSessionPlanGuard newFreshnessGuard()
+    {
+        return new FreshnessGuard(table.refMofId());
+    }
+
+    /**
+     * Determines whether the view can be refreshed by aggregating only rows
+     * appended to one base table since its last refresh.
+     *
+     * @param currentState current state of the base tables
+     *
+     * @return MOF ID of the base table which has had rows appended, or null
+     * if the view is fresh or must be recomputed
+     */
+    public String getAppendedTable(Map<String, TableState> currentState)
+    {
+        if (currentState == null) {
+            return null;
+        }
+        String appendedMofId = null;
+        for (Map.Entry<String, TableState> entry : currentState.entrySet()) {
+            TableState oldState = refreshedState.get(entry.getKey());
+            TableState newState = entry.getValue();
+            if (newState.equals(oldState)) {
+                continue;
+            }
+            if ((appendedMofId != null) || !newState.isAppendOf(oldState)) {
+                return null;
+            }
+            appendedMofId = entry.getKey();
+        }
+        return appendedMofId;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * FreshnessGuard holds while an aggregate view is fresh. It refers to the
+     * view by MOF ID, since it outlives the preparation of the plan.
+     */
+    private static class FreshnessGuard
+        implements FarragoSessionPlanGuard
+    {
+        private final String viewMofId;
+
+        FreshnessGuard(String viewMofId)
+        {
+            this.viewMofId = viewMofId;
+        }
+
+        // implement FarragoSessionPlanGuard
+        public boolean isSatisfied(FarragoRepos repos)
+        {
+            FarragoReposTxnContext txn = repos.newTxnContext(true);
+            txn.beginReadTxn();
+            try {
+                RefBaseObject obj = repos.getMdrRepos().getByMofId(viewMofId);
+                if (!(obj instanceof FemLocalTable)) {
+                    return false;
+                }
+                LcsAggregateView view = getView(repos, (FemLocalTable) obj);
+                return (view != null) && view.isFresh(repos);
+            } finally {
+                txn.commit();
+            }
+        }
+    }
+
+    /**
+     * TableState records the row counts and modification timestamp of a
+     * base table.
+     */
+    public static class TableState
+    {
+        private final long rowCount;
+        private final long deletedRowCount;
+        private final String modificationTimestamp;
+
+        public TableState(
+            long rowCount,
+            long deletedRowCount,
+            String modificationTimestamp)
+        {
+            this.rowCount = rowCount;
+            this.deletedRowCount = deletedRowCount;
+            this.modificationTimestamp = modificationTimestamp;
+        }
+
+        /**
+         * @return rid which the next row appended to the table will receive
+         */
+        public long getNextRid()
+        {
+            return rowCount + deletedRowCount;
+        }
+
+        /**
+         * Determines whether this state can have been reached from an older
+         * one only by appending rows.
+         *
+         * @param oldState older state of the same table
+         *
+         * @return whether the table has only had rows appended
+         */
+        public boolean isAppendOf(TableState oldState)
+        {
+            return (oldState != null)
+                && (rowCount > oldState.rowCount)
+                && (deletedRowCount == oldState.deletedRowCount)
+                && equal(
+                    modificationTimestamp,
+                    oldState.modificationTimestamp);
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof TableState)) {
+                return false;
+            }
+            TableState that = (TableState) obj;
+            return (rowCount == that.rowCount)
+                && (deletedRowCount == that.deletedRowCount)
+                && equal(
+                    modificationTimestamp,
+                    that.modificationTimestamp);
+        }
+
+        public int hashCode()
+        {
+            return (int) (rowCount ^ (deletedRowCount << 16));
+        }
+
+        private static boolean equal(String s1, String s2)
+        {
+            return (s1 == null) ? (s2 == null) : s1.equals(s2);
+        }
+    }
+}
+
+// End LcsAggregateView.java
@@ -0,0 +1,389 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import java.math.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.query.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.relopt.hep.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+
+
+/**
+ * LcsAggregateViewRule answers an aggregate query from a fresh materialized
+ * aggregate view (see {@link LcsAggregateView}) over the same tables. It
+ * matches an {@link AggregateRel} whose input, below the projection of its
+ * group keys and arguments, is identical to the input of the view's
+ * aggregate, and whose group keys and aggregates can all be found among the
+ * view's. The query's groups may be coarser than the view's, in which case
+ * the view's rows are rolled up: SUM, MIN and MAX are re-applied to the
+ * view's results, and COUNT becomes SUM.
+ *
+ * <p>The rule must fire before any other rule changes the shape of the plan,
+ * so that the query's plan and the view's plan are still in the form the
+ * converter produced. Since whether a view can be used depends on the data
+ * in its base tables, a statement rewritten by this rule is not cached, and
+ * the view's freshness is checked again each time the statement is executed;
+ * if a base table has changed since, the statement is prepared again, and the
+ * rule no longer applies.
+ *
+ * @version $Id$
+ */
+public class LcsAggregateViewRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(LcsAggregateViewRule.class);
+
+    public static final LcsAggregateViewRule instance =
+        new LcsAggregateViewRule();
+
+    //~ Constructors -----------------------------------------------------------
+
+    public LcsAggregateViewRule()
+    {
+        super(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(ProjectRel.class, ANY)));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        AggregateRel aggRel = (AggregateRel) call.rels[0];
+        ProjectRel projRel = (ProjectRel) call.rels[1];
+
+        FarragoPreparingStmt stmt = FarragoRelUtil.getPreparingStmt(aggRel);
+        if (stmt == null) {
+            return;
+        }
+
+        // A view's contents are current, so it can't answer a query as of
+        // an earlier label.
+        if (stmt.getSession().getSessionLabelCreationTimestamp() != null) {
+            return;
+        }
+
+        for (AggregateCall aggCall : aggRel.getAggCallList()) {
+            if (aggCall.isDistinct() || !isRollupSupported(aggCall)) {
+                return;
+            }
+        }
+
+        FarragoRepos repos = stmt.getRepos();
+        List<FemAbstractColumnSet> tables =
+            new ArrayList<FemAbstractColumnSet>();
+        collectTables(projRel.getChild(), tables);
+        Map<String, LcsAggregateView> views =
+            new LinkedHashMap<String, LcsAggregateView>();
+        for (FemAbstractColumnSet table : tables) {
+            for (LcsAggregateView view
+                : LcsAggregateView.getViewsOverTable(repos, table))
+            {
+                views.put(view.getTable().refMofId(), view);
+            }
+        }
+        if (views.isEmpty()) {
+            return;
+        }
+
+        String inputDigest = RelOptUtil.toString(projRel.getChild());
+        for (LcsAggregateView view : views.values()) {
+            if (!view.isFresh(repos)) {
+                continue;
+            }
+            RelNode rel = rewrite(stmt, aggRel, projRel, inputDigest, view);
+            if (rel == null) {
+                continue;
+            }
+            if (tracer.isLoggable(Level.FINE)) {
+                tracer.fine(
+                    "Answering aggregate from "
+                    + repos.getLocalizedObjectName(view.getTable()));
+            }
+            stmt.disableStatementCaching();
+            stmt.addPlanGuard(view.newFreshnessGuard());
+            call.transformTo(rel);
+            return;
+        }
+    }
+
+    private static boolean isRollupSupported(AggregateCall aggCall)
+    {
+        String name = aggCall.getAggregation().getName();
+        return name.equals("SUM")
+            || name.equals("COUNT")
+            || name.equals("MIN")
+            || name.equals("MAX");
+    }
+
+    private static void collectTables(
+        RelNode rel,
+        List<FemAbstractColumnSet> tables)
+    {
+        if (rel instanceof HepRelVertex) {
+            rel = ((HepRelVertex) rel).getCurrentRel();
+        }
+        if (rel instanceof LcsRowScanRel) {
+            tables.add(
+                (FemAbstractColumnSet)
+                ((LcsRowScanRel) rel).lcsTable.getCwmColumnSet());
+        }
+        for (RelNode input : rel.getInputs()) {
+            collectTables(input, tables);
+        }
+    }
+
+    /**
+     * Rewrites an aggregate to read from a view.
+     *
+     * @param stmt statement being prepared
+     * @param aggRel aggregate in the query
+     * @param projRel input to aggRel
+     * @param inputDigest explanation of the input to projRel
+     * @param view candidate view
+     *
+     * @return equivalent expression reading from the view, or null if the
+     * view cannot answer the aggregate
+     */
+    private RelNode rewrite(
+        FarragoPreparingStmt stmt,
+        AggregateRel aggRel,
+        ProjectRel projRel,
+        String inputDigest,
+        LcsAggregateView view)
+    {
+        // The view's plan is an aggregate over a projection, possibly with a
+        // projection on top choosing the order of the view's columns.
+        RelNode viewRel = stmt.expandQuery(view.getSql());
+        ProjectRel viewTopRel = null;
+        if (viewRel instanceof ProjectRel) {
+            viewTopRel = (ProjectRel) viewRel;
+            viewRel = viewTopRel.getChild();
+        }
+        if (!(viewRel instanceof AggregateRel)) {
+            return null;
+        }
+        AggregateRel viewAggRel = (AggregateRel) viewRel;
+        if (!(viewAggRel.getChild() instanceof ProjectRel)) {
+            return null;
+        }
+        ProjectRel viewProjRel = (ProjectRel) viewAggRel.getChild();
+        if (!RelOptUtil.toString(viewProjRel.getChild()).equals(inputDigest)) {
+            return null;
+        }
+
+        // Map each output of the view's aggregate to a column of the view.
+        int [] viewColumns = new int[viewAggRel.getRowType().getFieldCount()];
+        Arrays.fill(viewColumns, -1);
+        if (viewTopRel == null) {
+            for (int i = 0; i < viewColumns.length; i++) {
+                viewColumns[i] = i;
+            }
+        } else {
+            RexNode [] topExps = viewTopRel.getProjectExps();
+            for (int i = 0; i < topExps.length; i++) {
+                if (!(topExps[i] instanceof RexInputRef)) {
+                    continue;
+                }
+                int index = ((RexInputRef) topExps[i]).getIndex();
+                if (viewColumns[index] == -1) {
+                    viewColumns[index] = i;
+                }
+            }
+        }
+
+        // Both projections are over identical inputs, so their expressions
+        // can be compared by digest.
+        List<String> queryExps = getDigests(projRel.getProjectExps());
+        List<String> viewExps = getDigests(viewProjRel.getProjectExps());
+
+        List<Integer> columns = new ArrayList<Integer>();
+        int groupCount = aggRel.getGroupCount();
+        for (int i = 0; i < groupCount; i++) {
+            int j =
+                viewExps.subList(0, viewAggRel.getGroupCount()).indexOf(
+                    queryExps.get(i));
+            if ((j == -1) || (viewColumns[j] == -1)) {
+                return null;
+            }
+            columns.add(viewColumns[j]);
+        }
+        for (AggregateCall aggCall : aggRel.getAggCallList()) {
+            int j = findAggCall(aggCall, queryExps, viewAggRel, viewExps);
+            if ((j == -1) || (viewColumns[j] == -1)) {
+                return null;
+            }
+            columns.add(viewColumns[j]);
+        }
+
+        RelNode viewScan =
+            stmt.expandQuery(
+                "SELECT * FROM "
+                + FarragoCatalogUtil.getQualifiedName(view.getTable())
+                .toSqlString(SqlDialect.EIGENBASE).getSql());
+        RelNode inputRel = CalcRel.createProject(viewScan, columns);
+
+        // Roll the view's rows up into the query's groups.
+        RelOptCluster cluster = aggRel.getCluster();
+        RelDataTypeFactory typeFactory = cluster.getTypeFactory();
+        RelDataTypeField [] inputFields = inputRel.getRowType().getFields();
+        List<AggregateCall> newAggCalls = new ArrayList<AggregateCall>();
+        List<Integer> countOrdinals = new ArrayList<Integer>();
+        int iInput = groupCount;
+        for (AggregateCall aggCall : aggRel.getAggCallList()) {
+            RelDataType type =
+                typeFactory.createTypeWithNullability(
+                    inputFields[iInput].getType(),
+                    true);
+            String name = aggCall.getAggregation().getName();
+            Aggregation aggregation;
+            if (name.equals("SUM") || name.equals("COUNT")) {
+                aggregation = new SqlSumAggFunction(type);
+            } else {
+                aggregation = aggCall.getAggregation();
+            }
+            if (name.equals("COUNT")) {
+                countOrdinals.add(iInput);
+            }
+            newAggCalls.add(
+                new AggregateCall(
+                    aggregation,
+                    false,
+                    Collections.singletonList(iInput),
+                    type,
+                    aggCall.getName()));
+            ++iInput;
+        }
+        RelNode rel =
+            new AggregateRel(
+                cluster,
+                inputRel,
+                groupCount,
+                newAggCalls);
+
+        // Without GROUP BY, the query returns a row even when the view is
+        // empty, and its counts must then be zero rather than null.
+        if ((groupCount == 0) && !countOrdinals.isEmpty()) {
+            rel = coalesceCounts(rel, countOrdinals);
+        }
+
+        // SUM is nullable, and the view's column types may differ from the
+        // query's, so cast back to the original types.
+        return RelOptUtil.createCastRel(rel, aggRel.getRowType(), false);
+    }
+
+    private static List<String> getDigests(RexNode [] exps)
+    {
+        List<String> digests = new ArrayList<String>();
+        for (RexNode exp : exps) {
+            digests.add(exp.toString());
+        }
+        return digests;
+    }
+
+    /**
+     * Finds a call in a view's aggregate which computes the same aggregate as
+     * a call in a query's aggregate.
+     *
+     * @return ordinal of the matching call's output in the view's aggregate,
+     * or -1 if there is none
+     */
+    private static int findAggCall(
+        AggregateCall aggCall,
+        List<String> queryExps,
+        AggregateRel viewAggRel,
+        List<String> viewExps)
+    {
+        String name = aggCall.getAggregation().getName();
+        List<Integer> args = aggCall.getArgList();
+        List<AggregateCall> viewAggCalls = viewAggRel.getAggCallList();
+        for (int i = 0; i < viewAggCalls.size(); i++) {
+            AggregateCall viewAggCall = viewAggCalls.get(i);
+            List<Integer> viewArgs = viewAggCall.getArgList();
+            if (viewAggCall.isDistinct()
+                || !viewAggCall.getAggregation().getName().equals(name)
+                || (viewArgs.size() != args.size()))
+            {
+                continue;
+            }
+            boolean match = true;
+            for (int j = 0; j < args.size(); j++) {
+                if (!viewExps.get(viewArgs.get(j)).equals(
+                        queryExps.get(args.get(j))))
+                {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return viewAggRel.getGroupCount() + i;
+            }
+        }
+        return -1;
+    }
+
+    private static RelNode coalesceCounts(
+        RelNode rel,
+        List<Integer> countOrdinals)
+    {
+        RexBuilder rexBuilder = rel.getCluster().getRexBuilder();
+        RelDataTypeField [] fields = rel.getRowType().getFields();
+        RexNode [] exps = new RexNode[fields.length];
+        String [] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            RelDataType type = fields[i].getType();
+            RexNode ref = rexBuilder.makeInputRef(type, i);
+            names[i] = fields[i].getName();
+            if (!countOrdinals.contains(i)) {
+                exps[i] = ref;
+                continue;
+            }
+            exps[i] =
+                rexBuilder.makeCall(
+                    type,
+                    SqlStdOperatorTable.caseOperator,
+                    rexBuilder.makeCall(
+                        SqlStdOperatorTable.isNullOperator,
+                        ref),
+                    rexBuilder.makeExactLiteral(BigDecimal.ZERO, type),
+                    ref);
+        }
+        return CalcRel.createProject(rel, exps, names);
+    }
+}
+
+// End LcsAggregateViewRule.java
@@ -284,7 +284,8 @@ public class LcsAppendStreamDef
                     implementor,
                     false,
                     insertDynParamId,
-                    replaceColumns);
+                    replaceColumns,
+                    estimatedNumInputRows);
             bitmapAppendDefs.add(bitmapAppend);
 
             // splicers updating unique indexes can produce violations.
@@ -40,6 +40,10 @@ import org.eigenbase.reltype.*;
  * LbmGeneratorStream. This row has two columns, number of rows to index and
  * start row id.
  *
+ * <p>The index may be built from several ranges of rids in parallel, each
+ * read by its own generator; the bitmap entries from all ranges are sorted
+ * together before being spliced into the index.
+ *
  * @author John Pham
  * @version $Id$
  */
@@ -53,15 +57,23 @@ class LcsIndexBuilderRel
      */
     private final FemLocalIndex index;
 
+    /**
+     * First rid of each range of rids read in parallel, or null if the table
+     * is read by a single generator.
+     */
+    private final long [] ridRangeStarts;
+
     //~ Constructors -----------------------------------------------------------
 
     protected LcsIndexBuilderRel(
         RelOptCluster cluster,
         RelNode child,
-        FemLocalIndex index)
+        FemLocalIndex index,
+        long [] ridRangeStarts)
     {
         super(cluster, child);
         this.index = index;
+        this.ridRangeStarts = ridRangeStarts;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -73,7 +85,8 @@ class LcsIndexBuilderRel
             new LcsIndexBuilderRel(
                 getCluster(),
                 getChild().clone(),
-                index);
+                index,
+                ridRangeStarts);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -100,15 +113,28 @@ class LcsIndexBuilderRel
             FarragoCatalogUtil.isIndexUnique(index)
             ? FarragoCatalogUtil.getDeletionIndex(repos, table)
             : null;
-        LcsCompositeStreamDef bitmapSet =
-            indexGuide.newBitmapAppend(
-                this,
-                index,
-                deletionIndex,
-                implementor,
-                true,
-                paramId,
-                false);
+        LcsCompositeStreamDef bitmapSet;
+        if (ridRangeStarts == null) {
+            bitmapSet =
+                indexGuide.newBitmapAppend(
+                    this,
+                    index,
+                    deletionIndex,
+                    implementor,
+                    true,
+                    paramId,
+                    false,
+                    null);
+        } else {
+            bitmapSet =
+                indexGuide.newPartitionedBitmapBuild(
+                    this,
+                    index,
+                    deletionIndex,
+                    implementor,
+                    paramId,
+                    ridRangeStarts);
+        }
 
         // TODO: review recovery behavior
         implementor.addDataFlowFromProducerToConsumer(
@@ -126,13 +152,19 @@ class LcsIndexBuilderRel
     // implement RelNode
     public void explain(RelOptPlanWriter pw)
     {
-        pw.explain(
-            this,
-            new String[] { "child", "index" },
-            new Object[] {
-                Arrays.asList(
-                    FarragoCatalogUtil.getQualifiedName(index).names)
-            });
+        List<String> indexName =
+            Arrays.asList(FarragoCatalogUtil.getQualifiedName(index).names);
+        if (ridRangeStarts == null) {
+            pw.explain(
+                this,
+                new String[] { "child", "index" },
+                new Object[] { indexName });
+        } else {
+            pw.explain(
+                this,
+                new String[] { "child", "index", "rid ranges" },
+                new Object[] { indexName, Arrays.toString(ridRangeStarts) });
+        }
     }
 
     // implement FennelRel
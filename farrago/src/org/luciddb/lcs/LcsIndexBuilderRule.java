@@ -18,6 +18,7 @@
 */
 package org.luciddb.lcs;
 
+import net.sf.farrago.fennel.rel.*;
 import net.sf.farrago.query.*;
 
 import org.eigenbase.rel.*;
@@ -80,11 +81,18 @@ class LcsIndexBuilderRule
             return;
         }
 
+        // Large tables are indexed from several rid ranges in parallel
+        long [] ridRangeStarts =
+            LcsParallelRowScanRule.computeRidRangeStarts(
+                (LcsTable) builderRel.getTable(),
+                FennelRelUtil.getPreparingStmt(builderRel).getSession());
+
         LcsIndexBuilderRel lcsRel =
             new LcsIndexBuilderRel(
                 builderRel.getCluster(),
                 fennelInput,
-                builderRel.getIndex());
+                builderRel.getIndex(),
+                ridRangeStarts);
 
         call.transformTo(lcsRel);
     }
@@ -875,7 +875,14 @@ public class LcsIndexGuide
     {
         FemLcsRowScanStreamDef scanStream;
         if (rel instanceof LcsRowAggRel) {
-            scanStream = repos.newFemLcsAggStreamDef();
+            LcsRowAggRel aggRel = (LcsRowAggRel) rel;
+            FemLcsAggStreamDef aggStream = repos.newFemLcsAggStreamDef();
+            FennelRelUtil.defineAggStream(
+                aggRel.getAggCallList(),
+                aggRel.getGroupCount(),
+                repos,
+                aggStream);
+            scanStream = aggStream;
         } else {
             scanStream = repos.newFemLcsRowScanStreamDef();
         }
@@ -901,6 +908,10 @@ public class LcsIndexGuide
 
     /**
      * Creates a set of streams for updating a bitmap index
+     *
+     * <p>The estimated number of rows is passed to the sorter, so that when
+     * several indexes are updated at once, the resource governor can divide
+     * memory among their sorts according to their expected sizes.
      */
     LcsCompositeStreamDef newBitmapAppend(
         FennelRel rel,
@@ -909,7 +920,8 @@ public class LcsIndexGuide
         FennelRelImplementor implementor,
         boolean createIndex,
         FennelRelParamId insertDynParamId,
-        boolean createNewIndex)
+        boolean createNewIndex,
+        Double estimatedNumRows)
     {
         // create the streams
         FemExecutionStreamDef generator =
@@ -921,7 +933,8 @@ public class LcsIndexGuide
 
         // do an early close in the sorter, in case there was an upstream
         // insert into the deletion index, which the splicer may need to read
-        FemExecutionStreamDef sorter = newSorter(index, null, false, true);
+        FemExecutionStreamDef sorter =
+            newSorter(index, estimatedNumRows, false, true);
         FemExecutionStreamDef splicer =
             newSplicer(
                 rel,
@@ -938,6 +951,68 @@ public class LcsIndexGuide
         return new LcsCompositeStreamDef(generator, splicer);
     }
 
+    /**
+     * Creates a set of streams for building a new bitmap index from several
+     * ranges of rids in parallel. Each range is read by its own generator, and
+     * the bitmap entries from all generators are merged and sorted together
+     * before being spliced into the index.
+     *
+     * @param rel the relational expression building the index
+     * @param index the index being built
+     * @param deletionIndex deletion index to check for unique constraint
+     * violations; null if the index is not unique
+     * @param implementor FennelRel implementor
+     * @param insertDynParamId dynamic parameter shared by the generators and
+     * the splicer
+     * @param ridRangeStarts first rid of each range; each range ends where the
+     * next one starts, and the last range extends to the end of the table
+     *
+     * @return the streams; the consumer is a splitter that passes the
+     * generator input to each generator, and the producer is the splicer
+     */
+    LcsCompositeStreamDef newPartitionedBitmapBuild(
+        FennelRel rel,
+        FemLocalIndex index,
+        FemLocalIndex deletionIndex,
+        FennelRelImplementor implementor,
+        FennelRelParamId insertDynParamId,
+        long [] ridRangeStarts)
+    {
+        assert (ridRangeStarts.length > 1);
+        int paramId =
+            implementor.translateParamId(insertDynParamId).intValue();
+
+        FemSplitterStreamDef splitter =
+            newSplitter(getUnclusteredInputType());
+        FemMergeStreamDef merge = repos.newFemMergeStreamDef();
+        merge.setSequential(false);
+        merge.setPrePullInputs(false);
+        merge.setOutputDesc(createUnclusteredBTreeTupleDesc(index));
+
+        for (int i = 0; i < ridRangeStarts.length; i++) {
+            FemLbmGeneratorStreamDef generator =
+                newGenerator(rel, index, true, paramId);
+            generator.setRidRangeStart(ridRangeStarts[i]);
+            if (i < (ridRangeStarts.length - 1)) {
+                generator.setRidRangeEnd(ridRangeStarts[i + 1]);
+            }
+            implementor.addDataFlowFromProducerToConsumer(splitter, generator);
+            implementor.addDataFlowFromProducerToConsumer(generator, merge);
+        }
+
+        // the sorter merges the runs from all of the generators into a single
+        // sorted stream, as the splicer requires
+        FemExecutionStreamDef sorter =
+            newSorter(index, null, false, true);
+        FemExecutionStreamDef splicer =
+            newSplicer(rel, index, deletionIndex, paramId, 0, false);
+
+        implementor.addDataFlowFromProducerToConsumer(merge, sorter);
+        implementor.addDataFlowFromProducerToConsumer(sorter, splicer);
+
+        return new LcsCompositeStreamDef(splitter, splicer);
+    }
+
     private FemLbmGeneratorStreamDef newGenerator(
         FennelRel rel,
         FemLocalIndex index,
@@ -58,6 +58,7 @@ public class LcsIndexOptimizer
     // Some constants to calculate index access cost.
     private static Double IOCostPerBlock = 1.0;
     private static Double SetOpCostPerBlock = 4.4;
+    private static Double IntersectCostPerBlock = 1.1;
     private static Double ResidualFilterEvalCostPerMillionRow = 82.0;
     private static Double SortCostConstant = 0.000032;
     private static Double ColumnCorrelationFactor = 0.5;
@@ -65,6 +66,10 @@ public class LcsIndexOptimizer
     private static int SmallTableRowCount = 10;
     private static Double IndexSearchSeletivityThreshold = 0.001;
 
+    // Number of intervals in a residual filter from which the row scan
+    // binary searches the intervals, rather than testing each one.
+    private static int ResidualFilterBinarySearchMin = 8;
+
     //~ Instance fields --------------------------------------------------------
 
     // Information on the underlying row scan
@@ -134,7 +139,8 @@ public class LcsIndexOptimizer
         useCost = true;
         tableStats = RelMetadataQuery.getStatistics(rowScanRel);
 
-        tableBlockCount = getLcsTableBlockCount(rowScanRel.lcsTable);
+        tableBlockCount =
+            getLcsTableBlockCount(rowScanRel.lcsTable, labelTimestamp);
 
         tableRowCount =
             RelMetadataQuery.getRowCount(
@@ -1116,7 +1122,7 @@ public class LcsIndexOptimizer
 
         // add the final cost of intersecting the final bitmaps
         Double intersectCost =
-            getIndexBitmapBitOpCost(index2MatchedPosMap.size());
+            getIndexBitmapIntersectCost(index2MatchedPosMap.size());
 
         if (intersectCost == null) {
             return null;
@@ -1206,6 +1212,26 @@ public class LcsIndexOptimizer
         return cost;
     }
 
+    /**
+     * Calculates the cost of intersecting the bitmaps from the indexes used.
+     * Overlapping segments are AND'ed a word at a time, so this is cheaper
+     * per block than the merge costed by {@link #getIndexBitmapBitOpCost}.
+     *
+     * @param numIndexesUsed number of indexes used in the index access path.
+     *
+     * @return cost of AND'ing the bitmaps from different indexes.
+     */
+    private Double getIndexBitmapIntersectCost(
+        int numIndexesUsed)
+    {
+        assert (useCost);
+
+        Double cost =
+            IntersectCostPerBlock * numIndexesUsed * estimatedBitmapBlockCount;
+
+        return cost;
+    }
+
     /**
      * Calculate the cost of sorting the bitmap entries in an index.
      *
@@ -1334,11 +1360,15 @@ public class LcsIndexOptimizer
      * Calculate the total number of disk blocks used by a lcs table.
      *
      * @param lcsTable
+     * @param labelTimestamp creation timestamp of the session's label setting,
+     * or null if there is no label set
      *
      * @return disk blocks used o null if the clustered indexes are not
      * analyzed.
      */
-    private Double getLcsTableBlockCount(LcsTable lcsTable)
+    static Double getLcsTableBlockCount(
+        LcsTable lcsTable,
+        Timestamp labelTimestamp)
     {
         Double lcsTableBlockCount = 0.0;
         Long pageCount;
@@ -1450,16 +1480,43 @@ public class LcsIndexOptimizer
                     + ((nonResidualColCount - 1) * residualFilterSelectivity))
                 / dbBlockSize);
 
+        Double filterEvalWeight = 0.0;
+        for (SargColumnFilter filter : residualFilterSet) {
+            filterEvalWeight += getResidualFilterEvalWeight(filter);
+        }
+
         Double filterEvalCost =
             (ResidualFilterEvalCostPerMillionRow / 1000000.0)
             * rowCountWithIndexSearch
-            * residualColCount * (1 + residualFilterSelectivity) / 2;
+            * filterEvalWeight * (1 + residualFilterSelectivity) / 2;
 
         cost = scanCost + filterEvalCost;
 
         return cost;
     }
 
+    /**
+     * Calculate the relative cost of evaluating a residual filter on one row.
+     * A filter with few intervals costs the same as a single comparison;
+     * beyond that the row scan binary searches the intervals, so a long IN
+     * list costs in proportion to the log of its length.
+     *
+     * @param filter residual column filter
+     *
+     * @return evaluation cost relative to a single-interval filter
+     */
+    private static Double getResidualFilterEvalWeight(SargColumnFilter filter)
+    {
+        int intervalCount = filter.sargSeq.getList().size();
+
+        if (intervalCount <= ResidualFilterBinarySearchMin) {
+            return 1.0;
+        }
+
+        return Math.log(intervalCount)
+            / Math.log(ResidualFilterBinarySearchMin);
+    }
+
     /**
      * Calculate the cost of scanning a table with index search applied.
      *
@@ -0,0 +1,192 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import java.sql.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.defimpl.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fennel.rel.*;
+import net.sf.farrago.query.*;
+import net.sf.farrago.session.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+
+
+/**
+ * LcsParallelRowScanRule splits a full scan of a large column store table into
+ * several {@link LcsPartitionedRowScanRel}s over disjoint rid ranges, combined
+ * by a UNION ALL which is later implemented as a parallel merge. The number of
+ * partitions is bounded by the session's degree of parallelism and by the size
+ * of the table, so that each partition reads a reasonable number of blocks.
+ *
+ * <p>Partition boundaries are derived from the row counts recorded in the
+ * catalog. The last partition is left open-ended, so rows inserted since the
+ * counts were last updated are still read.
+ *
+ * @version $Id$
+ */
+public class LcsParallelRowScanRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Minimum number of blocks read by each partition. Smaller tables are not
+     * worth the overhead of starting additional scans.
+     */
+    public static final int MIN_BLOCKS_PER_PARTITION = 1000;
+
+    public final static LcsParallelRowScanRule instance =
+        new LcsParallelRowScanRule(
+            new RelOptRuleOperand(
+                LcsRowScanRel.class,
+                ANY));
+
+    //~ Constructors -----------------------------------------------------------
+
+    public LcsParallelRowScanRule(
+        RelOptRuleOperand operand)
+    {
+        super(operand);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public CallingConvention getOutConvention()
+    {
+        return FennelRel.FENNEL_EXEC_CONVENTION;
+    }
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        LcsRowScanRel origRowScan = (LcsRowScanRel) call.rels[0];
+
+        // Only plain full scans are split; scans driven by index searches,
+        // sampling scans, and scans projecting the rid column (as DML does)
+        // are left alone.
+        if (!origRowScan.isFullScan()
+            || (origRowScan.getCollations().length > 0))
+        {
+            return;
+        }
+
+        FarragoSessionPreparingStmt stmt =
+            FennelRelUtil.getPreparingStmt(origRowScan);
+        FarragoSession session = stmt.getSession();
+        if (session.isReentrantAlterTableAddColumn()) {
+            return;
+        }
+
+        LcsTable lcsTable = origRowScan.getLcsTable();
+        long [] ridRangeStarts = computeRidRangeStarts(lcsTable, session);
+        if (ridRangeStarts == null) {
+            return;
+        }
+
+        int partitionCount = ridRangeStarts.length;
+        RelNode [] partitions = new RelNode[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            long ridRangeEnd =
+                (i == (partitionCount - 1)) ? 0 : ridRangeStarts[i + 1];
+            partitions[i] =
+                new LcsPartitionedRowScanRel(
+                    origRowScan.getCluster(),
+                    origRowScan.getInputs(),
+                    lcsTable,
+                    origRowScan.getClusteredIndexes(),
+                    origRowScan.getConnection(),
+                    origRowScan.getProjectedColumns(),
+                    origRowScan.getResidualColumns(),
+                    origRowScan.getInputSelectivity(),
+                    ridRangeStarts[i],
+                    ridRangeEnd,
+                    partitionCount);
+        }
+
+        call.transformTo(
+            new UnionRel(
+                origRowScan.getCluster(),
+                partitions,
+                true));
+    }
+
+    /**
+     * Divides the rids of a table into ranges that can be read in parallel,
+     * based on the session's degree of parallelism and the size of the table.
+     *
+     * @param lcsTable table to be read
+     * @param session session reading the table
+     *
+     * @return first rid of each range, where each range ends at the start of
+     * the next one and the last range extends to the end of the table; null if
+     * the table should not be split
+     */
+    static long [] computeRidRangeStarts(
+        LcsTable lcsTable,
+        FarragoSession session)
+    {
+        Integer dop =
+            session.getSessionVariables().getInteger(
+                FarragoDefaultSessionPersonality.DEGREE_OF_PARALLELISM);
+        if ((dop == null) || (dop < 2)) {
+            return null;
+        }
+
+        Timestamp labelTimestamp = session.getSessionLabelCreationTimestamp();
+        Double blockCount =
+            LcsIndexOptimizer.getLcsTableBlockCount(lcsTable, labelTimestamp);
+        if (blockCount == null) {
+            return null;
+        }
+        int partitionCount =
+            (int) Math.min(
+                dop,
+                blockCount / MIN_BLOCKS_PER_PARTITION);
+        if (partitionCount < 2) {
+            return null;
+        }
+
+        // Deleted rows still occupy rids, so they're included in the count.
+        Long [] rowCounts = new Long[2];
+        FarragoCatalogUtil.getRowCounts(
+            (FemAbstractColumnSet) lcsTable.getCwmColumnSet(),
+            labelTimestamp,
+            rowCounts);
+        if ((rowCounts[0] == null) || (rowCounts[1] == null)) {
+            return null;
+        }
+        long ridCount = rowCounts[0] + rowCounts[1];
+        if (ridCount < partitionCount) {
+            return null;
+        }
+
+        long [] ridRangeStarts = new long[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            ridRangeStarts[i] = (ridCount * i) / partitionCount;
+        }
+        return ridRangeStarts;
+    }
+}
+
+// End LcsParallelRowScanRule.java
@@ -0,0 +1,167 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import java.util.*;
+
+import net.sf.farrago.fem.fennel.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.query.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+
+
+/**
+ * LcsPartitionedRowScanRel is a full scan of a column store table restricted
+ * to a range of rids.  {@link LcsParallelRowScanRule} splits a large full
+ * scan into several of these, covering disjoint rid ranges, so that they can
+ * be executed in parallel.  {@link LcsRidRangeScanRule} creates a single one
+ * from a filter on LCS_RID.
+ *
+ * @version $Id$
+ */
+public class LcsPartitionedRowScanRel
+    extends LcsRowScanRelBase
+{
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * First rid read by this scan.
+     */
+    final long ridRangeStart;
+
+    /**
+     * Rid past the last one read by this scan; 0 if the scan reads to the end
+     * of the table.
+     */
+    final long ridRangeEnd;
+
+    /**
+     * Number of partitions the original scan was split into; 1 if the scan
+     * was restricted by a filter rather than split.
+     */
+    final int partitionCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LcsPartitionedRowScanRel object.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param children children inputs into the row scan
+     * @param lcsTable table being scanned
+     * @param clusteredIndexes clusters to use for table access
+     * @param connection connection
+     * @param projectedColumns array of 0-based table-relative column ordinals,
+     * or null to project all columns
+     * @param resCols residual filter columns
+     * @param inputSelectivity estimate of input selectivity
+     * @param ridRangeStart first rid read by the scan
+     * @param ridRangeEnd rid past the last one read by the scan, or 0 to read
+     * to the end of the table
+     * @param partitionCount number of partitions the scan is one of
+     */
+    public LcsPartitionedRowScanRel(
+        RelOptCluster cluster,
+        RelNode [] children,
+        LcsTable lcsTable,
+        List<FemLocalIndex> clusteredIndexes,
+        RelOptConnection connection,
+        Integer [] projectedColumns,
+        Integer [] resCols,
+        double inputSelectivity,
+        long ridRangeStart,
+        long ridRangeEnd,
+        int partitionCount)
+    {
+        super(
+            cluster,
+            children,
+            lcsTable,
+            clusteredIndexes,
+            connection,
+            projectedColumns,
+            true, // full row scan
+            resCols,
+            inputSelectivity);
+
+        assert ((ridRangeEnd == 0) || (ridRangeStart < ridRangeEnd));
+        assert (partitionCount > 0);
+        this.ridRangeStart = ridRangeStart;
+        this.ridRangeEnd = ridRangeEnd;
+        this.partitionCount = partitionCount;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelNode
+    public LcsPartitionedRowScanRel clone()
+    {
+        LcsPartitionedRowScanRel clone =
+            new LcsPartitionedRowScanRel(
+                getCluster(),
+                RelOptUtil.clone(inputs),
+                lcsTable,
+                clusteredIndexes,
+                connection,
+                projectedColumns,
+                residualColumns,
+                inputSelectivity,
+                ridRangeStart,
+                ridRangeEnd,
+                partitionCount);
+        clone.inheritTraitsFrom(this);
+        return clone;
+    }
+
+    // override LcsRowScanRelBase
+    public double getRows()
+    {
+        double rows = super.getRows() / partitionCount;
+        if (ridRangeEnd != 0) {
+            rows = Math.min(rows, ridRangeEnd - ridRangeStart);
+        }
+        return rows;
+    }
+
+    // override LcsRowScanRelBase
+    protected FemLcsRowScanStreamDef createScanStream(
+        FennelRelImplementor implementor)
+    {
+        FemLcsRowScanStreamDef scanStream = super.createScanStream(implementor);
+        scanStream.setRidRangeStart(ridRangeStart);
+        scanStream.setRidRangeEnd(ridRangeEnd);
+        return scanStream;
+    }
+
+    // override LcsRowScanRelBase
+    public void explain(RelOptPlanWriter pw)
+    {
+        super.explain(
+            pw,
+            new String[] { "rid range" },
+            new Object[] {
+                "[" + ridRangeStart + ", "
+                + ((ridRangeEnd == 0) ? "+infinity" : ridRangeEnd) + ")"
+            });
+    }
+}
+
+// End LcsPartitionedRowScanRel.java
@@ -0,0 +1,254 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import java.math.*;
+
+import java.util.*;
+
+import net.sf.farrago.fennel.rel.*;
+import net.sf.farrago.query.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.fun.*;
+
+import org.luciddb.session.*;
+
+
+/**
+ * LcsRidRangeScanRule converts comparisons of LCS_RID with literals, in a
+ * filter on top of a full table scan, into a {@link LcsPartitionedRowScanRel}
+ * which only reads that range of rids. For example,
+ *
+ * <pre>select * from t where lcs_rid(c) >= 1000 and lcs_rid(c) < 2000</pre>
+ *
+ * reads 1000 rows of each cluster of t rather than all of them, which is what
+ * a parallel schema export relies on when it splits a table into rid ranges.
+ * Any other conditions in the filter remain in a filter above the scan.
+ *
+ * @version $Id$
+ */
+public class LcsRidRangeScanRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public final static LcsRidRangeScanRule instance =
+        new LcsRidRangeScanRule(
+            new RelOptRuleOperand(
+                FilterRel.class,
+                new RelOptRuleOperand(LcsRowScanRel.class, ANY)));
+
+    //~ Constructors -----------------------------------------------------------
+
+    public LcsRidRangeScanRule(RelOptRuleOperand operand)
+    {
+        super(operand);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        FilterRel filter = (FilterRel) call.rels[0];
+        LcsRowScanRel origRowScan = (LcsRowScanRel) call.rels[1];
+
+        // Only full scans without inputs can be restricted; the rid column
+        // has to be projected for the filter to reference it.
+        Integer [] projectedColumns = origRowScan.getProjectedColumns();
+        if (!origRowScan.isFullScan()
+            || (origRowScan.getInputs().length > 0)
+            || (projectedColumns == null))
+        {
+            return;
+        }
+        if (FennelRelUtil.getPreparingStmt(origRowScan).getSession()
+            .isReentrantAlterTableAddColumn())
+        {
+            return;
+        }
+
+        long ridRangeStart = 0;
+        long ridRangeEnd = Long.MAX_VALUE;
+        boolean foundRange = false;
+        List<RexNode> conditions = new ArrayList<RexNode>();
+        RelOptUtil.decomposeConjunction(filter.getCondition(), conditions);
+        List<RexNode> remainingConditions = new ArrayList<RexNode>();
+        for (RexNode condition : conditions) {
+            long [] bounds = getRidBounds(condition, projectedColumns);
+            if (bounds == null) {
+                remainingConditions.add(condition);
+                continue;
+            }
+            ridRangeStart = Math.max(ridRangeStart, bounds[0]);
+            ridRangeEnd = Math.min(ridRangeEnd, bounds[1]);
+            foundRange = true;
+        }
+
+        // An empty range is left to the filter; it's not worth special
+        // handling, and the scan stream requires a non-empty range.
+        if (!foundRange || (ridRangeStart >= ridRangeEnd)) {
+            return;
+        }
+
+        RelNode newRel =
+            new LcsPartitionedRowScanRel(
+                origRowScan.getCluster(),
+                origRowScan.getInputs(),
+                origRowScan.getLcsTable(),
+                origRowScan.getClusteredIndexes(),
+                origRowScan.getConnection(),
+                projectedColumns,
+                origRowScan.getResidualColumns(),
+                origRowScan.getInputSelectivity(),
+                ridRangeStart,
+                (ridRangeEnd == Long.MAX_VALUE) ? 0 : ridRangeEnd,
+                1);
+        if (!remainingConditions.isEmpty()) {
+            newRel =
+                CalcRel.createFilter(
+                    newRel,
+                    RexUtil.andRexNodeList(
+                        filter.getCluster().getRexBuilder(),
+                        remainingConditions));
+        }
+        call.transformTo(newRel);
+    }
+
+    /**
+     * Determines the range of rids satisfying a condition, if the condition
+     * compares the rid column of a scan with a literal.
+     *
+     * @param condition condition to examine
+     * @param projectedColumns columns projected by the scan
+     *
+     * @return the first rid in the range and the rid past the last one in the
+     * range, with Long.MAX_VALUE meaning there is no upper bound; or null if
+     * the condition is not a comparison of the rid column with a literal
+     */
+    private static long [] getRidBounds(
+        RexNode condition,
+        Integer [] projectedColumns)
+    {
+        if (!(condition instanceof RexCall)) {
+            return null;
+        }
+        RexCall call = (RexCall) condition;
+        if (call.getOperands().length != 2) {
+            return null;
+        }
+        RexKind kind = call.getKind();
+        RexNode left = call.getOperands()[0];
+        RexNode right = call.getOperands()[1];
+        Long value;
+        if (isRidColumn(left, projectedColumns)) {
+            value = getLongLiteral(right);
+        } else if (isRidColumn(right, projectedColumns)) {
+            // literal on the left; flip the comparison around
+            value = getLongLiteral(left);
+            switch (kind) {
+            case GreaterThan:
+                kind = RexKind.LessThan;
+                break;
+            case GreaterThanOrEqual:
+                kind = RexKind.LessThanOrEqual;
+                break;
+            case LessThan:
+                kind = RexKind.GreaterThan;
+                break;
+            case LessThanOrEqual:
+                kind = RexKind.GreaterThanOrEqual;
+                break;
+            default:
+                return null;
+            }
+        } else {
+            return null;
+        }
+        if (value == null) {
+            return null;
+        }
+
+        // rids are never negative, and a bound of Long.MAX_VALUE is beyond
+        // any table
+        long v = value;
+        switch (kind) {
+        case GreaterThan:
+            return (v == Long.MAX_VALUE) ? null
+                : new long[] { Math.max(v + 1, 0), Long.MAX_VALUE };
+        case GreaterThanOrEqual:
+            return new long[] { Math.max(v, 0), Long.MAX_VALUE };
+        case LessThan:
+            return new long[] { 0, Math.max(v, 0) };
+        case LessThanOrEqual:
+            return (v == Long.MAX_VALUE) ? null
+                : new long[] { 0, Math.max(v + 1, 0) };
+        default:
+            return null;
+        }
+    }
+
+    private static boolean isRidColumn(
+        RexNode expr,
+        Integer [] projectedColumns)
+    {
+        if (!(expr instanceof RexInputRef)) {
+            return false;
+        }
+        int index = ((RexInputRef) expr).getIndex();
+        return LucidDbSpecialOperators.isLcsRidColumnId(
+            projectedColumns[index]);
+    }
+
+    private static Long getLongLiteral(RexNode expr)
+    {
+        if ((expr instanceof RexCall)
+            && (((RexCall) expr).getOperator()
+                == SqlStdOperatorTable.castFunc))
+        {
+            expr = ((RexCall) expr).getOperands()[0];
+        }
+        if (!(expr instanceof RexLiteral)) {
+            return null;
+        }
+        Comparable value = ((RexLiteral) expr).getValue();
+        if (!(value instanceof BigDecimal)) {
+            return null;
+        }
+        BigDecimal bd = (BigDecimal) value;
+        if ((bd.scale() > 0)
+            && (bd.compareTo(bd.setScale(0, RoundingMode.FLOOR)) != 0))
+        {
+            // keep it simple: fractional bounds stay in the filter
+            return null;
+        }
+        if (bd.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (bd.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+            return Long.MIN_VALUE;
+        }
+        return bd.longValue();
+    }
+}
+
+// End LcsRidRangeScanRule.java
@@ -28,8 +28,11 @@ import org.eigenbase.reltype.*;
 
 /**
  * LcsRowAggRel is the relational expression corresponding to on-the-fly
- * aggregation during a scan of a column store table.  Currently
- * only a single COUNT(*) with no GROUP BY is supported.
+ * aggregation during a scan of a column store table.  Either a single
+ * COUNT(*) with no GROUP BY, which only needs the row count, or SUM, COUNT,
+ * MIN and MAX grouped by the leading projected columns (possibly no columns)
+ * are supported.  In the latter case the groups are kept in memory, so
+ * {@link LcsRowAggRule} only uses it when there are few groups.
  *
  * @author John Sichi
  * @version $Id$
@@ -37,6 +40,22 @@ import org.eigenbase.reltype.*;
 public class LcsRowAggRel
     extends LcsRowScanRelBase
 {
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Number of leading projected columns to group by.
+     */
+    private final int groupCount;
+
+    /**
+     * Aggregates computed; arguments are ordinals of projected columns.  An
+     * empty list with no GROUP BY denotes a lone COUNT(*), for which only the
+     * RID column is projected.
+     */
+    private final List<AggregateCall> aggCalls;
+
+    //~ Constructors -----------------------------------------------------------
+
     /**
      * Creates a new LcsRowAggRel object.
      *
@@ -50,6 +69,9 @@ public class LcsRowAggRel
      * @param isFullScan true if doing a full scan of the table
      * @param resCols residual filter columns
      * @param inputSelectivity estimate of input selectivity
+     * @param groupCount number of leading projected columns to group by
+     * @param aggCalls aggregates to compute, or an empty list for a lone
+     * COUNT(*)
      */
     public LcsRowAggRel(
         RelOptCluster cluster,
@@ -60,7 +82,9 @@ public class LcsRowAggRel
         Integer [] projectedColumns,
         boolean isFullScan,
         Integer [] resCols,
-        double inputSelectivity)
+        double inputSelectivity,
+        int groupCount,
+        List<AggregateCall> aggCalls)
     {
         super(
             cluster,
@@ -72,8 +96,12 @@ public class LcsRowAggRel
             isFullScan,
             resCols,
             inputSelectivity);
+        this.groupCount = groupCount;
+        this.aggCalls = aggCalls;
     }
 
+    //~ Methods ----------------------------------------------------------------
+
     // implement RelNode
     public LcsRowAggRel clone()
     {
@@ -87,7 +115,9 @@ public class LcsRowAggRel
                 projectedColumns,
                 isFullScan,
                 residualColumns,
-                inputSelectivity);
+                inputSelectivity,
+                groupCount,
+                aggCalls);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -95,8 +125,78 @@ public class LcsRowAggRel
     // override LcsRowScanRelBase
     protected RelDataType deriveRowType()
     {
-        // returned count is always BIGINT NOT NULL
-        return RelOptUtil.createDmlRowType(getCluster().getTypeFactory());
+        if (isCountStar()) {
+            // returned count is always BIGINT NOT NULL
+            return RelOptUtil.createDmlRowType(getCluster().getTypeFactory());
+        }
+        final RelDataTypeField [] scanFields =
+            super.deriveRowType().getFields();
+        return getCluster().getTypeFactory().createStructType(
+            new RelDataTypeFactory.FieldInfo() {
+                public int getFieldCount()
+                {
+                    return groupCount + aggCalls.size();
+                }
+
+                public String getFieldName(int index)
+                {
+                    if (index < groupCount) {
+                        return scanFields[index].getName();
+                    }
+                    AggregateCall aggCall = aggCalls.get(index - groupCount);
+                    if (aggCall.getName() != null) {
+                        return aggCall.getName();
+                    } else {
+                        return "$f" + index;
+                    }
+                }
+
+                public RelDataType getFieldType(int index)
+                {
+                    if (index < groupCount) {
+                        return scanFields[index].getType();
+                    }
+                    return aggCalls.get(index - groupCount).getType();
+                }
+            });
+    }
+
+    // override LcsRowScanRelBase
+    public void explain(RelOptPlanWriter pw)
+    {
+        if (isCountStar()) {
+            super.explain(pw);
+            return;
+        }
+        explain(
+            pw,
+            new String[] { "groupCount", "aggs" },
+            new Object[] { groupCount, aggCalls });
+    }
+
+    /**
+     * @return true if this is a lone COUNT(*), computed from the row count
+     * alone
+     */
+    public boolean isCountStar()
+    {
+        return (groupCount == 0) && aggCalls.isEmpty();
+    }
+
+    /**
+     * @return number of leading projected columns to group by
+     */
+    public int getGroupCount()
+    {
+        return groupCount;
+    }
+
+    /**
+     * @return aggregates computed
+     */
+    public List<AggregateCall> getAggCallList()
+    {
+        return aggCalls;
     }
 }
 
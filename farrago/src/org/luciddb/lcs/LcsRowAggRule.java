@@ -21,16 +21,28 @@ package org.luciddb.lcs;
 import java.util.*;
 
 import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fennel.rel.*;
 import net.sf.farrago.query.*;
 
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
 
 import org.luciddb.session.*;
 
 /**
- * A rule for directly aggregating during row scans.  Currently
- * only COUNT(*) in isolation is supported.
+ * A rule for directly aggregating during row scans.  COUNT(*) in isolation is
+ * answered from the row count; otherwise SUM, COUNT, MIN and MAX, optionally
+ * grouped by leading columns of the scan, are computed as rows are read,
+ * provided the optimizer expects few enough groups to keep them in memory.
+ *
+ * <p>If there turn out to be more groups than fit in the memory granted to
+ * the scan, it produces partial groups, so a grouped scan is aggregated again
+ * to combine any duplicate keys.
  *
  * @author John Sichi
  * @version $Id$
@@ -38,6 +50,16 @@ import org.luciddb.session.*;
 public class LcsRowAggRule
     extends RelOptRule
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Maximum estimated number of groups for which aggregation is done during
+     * the scan.  Groups are kept in memory and are never spilled, so larger
+     * aggregations are left to LhxAggRel.  This matches the number of groups
+     * LcsGroupAggExecStream requests memory for.
+     */
+    public static final int MAX_GROUPS = 10000;
+
     public final static LcsRowAggRule instance =
         new LcsRowAggRule(
             new RelOptRuleOperand(
@@ -61,22 +83,109 @@ public class LcsRowAggRule
     public void onMatch(RelOptRuleCall call)
     {
         AggregateRel aggRel = (AggregateRel) call.rels[0];
+        LcsRowScanRel rowScanRel = (LcsRowScanRel) call.rels[1];
+        if (isCountStar(aggRel)) {
+            transformCountStar(call, rowScanRel);
+        } else if (isScanAggregable(aggRel, rowScanRel)) {
+            LcsRowAggRel rowAggRel =
+                new LcsRowAggRel(
+                    rowScanRel.getCluster(),
+                    rowScanRel.getInputs(),
+                    rowScanRel.getLcsTable(),
+                    rowScanRel.getClusteredIndexes(),
+                    rowScanRel.getConnection(),
+                    rowScanRel.getProjectedColumns(),
+                    rowScanRel.isFullScan(),
+                    rowScanRel.getResidualColumns(),
+                    rowScanRel.getInputSelectivity(),
+                    aggRel.getGroupCount(),
+                    aggRel.getAggCallList());
+            if (aggRel.getGroupCount() == 0) {
+                call.transformTo(rowAggRel);
+            } else {
+                call.transformTo(createFinalAgg(aggRel, rowAggRel));
+            }
+        }
+    }
+
+    /**
+     * Creates the aggregate which combines groups produced more than once by
+     * a grouped scan.  SUM, MIN and MAX are combined by themselves, and COUNT
+     * by SUM.
+     *
+     * @param aggRel original aggregate
+     * @param rowAggRel scan computing partial aggregates
+     *
+     * @return final aggregate, with the row type of the original aggregate
+     */
+    private RelNode createFinalAgg(
+        AggregateRel aggRel,
+        LcsRowAggRel rowAggRel)
+    {
+        RelDataTypeFactory typeFactory =
+            aggRel.getCluster().getTypeFactory();
+        int groupCount = aggRel.getGroupCount();
+        List<AggregateCall> finalCalls = new ArrayList<AggregateCall>();
+        List<AggregateCall> aggCalls = aggRel.getAggCallList();
+        for (int i = 0; i < aggCalls.size(); i++) {
+            AggregateCall aggCall = aggCalls.get(i);
+            Aggregation aggFun;
+            RelDataType aggType;
+            if (aggCall.getAggregation().getName().equals("COUNT")) {
+                // SUM, unlike COUNT, is nullable; the cast below restores
+                // the original type.
+                aggType =
+                    typeFactory.createTypeWithNullability(
+                        aggCall.getType(),
+                        true);
+                aggFun = new SqlSumAggFunction(aggType);
+            } else {
+                aggFun = aggCall.getAggregation();
+                aggType = aggCall.getType();
+            }
+            finalCalls.add(
+                new AggregateCall(
+                    aggFun,
+                    false,
+                    Collections.singletonList(groupCount + i),
+                    aggType,
+                    aggCall.getName()));
+        }
+        AggregateRel finalAggRel =
+            new AggregateRel(
+                aggRel.getCluster(),
+                rowAggRel,
+                groupCount,
+                finalCalls);
+        return RelOptUtil.createCastRel(
+            finalAggRel,
+            aggRel.getRowType(),
+            false);
+    }
+
+    private boolean isCountStar(AggregateRel aggRel)
+    {
         if (aggRel.getGroupCount() > 0) {
-            // GROUP BY is not supported yet
-            return;
+            return false;
         }
         if (aggRel.getAggCallList().size() != 1) {
-            return;
+            return false;
         }
         // If any agg call references any column of the input,
         // then we have something other than a single COUNT(*), in which case
         // the LDB-225 special case does not apply.
         for (AggregateCall aggCall : aggRel.getAggCallList()) {
             if (aggCall.getArgList().size() > 0) {
-                return;
+                return false;
             }
         }
-        LcsRowScanRel rowScanRel = (LcsRowScanRel) call.rels[1];
+        return true;
+    }
+
+    private void transformCountStar(
+        RelOptRuleCall call,
+        LcsRowScanRel rowScanRel)
+    {
         Integer [] proj = new Integer[1];
         // Whatever we were counting does not matter, since it wasn't
         // referenced by the COUNT(*) agg; replace it with RID since
@@ -95,9 +204,83 @@ public class LcsRowAggRule
                 proj,
                 rowScanRel.isFullScan(),
                 rowScanRel.getResidualColumns(),
-                rowScanRel.getInputSelectivity());
+                rowScanRel.getInputSelectivity(),
+                0,
+                Collections.<AggregateCall>emptyList());
         call.transformTo(rowAggRel);
     }
+
+    /**
+     * Determines whether an aggregate can be computed by the scan beneath
+     * it, rather than by a separate aggregation.
+     *
+     * @param aggRel aggregate
+     * @param rowScanRel row scan producing the aggregate's input
+     *
+     * @return true if the aggregate can be computed during the scan
+     */
+    private boolean isScanAggregable(
+        AggregateRel aggRel,
+        LcsRowScanRel rowScanRel)
+    {
+        // The scan evaluates special columns such as LCS_RID itself, rather
+        // than reading them from the clusters, so leave those alone.
+        Integer [] proj = rowScanRel.getProjectedColumns();
+        if (proj != null) {
+            for (Integer colId : proj) {
+                if (LucidDbOperatorTable.ldbInstance().isSpecialColumnId(
+                        colId))
+                {
+                    return false;
+                }
+            }
+        }
+
+        RelDataTypeFactory typeFactory =
+            rowScanRel.getCluster().getTypeFactory();
+        RelDataTypeField [] fields = rowScanRel.getRowType().getFields();
+        for (AggregateCall aggCall : aggRel.getAggCallList()) {
+            if (aggCall.isDistinct()) {
+                return false;
+            }
+            try {
+                FennelRelUtil.lookupAggFunction(aggCall);
+            } catch (IllegalArgumentException ex) {
+                return false;
+            }
+            String aggName = aggCall.getAggregation().getName();
+            if (aggName.equals("COUNT")) {
+                continue;
+            }
+            if (!aggName.equals("SUM")
+                && !aggName.equals("MIN")
+                && !aggName.equals("MAX"))
+            {
+                return false;
+            }
+
+            // The scan accumulates in the type of the input, so the result
+            // type has to match it.
+            RelDataType inputType =
+                fields[aggCall.getArgList().get(0)].getType();
+            if (!SqlTypeUtil.equalSansNullability(
+                    typeFactory,
+                    inputType,
+                    aggCall.getType()))
+            {
+                return false;
+            }
+        }
+
+        if (aggRel.getGroupCount() == 0) {
+            return true;
+        }
+        Double nGroups =
+            RelMetadataQuery.getPopulationSize(
+                rowScanRel,
+                Util.bitSetBetween(0, aggRel.getGroupCount()));
+        return (nGroups != null) && (nGroups <= MAX_GROUPS);
+    }
 }
 
 // End LcsRowAggRule.java
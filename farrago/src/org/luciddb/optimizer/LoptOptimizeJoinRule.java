@@ -33,6 +33,11 @@ import org.eigenbase.sql.fun.*;
  * LoptOptimizeJoinRule implements the heuristic planner for determining optimal
  * join orderings. It is triggered by the pattern ProjectRel(MultiJoinRel).
  *
+ * <p>If created with a non-zero threshold, join graphs with no more factors
+ * than the threshold are instead ordered by exhaustively enumerating bushy
+ * join trees (see {@link #createDpOrdering}), provided they consist only of
+ * inner joins.
+ *
  * @author Zelaine Fong
  * @version $Id$
  */
@@ -40,16 +45,38 @@ public class LoptOptimizeJoinRule
     extends RelOptRule
 {
     public static final LoptOptimizeJoinRule instance =
-        new LoptOptimizeJoinRule();
+        new LoptOptimizeJoinRule(0);
+
+    /**
+     * Maximum number of join factors for which join orderings can be
+     * enumerated exhaustively. The enumeration considers every split of every
+     * subset of the factors, so its cost grows as 3^n.
+     */
+    public static final int MAX_DP_JOIN_FACTORS = 12;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int dpFactorThreshold;
 
     //~ Constructors -----------------------------------------------------------
 
     /**
      * Creates a LoptOptimizeJoinRule.
+     *
+     * @param dpFactorThreshold join graphs with at most this many factors are
+     * ordered by exhaustively enumerating bushy join trees; larger ones (or
+     * all of them, if 0) are ordered heuristically
      */
-    private LoptOptimizeJoinRule()
+    public LoptOptimizeJoinRule(int dpFactorThreshold)
     {
-        super(new RelOptRuleOperand(MultiJoinRel.class, ANY));
+        super(
+            new RelOptRuleOperand(MultiJoinRel.class, ANY),
+            (dpFactorThreshold > 0)
+            ? ("LoptOptimizeJoinRule: dp threshold " + dpFactorThreshold)
+            : null);
+        assert (dpFactorThreshold >= 0)
+            && (dpFactorThreshold <= MAX_DP_JOIN_FACTORS);
+        this.dpFactorThreshold = dpFactorThreshold;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -436,6 +463,18 @@ outerForLoop:
             RelOptUtil.getFieldNames(
                 multiJoin.getMultiJoinRel().getRowType());
 
+        // if the join graph is small enough, find the cheapest bushy join
+        // tree exhaustively; otherwise, or if it can't be enumerated that
+        // way, fall back to the heuristic orderings
+        if (canEnumerateOrderings(multiJoin)) {
+            LoptJoinTree joinTree = createDpOrdering(multiJoin, semiJoinOpt);
+            if (joinTree != null) {
+                call.transformTo(
+                    createTopProject(multiJoin, joinTree, fieldNames));
+                return;
+            }
+        }
+
         // generate the N join orderings
         for (int i = 0; i < multiJoin.getNumJoinFactors(); i++) {
             // first factor cannot be null generating
@@ -466,6 +505,258 @@ outerForLoop:
         }
     }
 
+    /**
+     * Determines whether the join orderings for a set of join factors should
+     * be enumerated exhaustively by {@link #createDpOrdering}. They are if the
+     * number of factors doesn't exceed the threshold this rule was created
+     * with, and all joins are inner joins that can't be removed.
+     *
+     * @param multiJoin join factors being optimized
+     *
+     * @return true if the orderings should be enumerated
+     */
+    private boolean canEnumerateOrderings(LoptMultiJoin multiJoin)
+    {
+        int nJoinFactors = multiJoin.getNumJoinFactors();
+        if ((nJoinFactors <= 2) || (nJoinFactors > dpFactorThreshold)) {
+            return false;
+        }
+        if (multiJoin.getMultiJoinRel().isFullOuterJoin()) {
+            return false;
+        }
+
+        // outer joins, self-joins and removable dimension joins all
+        // constrain where a factor can be placed relative to some other
+        // factor; leave those to the heuristic ordering, which knows how to
+        // honor the constraints
+        for (int factor = 0; factor < nJoinFactors; factor++) {
+            if (multiJoin.isNullGenerating(factor)
+                || (multiJoin.getOtherSelfJoinFactor(factor) != null)
+                || (multiJoin.getJoinRemovalFactor(factor) != null))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates the cheapest join tree for a set of join factors by dynamic
+     * programming over subsets of the factors. The best tree for each subset
+     * is built by considering every split of the subset into two subsets that
+     * are joined by at least one join filter, and joining the best trees for
+     * those two subsets. Unlike {@link #createOrdering}, this considers bushy
+     * trees, but never considers Cartesian products.
+     *
+     * <p>Costs are computed the same way as when the heuristic ordering
+     * decides where to add a factor, so the two algorithms agree on what the
+     * cheapest tree is.
+     *
+     * @param multiJoin join factors being optimized
+     * @param semiJoinOpt optimal semijoins for each factor
+     *
+     * @return cheapest join tree, or null if the join graph isn't connected
+     */
+    private LoptJoinTree createDpOrdering(
+        LoptMultiJoin multiJoin,
+        LoptSemiJoinOptimizer semiJoinOpt)
+    {
+        int nJoinFactors = multiJoin.getNumJoinFactors();
+        assert nJoinFactors <= MAX_DP_JOIN_FACTORS;
+
+        // represent the factors referenced by each filter as an int bitmask,
+        // which is also how the subsets of factors are represented below
+        List<RexNode> joinFilters = multiJoin.getJoinFilters();
+        int [] filterFactors = new int[joinFilters.size()];
+        for (int i = 0; i < filterFactors.length; i++) {
+            BitSet factors =
+                multiJoin.getFactorsRefByJoinFilter(joinFilters.get(i));
+            for (
+                int factor = factors.nextSetBit(0);
+                factor >= 0;
+                factor = factors.nextSetBit(factor + 1))
+            {
+                filterFactors[i] |= 1 << factor;
+            }
+
+            // attach a filter that doesn't reference any factor to the first
+            // factor, so it's only applied once
+            if (filterFactors[i] == 0) {
+                filterFactors[i] = 1;
+            }
+        }
+
+        int nSubsets = 1 << nJoinFactors;
+        LoptJoinTree [] bestTrees = new LoptJoinTree[nSubsets];
+        RelOptCost [] bestCosts = new RelOptCost[nSubsets];
+        for (int factor = 0; factor < nJoinFactors; factor++) {
+            bestTrees[1 << factor] =
+                new LoptJoinTree(
+                    semiJoinOpt.getChosenSemiJoin(factor),
+                    factor);
+        }
+
+        // subsets are visited in increasing numeric order, so all subsets of
+        // a subset have been visited before the subset itself
+        for (int subset = 1; subset < nSubsets; subset++) {
+            if (Integer.bitCount(subset) < 2) {
+                continue;
+            }
+
+            // consider each split only once, by keeping the lowest factor on
+            // the left; createJoinSubtree decides which side is better off
+            // on the left
+            int lowest = Integer.lowestOneBit(subset);
+            int rest = subset & ~lowest;
+            for (int sub = (rest - 1) & rest;; sub = (sub - 1) & rest) {
+                int left = lowest | sub;
+                int right = subset & ~left;
+                if ((bestTrees[left] != null) && (bestTrees[right] != null)) {
+                    List<RexNode> filtersToAdd =
+                        getConnectingFilters(
+                            joinFilters,
+                            filterFactors,
+                            left,
+                            right);
+                    if (filtersToAdd != null) {
+                        LoptJoinTree tree =
+                            createDpJoin(
+                                multiJoin,
+                                bestTrees[left],
+                                bestTrees[right],
+                                filtersToAdd);
+                        RelOptCost cost =
+                            RelMetadataQuery.getCumulativeCost(
+                                tree.getJoinTree());
+                        if (isCheaper(
+                                tree,
+                                cost,
+                                bestTrees[subset],
+                                bestCosts[subset]))
+                        {
+                            bestTrees[subset] = tree;
+                            bestCosts[subset] = cost;
+                        }
+                    }
+                }
+                if (sub == 0) {
+                    break;
+                }
+            }
+        }
+
+        return bestTrees[nSubsets - 1];
+    }
+
+    /**
+     * Locates the join filters that should be applied when joining two
+     * disjoint subsets of join factors. A filter is applied at the lowest join
+     * that contains all of the factors the filter references.
+     *
+     * @param joinFilters join filters to select from
+     * @param filterFactors bitmask of the factors referenced by each filter
+     * @param left bitmask of the factors in the left subset
+     * @param right bitmask of the factors in the right subset
+     *
+     * @return filters to apply, or null if none of them references factors
+     * from both subsets, in which case the subsets should not be joined
+     */
+    private List<RexNode> getConnectingFilters(
+        List<RexNode> joinFilters,
+        int [] filterFactors,
+        int left,
+        int right)
+    {
+        int subset = left | right;
+        boolean connected = false;
+        List<RexNode> filters = new ArrayList<RexNode>();
+        for (int i = 0; i < filterFactors.length; i++) {
+            int factors = filterFactors[i];
+            if ((factors & ~subset) != 0) {
+                continue;
+            }
+
+            // filters contained in either side have already been applied,
+            // unless that side is a single factor
+            if (((factors & ~left) == 0) && (Integer.bitCount(left) > 1)) {
+                continue;
+            }
+            if (((factors & ~right) == 0) && (Integer.bitCount(right) > 1)) {
+                continue;
+            }
+            if (((factors & left) != 0) && ((factors & right) != 0)) {
+                connected = true;
+            }
+            filters.add(joinFilters.get(i));
+        }
+        return connected ? filters : null;
+    }
+
+    /**
+     * Creates an inner join between two join trees over disjoint sets of
+     * factors.
+     *
+     * @param multiJoin join factors being optimized
+     * @param left left join tree
+     * @param right right join tree
+     * @param filtersToAdd filters to apply in the join condition
+     *
+     * @return created join tree
+     */
+    private LoptJoinTree createDpJoin(
+        LoptMultiJoin multiJoin,
+        LoptJoinTree left,
+        LoptJoinTree right,
+        List<RexNode> filtersToAdd)
+    {
+        RexNode condition =
+            addFilters(
+                multiJoin,
+                left,
+                -1,
+                right,
+                filtersToAdd,
+                false);
+        assert filtersToAdd.isEmpty();
+        return createJoinSubtree(
+            multiJoin,
+            left,
+            right,
+            condition,
+            JoinRelType.INNER,
+            filtersToAdd,
+            true,
+            false);
+    }
+
+    /**
+     * Determines whether a join tree is cheaper than the best one found so
+     * far, using the same criteria as {@link #addFactorToTree}.
+     *
+     * @param tree candidate join tree
+     * @param cost cumulative cost of the candidate
+     * @param bestTree best join tree found so far, or null
+     * @param bestCost cumulative cost of bestTree
+     *
+     * @return true if the candidate is cheaper
+     */
+    private boolean isCheaper(
+        LoptJoinTree tree,
+        RelOptCost cost,
+        LoptJoinTree bestTree,
+        RelOptCost bestCost)
+    {
+        if (bestTree == null) {
+            return true;
+        }
+        if (cost.isEqWithEpsilon(bestCost)) {
+            // favor the tree that passes around the wider rows further up
+            return rowWidthCost(tree.getJoinTree())
+                < rowWidthCost(bestTree.getJoinTree());
+        }
+        return cost.isLt(bestCost);
+    }
+
     /**
      * Creates the topmost projection that will sit on top of the selected join
      * ordering. The projection needs to match the original join ordering. Also,
@@ -0,0 +1,394 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.optimizer.test;
+
+import org.luciddb.optimizer.*;
+
+import java.util.logging.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.jdbc.engine.*;
+import net.sf.farrago.query.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.test.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
+import org.eigenbase.rel.rules.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.relopt.hep.*;
+
+
+/**
+ * LoptJoinEnumerationTest compares the join orderings chosen by {@link
+ * LoptOptimizeJoinRule} when it enumerates bushy join trees exhaustively
+ * against those chosen by its heuristic ordering, for snowflake-shaped join
+ * graphs of the size where the heuristic tends to miss bushy plans.
+ *
+ * <p>Each test plans the same query both ways, checks that the exhaustive
+ * enumeration never produces a more expensive plan, and traces the planning
+ * time and cumulative cost of each to {@link FarragoTrace#getClassTracer} for
+ * this class at level FINE.
+ *
+ * @version $Id$
+ */
+public class LoptJoinEnumerationTest
+    extends FarragoSqlToRelTestBase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(LoptJoinEnumerationTest.class);
+
+    private static boolean doneStaticSetup;
+
+    private static final double EPSILON = 1.0e-5;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private HepProgram program;
+
+    private RelNode rootRel;
+
+    private FarragoReposTxnContext txn;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LoptJoinEnumerationTest object.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public LoptJoinEnumerationTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(LoptJoinEnumerationTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        if (doneStaticSetup) {
+            localSetUp();
+            return;
+        }
+        doneStaticSetup = true;
+
+        stmt.executeUpdate(
+            "create schema lopt_join_enum");
+        stmt.executeUpdate(
+            "set schema 'lopt_join_enum'");
+        stmt.executeUpdate(
+            "alter session implementation set jar"
+            + " sys_boot.sys_boot.luciddb_plugin");
+
+        // A snowflake: SALES references the STORE, ITEM, CUST and DAYS
+        // dimensions; STORE references REGION and ITEM references BRAND.
+        createTable(
+            "SALES",
+            10000000,
+            "STORE_ID",
+            "ITEM_ID",
+            "CUST_ID",
+            "DAY_ID");
+        setKeyHistogram("SALES", "STORE_ID", 1000);
+        setKeyHistogram("SALES", "ITEM_ID", 50000);
+        setKeyHistogram("SALES", "CUST_ID", 200000);
+        setKeyHistogram("SALES", "DAY_ID", 3650);
+
+        createTable("STORE", 1000, "STORE_ID", "REGION_ID");
+        setKeyHistogram("STORE", "STORE_ID", 1000);
+        setKeyHistogram("STORE", "REGION_ID", 50);
+
+        createTable("REGION", 50, "REGION_ID", "COUNTRY_ID");
+        setKeyHistogram("REGION", "REGION_ID", 50);
+        setKeyHistogram("REGION", "COUNTRY_ID", 10);
+
+        createTable("ITEM", 50000, "ITEM_ID", "BRAND_ID");
+        setKeyHistogram("ITEM", "ITEM_ID", 50000);
+        setKeyHistogram("ITEM", "BRAND_ID", 500);
+
+        createTable("BRAND", 500, "BRAND_ID", "MAKER_ID");
+        setKeyHistogram("BRAND", "BRAND_ID", 500);
+        setKeyHistogram("BRAND", "MAKER_ID", 20);
+
+        createTable("CUST", 200000, "CUST_ID", "SEGMENT_ID");
+        setKeyHistogram("CUST", "CUST_ID", 200000);
+        setKeyHistogram("CUST", "SEGMENT_ID", 10);
+
+        createTable("DAYS", 3650, "DAY_ID", "YEAR_ID");
+        setKeyHistogram("DAYS", "DAY_ID", 3650);
+        setKeyHistogram("DAYS", "YEAR_ID", 10);
+
+        localSetUp();
+    }
+
+    public void tearDown()
+        throws Exception
+    {
+        localTearDown();
+        super.tearDown();
+    }
+
+    private void localSetUp()
+    {
+        txn = repos.newTxnContext(true);
+        txn.beginWriteTxn();
+    }
+
+    private void localTearDown()
+    {
+        txn.commit();
+        txn = null;
+    }
+
+    private void createTable(
+        String tableName,
+        long rowCount,
+        String ... columnNames)
+        throws Exception
+    {
+        StringBuilder sql = new StringBuilder();
+        sql.append("create table ").append(tableName).append(" (");
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columnNames[i]).append(" int");
+        }
+        sql.append(")");
+        stmt.executeUpdate(sql.toString());
+
+        FarragoSession session = getSession();
+        session.getRepos().beginReposSession();
+        try {
+            FarragoStatsUtil.setTableRowCount(
+                session,
+                "",
+                "",
+                tableName,
+                rowCount);
+        } finally {
+            session.getRepos().endReposSession();
+        }
+    }
+
+    private void setKeyHistogram(
+        String tableName,
+        String columnName,
+        long distinctValues)
+        throws Exception
+    {
+        FarragoSession session = getSession();
+        session.getRepos().beginReposSession();
+        try {
+            FarragoStatsUtil.createColumnHistogram(
+                session,
+                "",
+                "",
+                tableName,
+                columnName,
+                distinctValues,
+                100,
+                distinctValues,
+                1,
+                "0123456789");
+        } finally {
+            session.getRepos().endReposSession();
+        }
+    }
+
+    private FarragoSession getSession()
+    {
+        FarragoJdbcEngineConnection farragoConnection =
+            (FarragoJdbcEngineConnection) connection;
+        return farragoConnection.getSession();
+    }
+
+    protected void checkAbstract(
+        FarragoPreparingStmt stmt,
+        RelNode relBefore)
+        throws Exception
+    {
+        RelOptPlanner planner = stmt.getPlanner();
+        planner.setRoot(relBefore);
+        rootRel = planner.findBestExp();
+    }
+
+    protected void initPlanner(FarragoPreparingStmt stmt)
+    {
+        FarragoSessionPlanner planner =
+            new FarragoTestPlanner(
+                program,
+                stmt);
+        stmt.setPlanner(planner);
+    }
+
+    /**
+     * Plans a query, converting its joins into a MultiJoinRel and then
+     * ordering them with the given rule.
+     *
+     * @param joinRule rule which orders the joins
+     * @param sql query to plan
+     *
+     * @return cumulative cost of the chosen plan
+     */
+    private RelOptCost planQuery(
+        LoptOptimizeJoinRule joinRule,
+        String sql)
+        throws Exception
+    {
+        HepProgramBuilder programBuilder = new HepProgramBuilder();
+        programBuilder.addRuleInstance(PushFilterPastJoinRule.instance);
+        programBuilder.addMatchOrder(HepMatchOrder.BOTTOM_UP);
+        programBuilder.addRuleInstance(ConvertMultiJoinRule.instance);
+        programBuilder.addRuleInstance(joinRule);
+        program = programBuilder.createProgram();
+
+        long startTime = System.nanoTime();
+        checkQuery("EXPLAIN PLAN FOR " + sql);
+        long elapsedMicros = (System.nanoTime() - startTime) / 1000;
+
+        RelOptCost cost = RelMetadataQuery.getCumulativeCost(rootRel);
+        assertNotNull(cost);
+        tracer.fine(
+            getName() + " " + joinRule + ": planning time "
+            + elapsedMicros + "us, cost " + cost + ", plan "
+            + RelOptUtil.toString(rootRel));
+        return cost;
+    }
+
+    /**
+     * Plans a query with both the heuristic ordering and exhaustive
+     * enumeration, and checks that the enumeration is at least as cheap.
+     *
+     * @param sql query to plan
+     */
+    private void checkOrderings(String sql)
+        throws Exception
+    {
+        RelOptCost heuristicCost =
+            planQuery(LoptOptimizeJoinRule.instance, sql);
+        RelOptCost dpCost =
+            planQuery(
+                new LoptOptimizeJoinRule(
+                    LoptOptimizeJoinRule.MAX_DP_JOIN_FACTORS),
+                sql);
+        assertTrue(
+            "enumerated plan cost " + dpCost
+            + " exceeds heuristic plan cost " + heuristicCost,
+            dpCost.isLe(heuristicCost)
+            || (dpCost.getRows()
+                <= (heuristicCost.getRows() * (1 + EPSILON))));
+    }
+
+    public void testThreeWayChain()
+        throws Exception
+    {
+        checkOrderings(
+            "select * from sales s, store st, region r"
+            + " where s.store_id = st.store_id"
+            + " and st.region_id = r.region_id"
+            + " and r.country_id = 3");
+    }
+
+    public void testSixWaySnowflake()
+        throws Exception
+    {
+        checkOrderings(
+            "select * from sales s, store st, region r, item i, brand b,"
+            + " days d"
+            + " where s.store_id = st.store_id"
+            + " and st.region_id = r.region_id"
+            + " and s.item_id = i.item_id"
+            + " and i.brand_id = b.brand_id"
+            + " and s.day_id = d.day_id"
+            + " and r.country_id = 3 and b.maker_id = 7"
+            + " and d.year_id = 9");
+    }
+
+    public void testSevenWaySnowflake()
+        throws Exception
+    {
+        checkOrderings(
+            "select * from sales s, store st, region r, item i, brand b,"
+            + " cust c, days d"
+            + " where s.store_id = st.store_id"
+            + " and st.region_id = r.region_id"
+            + " and s.item_id = i.item_id"
+            + " and i.brand_id = b.brand_id"
+            + " and s.cust_id = c.cust_id"
+            + " and s.day_id = d.day_id"
+            + " and r.country_id = 3 and b.maker_id = 7"
+            + " and c.segment_id = 2");
+    }
+
+    public void testDisconnectedGraph()
+        throws Exception
+    {
+        // REGION and BRAND aren't connected by any join filter, so the
+        // enumeration finds no plan and the heuristic ordering is used
+        checkOrderings(
+            "select * from region r, brand b, store st"
+            + " where st.region_id = r.region_id");
+    }
+
+    public void testCodeCacheKey()
+        throws Exception
+    {
+        // statements prepared with and without enumeration must not be
+        // shared through the code cache
+        FarragoSession session = getSession();
+        String keyOff =
+            session.getPersonality().getCodeCacheKeySuffix(
+                session.getSessionVariables());
+        stmt.executeUpdate(
+            "alter session set \"joinEnumerationThreshold\" = 6");
+        try {
+            String keyOn =
+                session.getPersonality().getCodeCacheKeySuffix(
+                    session.getSessionVariables());
+            assertFalse(keyOff.equals(keyOn));
+        } finally {
+            stmt.executeUpdate(
+                "alter session set \"joinEnumerationThreshold\" = 0");
+        }
+        assertEquals(
+            keyOff,
+            session.getPersonality().getCodeCacheKeySuffix(
+                session.getSessionVariables()));
+    }
+}
+
+// End LoptJoinEnumerationTest.java
@@ -83,6 +83,9 @@ public class LucidDbSessionPersonality
     public static final String LAST_ROWS_REJECTED_DEFAULT = null;
     public static final String REDUCE_NON_CORRELATED_SUBQUERIES_LUCIDDB_DFLT =
         "true";
+    public static final String JOIN_ENUMERATION_THRESHOLD =
+        "joinEnumerationThreshold";
+    public static final String JOIN_ENUMERATION_THRESHOLD_DEFAULT = "0";
 
     //~ Instance fields --------------------------------------------------------
 
@@ -130,6 +133,11 @@ public class LucidDbSessionPersonality
             true,
             0,
             Integer.MAX_VALUE);
+        paramValidator.registerIntParam(
+            JOIN_ENUMERATION_THRESHOLD,
+            false,
+            0,
+            LoptOptimizeJoinRule.MAX_DP_JOIN_FACTORS);
         if (defaultPersonality == null) {
             defaultLucidDb = true;
         } else if (defaultPersonality instanceof LucidDbSessionPersonality) {
@@ -242,12 +250,18 @@ public class LucidDbSessionPersonality
 
         boolean alterTable = stmt.getSession().isReentrantAlterTableAddColumn();
 
+        Integer joinEnumerationThreshold =
+            stmt.getSession().getSessionVariables().getInteger(
+                JOIN_ENUMERATION_THRESHOLD);
+
         HepProgram program =
             createHepProgram(
                 fennelEnabled,
                 calcVM,
                 medPluginRules,
-                alterTable);
+                alterTable,
+                (joinEnumerationThreshold == null) ? 0
+                : joinEnumerationThreshold);
         FarragoSessionPlanner planner =
             new LucidDbPlanner(
                 program,
@@ -278,7 +292,8 @@ public class LucidDbSessionPersonality
         boolean fennelEnabled,
         CalcVirtualMachine calcVM,
         Collection<RelOptRule> medPluginRules,
-        boolean alterTable)
+        boolean alterTable,
+        int joinEnumerationThreshold)
     {
         HepProgramBuilder builder = new HepProgramBuilder();
 
@@ -289,6 +304,11 @@ public class LucidDbSessionPersonality
         // as well or better than the hand-coding.
         builder.addRuleByDescription("MedMdrJoinRule");
 
+        // Answer aggregates from materialized aggregate views.  This has to
+        // come before any other rule changes the shape of the plan, since
+        // view definitions are matched against the converter's output.
+        builder.addRuleInstance(LcsAggregateViewRule.instance);
+
         // Convert SamplingRel/LcsRowScanRel into LcsSamplingRowScanRel
         // early since sampling isn't compatible with index scans.  This
         // could come later, but MUST come before FennelBernoulliSamplingRule
@@ -452,8 +472,15 @@ public class LucidDbSessionPersonality
         // semijoins.  Note that the match order is bottom-up, so we
         // can optimize lower-level joins before their ancestors.  That allows
         // ancestors to have better cost info to work with (well, eventually).
+        // Small join graphs may be ordered exhaustively instead, depending
+        // on the joinEnumerationThreshold session variable.
         builder.addMatchOrder(HepMatchOrder.BOTTOM_UP);
-        builder.addRuleInstance(LoptOptimizeJoinRule.instance);
+        if (joinEnumerationThreshold > 0) {
+            builder.addRuleInstance(
+                new LoptOptimizeJoinRule(joinEnumerationThreshold));
+        } else {
+            builder.addRuleInstance(LoptOptimizeJoinRule.instance);
+        }
         builder.addMatchOrder(HepMatchOrder.ARBITRARY);
 
         // Now that we've converted MultiJoinRels back to JoinRels, reduce
@@ -518,6 +545,16 @@ public class LucidDbSessionPersonality
         // result.
         builder.addRuleInstance(RemoveSemiJoinRule.instance);
 
+        // Pre-aggregate join inputs which supply all of an aggregate's
+        // arguments, where the metadata estimates a large reduction.  Do this
+        // once join ordering has settled, so the estimates reflect the final
+        // join tree, and after semijoins have been converted, since a partial
+        // aggregate on a fact table would keep semijoins from reaching it.
+        builder.addGroupBegin();
+        builder.addRuleInstance(PushAggregateThroughJoinRule.instanceProject);
+        builder.addRuleInstance(PushAggregateThroughJoinRule.instanceJoin);
+        builder.addGroupEnd();
+
         // Remove common relational subexpressions.  Do this after the rules
         // that determine the optimal join ordering because as part of
         // determining join ordering, we also remove unnecessary joins.
@@ -598,6 +635,17 @@ public class LucidDbSessionPersonality
         // is likely to be more efficient
         builder.addRuleInstance(LcsRowAggRule.instance);
 
+        // Restrict full table scans filtered on LCS_RID to the rids the
+        // filter accepts.  Do this before splitting scans for parallel
+        // execution, so that a restricted scan isn't split.
+        builder.addRuleInstance(LcsRidRangeScanRule.instance);
+
+        // Split large full table scans into rid ranges read in parallel.
+        // This is done after the row scan aggregation rules, which need the
+        // original scan, and before adding deletion index scans, so each
+        // partition gets its own.
+        builder.addRuleInstance(LcsParallelRowScanRule.instance);
+
         // Add deletion index scans as input into row scans.  This set of
         // rules need to be applied only after *ALL* inputs into the row
         // scan have been finalized.
@@ -813,6 +861,9 @@ public class LucidDbSessionPersonality
         variables.setDefault(
             LAST_ROWS_REJECTED,
             LAST_ROWS_REJECTED_DEFAULT);
+        variables.setDefault(
+            JOIN_ENUMERATION_THRESHOLD,
+            JOIN_ENUMERATION_THRESHOLD_DEFAULT);
         variables.set(
             REDUCE_NON_CORRELATED_SUBQUERIES,
             REDUCE_NON_CORRELATED_SUBQUERIES_LUCIDDB_DFLT);
@@ -833,6 +884,21 @@ public class LucidDbSessionPersonality
         return clone;
     }
 
+    // override FarragoDefaultSessionPersonality
+    public String getCodeCacheKeySuffix(FarragoSessionVariables variables)
+    {
+        // the threshold decides which join orders are considered
+        String suffix = super.getCodeCacheKeySuffix(variables);
+        Integer joinEnumerationThreshold =
+            variables.getInteger(JOIN_ENUMERATION_THRESHOLD);
+        if ((joinEnumerationThreshold != null)
+            && (joinEnumerationThreshold > 0))
+        {
+            suffix += ";joinEnumerationThreshold=" + joinEnumerationThreshold;
+        }
+        return suffix;
+    }
+
     // override FarragoDefaultSessionPersonality
     public FarragoSessionRuntimeContext newRuntimeContext(
         FarragoSessionRuntimeParams params)
@@ -1025,6 +1091,9 @@ public class LucidDbSessionPersonality
     public void resetRowCounts(FemAbstractColumnSet table)
     {
         FarragoCatalogUtil.resetRowCounts(table, database.getUserRepos());
+
+        // rids start over, so aggregate views can't be refreshed by appending
+        LcsAggregateView.noteStorageReset(database.getUserRepos(), table);
     }
 
     //  implement FarragoSessionPersonality
@@ -160,6 +160,28 @@ options(schema_name 'SALES', table_name 'DEPT');
 -- test same query as above, but against foreign table with inferred types
 select * from demo_schema.dept_inferred order by deptno;
 
+-- create a foreign table whose scans are read as concurrent range
+-- queries on DEPTNO
+create foreign table demo_schema.dept_split
+server hsqldb_demo
+options(schema_name 'SALES', table_name 'DEPT',
+    split_column 'DEPTNO', split_count '3');
+
+-- should return the same rows as the unsplit foreign table
+select * from demo_schema.dept_split order by deptno;
+
+-- split query with pushed-down filter and projection
+select dname from demo_schema.dept_split where deptno > 15 order by dname;
+
+-- split EMP into 4 ranges of EMPNO, each of which returns rows; KING's null
+-- MGR must still be null after being merged from the reader threads
+create foreign table demo_schema.emp_split
+server hsqldb_demo
+options(schema_name 'SALES', table_name 'EMP',
+    split_column 'EMPNO', split_count '4');
+
+select empno, mgr, mgr is null from demo_schema.emp_split order by empno;
+
 -- test SCHEMA_NAME of server specified
 create server hsqldb_schema_qual
 foreign data wrapper sys_jdbc
@@ -433,4 +455,89 @@ select deptno from hsqldb_opts1.sales.dept order by deptno;
 
 select dname from hsqldb_opts1.sales.dept order by dname;
 
+-- metadata caching and remote statistics
+create server hsqldb_cached
+foreign data wrapper sys_jdbc
+options(
+    driver_class 'org.hsqldb.jdbcDriver',
+    url 'jdbc:hsqldb:testcases/hsqldb/scott',
+    user_name 'SA',
+    schema_name 'SALES',
+    use_schema_name_as_foreign_qualifier 'true',
+    table_types 'TABLE,VIEW',
+    metadata_cache_ttl_millis '-1',
+    remote_statistics 'QUERY');
+
+select deptno from hsqldb_cached.sales.dept order by deptno;
+
+-- second lookup is answered from the metadata cache
+select dname from hsqldb_cached.sales.dept where deptno = 20;
+
+call sys_boot.mgmt.flush_server_metadata_cache('HSQLDB_CACHED');
+
+-- metadata is fetched again after the flush
+select dname from hsqldb_cached.sales.dept where deptno = 20;
+
+-- read-ahead on a background thread
+create server hsqldb_read_ahead
+foreign data wrapper sys_jdbc
+options(
+    driver_class 'org.hsqldb.jdbcDriver',
+    url 'jdbc:hsqldb:testcases/hsqldb/scott',
+    user_name 'SA',
+    schema_name 'SALES',
+    use_schema_name_as_foreign_qualifier 'true',
+    table_types 'TABLE,VIEW',
+    read_ahead_batches '4');
+
+select dname from hsqldb_read_ahead.sales.dept order by dname;
+
+-- remote statistics reach the optimizer; the link is a Farrago connection
+-- which is not turned into a local scan, since it names a schema
+create schema med_stats;
+create table med_stats.t(i int not null primary key);
+insert into med_stats.t values (1), (2), (3), (4);
+create user med_stats_user identified by '' default schema med_stats;
+grant select on med_stats.t to med_stats_user;
+
+create server med_stats_link
+foreign data wrapper sys_jdbc
+options(
+    driver_class 'net.sf.farrago.jdbc.engine.FarragoJdbcEngineDriver',
+    url 'jdbc:farrago:',
+    user_name 'MED_STATS_USER',
+    schema_name 'MED_STATS',
+    remote_statistics 'QUERY');
+
+create foreign table med_stats.t_link(i int not null)
+server med_stats_link
+options(table_name 'T');
+
+!set outputformat csv
+
+-- row count and distinct count come from COUNT queries on the link
+explain plan including all attributes for
+select * from med_stats.t_link;
+explain plan including all attributes for
+select * from med_stats.t_link where i = 3;
+
+-- the counts are cached across prepares, so new rows aren't seen yet
+insert into med_stats.t values (5), (6), (7), (8);
+explain plan including all attributes for
+select * from med_stats.t_link;
+
+call sys_boot.mgmt.flush_server_metadata_cache('MED_STATS_LINK');
+
+-- after the flush, the counts are queried again
+explain plan including all attributes for
+select * from med_stats.t_link;
+explain plan including all attributes for
+select * from med_stats.t_link where i = 3;
+
+!set outputformat table
+
+select count(*) from med_stats.t_link;
+
+drop server med_stats_link cascade;
+
 -- End med.sql
@@ -146,10 +146,10 @@ insert into ts values (
 
 select * from ts order by 1;
 
--- current_timestamp is converted to a constant during query optimization;
--- make sure the statement is not cached and therefore the current_timestamp
--- call returns unique values for each insert; use the select with the sleep
--- in the where clause to ensure a time gap between the two inserts
+-- current_timestamp is bound to a runtime parameter during query
+-- optimization; make sure it is evaluated again when the cached statement
+-- is reused, so each insert gets a unique value; use the select with the
+-- sleep in the where clause to ensure a time gap between the two inserts
 insert into ts values(current_timestamp);
 select * from sales.emps where empno = sys_boot.mgmt.sleep(1000);
 insert into ts values(current_timestamp);
@@ -0,0 +1,42 @@
+-- $Id$
+-- Test pushing partial aggregates below joins
+
+create schema aggjoin;
+set schema 'aggjoin';
+alter session implementation set jar sys_boot.sys_boot.luciddb_plugin;
+
+create table f(amt int, did int);
+insert into f values(10, 1);
+insert into f values(20, 1);
+insert into f values(5, 2);
+insert into f values(null, 2);
+insert into f values(7, 3);
+insert into f values(1, 4);
+insert into f values(100, null);
+
+create table d(id int, region varchar(10));
+insert into d values(1, 'EAST');
+insert into d values(2, 'EAST');
+insert into d values(3, 'WEST');
+insert into d values(5, 'NORTH');
+
+-- the fact table has far fewer distinct join keys than rows, so it is
+-- aggregated on the join key before the join; since it is a single table,
+-- that partial aggregate is computed by the scan
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'AGGJOIN', 'F', 100000);
+call sys_boot.mgmt.stat_set_column_histogram(
+    'LOCALDB', 'AGGJOIN', 'F', 'DID', 10, 100, 10, 0, '0123456789');
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'AGGJOIN', 'D', 4);
+
+!set outputformat csv
+
+explain plan excluding attributes for
+select d.region, sum(f.amt), count(f.amt), count(*)
+from f, d where f.did = d.id
+group by d.region order by region;
+
+-- fact rows without a dimension row, and dimension rows without fact rows,
+-- drop out of the join as usual
+select d.region, sum(f.amt), count(f.amt), count(*)
+from f, d where f.did = d.id
+group by d.region order by region;
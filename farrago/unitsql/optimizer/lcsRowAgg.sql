@@ -0,0 +1,62 @@
+-- $Id$
+-- Test aggregation during LCS row scans, with and without GROUP BY
+
+create schema rowagg;
+set schema 'rowagg';
+alter session implementation set jar sys_boot.sys_boot.luciddb_plugin;
+
+create table t(k int, v int, w bigint);
+insert into t values(1, 10, 100);
+insert into t values(1, 20, null);
+insert into t values(2, null, null);
+insert into t values(2, 5, 7);
+insert into t values(null, 3, 30);
+insert into t values(null, null, 40);
+insert into t values(3, 1, 1);
+insert into t values(4, null, null);
+
+-- grouped scans are only used when the number of groups is known
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'ROWAGG', 'T', 8);
+call sys_boot.mgmt.stat_set_column_histogram(
+    'LOCALDB', 'ROWAGG', 'T', 'K', 4, 100, 4, 0, '0123456789');
+
+!set outputformat csv
+
+-- without GROUP BY
+explain plan for
+select sum(v), count(v), count(*), min(v), max(v) from t;
+
+select sum(v), count(v), count(*), min(v), max(v) from t;
+
+-- with GROUP BY, including a null key and a group with only null values;
+-- the scan may produce a group more than once if it runs out of memory, so
+-- its groups are aggregated again
+explain plan for
+select k, sum(v), count(v), count(*), min(w), max(w) from t
+group by k order by k;
+
+select k, sum(v), count(v), count(*), min(w), max(w) from t
+group by k order by k;
+
+-- deleted rows are not aggregated
+delete from t where k = 3 or w = 40;
+select sum(v), count(v), count(*), min(v), max(v) from t;
+select k, sum(v), count(v), count(*), min(w), max(w) from t
+group by k order by k;
+
+-- empty table:  without GROUP BY there is still a row, with zero counts and
+-- null for the rest; with GROUP BY there are no rows
+create table e(k int, v int);
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'ROWAGG', 'E', 0);
+call sys_boot.mgmt.stat_set_column_histogram(
+    'LOCALDB', 'ROWAGG', 'E', 'K', 1, 100, 1, 0, '0123456789');
+
+explain plan for
+select sum(v), count(v), count(*), min(v), max(v) from e;
+
+select sum(v), count(v), count(*), min(v), max(v) from e;
+
+explain plan for
+select k, sum(v), count(*) from e group by k;
+
+select k, sum(v), count(*) from e group by k;
@@ -0,0 +1,83 @@
+-- $Id$
+-- Test splitting full LCS scans into parallel rid range partitions
+
+create schema parscan;
+set schema 'parscan';
+alter session implementation set jar sys_boot.sys_boot.luciddb_plugin;
+
+create table t(a int, b varchar(10));
+insert into t values
+    (1, 'r1'), (2, 'r2'), (3, 'r3'), (4, 'r4'), (5, 'r5'),
+    (6, 'r6'), (7, 'r7'), (8, 'r8'), (9, 'r9'), (10, 'r10'),
+    (11, 'r11'), (12, 'r12'), (13, 'r13'), (14, 'r14'), (15, 'r15'),
+    (16, 'r16'), (17, 'r17'), (18, 'r18'), (19, 'r19'), (20, 'r20');
+
+-- the table keeps 20 rids, so 4 partitions start at rids 0, 5, 10 and 15;
+-- delete the rows on either side of each partition boundary
+delete from t where lcs_rid(a) in (4, 5, 9, 10, 14, 15);
+
+-- make the table look large enough to be split 4 ways
+call sys_boot.mgmt.stat_set_page_count(
+    'LOCALDB', 'PARSCAN', 'SYS$CLUSTERED_INDEX$T$A', 2000);
+call sys_boot.mgmt.stat_set_page_count(
+    'LOCALDB', 'PARSCAN', 'SYS$CLUSTERED_INDEX$T$B', 2000);
+
+!set outputformat csv
+
+-- serial scan
+explain plan for select * from t order by a;
+
+select * from t order by a;
+
+-- partitioned scan; the last partition is open-ended
+alter session set "degreeOfParallelism" = 4;
+call sys_boot.mgmt.flush_code_cache();
+
+explain plan for select * from t order by a;
+
+-- same rows as the serial scan
+select * from t order by a;
+
+-- not enough blocks for more than 4 partitions
+alter session set "degreeOfParallelism" = 8;
+call sys_boot.mgmt.flush_code_cache();
+
+explain plan excluding attributes for select * from t order by a;
+
+-- not enough blocks for more than 2 partitions
+call sys_boot.mgmt.stat_set_page_count(
+    'LOCALDB', 'PARSCAN', 'SYS$CLUSTERED_INDEX$T$B', 0);
+call sys_boot.mgmt.flush_code_cache();
+
+explain plan for select * from t order by a;
+
+select * from t order by a;
+
+-- build an index from 4 rid ranges, again with rows deleted on either side
+-- of each partition boundary
+create table u(a int, b int);
+insert into u values
+    (0, 0), (1, 1), (2, 2), (0, 3), (1, 4),
+    (2, 5), (0, 6), (1, 7), (2, 8), (0, 9),
+    (1, 10), (2, 11), (0, 12), (1, 13), (2, 14),
+    (0, 15), (1, 16), (2, 17), (0, 18), (1, 19);
+delete from u where lcs_rid(a) in (4, 5, 9, 10, 14, 15);
+call sys_boot.mgmt.stat_set_page_count(
+    'LOCALDB', 'PARSCAN', 'SYS$CLUSTERED_INDEX$U$A', 2000);
+call sys_boot.mgmt.stat_set_page_count(
+    'LOCALDB', 'PARSCAN', 'SYS$CLUSTERED_INDEX$U$B', 2000);
+alter session set "degreeOfParallelism" = 4;
+
+-- counts from a full scan
+select a, count(*) from u group by a order by a;
+
+create index iu on u(a);
+
+-- fake stats so the index is chosen
+call sys_boot.mgmt.stat_set_row_count('LOCALDB', 'PARSCAN', 'U', 100);
+call sys_boot.mgmt.flush_code_cache();
+
+explain plan excluding attributes for select a, count(*) from u group by a;
+
+-- counts from the index alone match the full scan
+select a, count(*) from u group by a;
@@ -266,3 +266,18 @@ external name 'class net.sf.farrago.test.FarragoTestUDR.toHexString';
 set path 'res';
 create table ldb(a char(10), b int);
 explain plan for select * from ldb where a = prim_int_to_hex_string(1+1);
+
+-- A residual filter with at least 8 ascending, disjoint intervals is binary
+-- searched; check values below, between, at and above interval bounds, for
+-- both open and closed bounds
+explain plan for select a, c from t1 where
+c < 4 or c in (6, 9) or (c > 11 and c < 14) or c between 16 and 17
+or (c >= 19 and c < 21) or (c > 22 and c <= 24) or c in (27, 33, 40)
+order by a;
+
+select a, c from t1 where
+c < 4 or c in (6, 9) or (c > 11 and c < 14) or c between 16 and 17
+or (c >= 19 and c < 21) or (c > 22 and c <= 24) or c in (27, 33, 40)
+order by a;
+
+select a, c from t1 where c in (0, 3, 5, 8, 13, 21, 33, 34, 100) order by a;
@@ -0,0 +1,59 @@
+-- $Id$
+-- Test binding of dynamic functions such as CURRENT_TIMESTAMP to runtime
+-- parameters, which keeps the statements using them cacheable
+
+create schema rtp;
+set schema 'rtp';
+
+create table ts(ts timestamp not null primary key);
+create table ds(d date);
+insert into ds values (current_date), (date '2000-01-01');
+
+call sys_boot.mgmt.reset_statement_statistics();
+
+-- the second insert reuses the cached plan, but still gets its own
+-- timestamp (the same one would violate the primary key); the select
+-- with the sleep makes sure the two timestamps differ
+insert into ts values (current_timestamp);
+select * from sales.emps where empno = sys_boot.mgmt.sleep(1000);
+insert into ts values (current_timestamp);
+select count(*) from ts;
+
+-- the bound value is compared at execution time
+select count(*) from ts where ts <= current_timestamp;
+select count(*) from ts where ts <= current_timestamp;
+select count(*) from ts where ts > current_timestamp;
+select count(*) from ds where d = current_date;
+select count(*) from ds where d = current_date;
+
+-- character values are bound too
+select name || ' ' || current_user from sales.depts where deptno = 10;
+select name || ' ' || current_user from sales.depts where deptno = 10;
+
+-- each statement was prepared twice, and the second prepare found the
+-- first one's plan in the code cache
+select calls, prepares, code_cache_hits
+from sys_boot.mgmt.statement_statistics_view
+where sql_stmt like 'INSERT INTO TS%'
+or sql_stmt like 'SELECT COUNT(*)FROM TS WHERE TS<=%'
+or sql_stmt like 'SELECT COUNT(*)FROM DS%'
+or sql_stmt like 'SELECT NAME%';
+
+!set outputformat csv
+
+-- the expression appears as a parameter rather than a literal, and the
+-- Fennel calculator reads it
+explain plan for
+select deptno, name, current_date as today from sales.depts;
+
+-- the Java calculator reads it too
+alter system set "calcVirtualMachine" = 'CALCVM_JAVA';
+
+explain plan for
+select deptno, name, current_date as today from sales.depts;
+
+!set outputformat table
+
+alter system set "calcVirtualMachine" = 'CALCVM_AUTO';
+
+-- End runtimeParams.sql
@@ -1668,6 +1668,26 @@ explain plan for select * from badview;
 -- finally, an error is returned when actually selecting from the view
 select * from badview;
 
+-- evaluate non-correlated subqueries at execution time
+alter session set "reduceNonCorrelatedSubqueriesAtExecution" = true;
+select name from emps where empno = (select min(empno) from emps);
+select name from emps where empno = (select min(empno) from emps);
+select name from emps where exists (select * from depts where deptno > 100);
+select name from emps where empno = (select empno from emps);
+
+-- the subquery's value is a runtime parameter, so it still drives an index
+-- search, and the outer plan is served from the code cache when it is
+-- executed again
+call sys_boot.mgmt.reset_statement_statistics();
+explain plan for
+select name from depts where deptno = (select min(deptno) from depts);
+select name from depts where deptno = (select min(deptno) from depts);
+select name from depts where deptno = (select min(deptno) from depts);
+select calls, prepares, code_cache_hits
+from sys_boot.mgmt.statement_statistics_view
+where sql_stmt like 'SELECT NAME FROM DEPTS WHERE DEPTNO=%';
+alter session set "reduceNonCorrelatedSubqueriesAtExecution" = false;
+
 -- disable subquery conversion
 alter session set "reduceNonCorrelatedSubqueries" = false;
 explain plan for select * from emps where empno = (select min(empno) from emps);
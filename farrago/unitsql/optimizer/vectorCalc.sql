@@ -0,0 +1,63 @@
+-- $Id$
+-- Test vectorized (batch mode) evaluation of Java calculator programs;
+-- each query is run row-at-a-time and then in batch mode, and the results
+-- must match.  The table has 11 rows, so a batch size of 4 leaves a partial
+-- final batch.
+
+create schema vcalc;
+set schema 'vcalc';
+!set outputformat csv
+
+alter system set "calcVirtualMachine" = 'CALCVM_JAVA';
+
+create table t(
+    id int not null primary key,
+    a int,
+    b bigint,
+    d double,
+    f boolean);
+
+insert into t values
+    (1, 10, 100, 1.5, true),
+    (2, null, 200, 2.5, false),
+    (3, 3, null, null, true),
+    (4, 7, 400, 0.5, null),
+    (5, -2, 50, -1.5, false),
+    (6, 12, 600, 3.0, true),
+    (7, null, null, 4.5, true),
+    (8, 8, 80, 2.0, false),
+    (9, 5, 900, null, null),
+    (10, 1, 1000, 1.0, true),
+    (11, 20, 1100, 5.5, false);
+
+-- row-at-a-time
+alter session set "javaCalcBatchSize" = 0;
+
+select id, a + 1 as a1, b * 2 as b2, d * 2 as d2, a > 5 as big,
+    f and a > 5 as fbig
+from t where b > 60 order by id;
+
+select count(*) as c, sum(a) as s from t where a is null or a * 10 < b;
+
+select id, -a as neg_a, a - b as diff, d + a as total, f is not true as nt
+from t where not f or d > 2 order by id;
+
+-- batch mode
+alter session set "javaCalcBatchSize" = 4;
+
+select id, a + 1 as a1, b * 2 as b2, d * 2 as d2, a > 5 as big,
+    f and a > 5 as fbig
+from t where b > 60 order by id;
+
+select count(*) as c, sum(a) as s from t where a is null or a * 10 < b;
+
+select id, -a as neg_a, a - b as diff, d + a as total, f is not true as nt
+from t where not f or d > 2 order by id;
+
+-- batch of a single row
+alter session set "javaCalcBatchSize" = 1;
+
+select count(*) as c, sum(a) as s from t where a is null or a * 10 < b;
+
+-- End vectorCalc.sql
+
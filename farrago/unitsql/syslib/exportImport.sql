@@ -209,3 +209,34 @@ into logcheck;
 -- one log file per schema export should exist
 select count(*) from sys_boot.jdbc_metadata.tables_view
 where table_schem='LOGCHECK';
+
+-- parallel export of a list of tables
+call sys_boot.mgmt.export_schema_to_file_parallel(
+null,
+'SALES',
+false,
+'DEPTS,EMPSVIEW',
+null,
+'${FARRAGO_HOME}/unitsql/syslib/sales_files_parallel',
+true,
+true,
+',',
+'.txt',
+null,
+null,
+null,
+2,
+2);
+
+create or replace server flatfile_server
+foreign data wrapper sys_file_wrapper
+options (
+  directory 'unitsql/syslib/sales_files_parallel',
+  file_extension 'txt',
+  with_header 'yes',
+  log_directory 'testlog/',
+  field_delimiter ',',
+  lenient 'no');
+
+select * from flatfile_server.bcp.depts order by deptno;
+select * from flatfile_server.bcp.empsview order by empno,name;
@@ -26,10 +26,24 @@
 
 FENNEL_BEGIN_NAMESPACE
 
-PConstBuffer getData(RegisterRef<int32_t>* id) {
+TupleDatum const &getDatum(RegisterRef<int32_t>* id) {
     assert(!id->isNull());
     return id->getDynamicParamManager()->getParam(
-        DynamicParamId(id->value())).getDatum().pData;
+        DynamicParamId(id->value())).getDatum();
+}
+
+template <typename TMPLT>
+void
+readDynamicVariable(
+    RegisterRef<TMPLT>* result,
+    RegisterRef<int32_t>* id)
+{
+    TupleDatum const &datum = getDatum(id);
+    if (!datum.pData) {
+        result->toNull();
+    } else {
+        result->value(*reinterpret_cast<TMPLT const *>(datum.pData));
+    }
 }
 
 void
@@ -37,7 +51,7 @@ dynamicVariable(
     RegisterRef<int8_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<int8_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -45,7 +59,7 @@ dynamicVariable(
     RegisterRef<uint8_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<uint8_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -53,7 +67,7 @@ dynamicVariable(
     RegisterRef<int16_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<int16_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -61,7 +75,7 @@ dynamicVariable(
     RegisterRef<uint16_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<uint16_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -69,7 +83,7 @@ dynamicVariable(
     RegisterRef<int32_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<int32_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -77,7 +91,7 @@ dynamicVariable(
     RegisterRef<uint32_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<uint32_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -85,7 +99,7 @@ dynamicVariable(
     RegisterRef<int64_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<int64_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -93,7 +107,7 @@ dynamicVariable(
     RegisterRef<uint64_t>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<uint64_t const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -101,7 +115,7 @@ dynamicVariable(
     RegisterRef<float>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<float const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -109,7 +123,7 @@ dynamicVariable(
     RegisterRef<double>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<double const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -117,7 +131,7 @@ dynamicVariable(
     RegisterRef<bool>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<bool const *>(getData(id)));
+    readDynamicVariable(result, id);
 }
 
 void
@@ -125,7 +139,16 @@ dynamicVariable(
     RegisterRef<char*>* result,
     RegisterRef<int32_t>* id)
 {
-    result->value(*reinterpret_cast<char* const *>(getData(id)));
+    // point at the parameter's own storage, like a pointer instruction
+    TupleDatum const &datum = getDatum(id);
+    if (!datum.pData) {
+        result->toNull();
+        result->length(0);
+    } else {
+        result->pointer(
+            reinterpret_cast<char *>(const_cast<PBuffer>(datum.pData)),
+            datum.cbData);
+    }
 }
 
 void
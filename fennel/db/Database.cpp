@@ -150,6 +150,11 @@ void Database::init()
     tempDeviceName = databaseDir + "/temp.dat";
 
     nCheckpoints = nCheckpointsStat = 0;
+    nOldPagesDeallocated = 0;
+    nPagesAllocatedAfterDeallocate = 0;
+    deallocateOldIncomplete = false;
+    deallocateOldSegAlloc = 0;
+    deallocateOldExtent = 0;
 
     pSegmentFactory = SegmentFactory::newSegmentFactory(
         configMap, getSharedTraceTarget());
@@ -889,6 +894,17 @@ void Database::writeStats(StatsTarget &target)
         target.writeCounter(
             "DatabasePagesExtendedSinceInit",
             pDataSegment->getNumPagesExtended());
+        target.writeCounter(
+            "DatabasePagesDeallocatedSinceInit", nOldPagesDeallocated);
+        // old page versions can only be pending among the pages allocated
+        // since the last deallocation
+        BlockNum nPagesAllocated = pDataSegment->getAllocatedSizeInPages();
+        target.writeCounter(
+            "DatabasePagesAllocatedSinceDeallocateOld",
+            (nPagesAllocated > nPagesAllocatedAfterDeallocate)
+            ? (nPagesAllocated - nPagesAllocatedAfterDeallocate) : 0);
+        target.writeCounter(
+            "DatabaseDeallocateOldIncomplete", deallocateOldIncomplete);
     }
     if (pTempSegment) {
         target.writeCounter(
@@ -913,10 +929,19 @@ bool Database::areSnapshotsEnabled() const
     return (forceTxns && !disableSnapshots);
 }
 
-void Database::deallocateOldPages(TxnId oldestLabelCsn)
+bool Database::deallocateOldPages(TxnId oldestLabelCsn, uint64_t maxPages)
 {
     uint iSegAlloc = 0;
     ExtentNum extentNum = 0;
+    if (maxPages) {
+        // resume an incomplete sweep
+        StrictMutexGuard mutexGuard(mutex);
+        if (deallocateOldIncomplete) {
+            iSegAlloc = deallocateOldSegAlloc;
+            extentNum = deallocateOldExtent;
+        }
+    }
+
     // REVIEW zfong 3/12/07 - Determine a good value for numPages.  This
     // corresponds to the number of pages we will deallocate during a single
     // iteration.  We will be holding the checkpoint mutex for the duration
@@ -925,6 +950,7 @@ void Database::deallocateOldPages(TxnId oldestLabelCsn)
     // would then require a large number of iterations to clean out all old
     // pages.
     uint numPages = 100;
+    uint64_t nPagesFreed = 0;
 
     // Determine the oldest active txnId.
     TxnId oldestActiveTxnId = pTxnLog->getOldestActiveTxnId();
@@ -951,6 +977,14 @@ void Database::deallocateOldPages(TxnId oldestLabelCsn)
             pDataSegment);
     bool morePages = true;
     do {
+        if (maxPages && (nPagesFreed >= maxPages)) {
+            // remember where to resume
+            StrictMutexGuard mutexGuard(mutex);
+            deallocateOldIncomplete = true;
+            deallocateOldSegAlloc = iSegAlloc;
+            deallocateOldExtent = extentNum;
+            return false;
+        }
         morePages =
             pVersionedRandomSegment->getOldPageIds(
                 iSegAlloc,
@@ -965,7 +999,7 @@ void Database::deallocateOldPages(TxnId oldestLabelCsn)
             SXMutexSharedGuard actionMutexGuard(
                 pCheckpointThread->getActionMutex());
             if (disableDeallocateOld) {
-                return;
+                return true;
             }
             pVersionedRandomSegment->deallocateOldPages(
                 oldPageSet,
@@ -973,9 +1007,19 @@ void Database::deallocateOldPages(TxnId oldestLabelCsn)
 
             actionMutexGuard.unlock();
             requestCheckpoint(CHECKPOINT_FLUSH_ALL, false);
+
+            nPagesFreed += oldPageSet.size();
+            StrictMutexGuard mutexGuard(mutex);
+            nOldPagesDeallocated += oldPageSet.size();
+            mutexGuard.unlock();
             oldPageSet.clear();
         }
     } while (morePages);
+
+    StrictMutexGuard mutexGuard(mutex);
+    nPagesAllocatedAfterDeallocate = pDataSegment->getAllocatedSizeInPages();
+    deallocateOldIncomplete = false;
+    return true;
 }
 
 TxnId Database::initiateBackup(
@@ -121,6 +121,31 @@ class FENNEL_DB_EXPORT Database
      */
     bool disableDeallocateOld;
 
+    /**
+     * Cumulative counter of old page versions freed by deallocateOldPages.
+     */
+    uint64_t nOldPagesDeallocated;
+
+    /**
+     * Number of allocated data pages when deallocateOldPages last completed
+     * a sweep over all allocation node pages; 0 until the first sweep after
+     * the database was opened.
+     */
+    BlockNum nPagesAllocatedAfterDeallocate;
+
+    /**
+     * True while a sweep which stopped at its page limit hasn't been
+     * resumed to completion.
+     */
+    bool deallocateOldIncomplete;
+
+    /**
+     * Position (segment allocation node and extent) at which an incomplete
+     * sweep resumes.
+     */
+    uint deallocateOldSegAlloc;
+    ExtentNum deallocateOldExtent;
+
     /**
      * Device used to read and write the backup file during backup and restore
      */
@@ -265,10 +290,21 @@ public:
      * any active transactions, as well as active labels marking snapshots
      * in time.
      *
+     * <p>With a page limit, the sweep over the allocation node pages stops
+     * after the batch which brings the number of pages freed to the limit
+     * (batches end on extent boundaries, so the limit may be exceeded by the
+     * pages of one extent), and the next call with a limit resumes where it
+     * stopped.  Without one, the whole segment is swept.
+     *
      * @param oldestLabelCsn the csn of the oldest active label; set to
      * NULL_TXN_ID if there are no active labels
+     *
+     * @param maxPages maximum number of pages to free, or 0 for no limit
+     *
+     * @return true if the sweep was completed, false if it stopped at
+     * maxPages
      */
-    void deallocateOldPages(TxnId oldestLabelCsn);
+    bool deallocateOldPages(TxnId oldestLabelCsn, uint64_t maxPages = 0);
 
     /**
      * Saves the id of the last committed transaction.
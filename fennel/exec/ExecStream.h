@@ -32,6 +32,42 @@
 
 FENNEL_BEGIN_NAMESPACE
 
+/**
+ * ExecStreamProfile accumulates execution statistics for a single stream
+ * while its graph is being profiled (see ExecStreamGraph::setProfiling).
+ * Times are in nanoseconds; CPU time is only available on platforms
+ * supporting per-thread CPU clocks, and is zero elsewhere.
+ */
+struct FENNEL_EXEC_EXPORT ExecStreamProfile
+{
+    /**
+     * Number of times the scheduler invoked execute on the stream.
+     */
+    uint64_t nExecuteCalls;
+
+    /**
+     * Elapsed wall-clock time spent inside execute.
+     */
+    uint64_t wallNanos;
+
+    /**
+     * Thread CPU time spent inside execute.
+     */
+    uint64_t cpuNanos;
+
+    inline explicit ExecStreamProfile()
+    {
+        reset();
+    }
+
+    inline void reset()
+    {
+        nExecuteCalls = 0;
+        wallNanos = 0;
+        cpuNanos = 0;
+    }
+};
+
 /**
  * ExecStream defines an abstract base for all execution objects which
  * process streams of data.  For more information, see ExecStreamDesign.
@@ -105,6 +141,12 @@ protected:
      */
     SharedCacheAccessor pScratchQuotaAccessor;
 
+    /**
+     * Execution statistics collected by the scheduler when the containing
+     * graph is being profiled; reset whenever the graph is opened.
+     */
+    ExecStreamProfile profile;
+
     /**
      * Constructor.  Note that derived class constructors must never take any
      * parameters in order to support deserialization.  See notes on method
@@ -151,6 +193,12 @@ public:
      */
     inline ExecStreamId getStreamId() const;
 
+    /**
+     * @return execution statistics for this stream; only maintained while
+     * the containing graph is being profiled
+     */
+    inline ExecStreamProfile &getProfile();
+
     /**
      * Initializes the buffer accessors for inputs to this stream.  This
      * method is only ever called once, before prepare.
@@ -306,6 +354,11 @@ inline ExecStreamGraph &ExecStream::getGraph() const
     return *pGraph;
 }
 
+inline ExecStreamProfile &ExecStream::getProfile()
+{
+    return profile;
+}
+
 FENNEL_END_NAMESPACE
 
 #endif
@@ -67,9 +67,35 @@ class FENNEL_EXEC_EXPORT ExecStreamBufAccessor
 
     uint cbBuffer;
 
+    /**
+     * Whether produced data should be walked to count tuples; only set
+     * while the containing graph is being profiled.
+     */
+    bool countingTuples;
+
+    /**
+     * Number of tuples produced since counters were last reset; only
+     * maintained when countingTuples is set.
+     */
+    uint64_t nTuplesProduced;
+
+    /**
+     * Number of bytes produced since counters were last reset.
+     */
+    uint64_t cbProduced;
+
     /** sets state to EXECBUF_EOS */
     inline void setEOS();
 
+    /**
+     * Accumulates production counters for a newly produced byte range.
+     *
+     * @param pStart start of produced data
+     *
+     * @param pEnd end of produced data
+     */
+    inline void countProduction(PConstBuffer pStart, PConstBuffer pEnd);
+
 public:
     inline explicit ExecStreamBufAccessor();
 
@@ -100,6 +126,25 @@ public:
      */
     inline void clear();
 
+    /**
+     * Resets the production counters maintained by this accessor.
+     *
+     * @param countTuples whether tuples (in addition to bytes) should be
+     * counted from now on; this costs a walk over each produced buffer
+     */
+    inline void resetCounters(bool countTuples);
+
+    /**
+     * @return number of tuples produced since resetCounters was last
+     * called with countTuples set, or 0 if tuples are not being counted
+     */
+    inline uint64_t getTuplesProduced() const;
+
+    /**
+     * @return number of bytes produced since resetCounters was last called
+     */
+    inline uint64_t getBytesProduced() const;
+
     /**
      * Provides empty buffer space into which producers will write data;
      * called by consumer.
@@ -395,6 +440,7 @@ inline ExecStreamBufAccessor::ExecStreamBufAccessor()
     state = EXECBUF_EOS;
     tupleFormat = TUPLE_FORMAT_STANDARD;
     cbBuffer = 0;
+    resetCounters(false);
 }
 
 inline bool ExecStreamBufAccessor::isProductionPossible() const
@@ -437,6 +483,42 @@ inline void ExecStreamBufAccessor::clear()
     tupleConsumptionAccessor.resetCurrentTupleBuf();
 }
 
+inline void ExecStreamBufAccessor::resetCounters(bool countTuples)
+{
+    countingTuples = countTuples && (tupleDesc.size() > 0);
+    nTuplesProduced = 0;
+    cbProduced = 0;
+}
+
+inline uint64_t ExecStreamBufAccessor::getTuplesProduced() const
+{
+    return nTuplesProduced;
+}
+
+inline uint64_t ExecStreamBufAccessor::getBytesProduced() const
+{
+    return cbProduced;
+}
+
+inline void ExecStreamBufAccessor::countProduction(
+    PConstBuffer pStart,
+    PConstBuffer pEnd)
+{
+    cbProduced += (pEnd - pStart);
+    if (!countingTuples) {
+        return;
+    }
+    if (tupleProductionAccessor.isFixedWidth()) {
+        nTuplesProduced +=
+            (pEnd - pStart) / tupleProductionAccessor.getMaxByteCount();
+        return;
+    }
+    while (pStart < pEnd) {
+        pStart += tupleProductionAccessor.getBufferByteCount(pStart);
+        ++nTuplesProduced;
+    }
+}
+
 inline void ExecStreamBufAccessor::provideBufferForProduction(
     PBuffer pStart,
     PBuffer pEnd,
@@ -468,6 +550,7 @@ inline void ExecStreamBufAccessor::provideBufferForConsumption(
     pConsumer = pBufStart;
     pProducer = pBufEnd;
     state = EXECBUF_OVERFLOW;
+    countProduction(pStart, pEnd);
 
     // indicate that this buffer is not reusable
     pBufStart = NULL;
@@ -603,6 +686,7 @@ inline void ExecStreamBufAccessor::produceData(PBuffer pEnd)
     assert(isProductionPossible());
     assert(pEnd > getProductionStart());
     assert(pEnd <= getProductionEnd());
+    countProduction(pProducer, pEnd);
     pProducer = pEnd;
     state = EXECBUF_NONEMPTY;
 }
@@ -45,7 +45,8 @@ SharedExecStreamGraph ExecStreamGraph::newExecStreamGraph()
 
 ExecStreamGraph::ExecStreamGraph()
     : pScheduler(NULL),
-      pDynamicParamManager(new DynamicParamManager())
+      pDynamicParamManager(new DynamicParamManager()),
+      profiling(false)
 {
 }
 
@@ -507,6 +508,7 @@ void ExecStreamGraphImpl::open()
         ExecStreamBufAccessor &bufAccessor =
             getBufAccessorFromEdge(*(edges.first));
         bufAccessor.clear();
+        bufAccessor.resetCounters(profiling);
     }
 
     // open streams in dataflow order (from producers to consumers)
@@ -525,6 +527,7 @@ void ExecStreamGraphImpl::openStream(SharedExecStream pStream)
     if (pErrorTarget) {
         pStream->initErrorSource(pErrorTarget, pStream->getName());
     }
+    pStream->getProfile().reset();
     pStream->open(false);
 }
 
@@ -73,6 +73,11 @@ protected:
      */
     SharedDynamicParamManager pDynamicParamManager;
 
+    /**
+     * Whether per-stream execution statistics should be collected.
+     */
+    bool profiling;
+
     explicit ExecStreamGraph();
 
 public:
@@ -95,6 +100,21 @@ public:
      */
     inline SharedDynamicParamManager getDynamicParamManager();
 
+    /**
+     * @return whether per-stream execution statistics are being collected
+     */
+    inline bool isProfiling() const;
+
+    /**
+     * Enables or disables collection of per-stream execution statistics
+     * (see ExecStream::getProfile and
+     * ExecStreamBufAccessor::getTuplesProduced).  Takes effect the next
+     * time the graph is opened; statistics are reset at that time.
+     *
+     * @param profiling whether to collect statistics
+     */
+    inline void setProfiling(bool profiling);
+
     /**
      * Sets the transaction within which this graph should execute.
      * The transaction is reset whenever the graph is closed.
@@ -447,6 +467,16 @@ inline SharedDynamicParamManager ExecStreamGraph::getDynamicParamManager()
     return pDynamicParamManager;
 }
 
+inline bool ExecStreamGraph::isProfiling() const
+{
+    return profiling;
+}
+
+inline void ExecStreamGraph::setProfiling(bool profilingInit)
+{
+    profiling = profilingInit;
+}
+
 FENNEL_END_NAMESPACE
 
 #endif
@@ -28,9 +28,29 @@
 #include "fennel/tuple/TuplePrinter.h"
 
 #include <fstream>
+#include <time.h>
+#include <boost/thread/xtime.hpp>
 
 FENNEL_BEGIN_CPPFILE("$Id$");
 
+static uint64_t getWallNanos()
+{
+    boost::xtime xt;
+    boost::xtime_get(&xt, boost::TIME_UTC);
+    return uint64_t(xt.sec) * 1000000000 + xt.nsec;
+}
+
+static uint64_t getThreadCpuNanos()
+{
+#ifdef CLOCK_THREAD_CPUTIME_ID
+    struct timespec ts;
+    if (clock_gettime(CLOCK_THREAD_CPUTIME_ID, &ts) == 0) {
+        return uint64_t(ts.tv_sec) * 1000000000 + ts.tv_nsec;
+    }
+#endif
+    return 0;
+}
+
 ExecStreamScheduler::ExecStreamScheduler(
     SharedTraceTarget pTraceTargetInit,
     std::string nameInit)
@@ -100,6 +120,31 @@ void ExecStreamScheduler::removeGraph(SharedExecStreamGraph pGraph)
     pGraph->pScheduler = NULL;
 }
 
+ExecStreamResult ExecStreamScheduler::executeStreamInstrumented(
+    ExecStream &stream,
+    ExecStreamQuantum const &quantum)
+{
+    if (tracingFine) {
+        tracePreExecution(stream, quantum);
+    }
+    ExecStreamResult rc;
+    if (stream.getGraph().isProfiling()) {
+        uint64_t wallStart = getWallNanos();
+        uint64_t cpuStart = getThreadCpuNanos();
+        rc = stream.execute(quantum);
+        ExecStreamProfile &profile = stream.getProfile();
+        ++profile.nExecuteCalls;
+        profile.wallNanos += getWallNanos() - wallStart;
+        profile.cpuNanos += getThreadCpuNanos() - cpuStart;
+    } else {
+        rc = stream.execute(quantum);
+    }
+    if (tracingFine) {
+        tracePostExecution(stream, rc);
+    }
+    return rc;
+}
+
 // Summary of per-stream trace levels:
 // TRACE_FINE: result of execution
 // TRACE_FINER: buffer states before and after, output after execution.
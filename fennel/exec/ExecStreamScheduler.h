@@ -21,6 +21,7 @@
 #define Fennel_ExecStreamScheduler_Included
 
 #include "fennel/exec/ExecStream.h"
+#include "fennel/exec/ExecStreamGraph.h"
 #include "fennel/common/TraceSource.h"
 
 #include <boost/utility.hpp>
@@ -56,7 +57,7 @@ protected:
         std::string name);
 
     /**
-     * Executes one stream, performing tracing if enabled.
+     * Executes one stream, performing tracing and profiling if enabled.
      *
      * @param stream stream to execute
      *
@@ -68,6 +69,20 @@ protected:
         ExecStream &stream,
         ExecStreamQuantum const &quantum);
 
+    /**
+     * Out-of-line slow path for executeStream, taken when either tracing
+     * or profiling is enabled.
+     *
+     * @param stream stream to execute
+     *
+     * @param quantum quantum controlling stream execution
+     *
+     * @return result of executing stream
+     */
+    ExecStreamResult executeStreamInstrumented(
+        ExecStream &stream,
+        ExecStreamQuantum const &quantum);
+
     /**
      * Traces before execution of a stream.
      *
@@ -249,11 +264,8 @@ inline ExecStreamResult ExecStreamScheduler::executeStream(
     ExecStream &stream,
     ExecStreamQuantum const &quantum)
 {
-    if (tracingFine) {
-        tracePreExecution(stream, quantum);
-        ExecStreamResult rc = stream.execute(quantum);
-        tracePostExecution(stream, rc);
-        return rc;
+    if (tracingFine || stream.getGraph().isProfiling()) {
+        return executeStreamInstrumented(stream, quantum);
     } else {
         return stream.execute(quantum);
     }
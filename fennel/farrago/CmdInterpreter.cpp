@@ -791,7 +791,7 @@ void CmdInterpreter::visit(ProxyCmdAlterSystemDeallocate &cmd)
     } else {
         uint64_t paramVal = cmd.getOldestLabelCsn();
         TxnId labelCsn = isMAXU(paramVal) ? NULL_TXN_ID : TxnId(paramVal);
-        pDb->deallocateOldPages(labelCsn);
+        pDb->deallocateOldPages(labelCsn, cmd.getMaxPages());
     }
 }
 
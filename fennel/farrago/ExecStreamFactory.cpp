@@ -27,6 +27,7 @@
 #include "fennel/lcs/LcsClusterReplaceExecStream.h"
 #include "fennel/lcs/LcsRowScanExecStream.h"
 #include "fennel/lcs/LcsCountAggExecStream.h"
+#include "fennel/lcs/LcsGroupAggExecStream.h"
 #include "fennel/lbm/LbmGeneratorExecStream.h"
 #include "fennel/lbm/LbmSplicerExecStream.h"
 #include "fennel/lbm/LbmSearchExecStream.h"
@@ -192,6 +193,12 @@ void ExecStreamFactory::readLcsRowScanStreamParams(
         LcsRowScanExecStreamParams::defaultSystemSamplingClumps;
     params.samplingRowCount = streamDef.getSamplingRowCount();
 
+    // a range end of 0 means the scan reads to the end of the table
+    params.ridRangeStart = LcsRid(streamDef.getRidRangeStart());
+    if (streamDef.getRidRangeEnd() > 0) {
+        params.ridRangeEnd = LcsRid(streamDef.getRidRangeEnd());
+    }
+
     CmdInterpreter::readTupleProjection(
         params.residualFilterCols,
         streamDef.getResidualFilterColumns());
@@ -742,9 +749,35 @@ void ExecStreamFactory::visit(ProxyLcsRowScanStreamDef &streamDef)
 
 void ExecStreamFactory::visit(ProxyLcsAggStreamDef &streamDef)
 {
-    LcsCountAggExecStreamParams params;
+    AggInvocationList aggInvocations;
+    SharedProxyAggInvocation pAggInvocation = streamDef.getAggInvocation();
+    for (; pAggInvocation; ++pAggInvocation) {
+        AggInvocation aggInvocation;
+        aggInvocation.aggFunction = pAggInvocation->getFunction();
+        aggInvocation.iInputAttr =
+            pAggInvocation->getInputAttributeIndex();
+        aggInvocations.push_back(aggInvocation);
+    }
+    int groupByKeyCount = streamDef.getGroupingPrefixSize();
+
+    // A lone COUNT(*) is answered from the row count alone
+    if (groupByKeyCount == 0
+        && (aggInvocations.empty()
+            || (aggInvocations.size() == 1
+                && aggInvocations[0].aggFunction == AGG_FUNC_COUNT
+                && aggInvocations[0].iInputAttr == -1)))
+    {
+        LcsCountAggExecStreamParams params;
+        readLcsRowScanStreamParams(params, streamDef);
+        embryo.init(new LcsCountAggExecStream(), params);
+        return;
+    }
+
+    LcsGroupAggExecStreamParams params;
     readLcsRowScanStreamParams(params, streamDef);
-    embryo.init(new LcsCountAggExecStream(), params);
+    params.aggInvocations = aggInvocations;
+    params.groupByKeyCount = groupByKeyCount;
+    embryo.init(new LcsGroupAggExecStream(), params);
 }
 
 void ExecStreamFactory::visit(ProxyLbmGeneratorStreamDef &streamDef)
@@ -764,6 +797,12 @@ void ExecStreamFactory::visit(ProxyLbmGeneratorStreamDef &streamDef)
         readDynamicParamId(streamDef.getInsertRowCountParamId());
     params.createIndex = streamDef.isCreateIndex();
 
+    // a range end of 0 means the index is built through the end of the table
+    params.ridRangeStart = LcsRid(streamDef.getRidRangeStart());
+    if (streamDef.getRidRangeEnd() > 0) {
+        params.ridRangeEnd = LcsRid(streamDef.getRidRangeEnd());
+    }
+
     embryo.init(new LbmGeneratorExecStream(), params);
 }
 
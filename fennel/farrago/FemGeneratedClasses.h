@@ -499,6 +499,8 @@ class FENNEL_FARRAGO_EXPORT ProxyCmdAlterSystemDeallocate
 : virtual public JniProxy, virtual public ProxyDatabaseCmd
 {
 public:
+int64_t getMaxPages();
+static jmethodID meth_getMaxPages;
 int64_t getOldestLabelCsn();
 static jmethodID meth_getOldestLabelCsn;
 };
@@ -1059,6 +1061,10 @@ SharedProxyTupleProjection getOutputProj();
 static jmethodID meth_getOutputProj;
 SharedProxyTupleProjection getResidualFilterColumns();
 static jmethodID meth_getResidualFilterColumns;
+int64_t getRidRangeEnd();
+static jmethodID meth_getRidRangeEnd;
+int64_t getRidRangeStart();
+static jmethodID meth_getRidRangeStart;
 int32_t getSamplingClumps();
 static jmethodID meth_getSamplingClumps;
 TableSamplingMode getSamplingMode();
@@ -1150,7 +1156,7 @@ static jmethodID meth_getSegmentLimitParamId;
 };
 
 class FENNEL_FARRAGO_EXPORT ProxyLcsAggStreamDef
-: virtual public JniProxy, virtual public ProxyLcsRowScanStreamDef
+: virtual public JniProxy, virtual public ProxyLcsRowScanStreamDef, virtual public ProxyAggStreamDef
 {
 public:
 };
@@ -35,6 +35,7 @@ jmethodID ProxyBufferingTupleStreamDef::meth_isMultipass = 0;
 jmethodID ProxyCalcTupleStreamDef::meth_isFilter = 0;
 jmethodID ProxyCalcTupleStreamDef::meth_getProgram = 0;
 jmethodID ProxyCartesianProductStreamDef::meth_isLeftOuter = 0;
+jmethodID ProxyCmdAlterSystemDeallocate::meth_getMaxPages = 0;
 jmethodID ProxyCmdAlterSystemDeallocate::meth_getOldestLabelCsn = 0;
 jmethodID ProxyCmdBeginTxn::meth_isReadOnly = 0;
 jmethodID ProxyCmdBeginTxnWithCsn::meth_getCsnHandle = 0;
@@ -172,6 +173,8 @@ jmethodID ProxyLcsRowScanStreamDef::meth_isFullScan = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_isHasExtraFilter = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getOutputProj = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getResidualFilterColumns = 0;
+jmethodID ProxyLcsRowScanStreamDef::meth_getRidRangeEnd = 0;
+jmethodID ProxyLcsRowScanStreamDef::meth_getRidRangeStart = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingClumps = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingMode = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingRate = 0;
@@ -303,6 +306,7 @@ visitTbl.addMethod(jClass,JniProxyVisitTable<FemVisitor>::SharedVisitorMethod(ne
 
 jClass = pEnv->FindClass("net/sf/farrago/fem/fennel/FemCmdAlterSystemDeallocate");
 visitTbl.addMethod(jClass,JniProxyVisitTable<FemVisitor>::SharedVisitorMethod(new JniProxyVisitTable<FemVisitor>::VisitorMethodImpl<ProxyCmdAlterSystemDeallocate>));
+ProxyCmdAlterSystemDeallocate::meth_getMaxPages = pEnv->GetMethodID(jClass,"getMaxPages","()J");
 ProxyCmdAlterSystemDeallocate::meth_getOldestLabelCsn = pEnv->GetMethodID(jClass,"getOldestLabelCsn","()J");
 
 jClass = pEnv->FindClass("net/sf/farrago/fem/fennel/FemCmdBeginTxn");
@@ -635,6 +639,8 @@ ProxyLcsRowScanStreamDef::meth_isFullScan = pEnv->GetMethodID(jClass,"isFullScan
 ProxyLcsRowScanStreamDef::meth_isHasExtraFilter = pEnv->GetMethodID(jClass,"isHasExtraFilter","()Z");
 ProxyLcsRowScanStreamDef::meth_getOutputProj = pEnv->GetMethodID(jClass,"getOutputProj","()Lnet/sf/farrago/fem/fennel/FemTupleProjection;");
 ProxyLcsRowScanStreamDef::meth_getResidualFilterColumns = pEnv->GetMethodID(jClass,"getResidualFilterColumns","()Lnet/sf/farrago/fem/fennel/FemTupleProjection;");
+ProxyLcsRowScanStreamDef::meth_getRidRangeEnd = pEnv->GetMethodID(jClass,"getRidRangeEnd","()J");
+ProxyLcsRowScanStreamDef::meth_getRidRangeStart = pEnv->GetMethodID(jClass,"getRidRangeStart","()J");
 ProxyLcsRowScanStreamDef::meth_getSamplingClumps = pEnv->GetMethodID(jClass,"getSamplingClumps","()I");
 ProxyLcsRowScanStreamDef::meth_getSamplingMode = pEnv->GetMethodID(jClass,"getSamplingMode","()Lnet/sf/farrago/fem/fennel/TableSamplingMode;");
 ProxyLcsRowScanStreamDef::meth_getSamplingRate = pEnv->GetMethodID(jClass,"getSamplingRate","()F");
@@ -914,6 +920,11 @@ bool ProxyCartesianProductStreamDef::isLeftOuter()
 return pEnv->CallBooleanMethod(jObject,meth_isLeftOuter);
 }
 
+int64_t ProxyCmdAlterSystemDeallocate::getMaxPages()
+{
+return pEnv->CallLongMethod(jObject,meth_getMaxPages);
+}
+
 int64_t ProxyCmdAlterSystemDeallocate::getOldestLabelCsn()
 {
 return pEnv->CallLongMethod(jObject,meth_getOldestLabelCsn);
@@ -1799,6 +1810,16 @@ if (!p->jObject) p.reset();
 return p;
 }
 
+int64_t ProxyLcsRowScanStreamDef::getRidRangeEnd()
+{
+return pEnv->CallLongMethod(jObject,meth_getRidRangeEnd);
+}
+
+int64_t ProxyLcsRowScanStreamDef::getRidRangeStart()
+{
+return pEnv->CallLongMethod(jObject,meth_getRidRangeStart);
+}
+
 int32_t ProxyLcsRowScanStreamDef::getSamplingClumps()
 {
 return pEnv->CallIntMethod(jObject,meth_getSamplingClumps);
@@ -79,6 +79,8 @@ jmethodID JniUtil::methShortValue = 0;
 jmethodID JniUtil::methDoubleValue = 0;
 jmethodID JniUtil::methFloatValue = 0;
 jmethodID JniUtil::methBooleanValue = 0;
+jmethodID JniUtil::methListAdd = 0;
+jmethodID JniUtil::methMapPut = 0;
 jmethodID JniUtil::methBase64Decode;
 jmethodID JniUtil::methUtilGetStackTrace;
 jclass JniUtil::classUtil;
@@ -248,6 +250,13 @@ jint JniUtil::init(JavaVM *pVmInit)
         classIterator, "hasNext", "()Z");
     methNext = pEnv->GetMethodID(
         classIterator, "next", "()Ljava/lang/Object;");
+    jclass classList = pEnv->FindClass("java/util/List");
+    methListAdd = pEnv->GetMethodID(
+        classList, "add", "(Ljava/lang/Object;)Z");
+    jclass classMap = pEnv->FindClass("java/util/Map");
+    methMapPut = pEnv->GetMethodID(
+        classMap, "put",
+        "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
     methGetJavaStreamHandle = pEnv->GetMethodID(
         classFennelJavaStreamMap, "getJavaStreamHandle",
         "(I)J");
@@ -424,6 +424,12 @@ public:
     /** java.lang.Boolean.booleanValue() */
     static jmethodID methBooleanValue;
 
+    /** java.util.List.add(Object) */
+    static jmethodID methListAdd;
+
+    /** java.util.Map.put(Object, Object) */
+    static jmethodID methMapPut;
+
     /**
      * Initializes JNI debugging.
      *
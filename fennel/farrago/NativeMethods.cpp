@@ -23,6 +23,7 @@
 #include "fennel/farrago/JavaTransformExecStream.h"
 #include "fennel/farrago/JniUtil.h"
 #include "fennel/tuple/TupleAccessor.h"
+#include "fennel/tuple/TupleData.h"
 #include "fennel/tuple/AttributeAccessor.h"
 #include "fennel/farrago/Fem.h"
 #include "fennel/tuple/StandardTypeDescriptor.h"
@@ -31,6 +32,7 @@
 #include "fennel/segment/SegmentFactory.h"
 #include "fennel/db/Database.h"
 #include "fennel/exec/ExecStreamGraph.h"
+#include "fennel/exec/DynamicParam.h"
 #include "fennel/exec/ExecStreamScheduler.h"
 #include "fennel/exec/ExecStreamBufAccessor.h"
 #include "fennel/exec/ExecStreamGovernor.h"
@@ -184,10 +186,6 @@ Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphGetInputStreams(
 {
     JniEnvRef pEnv(pEnvInit);
     try {
-        // TODO lift these to JniUtil:
-        jclass classList = pEnv->FindClass("java/util/List");
-        jmethodID methListAdd =
-            pEnv->GetMethodID(classList, "add", "(Ljava/lang/Object;)Z");
         CmdInterpreter::StreamGraphHandle &streamGraphHandle =
             CmdInterpreter::getStreamGraphHandleFromLong(hStreamGraph);
         SharedExecStreamGraph pgraph = streamGraphHandle.pExecStreamGraph;
@@ -202,7 +200,142 @@ Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphGetInputStreams(
                 pgraph->getStreamInput(base->getStreamId(), i);
             assert(input);
             jstring inputName = pEnv->NewStringUTF(input->getName().c_str());
-            pEnv->CallObjectMethod(inputStreamNameList, methListAdd, inputName);
+            pEnv->CallObjectMethod(
+                inputStreamNameList, JniUtil::methListAdd, inputName);
+        }
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphSetProfiling(
+    JNIEnv *pEnvInit, jclass, jlong hStreamGraph, jboolean profiling)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        CmdInterpreter::StreamGraphHandle &streamGraphHandle =
+            CmdInterpreter::getStreamGraphHandleFromLong(hStreamGraph);
+        SharedExecStreamGraph pgraph = streamGraphHandle.pExecStreamGraph;
+        assert(pgraph);
+        pgraph->setProfiling(profiling);
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphGetProfile(
+    JNIEnv *pEnvInit, jclass, jlong hStreamGraph, jobject profileMap)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        CmdInterpreter::StreamGraphHandle &streamGraphHandle =
+            CmdInterpreter::getStreamGraphHandleFromLong(hStreamGraph);
+        SharedExecStreamGraph pgraph = streamGraphHandle.pExecStreamGraph;
+        assert(pgraph);
+
+        // layout must match FennelStreamProfile
+        const uint nValues = 7;
+        std::vector<SharedExecStream> streams = pgraph->getSortedStreams();
+        for (uint i = 0; i < streams.size(); i++) {
+            ExecStream &stream = *(streams[i]);
+            ExecStreamId id = stream.getStreamId();
+            ExecStreamProfile &profile = stream.getProfile();
+            jlong values[nValues];
+            values[0] = profile.nExecuteCalls;
+            values[1] = profile.wallNanos;
+            values[2] = profile.cpuNanos;
+            values[3] = 0;
+            values[4] = 0;
+            values[5] = 0;
+            values[6] = 0;
+            uint nInputs = pgraph->getInputCount(id);
+            for (uint j = 0; j < nInputs; j++) {
+                SharedExecStreamBufAccessor pAccessor =
+                    pgraph->getStreamInputAccessor(id, j);
+                values[3] += pAccessor->getTuplesProduced();
+                values[5] += pAccessor->getBytesProduced();
+            }
+            uint nOutputs = pgraph->getOutputCount(id);
+            for (uint j = 0; j < nOutputs; j++) {
+                SharedExecStreamBufAccessor pAccessor =
+                    pgraph->getStreamOutputAccessor(id, j);
+                values[4] += pAccessor->getTuplesProduced();
+                values[6] += pAccessor->getBytesProduced();
+            }
+            jlongArray valueArray = pEnv->NewLongArray(nValues);
+            pEnv->SetLongArrayRegion(valueArray, 0, nValues, values);
+            jstring streamName = pEnv->NewStringUTF(stream.getName().c_str());
+            pEnv->CallObjectMethod(
+                profileMap, JniUtil::methMapPut, streamName, valueArray);
+            pEnv->DeleteLocalRef(streamName);
+            pEnv->DeleteLocalRef(valueArray);
+        }
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphWriteParams(
+    JNIEnv *pEnvInit, jclass, jlong hStreamGraph, jintArray jParamIds,
+    jintArray jTypeOrdinals, jbooleanArray jNullables,
+    jintArray jStorageSizes, jbyteArray jTupleBytes)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        CmdInterpreter::StreamGraphHandle &streamGraphHandle =
+            CmdInterpreter::getStreamGraphHandleFromLong(hStreamGraph);
+        SharedExecStreamGraph pgraph = streamGraphHandle.pExecStreamGraph;
+        assert(pgraph);
+
+        uint nParams = pEnv->GetArrayLength(jParamIds);
+        if (!nParams) {
+            return;
+        }
+        std::vector<jint> paramIds(nParams);
+        std::vector<jint> typeOrdinals(nParams);
+        std::vector<jboolean> nullables(nParams);
+        std::vector<jint> storageSizes(nParams);
+        pEnv->GetIntArrayRegion(jParamIds, 0, nParams, &(paramIds[0]));
+        pEnv->GetIntArrayRegion(
+            jTypeOrdinals, 0, nParams, &(typeOrdinals[0]));
+        pEnv->GetBooleanArrayRegion(jNullables, 0, nParams, &(nullables[0]));
+        pEnv->GetIntArrayRegion(
+            jStorageSizes, 0, nParams, &(storageSizes[0]));
+
+        // TODO:  should take database handle and use its factory instead
+        StandardTypeDescriptorFactory typeFactory;
+        TupleDescriptor tupleDesc;
+        for (uint i = 0; i < nParams; ++i) {
+            tupleDesc.push_back(
+                TupleAttributeDescriptor(
+                    typeFactory.newDataType(
+                        StoredTypeDescriptor::Ordinal(typeOrdinals[i])),
+                    nullables[i],
+                    storageSizes[i]));
+        }
+
+        uint cbTuple = pEnv->GetArrayLength(jTupleBytes);
+        std::vector<FixedBuffer> tupleBuffer(cbTuple);
+        pEnv->GetByteArrayRegion(
+            jTupleBytes, 0, cbTuple,
+            reinterpret_cast<jbyte *>(&(tupleBuffer[0])));
+        TupleAccessor tupleAccessor;
+        tupleAccessor.compute(tupleDesc);
+        tupleAccessor.setCurrentTupleBuf(&(tupleBuffer[0]));
+        TupleData tupleData(tupleDesc);
+        tupleAccessor.unmarshal(tupleData);
+
+        // The graph deletes all of its parameters when it is closed, but a
+        // failed open may leave them behind, so reuse any which exist.
+        SharedDynamicParamManager pParamManager =
+            pgraph->getDynamicParamManager();
+        for (uint i = 0; i < nParams; ++i) {
+            DynamicParamId paramId(paramIds[i]);
+            pParamManager->createParam(paramId, tupleDesc[i], false);
+            pParamManager->writeParam(paramId, tupleData[i]);
         }
     } catch (std::exception &ex) {
         pEnv.handleExcn(ex);
@@ -86,6 +86,30 @@ JNIEXPORT jlong JNICALL Java_net_sf_farrago_fennel_FennelStorage_executeJavaCmd
 JNIEXPORT void JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphGetInputStreams
   (JNIEnv *, jclass, jlong, jstring, jobject);
 
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamGraphSetProfiling
+ * Signature: (JZ)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphSetProfiling
+  (JNIEnv *, jclass, jlong, jboolean);
+
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamGraphGetProfile
+ * Signature: (JLjava/util/Map;)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphGetProfile
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamGraphWriteParams
+ * Signature: (J[I[I[Z[I[B)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphWriteParams
+  (JNIEnv *, jclass, jlong, jintArray, jintArray, jbooleanArray, jintArray, jbyteArray);
+
 /*
  * Class:     net_sf_farrago_fennel_FennelStorage
  * Method:    tupleStreamGraphOpen
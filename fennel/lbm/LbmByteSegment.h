@@ -139,6 +139,57 @@ public:
         return total;
     }
 
+    /**
+     * ANDs one array of bitmap bytes into another, a machine word at a time
+     * where possible.  The arrays may be unaligned but must not overlap.
+     *
+     * @param pDest array receiving the result
+     *
+     * @param pSrc array to AND into pDest
+     *
+     * @param len number of bytes in each array
+     */
+    static void andBytes(PBuffer pDest, PConstBuffer pSrc, uint len)
+    {
+        uint i = 0;
+        for (; i + sizeof(uint64_t) <= len; i += sizeof(uint64_t)) {
+            uint64_t dest, src;
+            memcpy(&dest, pDest + i, sizeof(uint64_t));
+            memcpy(&src, pSrc + i, sizeof(uint64_t));
+            dest &= src;
+            memcpy(pDest + i, &dest, sizeof(uint64_t));
+        }
+        for (; i < len; i++) {
+            pDest[i] &= pSrc[i];
+        }
+    }
+
+    /**
+     * Clears the bits of one array of bitmap bytes that are set in another,
+     * a machine word at a time where possible.  The arrays may be unaligned
+     * but must not overlap.
+     *
+     * @param pDest array receiving the result
+     *
+     * @param pSrc array whose bits are cleared from pDest
+     *
+     * @param len number of bytes in each array
+     */
+    static void andNotBytes(PBuffer pDest, PConstBuffer pSrc, uint len)
+    {
+        uint i = 0;
+        for (; i + sizeof(uint64_t) <= len; i += sizeof(uint64_t)) {
+            uint64_t dest, src;
+            memcpy(&dest, pDest + i, sizeof(uint64_t));
+            memcpy(&src, pSrc + i, sizeof(uint64_t));
+            dest &= ~src;
+            memcpy(pDest + i, &dest, sizeof(uint64_t));
+        }
+        for (; i < len; i++) {
+            pDest[i] &= ~pSrc[i];
+        }
+    }
+
     static void verifyBitsInByte()
     {
         for (uint i = 0; i < 256; i++) {
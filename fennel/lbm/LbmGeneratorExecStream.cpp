@@ -26,6 +26,13 @@
 
 FENNEL_BEGIN_CPPFILE("$Id$");
 
+LbmGeneratorExecStreamParams::LbmGeneratorExecStreamParams()
+{
+    createIndex = false;
+    ridRangeStart = LcsRid(0);
+    ridRangeEnd = LcsRid(MAXU);
+}
+
 void LbmGeneratorExecStream::prepare(LbmGeneratorExecStreamParams const &params)
 {
     BTreeExecStream::prepare(params);
@@ -35,6 +42,11 @@ void LbmGeneratorExecStream::prepare(LbmGeneratorExecStreamParams const &params)
     assert(opaqueToInt(insertRowCountParamId) > 0);
 
     createIndex = params.createIndex;
+    ridRangeStart = params.ridRangeStart;
+    ridRangeEnd = params.ridRangeEnd;
+    assert(ridRangeStart < ridRangeEnd);
+    assert(createIndex
+        || (ridRangeStart == LcsRid(0) && ridRangeEnd == LcsRid(MAXU)));
     parameterIds.resize(nClusters);
     for (uint i = 0; i < nClusters; i++) {
         parameterIds[i] = params.lcsClusterScanDefs[i].rootPageIdParamId;
@@ -88,8 +100,12 @@ void LbmGeneratorExecStream::open(bool restart)
     revertToSingletons = false;
     ridRuns.clear();
     if (!restart) {
+        // when an index is created from several rid ranges, the generators
+        // for each range share the parameter
         pDynamicParamManager->createParam(
-            insertRowCountParamId, inAccessors[0]->getTupleDesc()[0]);
+            insertRowCountParamId,
+            inAccessors[0]->getTupleDesc()[0],
+            !createIndex);
 
         // set the rootPageIds of the clusters, if there are dynamic parameters
         // corresponding to them
@@ -165,8 +181,12 @@ ExecStreamResult LbmGeneratorExecStream::execute(
         LcsRidRun ridRun;
         if (createIndex) {
             numRowsToLoad = 0;
-            ridRun.nRids = RecordNum(MAXU);
-            startRid = LcsRid(0);
+            if (ridRangeEnd == LcsRid(MAXU)) {
+                ridRun.nRids = RecordNum(MAXU);
+            } else {
+                ridRun.nRids = opaqueToInt(ridRangeEnd - ridRangeStart);
+            }
+            startRid = ridRangeStart;
         } else {
             numRowsToLoad =
                 *reinterpret_cast<RecordNum const *> (inputTuple[0].pData);
@@ -279,7 +299,9 @@ ExecStreamResult LbmGeneratorExecStream::generateSingleKeyBitmaps(
         batchRead = false;
         revertToSingletons = false;
         SharedLcsClusterReader &pScan = pClusters[0];
-        if (!pScan->nextRange()) {
+        if (!pScan->nextRange()
+            || pScan->getRangeStartRid() >= ridRangeEnd)
+        {
             return EXECRC_EOS;
         }
         pScan->clusterCols[0].sync();
@@ -295,6 +317,10 @@ ExecStreamResult LbmGeneratorExecStream::generateMultiKeyBitmaps(
     for (uint i = 0; i < quantum.nTuplesMax; i++) {
         uint prevClusterEnd = 0;
         if (!skipRead) {
+            if (currRid >= ridRangeEnd) {
+                return EXECRC_EOS;
+            }
+
             // reset buffer before loading new values, in case previous
             // row contained nulls
             bitmapTuple.resetBuffer();
@@ -370,8 +396,18 @@ bool LbmGeneratorExecStream::generateBitmaps()
     LcsColumnReader &colReader = pClusters[0]->clusterCols[0];
     uint nDistinctVals = colReader.getBatchValCount();
 
-    // only read rows beginning at startRid
-    uint nRows = pClusters[0]->getRangeRowsLeft();
+    // only read rows beginning at startRid, and none past the end of the
+    // rid range; once the batch has been read, the number of rows is
+    // fixed by the keycodes read
+    uint nRows;
+    if (batchRead) {
+        nRows = keyCodes.size();
+    } else {
+        nRows = pClusters[0]->getRangeRowsLeft();
+        if (ridRangeEnd - currRid < LcsRid(nRows)) {
+            nRows = opaqueToInt(ridRangeEnd - currRid);
+        }
+    }
 
     // if first time through, setup the keycode array and read the batch
     if (!batchRead) {
@@ -536,7 +572,7 @@ bool LbmGeneratorExecStream::generateSingletons()
         if (!flushEntry(0)) {
             // advance now so the next time we come in here, we'll
             // be correctly positioned on the next rid
-            if (!advanceReader(pScan)) {
+            if (currRid >= ridRangeEnd || !advanceReader(pScan)) {
                 // if we're at the end of the batch, avoid coming
                 // back in here until the new batch is read
                 batchRead = true;
@@ -544,10 +580,10 @@ bool LbmGeneratorExecStream::generateSingletons()
             return false;
         }
 
-        // advance to the next rid; if at the end of the batch,
-        // return to caller; else, continue reading from current
-        // batch
-        if (!advanceReader(pScan)) {
+        // advance to the next rid; if at the end of the batch or the
+        // rid range, return to caller; else, continue reading from
+        // current batch
+        if (currRid >= ridRangeEnd || !advanceReader(pScan)) {
             return true;
         }
     } while (true);
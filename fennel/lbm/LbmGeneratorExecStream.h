@@ -66,6 +66,21 @@ struct LbmGeneratorExecStreamParams
      * statement
      */
     bool createIndex;
+
+    /**
+     * First rid indexed by a create index statement.  Together with
+     * ridRangeEnd, this lets several generators build the same index, each
+     * from a disjoint range of rids.
+     */
+    LcsRid ridRangeStart;
+
+    /**
+     * Rid past the last one indexed by a create index statement, or
+     * LcsRid(MAXU) to index through the end of the table
+     */
+    LcsRid ridRangeEnd;
+
+    explicit LbmGeneratorExecStreamParams();
 };
 
 /**
@@ -168,6 +183,17 @@ class FENNEL_LBM_EXPORT LbmGeneratorExecStream
      */
     LcsRid currRid;
 
+    /**
+     * First rid indexed when creating an index
+     */
+    LcsRid ridRangeStart;
+
+    /**
+     * Rid past the last one indexed when creating an index; LcsRid(MAXU) if
+     * the remainder of the table is indexed
+     */
+    LcsRid ridRangeEnd;
+
     /**
      * Tuple data with buffer for the bitmap tuple
      */
@@ -20,6 +20,7 @@
 #include "fennel/common/CommonPreamble.h"
 #include "fennel/exec/ExecStreamBufAccessor.h"
 #include "fennel/lbm/LbmIntersectExecStream.h"
+#include "fennel/lbm/LbmByteSegment.h"
 
 FENNEL_BEGIN_CPPFILE("$Id$");
 
@@ -101,25 +102,20 @@ bool LbmIntersectExecStream::intersectSegments(uint len)
     PBuffer currByteSeg;
     uint currLen;
 
-    // initialize temporary buffer with all 1's
-    for (uint i = 0; i < len; i++) {
-        pByteSegBuf[i] = 0xff;
-    }
-
     // retrieve each current segment and perform the AND operation
     for (uint i = 0; i < nInputs; i++) {
         segmentReaders[i].readCurrentByteSegment(
             currRid, currByteSeg, currLen);
+        // byte segments are stored in reverse order, so currByteSeg points
+        // to the end of the buffer; the len bytes ending there line up with
+        // pByteSegBuf, which is filled in the same order
+        PConstBuffer pOverlap = currByteSeg - len + 1;
         if (i == 0) {
             addRid = currRid;
+            memcpy(pByteSegBuf, pOverlap, len);
         } else {
             permAssert(addRid == currRid);
-        }
-        // byte segments are stored in reverse order, so currByteSeg points
-        // to the end of the buffer whereas pByteSegBuf points to the
-        // beginning but needs to be filled in backwards
-        for (int j = 0; j < len; j++) {
-            pByteSegBuf[len - j - 1] &= currByteSeg[-j];
+            LbmByteSegment::andBytes(pByteSegBuf, pOverlap, len);
         }
     }
 
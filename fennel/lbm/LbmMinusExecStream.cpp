@@ -21,6 +21,7 @@
 #include "fennel/exec/ExecStreamBufAccessor.h"
 #include "fennel/exec/ExecStreamGraphImpl.h"
 #include "fennel/lbm/LbmMinusExecStream.h"
+#include "fennel/lbm/LbmByteSegment.h"
 
 FENNEL_BEGIN_CPPFILE("$Id:");
 
@@ -426,12 +427,11 @@ ExecStreamResult LbmMinusExecStream::minusSegments(
         currLen = std::min(currLen, baseLen - offset);
 
         // minus from the minuend -- note that segments are stored
-        // backwards
-        PBuffer out = pByteSegBuf + baseLen - 1 - offset;
-        uint len = currLen;
-        while (len--) {
-            *out-- &= ~(*currByteSeg--);
-        }
+        // backwards, so the overlapping bytes end at the given offsets
+        LbmByteSegment::andNotBytes(
+            pByteSegBuf + baseLen - offset - currLen,
+            currByteSeg - currLen + 1,
+            currLen);
 
         // advance the subtrahend by the amount read in; note that we don't
         // return if this subtrahend has reached EOS, as there may still be
@@ -24,6 +24,12 @@
 
 FENNEL_BEGIN_CPPFILE("$Id$");
 
+/**
+ * Smallest number of sorted residual filter intervals for which
+ * applyFilters binary searches the intervals rather than testing each one.
+ */
+static const uint LCS_FILTER_BINARY_SEARCH_MIN = 8;
+
 void LcsColumnReader::sync()
 {
     // Get batch using column's offset within cluster
@@ -182,45 +188,79 @@ bool LcsColumnReader::applyFilters(
         return (filters.filteringBitmap.test(getCurrentValueCode()));
     }
 
-    for (uint k = 0; k < filters.filterData.size(); k++) {
-        LcsResidualFilter *filter = filters.filterData[k].get();
-
-        if (filter->lowerBoundDirective != SEARCH_UNBOUNDED_LOWER) {
-            int c = filters.inputKeyDesc.compareTuples(
-                filter->boundData, filters.lowerBoundProj,
-                outputTupleData, filters.readerKeyProj);
+    uint nFilters = filters.filterData.size();
 
-            if (filter->lowerBoundDirective == SEARCH_CLOSED_LOWER) {
-                if (c > 0) {
-                    continue;
-                }
+    if (filters.filterDataSorted && nFilters >= LCS_FILTER_BINARY_SEARCH_MIN) {
+        /*
+         * The intervals are ascending and disjoint (e.g. a long IN list),
+         * so the only one that can contain the value is the first whose
+         * upper bound the value does not exceed.
+         */
+        uint iLo = 0, iHi = nFilters;
+        while (iLo < iHi) {
+            uint iMid = (iLo + iHi) / 2;
+            if (passesUpperBound(
+                    filters.filterData[iMid].get(), outputTupleData))
+            {
+                iHi = iMid;
             } else {
-                if (c >= 0) {
-                    continue;
-                }
+                iLo = iMid + 1;
             }
         }
+        return (iLo < nFilters)
+            && passesLowerBound(
+                filters.filterData[iLo].get(), outputTupleData);
+    }
 
-        if (filter->upperBoundDirective == SEARCH_UNBOUNDED_UPPER) {
+    for (uint k = 0; k < nFilters; k++) {
+        LcsResidualFilter *filter = filters.filterData[k].get();
+
+        if (passesLowerBound(filter, outputTupleData)
+            && passesUpperBound(filter, outputTupleData))
+        {
             return true;
         }
+    }
 
-        int c = filters.inputKeyDesc.compareTuples(
-            filter->boundData, filters.upperBoundProj,
-            outputTupleData, filters.readerKeyProj);
+    return false;
+}
 
-        if (filter->upperBoundDirective == SEARCH_CLOSED_UPPER) {
-            if (c >= 0) {
-                return true;
-            }
-        } else {
-            if (c > 0) {
-                return true;
-            }
-        }
+bool LcsColumnReader::passesLowerBound(
+    LcsResidualFilter *filter,
+    TupleData &outputTupleData)
+{
+    if (filter->lowerBoundDirective == SEARCH_UNBOUNDED_LOWER) {
+        return true;
     }
 
-    return false;
+    int c = filters.inputKeyDesc.compareTuples(
+        filter->boundData, filters.lowerBoundProj,
+        outputTupleData, filters.readerKeyProj);
+
+    if (filter->lowerBoundDirective == SEARCH_CLOSED_LOWER) {
+        return (c <= 0);
+    } else {
+        return (c < 0);
+    }
+}
+
+bool LcsColumnReader::passesUpperBound(
+    LcsResidualFilter *filter,
+    TupleData &outputTupleData)
+{
+    if (filter->upperBoundDirective == SEARCH_UNBOUNDED_UPPER) {
+        return true;
+    }
+
+    int c = filters.inputKeyDesc.compareTuples(
+        filter->boundData, filters.upperBoundProj,
+        outputTupleData, filters.readerKeyProj);
+
+    if (filter->upperBoundDirective == SEARCH_CLOSED_UPPER) {
+        return (c >= 0);
+    } else {
+        return (c > 0);
+    }
 }
 
 uint LcsColumnReader::findVal(
@@ -152,6 +152,32 @@ class FENNEL_LCS_EXPORT LcsColumnReader
      */
     void buildContainsMap();
 
+    /**
+     * Tests a value against the lower bound of a filter predicate.
+     *
+     * @param filter the filter predicate
+     *
+     * @param outputTupleData is the TupleData to compare with
+     *
+     * @return true iff the value is not below the lower bound
+     */
+    bool passesLowerBound(
+        LcsResidualFilter *filter,
+        TupleData &outputTupleData);
+
+    /**
+     * Tests a value against the upper bound of a filter predicate.
+     *
+     * @param filter the filter predicate
+     *
+     * @param outputTupleData is the TupleData to compare with
+     *
+     * @return true iff the value is not above the upper bound
+     */
+    bool passesUpperBound(
+        LcsResidualFilter *filter,
+        TupleData &outputTupleData);
+
 public:
     /**
      * Initializes a scan of column "colOrdInit"
@@ -166,6 +192,7 @@ public:
         colOrd = colOrdInit;
         filters.hasResidualFilters = false;
         filters.filterDataInitialized = false;
+        filters.filterDataSorted = false;
         allProj.push_back(0);
     }
 
@@ -0,0 +1,391 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+
+#include "fennel/common/CommonPreamble.h"
+#include "fennel/lcs/LcsGroupAggExecStream.h"
+#include "fennel/exec/ExecStreamBufAccessor.h"
+#include "fennel/tuple/StandardTypeDescriptor.h"
+
+FENNEL_BEGIN_CPPFILE("$Id$");
+
+LcsGroupAggExecStream::LcsGroupAggExecStream()
+{
+    pKeyCluster = NULL;
+    pKeyColumn = NULL;
+    scanDone = false;
+    flushing = false;
+    cbGroup = 0;
+    nScanPages = 0;
+    cbPage = 0;
+    cbGroupTableMax = 0;
+    iNextGroup = 0;
+    cbOutputBuffer = 0;
+    pOutputTupleAccessor = NULL;
+}
+
+ExecStreamBufProvision LcsGroupAggExecStream::getOutputBufProvision() const
+{
+    return BUFPROV_PRODUCER;
+}
+
+void LcsGroupAggExecStream::prepare(LcsGroupAggExecStreamParams const &params)
+{
+    LcsRowScanExecStream::prepare(params);
+
+    // Scanned rows are described by the leading entries of projDescriptor;
+    // the rest are residual filter columns.
+    groupByKeyCount = params.groupByKeyCount;
+    assert(groupByKeyCount <= params.outputProj.size());
+    for (uint i = 0; i < groupByKeyCount; i++) {
+        permAssert(params.outputProj[i] != LCS_RID_COLUMN_ID);
+        keyDesc.push_back(projDescriptor[i]);
+    }
+    keyLookupData.compute(keyDesc);
+
+    StandardTypeDescriptorFactory stdTypeFactory;
+    TupleAttributeDescriptor countDesc(
+        stdTypeFactory.newDataType(STANDARD_TYPE_INT_64));
+
+    aggInvocations = params.aggInvocations;
+    for (AggInvocationConstIter pInvocation(aggInvocations.begin());
+         pInvocation != aggInvocations.end();
+         ++pInvocation)
+    {
+        TupleAttributeDescriptor const *pInputAttr = NULL;
+        if (pInvocation->iInputAttr != -1) {
+            assert(pInvocation->iInputAttr < params.outputProj.size());
+            pInputAttr = &(projDescriptor[pInvocation->iInputAttr]);
+        }
+        switch (pInvocation->aggFunction) {
+        case AGG_FUNC_COUNT:
+            accumulatorDesc.push_back(countDesc);
+            break;
+        case AGG_FUNC_SUM:
+        case AGG_FUNC_MIN:
+        case AGG_FUNC_MAX:
+            // Output type is same as input type, but nullable
+            accumulatorDesc.push_back(*pInputAttr);
+            accumulatorDesc.back().isNullable = true;
+            break;
+        default:
+            permFail("unsupported aggregate function");
+        }
+        aggComputers.push_back(
+            AggComputer::newAggComputer(
+                pInvocation->aggFunction,
+                pInputAttr));
+        aggComputers.back().setInputAttrIndex(pInvocation->iInputAttr);
+    }
+
+    // Sanity check:  the output shape we computed should agree with
+    // the descriptor supplied in the plan.
+    TupleDescriptor const &outputDesc = pOutAccessor->getTupleDesc();
+    assert(outputDesc.size() == keyDesc.size() + accumulatorDesc.size());
+    outputData.compute(outputDesc);
+
+    // When grouping by a single column, remember which column reader
+    // reads it, so that its dictionary codes can be used.
+    pKeyCluster = NULL;
+    pKeyColumn = NULL;
+    if (groupByKeyCount == 1 && !allSpecial) {
+        for (uint i = 0; i < projMap.size(); i++) {
+            if (projMap[i] != 0) {
+                continue;
+            }
+            uint iCol = i - nonClusterCols.size();
+            for (uint iClu = 0; iClu < nClusters; iClu++) {
+                if (iCol < pClusters[iClu]->nColsToRead) {
+                    pKeyCluster = pClusters[iClu].get();
+                    pKeyColumn = &(pKeyCluster->clusterCols[iCol]);
+                    break;
+                }
+                iCol -= pClusters[iClu]->nColsToRead;
+            }
+            break;
+        }
+    }
+
+    // Estimate the memory used by a group the way addGroup allocates it,
+    // plus the map node and shared pointer bookkeeping.
+    TupleAccessor keyAccessor;
+    keyAccessor.compute(keyDesc, TUPLE_FORMAT_ALL_FIXED);
+    TupleAccessor accumulatorAccessor;
+    accumulatorAccessor.compute(accumulatorDesc, TUPLE_FORMAT_ALL_FIXED);
+    cbGroup =
+        sizeof(Group) + sizeof(SharedGroup) + 8 * sizeof(void *)
+        + keyAccessor.getMaxByteCount()
+        + 2 * accumulatorAccessor.getMaxByteCount();
+
+    pOutputTupleAccessor = &(pOutAccessor->getScratchTupleAccessor());
+    cbPage = params.scratchAccessor.pSegment->getUsablePageSize();
+    cbOutputBuffer = std::max(pOutputTupleAccessor->getMaxByteCount(), cbPage);
+    outputBuffer.reset(new FixedBuffer[cbOutputBuffer]);
+}
+
+void LcsGroupAggExecStream::getResourceRequirements(
+    ExecStreamResourceQuantity &minQuantity,
+    ExecStreamResourceQuantity &optQuantity,
+    ExecStreamResourceSettingType &optType)
+{
+    LcsRowScanExecStream::getResourceRequirements(minQuantity, optQuantity);
+    nScanPages = minQuantity.nCachePages;
+
+    // The group table needs at least a page; ask for enough to hold as many
+    // groups as the optimizer expects, and make sure the opt is bigger than
+    // the min so that the resource governor considers giving us extra.
+    uint nOptGroupPages =
+        (uint) ((uint64_t(OptimumGroupCount) * cbGroup + cbPage - 1) / cbPage);
+    minQuantity.nCachePages += 1;
+    optQuantity.nCachePages =
+        nScanPages + std::max(2U, nOptGroupPages);
+    optType = EXEC_RESOURCE_ESTIMATE;
+}
+
+void LcsGroupAggExecStream::setResourceAllocation(
+    ExecStreamResourceQuantity &quantity)
+{
+    LcsRowScanExecStream::setResourceAllocation(quantity);
+    uint nGroupPages =
+        (quantity.nCachePages > nScanPages)
+        ? quantity.nCachePages - nScanPages
+        : 1;
+    cbGroupTableMax = uint64_t(nGroupPages) * cbPage;
+}
+
+void LcsGroupAggExecStream::open(bool restart)
+{
+    LcsRowScanExecStream::open(restart);
+    groups.clear();
+    pGroupMap.reset(new GroupMap(GroupKeyLess(&keyDesc)));
+    keyBatchStartRid = LcsRid(MAXU);
+    codeGroups.clear();
+    scanDone = false;
+    flushing = false;
+    iNextGroup = 0;
+}
+
+bool LcsGroupAggExecStream::produceRow(TupleData const &rowData)
+{
+    Group *pGroup;
+
+    if (pKeyColumn && pKeyColumn->batchIsCompressed()) {
+        // Within a compressed batch, rows with the same key value share a
+        // dictionary code, so only the first row with each code needs to
+        // look up its group.
+        if (pKeyCluster->getRangeStartRid() != keyBatchStartRid) {
+            keyBatchStartRid = pKeyCluster->getRangeStartRid();
+            codeGroups.assign(pKeyColumn->getBatchValCount(), NULL);
+        }
+        Group *&pCodeGroup = codeGroups[pKeyColumn->getCurrentValueCode()];
+        if (!pCodeGroup) {
+            pCodeGroup = findGroup(rowData);
+            if (!pCodeGroup) {
+                if (isGroupTableFull()) {
+                    flushing = true;
+                    return false;
+                }
+                pCodeGroup = addGroup(rowData);
+                return true;
+            }
+        }
+        pGroup = pCodeGroup;
+    } else {
+        pGroup = findGroup(rowData);
+        if (!pGroup) {
+            if (isGroupTableFull()) {
+                flushing = true;
+                return false;
+            }
+            addGroup(rowData);
+            return true;
+        }
+    }
+
+    updateGroup(*pGroup, rowData);
+    return true;
+}
+
+bool LcsGroupAggExecStream::isGroupTableFull() const
+{
+    return !groups.empty()
+        && uint64_t(groups.size() + 1) * cbGroup > cbGroupTableMax;
+}
+
+void LcsGroupAggExecStream::clearGroups()
+{
+    groups.clear();
+    pGroupMap->clear();
+    keyBatchStartRid = LcsRid(MAXU);
+    codeGroups.clear();
+    iNextGroup = 0;
+}
+
+LcsGroupAggExecStream::Group *LcsGroupAggExecStream::findGroup(
+    TupleData const &rowData)
+{
+    for (uint i = 0; i < groupByKeyCount; i++) {
+        keyLookupData[i] = rowData[i];
+    }
+    GroupMap::const_iterator iter = pGroupMap->find(&keyLookupData);
+    if (iter == pGroupMap->end()) {
+        return NULL;
+    }
+    return iter->second;
+}
+
+LcsGroupAggExecStream::Group *LcsGroupAggExecStream::addGroup(
+    TupleData const &rowData)
+{
+    SharedGroup pGroup(new Group());
+    if (groupByKeyCount > 0) {
+        pGroup->keyData.computeAndAllocate(keyDesc);
+        for (uint i = 0; i < groupByKeyCount; i++) {
+            pGroup->keyData[i].memCopyFrom(rowData[i]);
+        }
+    }
+    pGroup->accumulatorData[0].computeAndAllocate(accumulatorDesc);
+    pGroup->accumulatorData[1].computeAndAllocate(accumulatorDesc);
+    pGroup->iCurrent = 0;
+    for (uint i = 0; i < aggComputers.size(); i++) {
+        aggComputers[i].initAccumulator(
+            pGroup->accumulatorData[0][i],
+            rowData);
+    }
+    groups.push_back(pGroup);
+    pGroupMap->insert(GroupMap::value_type(&(pGroup->keyData), pGroup.get()));
+    return pGroup.get();
+}
+
+void LcsGroupAggExecStream::addEmptyGroup()
+{
+    SharedGroup pGroup(new Group());
+    pGroup->accumulatorData[0].computeAndAllocate(accumulatorDesc);
+    pGroup->iCurrent = 0;
+    for (uint i = 0; i < aggComputers.size(); i++) {
+        if (aggInvocations[i].aggFunction == AGG_FUNC_COUNT) {
+            aggComputers[i].clearAccumulator(pGroup->accumulatorData[0][i]);
+        } else {
+            pGroup->accumulatorData[0][i].pData = NULL;
+        }
+    }
+    groups.push_back(pGroup);
+}
+
+void LcsGroupAggExecStream::updateGroup(
+    Group &group,
+    TupleData const &rowData)
+{
+    TupleDataWithBuffer &src = group.accumulatorData[group.iCurrent];
+    TupleDataWithBuffer &dest = group.accumulatorData[1 - group.iCurrent];
+    dest.resetBuffer();
+    for (uint i = 0; i < aggComputers.size(); i++) {
+        aggComputers[i].updateAccumulator(src[i], dest[i], rowData);
+    }
+    group.iCurrent = 1 - group.iCurrent;
+}
+
+void LcsGroupAggExecStream::computeOutput(Group &group)
+{
+    for (uint i = 0; i < groupByKeyCount; i++) {
+        outputData[i] = group.keyData[i];
+    }
+    TupleData const &accumulatorData =
+        group.accumulatorData[group.iCurrent];
+    for (uint i = 0; i < aggComputers.size(); i++) {
+        outputData[groupByKeyCount + i] = accumulatorData[i];
+    }
+}
+
+ExecStreamResult LcsGroupAggExecStream::execute(
+    ExecStreamQuantum const &quantum)
+{
+    if (pOutAccessor->hasPendingEOS()
+        || pOutAccessor->getState() == EXECBUF_EOS)
+    {
+        return EXECRC_EOS;
+    }
+
+    if (pOutAccessor->getState() != EXECBUF_EMPTY
+        && pOutAccessor->getState() != EXECBUF_UNDERFLOW)
+    {
+        return EXECRC_BUF_OVERFLOW;
+    }
+
+    if (flushing && iNextGroup == groups.size()) {
+        // The partial groups have all been consumed; start over with an
+        // empty table, and let the scan produce the row which did not fit.
+        clearGroups();
+        flushing = false;
+    }
+
+    if (!scanDone && !flushing) {
+        ExecStreamResult rc = LcsRowScanExecStream::execute(quantum);
+        if (rc == EXECRC_EOS) {
+            // The scan marked EOS on the output buffer; undo that until all
+            // of the groups have been produced.
+            pOutAccessor->clear();
+            scanDone = true;
+
+            // Aggregation without a GROUP BY always produces a row.
+            if (groupByKeyCount == 0 && groups.empty()) {
+                addEmptyGroup();
+            }
+        } else if (!flushing) {
+            return rc;
+        }
+    }
+
+    // Marshal as many groups as will fit into the output buffer.
+    PBuffer pStart = outputBuffer.get();
+    PBuffer pEnd = pStart + cbOutputBuffer;
+    PBuffer pNext = pStart;
+    while (iNextGroup < groups.size()) {
+        computeOutput(*(groups[iNextGroup]));
+        uint cbTuple = pOutputTupleAccessor->getByteCount(outputData);
+        if (pNext + cbTuple > pEnd) {
+            break;
+        }
+        pOutputTupleAccessor->marshal(outputData, pNext);
+        pNext += cbTuple;
+        ++iNextGroup;
+    }
+
+    if (pNext > pStart) {
+        pOutAccessor->provideBufferForConsumption(pStart, pNext);
+    }
+    if (iNextGroup == groups.size() && !flushing) {
+        pOutAccessor->markEOS();
+        if (pNext == pStart) {
+            return EXECRC_EOS;
+        }
+    }
+    return EXECRC_BUF_OVERFLOW;
+}
+
+void LcsGroupAggExecStream::closeImpl()
+{
+    LcsRowScanExecStream::closeImpl();
+    pGroupMap.reset();
+    groups.clear();
+    codeGroups.clear();
+}
+
+FENNEL_END_CPPFILE("$Id$");
+
+// End LcsGroupAggExecStream.cpp
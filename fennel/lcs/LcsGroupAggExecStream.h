@@ -0,0 +1,316 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+
+#ifndef Fennel_LcsGroupAggExecStream_Included
+#define Fennel_LcsGroupAggExecStream_Included
+
+#include "fennel/lcs/LcsRowScanExecStream.h"
+#include "fennel/exec/AggComputer.h"
+#include "fennel/exec/AggInvocation.h"
+#include "fennel/tuple/TupleDataWithBuffer.h"
+
+#include <boost/scoped_array.hpp>
+#include <boost/scoped_ptr.hpp>
+#include <boost/shared_ptr.hpp>
+#include <map>
+#include <vector>
+
+FENNEL_BEGIN_NAMESPACE
+
+/**
+ * Parameters specific to the LCS grouped aggregation execution stream.
+ */
+struct FENNEL_LCS_EXPORT LcsGroupAggExecStreamParams
+    : public LcsRowScanExecStreamParams
+{
+    /**
+     * Aggregate function calls; input attribute indexes are relative to the
+     * columns projected by outputProj.
+     */
+    AggInvocationList aggInvocations;
+
+    /**
+     * Number of leading columns of outputProj which make up the group key.
+     */
+    int groupByKeyCount;
+
+    explicit LcsGroupAggExecStreamParams()
+    {
+        groupByKeyCount = 0;
+    }
+};
+
+/**
+ * LcsGroupAggExecStream computes SUM, COUNT, MIN and MAX aggregates, with or
+ * without a GROUP BY, while scanning a column store table, rather than
+ * returning the rows scanned.  Groups are kept in memory, so the optimizer
+ * only uses this stream when the number of groups is expected to be small.
+ *
+ * <p>The group table is charged to the resource governor as cache pages on
+ * top of those needed by the scan, and is limited to the pages granted.  If
+ * the estimate was wrong and a new group does not fit, the groups so far are
+ * produced as partial results and the table starts over empty, so the same
+ * key may be produced more than once; the optimizer aggregates the output of
+ * a grouped scan again to combine them.
+ *
+ * <p>When grouping by a single column, rows from a compressed batch of that
+ * column are matched to their group by dictionary code: each distinct value
+ * in the batch is looked up once, and every other row only indexes an array.
+ * Rows from fixed and variable mode batches, where there are no codes, and
+ * rows grouped by several columns are looked up by value.
+ *
+ * @version $Id$
+ */
+class FENNEL_LCS_EXPORT LcsGroupAggExecStream
+    : public LcsRowScanExecStream
+{
+    /**
+     * Key and accumulators for a single group.  An AggComputer updates a
+     * source accumulator into a separate destination, so there are two sets
+     * of accumulators, which take turns being current.
+     */
+    struct Group
+    {
+        TupleDataWithBuffer keyData;
+        TupleDataWithBuffer accumulatorData[2];
+        uint iCurrent;
+    };
+
+    typedef boost::shared_ptr<Group> SharedGroup;
+
+    /**
+     * Orders group keys the same way GROUP BY compares them, with all nulls
+     * equal to one another.
+     */
+    class GroupKeyLess
+    {
+        TupleDescriptor const *pKeyDesc;
+
+    public:
+        explicit GroupKeyLess(TupleDescriptor const *pKeyDescInit)
+        {
+            pKeyDesc = pKeyDescInit;
+        }
+
+        bool operator()(TupleData const *pKey1, TupleData const *pKey2) const
+        {
+            return pKeyDesc->compareTuples(*pKey1, *pKey2) < 0;
+        }
+    };
+
+    typedef std::map<TupleData const *, Group *, GroupKeyLess> GroupMap;
+
+    /**
+     * Number of groups the optimum resource request makes room for; the
+     * optimizer only expects to use this stream for as many groups.
+     */
+    static const uint OptimumGroupCount = 10000;
+
+    AggInvocationList aggInvocations;
+
+    AggComputerList aggComputers;
+
+    uint groupByKeyCount;
+
+    /**
+     * Descriptor for the group key columns, which lead the scanned rows.
+     */
+    TupleDescriptor keyDesc;
+
+    /**
+     * Descriptor for the accumulators, which are also the aggregate outputs.
+     */
+    TupleDescriptor accumulatorDesc;
+
+    /**
+     * Group key of the current scanned row, referencing the row's data.
+     */
+    TupleData keyLookupData;
+
+    /**
+     * Groups in the order they were first seen.
+     */
+    std::vector<SharedGroup> groups;
+
+    /**
+     * Groups indexed by key.
+     */
+    boost::scoped_ptr<GroupMap> pGroupMap;
+
+    /**
+     * Cluster reader containing the group key column, or NULL if rows are
+     * not grouped by a single cluster column.
+     */
+    LcsClusterReader *pKeyCluster;
+
+    /**
+     * Column reader for the group key column, or NULL.
+     */
+    LcsColumnReader *pKeyColumn;
+
+    /**
+     * Start rid of the key column batch which codeGroups belongs to.
+     */
+    LcsRid keyBatchStartRid;
+
+    /**
+     * Group for each dictionary code of the current key column batch, or
+     * NULL for a code which has not been seen yet in the batch.
+     */
+    std::vector<Group *> codeGroups;
+
+    /**
+     * True once all rows have been scanned and groups are being produced.
+     */
+    bool scanDone;
+
+    /**
+     * True while the group table is full and its groups are being produced
+     * before the scan resumes.
+     */
+    bool flushing;
+
+    /**
+     * Estimated memory used by a single group, including its key,
+     * accumulators and map entry.
+     */
+    uint cbGroup;
+
+    /**
+     * Number of cache pages needed by the scan, excluding the group table.
+     */
+    uint nScanPages;
+
+    /**
+     * Size of a cache page.
+     */
+    uint cbPage;
+
+    /**
+     * Memory the group table may use, based on the resources granted.
+     */
+    uint64_t cbGroupTableMax;
+
+    /**
+     * Index of the next group to be produced.
+     */
+    uint iNextGroup;
+
+    /**
+     * Output tuple, referencing the key and accumulators of a group.
+     */
+    TupleData outputData;
+
+    /**
+     * Buffer holding the output tuples to provide to the consumers.
+     */
+    boost::scoped_array<FixedBuffer> outputBuffer;
+
+    /**
+     * Size of outputBuffer.
+     */
+    uint cbOutputBuffer;
+
+    /**
+     * Convenience reference to the scratch tuple accessor
+     * contained in pOutAccessor.
+     */
+    TupleAccessor *pOutputTupleAccessor;
+
+    /**
+     * Finds the group a scanned row belongs to.
+     *
+     * @param rowData scanned row
+     *
+     * @return group, or NULL if no row with the same key has been seen
+     */
+    Group *findGroup(TupleData const &rowData);
+
+    /**
+     * Adds a group, initializing its accumulators from its first row.
+     *
+     * @param rowData first row of the group
+     *
+     * @return new group
+     */
+    Group *addGroup(TupleData const &rowData);
+
+    /**
+     * Determines whether a new group would exceed the memory granted to the
+     * group table.  There is always room for one group.
+     *
+     * @return true if the current groups must be produced before adding
+     * another
+     */
+    bool isGroupTableFull() const;
+
+    /**
+     * Discards all groups, after they have been produced.
+     */
+    void clearGroups();
+
+    /**
+     * Adds the group produced by aggregation without a GROUP BY when no rows
+     * were scanned: COUNTs are 0, and other aggregates null.
+     */
+    void addEmptyGroup();
+
+    /**
+     * Updates the accumulators of a group with a row.
+     *
+     * @param group group to update
+     *
+     * @param rowData scanned row belonging to the group
+     */
+    void updateGroup(Group &group, TupleData const &rowData);
+
+    /**
+     * Points outputData at the key and accumulators of a group.
+     *
+     * @param group group to produce
+     */
+    void computeOutput(Group &group);
+
+protected:
+    // override LcsRowScanExecStream
+    virtual bool produceRow(TupleData const &rowData);
+
+public:
+    explicit LcsGroupAggExecStream();
+
+    virtual void prepare(LcsGroupAggExecStreamParams const &params);
+    virtual void open(bool restart);
+    virtual ExecStreamResult execute(ExecStreamQuantum const &quantum);
+    virtual void getResourceRequirements(
+        ExecStreamResourceQuantity &minQuantity,
+        ExecStreamResourceQuantity &optQuantity,
+        ExecStreamResourceSettingType &optType);
+    virtual void setResourceAllocation(
+        ExecStreamResourceQuantity &quantity);
+    virtual void closeImpl();
+
+    // override SingleOutputExecStream
+    virtual ExecStreamBufProvision getOutputBufProvision() const;
+};
+
+FENNEL_END_NAMESPACE
+
+#endif
+
+// End LcsGroupAggExecStream.h
@@ -101,6 +101,13 @@ struct LcsResidualColumnFilters
      */
     bool filterDataInitialized;
 
+    /**
+     * True if the intervals in filterData are in ascending order and
+     * strictly separated from one another, so that applyFilters may
+     * binary search them instead of testing each one
+     */
+    bool filterDataSorted;
+
     /**
      * Values bitmap for compressed batch filtering.
      */
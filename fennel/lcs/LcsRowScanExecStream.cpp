@@ -28,6 +28,12 @@ FENNEL_BEGIN_CPPFILE("$Id$");
 
 int32_t LcsRowScanExecStreamParams::defaultSystemSamplingClumps = 10;
 
+LcsRowScanExecStreamParams::LcsRowScanExecStreamParams()
+{
+    ridRangeStart = LcsRid(0);
+    ridRangeEnd = LcsRid(MAXU);
+}
+
 LcsRowScanExecStream::LcsRowScanExecStream()
 :
     LcsRowScanBaseExecStream(),
@@ -128,6 +134,11 @@ void LcsRowScanExecStream::prepare(LcsRowScanExecStreamParams const &params)
 
     isFullScan = params.isFullScan;
     hasExtraFilter = params.hasExtraFilter;
+    ridRangeStart = params.ridRangeStart;
+    ridRangeEnd = params.ridRangeEnd;
+    assert(ridRangeStart < ridRangeEnd);
+    assert(isFullScan
+        || (ridRangeStart == LcsRid(0) && ridRangeEnd == LcsRid(MAXU)));
 
     // Set up rid bitmap input stream
     ridTupleData.compute(inAccessors[0]->getTupleDesc());
@@ -172,6 +183,8 @@ void LcsRowScanExecStream::prepare(LcsRowScanExecStreamParams const &params)
 
     /* configure sampling */
     samplingMode = params.samplingMode;
+    assert(samplingMode == SAMPLING_OFF
+        || (ridRangeStart == LcsRid(0) && ridRangeEnd == LcsRid(MAXU)));
 
     if (samplingMode != SAMPLING_OFF) {
         samplingRate = params.samplingRate;
@@ -212,7 +225,7 @@ void LcsRowScanExecStream::open(bool restart)
     ridRunIter.reset();
 
     if (isFullScan) {
-        inputRid = LcsRid(0);
+        inputRid = ridRangeStart;
         readDeletedRid = true;
         deletedRidEos = false;
     }
@@ -316,11 +329,36 @@ bool LcsRowScanExecStream::initializeFiltersIfNeeded()
                 return false;
             }
         }
+        filters[iFilterToInitialize]->filterDataSorted =
+            isFilterDataSorted(*filters[iFilterToInitialize]);
         filters[iFilterToInitialize]->filterDataInitialized = true;
     }
     return true;
 }
 
+bool LcsRowScanExecStream::isFilterDataSorted(
+    LcsResidualColumnFilters &filter)
+{
+    for (uint k = 1; k < filter.filterData.size(); k++) {
+        LcsResidualFilter *prev = filter.filterData[k - 1].get();
+        LcsResidualFilter *next = filter.filterData[k].get();
+
+        if (prev->upperBoundDirective == SEARCH_UNBOUNDED_UPPER
+            || next->lowerBoundDirective == SEARCH_UNBOUNDED_LOWER)
+        {
+            return false;
+        }
+
+        int c = filter.inputKeyDesc.compareTuples(
+            prev->boundData, filter.upperBoundProj,
+            next->boundData, filter.lowerBoundProj);
+        if (c >= 0) {
+            return false;
+        }
+    }
+    return true;
+}
+
 
 void LcsRowScanExecStream::initializeSystemSampling()
 {
@@ -502,7 +540,7 @@ ExecStreamResult LcsRowScanExecStream::execute(ExecStreamQuantum const &quantum)
         if (!isCountAgg) {
             projOutputTupleData.projectFrom(outputTupleData, outputProj);
             if (tupleFound) {
-                if (!pOutAccessor->produceTuple(projOutputTupleData)) {
+                if (!produceRow(projOutputTupleData)) {
                     return EXECRC_BUF_OVERFLOW;
                 }
             }
@@ -560,8 +598,12 @@ ExecStreamResult LcsRowScanExecStream::fillRidRunBuffer()
                     readDeletedRid = false;
                 }
             }
-            // skip over deleted rids
-            if (!deletedRidEos && inputRid == deletedRid) {
+            // skip over deleted rids, including those before the start
+            // of the rid range
+            if (!deletedRidEos && deletedRid < inputRid) {
+                readDeletedRid = true;
+                continue;
+            } else if (!deletedRidEos && inputRid == deletedRid) {
                 inputRid++;
                 readDeletedRid = true;
                 continue;
@@ -572,6 +614,19 @@ ExecStreamResult LcsRowScanExecStream::fillRidRunBuffer()
                     nRows = opaqueToInt(deletedRid - inputRid);
                 }
             }
+
+            // stop at the end of the rid range
+            if (ridRangeEnd != LcsRid(MAXU)) {
+                if (inputRid >= ridRangeEnd) {
+                    ridRunsBuilt = true;
+                    break;
+                }
+                RecordNum nRowsLeft = opaqueToInt(ridRangeEnd - inputRid);
+                if (nRows >= nRowsLeft) {
+                    nRows = nRowsLeft;
+                    ridRunsBuilt = true;
+                }
+            }
         }
 
         if (samplingMode != SAMPLING_OFF) {
@@ -682,6 +737,7 @@ void LcsRowScanExecStream::closeImpl()
 
     for (uint i = 0; i < nFilters; i++) {
         filters[i]->filterData.clear();
+        filters[i]->filterDataSorted = false;
     }
 }
 
@@ -714,6 +770,11 @@ void LcsRowScanExecStream::buildOutputProj(
     }
 }
 
+bool LcsRowScanExecStream::produceRow(TupleData const &rowData)
+{
+    return pOutAccessor->produceTuple(rowData);
+}
+
 RecordNum LcsRowScanExecStream::getRowCount() const
 {
     return nRidsRead;
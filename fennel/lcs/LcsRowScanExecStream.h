@@ -98,6 +98,21 @@ struct FENNEL_LCS_EXPORT LcsRowScanExecStreamParams
      * specific to sampling.
      */
     int64_t samplingRowCount;
+
+    /**
+     * First rid read by a full table scan.  Together with ridRangeEnd, this
+     * lets several scans of the same table each read a disjoint range of
+     * rids.
+     */
+    LcsRid ridRangeStart;
+
+    /**
+     * Rid past the last one read by a full table scan, or LcsRid(MAXU) to
+     * read to the end of the table.
+     */
+    LcsRid ridRangeEnd;
+
+    explicit LcsRowScanExecStreamParams();
 };
 
 /**
@@ -280,6 +295,17 @@ class FENNEL_LCS_EXPORT LcsRowScanExecStream
      */
     int64_t rowCount;
 
+    /**
+     * First rid read by a full table scan
+     */
+    LcsRid ridRangeStart;
+
+    /**
+     * Rid past the last one read by a full table scan; LcsRid(MAXU) if the
+     * scan reads to the end of the table
+     */
+    LcsRid ridRangeEnd;
+
     /**
      * True if completed building rid runs
      */
@@ -314,6 +340,16 @@ class FENNEL_LCS_EXPORT LcsRowScanExecStream
      */
     bool initializeFiltersIfNeeded();
 
+    /**
+     * Determines whether the intervals of a residual filter are in
+     * ascending order with no two intervals sharing a bound value.
+     *
+     * @param filter the residual filter, with its filterData read
+     *
+     * @return true iff filterData may be binary searched
+     */
+    bool isFilterDataSorted(LcsResidualColumnFilters &filter);
+
     /**
      * initializes the filter data structures during prepare time
      *
@@ -339,6 +375,18 @@ protected:
      */
     void setCountAgg();
 
+    /**
+     * Passes on a row which has been read and has passed all filters.  The
+     * default implementation writes the row to the output buffer.
+     *
+     * @param rowData the row, projected as specified by the outputProj
+     * parameter
+     *
+     * @return false if the row could not be consumed because the output
+     * buffer is full; true otherwise
+     */
+    virtual bool produceRow(TupleData const &rowData);
+
     /**
      * @return number of rows matching all filters so far
      */
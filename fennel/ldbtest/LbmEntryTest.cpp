@@ -21,6 +21,7 @@
 #include "fennel/test/SegStorageTestBase.h"
 #include "fennel/tuple/StandardTypeDescriptor.h"
 #include "fennel/lbm/LbmEntry.h"
+#include "fennel/lbm/LbmByteSegment.h"
 #include "fennel/cache/Cache.h"
 #include <stdarg.h>
 #include <hash_set>
@@ -121,6 +122,21 @@ class LbmEntryTest : virtual public SegStorageTestBase
 
     void testMergeSingletonRandom(uint totalRids, uint ridRange);
 
+    /**
+     * Checks LbmByteSegment::andBytes or andNotBytes against a byte at a
+     * time loop, for random bitmap bytes.
+     *
+     * @param len number of bytes to combine
+     * @param srcOffset offset of the source bytes from a word boundary
+     * @param destOffset offset of the destination bytes from a word boundary
+     * @param pattern 0 for unrelated bytes, 1 for identical source and
+     * destination bytes, 2 for source and destination bytes with no bits in
+     * common
+     * @param andNot true to test andNotBytes rather than andBytes
+     */
+    void checkAndBytes(
+        uint len, uint srcOffset, uint destOffset, uint pattern, bool andNot);
+
 public:
     explicit LbmEntryTest()
     {
@@ -133,6 +149,7 @@ public:
         FENNEL_UNIT_TEST_CASE(LbmEntryTest, testldb35);
         FENNEL_UNIT_TEST_CASE(LbmEntryTest, testler5920);
         FENNEL_UNIT_TEST_CASE(LbmEntryTest, testZeroBytes);
+        FENNEL_UNIT_TEST_CASE(LbmEntryTest, testAndBytes);
 
         FENNEL_UNIT_TEST_CASE(LbmEntryTest, testMergeSingletonInFront1);
         FENNEL_UNIT_TEST_CASE(LbmEntryTest, testMergeSingletonInFront2);
@@ -177,6 +194,7 @@ public:
     void testldb35();
     void testler5920();
     void testZeroBytes();
+    void testAndBytes();
     void testMergeSingletonInFront1();
     void testMergeSingletonInFront2();
     void testMergeSingletonMidSegment1();
@@ -1104,6 +1122,74 @@ void LbmEntryTest::testMergeSingleton(
     BOOST_REQUIRE(!(split && !splitOccurred));
 }
 
+void LbmEntryTest::testAndBytes()
+{
+    // Cover every alignment of source and destination, lengths on either
+    // side of multiples of the word size (including zero), and results which
+    // are all zeros (identical bytes for AND-NOT, disjoint bytes for AND).
+    uint maxLen = 3 * sizeof(uint64_t) + 1;
+    for (uint pattern = 0; pattern < 3; pattern++) {
+        for (uint len = 0; len <= maxLen; len++) {
+            for (uint srcOffset = 0; srcOffset < sizeof(uint64_t);
+                srcOffset++)
+            {
+                for (uint destOffset = 0; destOffset < sizeof(uint64_t);
+                    destOffset++)
+                {
+                    checkAndBytes(len, srcOffset, destOffset, pattern, false);
+                    checkAndBytes(len, srcOffset, destOffset, pattern, true);
+                }
+            }
+        }
+    }
+}
+
+void LbmEntryTest::checkAndBytes(
+    uint len, uint srcOffset, uint destOffset, uint pattern, bool andNot)
+{
+    // leave room on both sides to detect bytes written out of range
+    uint nBytes = len + 2 * sizeof(uint64_t);
+    boost::scoped_array<FixedBuffer> src(new FixedBuffer[nBytes]);
+    boost::scoped_array<FixedBuffer> dest(new FixedBuffer[nBytes]);
+    boost::scoped_array<FixedBuffer> expected(new FixedBuffer[nBytes]);
+    for (uint i = 0; i < nBytes; i++) {
+        src[i] = rand();
+        dest[i] = rand();
+    }
+    PBuffer pSrc = src.get() + srcOffset;
+    PBuffer pDest = dest.get() + destOffset;
+    for (uint i = 0; i < len; i++) {
+        if (pattern == 1) {
+            pSrc[i] = pDest[i];
+        } else if (pattern == 2) {
+            pDest[i] &= 0x55;
+            pSrc[i] &= 0xAA;
+        }
+    }
+
+    memcpy(expected.get(), dest.get(), nBytes);
+    PBuffer pExpected = expected.get() + destOffset;
+    for (uint i = 0; i < len; i++) {
+        if (andNot) {
+            pExpected[i] &= ~pSrc[i];
+        } else {
+            pExpected[i] &= pSrc[i];
+        }
+    }
+
+    if (andNot) {
+        LbmByteSegment::andNotBytes(pDest, pSrc, len);
+    } else {
+        LbmByteSegment::andBytes(pDest, pSrc, len);
+    }
+    BOOST_REQUIRE(memcmp(dest.get(), expected.get(), nBytes) == 0);
+    if ((pattern == 1 && andNot) || (pattern == 2 && !andNot)) {
+        for (uint i = 0; i < len; i++) {
+            BOOST_REQUIRE(pDest[i] == 0);
+        }
+    }
+}
+
 void LbmEntryTest::testMergeSingletonInFront1()
 {
     std::vector<LcsRid> ridValues;
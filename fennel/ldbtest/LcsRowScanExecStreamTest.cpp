@@ -22,6 +22,7 @@
 #include "fennel/lcs/LcsClusterAppendExecStream.h"
 #include "fennel/lcs/LcsRowScanExecStream.h"
 #include "fennel/lcs/LcsCountAggExecStream.h"
+#include "fennel/lcs/LcsGroupAggExecStream.h"
 #include "fennel/lbm/LbmEntry.h"
 #include "fennel/ldbtest/SamplingExecStreamGenerator.h"
 #include "fennel/btree/BTreeBuilder.h"
@@ -83,6 +84,14 @@ protected:
         BTreeDescriptor &bTreeDescriptor,
         bool compressed);
 
+    /**
+     * Loads a single cluster with one column per generator and nRows rows.
+     */
+    void loadCluster(
+        uint nRows,
+        vector<SharedInt64ColumnGenerator> const &columnGenerators,
+        BTreeDescriptor &bTreeDescriptor);
+
     /**
      * Reads rows from clusters.  Assumes clusters have been loaded by
      * loadClusters/loadOneCluster.
@@ -142,6 +151,63 @@ protected:
         bool compressed,
         LcsCountAggExecStreamParams *pCountParams = NULL);
 
+    /**
+     * Aggregates rows from a single cluster with two columns, the first
+     * containing each of 0, 1, 2, ... nDups times in a row, and the second
+     * containing 0, 1, 2, ...  Computes COUNT(*) and COUNT of the second
+     * column, and unless countOnly, also its SUM, MIN and MAX.
+     *
+     * @param nRows total number of rows in the cluster
+     *
+     * @param nDups number of rows per group; when not grouping, the number
+     * of rows
+     *
+     * @param groupByKeyCount 1 to group by the first column; 0 for none
+     *
+     * @param countOnly whether to compute only the COUNTs, as required when
+     * the other aggregates are null
+     *
+     * @param expectedNumRows expected number of groups
+     */
+    void testGroupAggCols(
+        uint nRows,
+        uint nDups,
+        uint groupByKeyCount,
+        bool countOnly,
+        uint expectedNumRows);
+
+    /**
+     * Performs a full scan of clusters loaded by loadClusters, restricted to
+     * a range of rids and skipping a set of deleted rids.  The rows expected
+     * in the scan result must have contiguous rids.
+     *
+     * @param nCols number of columns in each cluster
+     *
+     * @param nClusters number of clusters
+     *
+     * @param proj columns to be projected
+     *
+     * @param deletedRids rids in the deletion index, in ascending order
+     *
+     * @param ridRangeStart first rid read by the scan
+     *
+     * @param ridRangeEnd rid past the last one read by the scan, or
+     * LcsRid(MAXU) to read to the end of the clusters
+     *
+     * @param firstRid rid of the first row expected in the scan result
+     *
+     * @param expectedNumRows expected number of rows in scan result
+     */
+    void testRidRangeScanCols(
+        uint nCols,
+        uint nClusters,
+        TupleProjection proj,
+        vector<LcsRid> const &deletedRids,
+        LcsRid ridRangeStart,
+        LcsRid ridRangeEnd,
+        uint firstRid,
+        uint expectedNumRows);
+
     void setSearchKey(
         char lowerDirective,
         char upperDirective,
@@ -212,6 +278,21 @@ protected:
         uint nRows, uint skipRows, TupleDescriptor const &bitmapTupleDesc,
         PBuffer pBuf);
 
+    /**
+     * Generate bitmaps containing a list of rids
+     *
+     * @param rids rids to be set, in ascending order; must not be empty
+     *
+     * @param bitmapTupleDesc tuple descriptor for bitmap segment
+     *
+     * @param pBuf buffer where bitmap segment tuples will be marshalled
+     *
+     * @return size of the buffer containing the marshalled tuples
+     */
+    int generateRidBitmaps(
+        vector<LcsRid> const &rids, TupleDescriptor const &bitmapTupleDesc,
+        PBuffer pBuf);
+
     void produceEntry(
         LbmEntry &lbmEntry, TupleAccessor &bitmapTupleAccessor, PBuffer pBuf,
         int &bufSize);
@@ -228,6 +309,11 @@ public:
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testBernoulliSampling);
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testSystemSampling);
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testCount);
+        FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testGroupAgg);
+        FENNEL_UNIT_TEST_CASE(
+            LcsRowScanExecStreamTest, testGroupAggManyGroups);
+        FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testGroupAggEmpty);
+        FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testRidRangeScans);
     }
 
     void testCaseSetUp();
@@ -240,6 +326,10 @@ public:
     void testBernoulliSampling();
     void testSystemSampling();
     void testCount();
+    void testGroupAgg();
+    void testGroupAggManyGroups();
+    void testGroupAggEmpty();
+    void testRidRangeScans();
 };
 
 void LcsRowScanExecStreamTest::loadClusters(
@@ -265,15 +355,9 @@ void LcsRowScanExecStreamTest::loadOneCluster(
     BTreeDescriptor &bTreeDescriptor,
     bool compressed)
 {
-    MockProducerExecStreamParams mockParams;
-    for (uint i = 0; i < nCols; i++) {
-        mockParams.outputTupleDesc.push_back(attrDesc_int64);
-    }
-    mockParams.nRows = nRows;
-
     // generators for input stream load
 
-    vector<boost::shared_ptr<ColumnGenerator<int64_t> > > columnGenerators;
+    vector<SharedInt64ColumnGenerator> columnGenerators;
     for (uint i = 0; i < nCols; i++) {
         SharedInt64ColumnGenerator col =
             SharedInt64ColumnGenerator(
@@ -283,6 +367,20 @@ void LcsRowScanExecStreamTest::loadOneCluster(
                 : new SeqColumnGenerator(i + colStart));
         columnGenerators.push_back(col);
     }
+    loadCluster(nRows, columnGenerators, bTreeDescriptor);
+}
+
+void LcsRowScanExecStreamTest::loadCluster(
+    uint nRows,
+    vector<SharedInt64ColumnGenerator> const &columnGenerators,
+    BTreeDescriptor &bTreeDescriptor)
+{
+    uint nCols = columnGenerators.size();
+    MockProducerExecStreamParams mockParams;
+    for (uint i = 0; i < nCols; i++) {
+        mockParams.outputTupleDesc.push_back(attrDesc_int64);
+    }
+    mockParams.nRows = nRows;
     mockParams.pGenerator.reset(
         new CompositeExecStreamGenerator(columnGenerators));
 
@@ -442,6 +540,196 @@ void LcsRowScanExecStreamTest::testScanCols(
     verifyOutput(*pOutputStream, expectedNumRows, resultGenerator);
 }
 
+void LcsRowScanExecStreamTest::testRidRangeScanCols(
+    uint nCols,
+    uint nClusters,
+    TupleProjection proj,
+    vector<LcsRid> const &deletedRids,
+    LcsRid ridRangeStart,
+    LcsRid ridRangeEnd,
+    uint firstRid,
+    uint expectedNumRows)
+{
+    // setup a values stream to simulate the scan of the deletion index
+
+    ValuesExecStreamParams valuesParams;
+    boost::shared_array<FixedBuffer> pBuffer;
+    ExecStreamEmbryo valuesStreamEmbryo;
+    LcsRowScanExecStreamParams scanParams;
+
+    scanParams.hasExtraFilter = false;
+    scanParams.samplingMode = SAMPLING_OFF;
+    scanParams.isFullScan = true;
+    scanParams.ridRangeStart = ridRangeStart;
+    scanParams.ridRangeEnd = ridRangeEnd;
+
+    valuesParams.outputTupleDesc.push_back(attrDesc_int64);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+
+    // each rid produces at most one bitmap segment tuple
+    TupleAccessor bitmapTupleAccessor;
+    bitmapTupleAccessor.compute(valuesParams.outputTupleDesc);
+    uint bufferSize =
+        deletedRids.size() * bitmapTupleAccessor.getMaxByteCount();
+    pBuffer.reset(new FixedBuffer[bufferSize]);
+    valuesParams.pTupleBuffer = pBuffer;
+    valuesParams.bufSize = generateRidBitmaps(
+        deletedRids, valuesParams.outputTupleDesc, pBuffer.get());
+    assert(valuesParams.bufSize <= bufferSize);
+    valuesStreamEmbryo.init(new ValuesExecStream(), valuesParams);
+    valuesStreamEmbryo.getStream()->setName("ValuesExecStream");
+
+    // setup parameters into scan
+    //  nClusters cluster with nCols columns each
+
+    for (uint i = 0; i < nClusters; i++) {
+        struct LcsClusterScanDef clusterScanDef;
+
+        for (uint j = 0; j < nCols; j++) {
+            clusterScanDef.clusterTupleDesc.push_back(attrDesc_int64);
+        }
+
+        clusterScanDef.pSegment = bTreeClusters[i]->segmentAccessor.pSegment;
+        clusterScanDef.pCacheAccessor =
+            bTreeClusters[i]->segmentAccessor.pCacheAccessor;
+        clusterScanDef.tupleDesc = bTreeClusters[i]->tupleDescriptor;
+        clusterScanDef.keyProj = bTreeClusters[i]->keyProjection;
+        clusterScanDef.rootPageId = bTreeClusters[i]->rootPageId;
+        clusterScanDef.segmentId = bTreeClusters[i]->segmentId;
+        clusterScanDef.pageOwnerId = bTreeClusters[i]->pageOwnerId;
+
+        scanParams.lcsClusterScanDefs.push_back(clusterScanDef);
+    }
+
+    // setup projection
+    scanParams.outputProj = proj;
+    for (uint i = 0; i < proj.size(); i++) {
+        scanParams.outputTupleDesc.push_back(attrDesc_int64);
+    }
+
+    ExecStreamEmbryo scanStreamEmbryo;
+    scanStreamEmbryo.init(new LcsRowScanExecStream(), scanParams);
+    scanStreamEmbryo.getStream()->setName("RowScanExecStream");
+    SharedExecStream pOutputStream =
+        prepareTransformGraph(valuesStreamEmbryo, scanStreamEmbryo);
+
+    // column c of the row with rid r contains c + r
+
+    vector<SharedInt64ColumnGenerator> columnGenerators;
+    for (uint i = 0; i < proj.size(); i++) {
+        columnGenerators.push_back(
+            SharedInt64ColumnGenerator(
+                new SeqColumnGenerator(proj[i] + firstRid)));
+    }
+
+    CompositeExecStreamGenerator resultGenerator(columnGenerators);
+    verifyOutput(*pOutputStream, expectedNumRows, resultGenerator);
+}
+
+void LcsRowScanExecStreamTest::testGroupAggCols(
+    uint nRows,
+    uint nDups,
+    uint groupByKeyCount,
+    bool countOnly,
+    uint expectedNumRows)
+{
+    // full table scan -- the empty values stream stands in for the scan of
+    // the deletion index
+
+    ValuesExecStreamParams valuesParams;
+    valuesParams.outputTupleDesc.push_back(attrDesc_int64);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+    valuesParams.pTupleBuffer.reset(new FixedBuffer[16]);
+    valuesParams.bufSize = 0;
+
+    ExecStreamEmbryo valuesStreamEmbryo;
+    valuesStreamEmbryo.init(new ValuesExecStream(), valuesParams);
+    valuesStreamEmbryo.getStream()->setName("ValuesExecStream");
+
+    LcsGroupAggExecStreamParams aggParams;
+    aggParams.hasExtraFilter = false;
+    aggParams.samplingMode = SAMPLING_OFF;
+    aggParams.isFullScan = true;
+    aggParams.scratchAccessor =
+        pSegmentFactory->newScratchSegment(pCache, 10);
+
+    struct LcsClusterScanDef clusterScanDef;
+    clusterScanDef.clusterTupleDesc.push_back(attrDesc_int64);
+    clusterScanDef.clusterTupleDesc.push_back(attrDesc_int64);
+    clusterScanDef.pSegment = bTreeClusters[0]->segmentAccessor.pSegment;
+    clusterScanDef.pCacheAccessor =
+        bTreeClusters[0]->segmentAccessor.pCacheAccessor;
+    clusterScanDef.tupleDesc = bTreeClusters[0]->tupleDescriptor;
+    clusterScanDef.keyProj = bTreeClusters[0]->keyProjection;
+    clusterScanDef.rootPageId = bTreeClusters[0]->rootPageId;
+    clusterScanDef.segmentId = bTreeClusters[0]->segmentId;
+    clusterScanDef.pageOwnerId = bTreeClusters[0]->pageOwnerId;
+    aggParams.lcsClusterScanDefs.push_back(clusterScanDef);
+
+    aggParams.outputProj.push_back(0);
+    aggParams.outputProj.push_back(1);
+    aggParams.groupByKeyCount = groupByKeyCount;
+    if (groupByKeyCount > 0) {
+        aggParams.outputTupleDesc.push_back(attrDesc_int64);
+    }
+
+    // COUNT(*) and COUNT(c1) are never null; SUM, MIN and MAX are
+    AggFunction aggFunctions[] = {
+        AGG_FUNC_COUNT, AGG_FUNC_COUNT, AGG_FUNC_SUM, AGG_FUNC_MIN,
+        AGG_FUNC_MAX
+    };
+    uint nAggs = countOnly ? 2 : 5;
+    TupleAttributeDescriptor attrDesc_nullableInt64 = attrDesc_int64;
+    attrDesc_nullableInt64.isNullable = true;
+    for (uint i = 0; i < nAggs; i++) {
+        AggInvocation aggInvocation;
+        aggInvocation.aggFunction = aggFunctions[i];
+        aggInvocation.iInputAttr = (i == 0) ? -1 : 1;
+        aggParams.aggInvocations.push_back(aggInvocation);
+        aggParams.outputTupleDesc.push_back(
+            (aggFunctions[i] == AGG_FUNC_COUNT)
+            ? attrDesc_int64 : attrDesc_nullableInt64);
+    }
+
+    ExecStreamEmbryo aggStreamEmbryo;
+    aggStreamEmbryo.init(new LcsGroupAggExecStream(), aggParams);
+    aggStreamEmbryo.getStream()->setName("GroupAggExecStream");
+
+    SharedExecStream pOutputStream =
+        prepareTransformGraph(valuesStreamEmbryo, aggStreamEmbryo);
+
+    // Group g consists of rows g*nDups through g*nDups+nDups-1, and the
+    // second column of each row is its rid.  Without a GROUP BY there is
+    // only one group, so there is no step between groups.
+    uint groupStep = (groupByKeyCount > 0) ? nDups : 0;
+    vector<SharedInt64ColumnGenerator> columnGenerators;
+    if (groupByKeyCount > 0) {
+        columnGenerators.push_back(
+            SharedInt64ColumnGenerator(new SeqColumnGenerator(0)));
+    }
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new ConstColumnGenerator(nDups)));
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new ConstColumnGenerator(nDups)));
+    if (!countOnly) {
+        columnGenerators.push_back(
+            SharedInt64ColumnGenerator(
+                new SeqColumnGenerator(
+                    nDups * (nDups - 1) / 2,
+                    groupStep * nDups)));
+        columnGenerators.push_back(
+            SharedInt64ColumnGenerator(new SeqColumnGenerator(0, groupStep)));
+        columnGenerators.push_back(
+            SharedInt64ColumnGenerator(
+                new SeqColumnGenerator(nDups - 1, groupStep)));
+    }
+
+    CompositeExecStreamGenerator resultGenerator(columnGenerators);
+    verifyOutput(*pOutputStream, expectedNumRows, resultGenerator);
+}
+
 int LcsRowScanExecStreamTest::generateBitmaps(
     uint nRows, uint skipRows, TupleDescriptor const &bitmapTupleDesc,
     PBuffer pBuf)
@@ -482,6 +770,47 @@ int LcsRowScanExecStreamTest::generateBitmaps(
     return bufSize;
 }
 
+int LcsRowScanExecStreamTest::generateRidBitmaps(
+    vector<LcsRid> const &rids, TupleDescriptor const &bitmapTupleDesc,
+    PBuffer pBuf)
+{
+    int bufSize = 0;
+    LbmEntry lbmEntry;
+    boost::scoped_array<FixedBuffer> entryBuf;
+    TupleAccessor bitmapTupleAccessor;
+    LcsRid rid = rids[0];
+
+    TupleData bitmapTupleData(bitmapTupleDesc);
+    bitmapTupleData[0].pData = (PConstBuffer) &rid;
+    bitmapTupleData[1].pData = NULL;
+    bitmapTupleData[1].cbData = 0;
+    bitmapTupleData[2].pData = NULL;
+    bitmapTupleData[2].cbData = 0;
+
+    bitmapTupleAccessor.compute(bitmapTupleDesc);
+
+    // setup an LbmEntry with the first rid
+    uint scratchBufSize = LbmEntry::getScratchBufferSize(bitmapColSize);
+    entryBuf.reset(new FixedBuffer[scratchBufSize]);
+    lbmEntry.init(entryBuf.get(), NULL, scratchBufSize, bitmapTupleDesc);
+    lbmEntry.setEntryTuple(bitmapTupleData);
+
+    // add on the remaining rids
+    for (uint i = 1; i < rids.size(); i++) {
+        rid = rids[i];
+        if (!lbmEntry.setRID(rid)) {
+            // if exhausted buffer space, write the tuple to the output
+            // buffer and reset LbmEntry
+            produceEntry(lbmEntry, bitmapTupleAccessor, pBuf, bufSize);
+            lbmEntry.setEntryTuple(bitmapTupleData);
+        }
+    }
+    // write out the last LbmEntry
+    produceEntry(lbmEntry, bitmapTupleAccessor, pBuf, bufSize);
+
+    return bufSize;
+}
+
 void LcsRowScanExecStreamTest::produceEntry(
     LbmEntry &lbmEntry, TupleAccessor &bitmapTupleAccessor, PBuffer pBuf,
     int &bufSize)
@@ -655,6 +984,132 @@ void LcsRowScanExecStreamTest::testCount()
         &countParams);
 }
 
+/**
+ * Aggregate with and without grouping, with several rows per group
+ */
+void LcsRowScanExecStreamTest::testGroupAgg()
+{
+    uint nRows = 50000;
+    uint nDups = NDUPS;
+
+    vector<SharedInt64ColumnGenerator> columnGenerators;
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new DupColumnGenerator(nDups)));
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new SeqColumnGenerator(0)));
+    bTreeClusters.clear();
+    bTreeClusters.push_back(
+        boost::shared_ptr<BTreeDescriptor>(new BTreeDescriptor()));
+    loadCluster(nRows, columnGenerators, *(bTreeClusters[0]));
+    resetExecStreamTest();
+
+    testGroupAggCols(nRows, nDups, 1, false, nRows / nDups);
+    resetExecStreamTest();
+
+    // without a GROUP BY, all rows form a single group
+    testGroupAggCols(nRows, nRows, 0, false, 1);
+}
+
+/**
+ * Group by a unique column, producing many more groups than fit in the
+ * memory the test cache can grant to the group table.  Since the key
+ * column is sorted, groups produced before the table starts over are
+ * complete, and the output is the same as if they had all fit.
+ */
+void LcsRowScanExecStreamTest::testGroupAggManyGroups()
+{
+    uint nRows = 100000;
+
+    vector<SharedInt64ColumnGenerator> columnGenerators;
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new SeqColumnGenerator(0)));
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new SeqColumnGenerator(0)));
+    bTreeClusters.clear();
+    bTreeClusters.push_back(
+        boost::shared_ptr<BTreeDescriptor>(new BTreeDescriptor()));
+    loadCluster(nRows, columnGenerators, *(bTreeClusters[0]));
+    resetExecStreamTest();
+
+    testGroupAggCols(nRows, 1, 1, false, nRows);
+}
+
+/**
+ * Aggregate an empty cluster.  Without a GROUP BY, a single row with zero
+ * counts is produced; with one, there are no rows.
+ */
+void LcsRowScanExecStreamTest::testGroupAggEmpty()
+{
+    vector<SharedInt64ColumnGenerator> columnGenerators;
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new SeqColumnGenerator(0)));
+    columnGenerators.push_back(
+        SharedInt64ColumnGenerator(new SeqColumnGenerator(0)));
+    bTreeClusters.clear();
+    bTreeClusters.push_back(
+        boost::shared_ptr<BTreeDescriptor>(new BTreeDescriptor()));
+    loadCluster(0, columnGenerators, *(bTreeClusters[0]));
+    resetExecStreamTest();
+
+    testGroupAggCols(0, 0, 0, true, 1);
+    resetExecStreamTest();
+
+    testGroupAggCols(0, 1, 1, false, 0);
+}
+
+/**
+ * Split a full scan into several scans over disjoint rid ranges, with rows
+ * deleted on either side of each boundary between ranges, and verify that
+ * each scan reads exactly the rows in its range.
+ */
+void LcsRowScanExecStreamTest::testRidRangeScans()
+{
+    uint nRows = 50000;
+    uint nCols = 4;
+    uint nClusters = 3;
+    uint nPartitions = 5;
+    uint partitionSize = nRows / nPartitions;
+
+    bTreeClusters.clear();
+    loadClusters(nRows, nCols, nClusters, false);
+
+    TupleProjection proj;
+    for (uint i = 0; i < nClusters; i++) {
+        for (uint j = 0; j < nCols; j++) {
+            proj.push_back(i * nCols + j);
+        }
+    }
+
+    vector<LcsRid> deletedRids;
+    for (uint i = 1; i < nPartitions; i++) {
+        deletedRids.push_back(LcsRid(i * partitionSize - 1));
+        deletedRids.push_back(LcsRid(i * partitionSize));
+    }
+
+    // the last range is open-ended, as it is for the last partition of a
+    // parallel scan
+    for (uint i = 0; i < nPartitions; i++) {
+        uint start = i * partitionSize;
+        uint end = (i + 1) * partitionSize;
+        uint firstRid = (i == 0) ? start : start + 1;
+        uint nRowsRead = (i == nPartitions - 1) ? end - firstRid
+            : end - 1 - firstRid;
+        testRidRangeScanCols(
+            nCols, nClusters, proj, deletedRids,
+            LcsRid(start),
+            (i == nPartitions - 1) ? LcsRid(MAXU) : LcsRid(end),
+            firstRid, nRowsRead);
+        resetExecStreamTest();
+    }
+
+    // a range entirely within the table, not starting at a block boundary
+    deletedRids.clear();
+    deletedRids.push_back(LcsRid(nRows - 1));
+    testRidRangeScanCols(
+        nCols, nClusters, proj, deletedRids,
+        LcsRid(12345), LcsRid(23456), 12345, 23456 - 12345);
+}
+
 /**
  * Create an empty cluster with 1 column.  Try reading a rid from it
  */
@@ -443,6 +443,32 @@ from sys_boot.mgmt.statements_view;
 
 grant select on dba_sql_statements to dba;
 
+create or replace view dba_sql_statement_statistics as
+select
+sql_stmt as sql_text,
+calls as execution_count,
+total_execute_micros,
+min_execute_micros,
+max_execute_micros,
+mean_execute_micros,
+row_count,
+prepares as prepare_count,
+prepare_micros,
+code_cache_hits,
+last_execution_time as last_execution_timestamp
+from sys_boot.mgmt.statement_statistics_view;
+
+grant select on dba_sql_statement_statistics to dba;
+
+-- Discard the statistics shown by dba_sql_statement_statistics
+create or replace procedure reset_sql_statement_statistics()
+language java
+parameter style java
+no sql
+external name
+'class net.sf.farrago.syslib.FarragoManagementUDR.resetStatementStatistics';
+grant execute on specific procedure reset_sql_statement_statistics to dba;
+
 create or replace view dba_repository_properties as
 select * from sys_boot.mgmt.repository_properties_view;
 
@@ -770,6 +796,32 @@ called on null input
 external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFile';
 grant execute on specific procedure export_schema_to_file_2 to dba;
 
+-- Export schema to file UDP which exports several tables, or several LCS_RID
+-- ranges of tables with more than split_rows rows, at once using up to
+-- parallelism sessions
+create or replace procedure export_schema_to_file_parallel(
+  in cat varchar(128),
+  in schma varchar(128),
+  in exclude boolean, 
+  in tlist varchar(65535),
+  in tpattern varchar(65535),
+  in dir varchar(65535),
+  in bcp boolean,
+  in delete_failed_file boolean,
+  in field_delimiter varchar(2),
+  in file_extension varchar(5),
+  in date_format varchar(50),
+  in time_format varchar(50),
+  in timestamp_format varchar(50),
+  in parallelism int,
+  in split_rows bigint)
+language java
+reads sql data
+specific export_schema_to_file_parallel
+called on null input
+external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFileParallel';
+grant execute on specific procedure export_schema_to_file_parallel to dba;
+
 -- Export schema to csv files UDP. Standard version always creates bcp files
 -- and deletes incomplete files for a failed table export. 
 create or replace procedure export_schema_to_csv(
@@ -1026,6 +1078,17 @@ create or replace procedure test_all_servers_for_wrapper(
   'class net.sf.farrago.syslib.FarragoMedUDR.testAllServersForWrapper';
 grant execute on specific procedure test_all_servers_for_wrapper to dba;
 
+-- Discards the foreign metadata and statistics remembered by a
+-- particular SQL/MED data server.
+create or replace procedure flush_server_metadata_cache(
+  server_name varchar(128))
+  language java
+  parameter style java
+  no sql
+  external name
+  'class net.sf.farrago.syslib.FarragoMedUDR.flushServerMetadataCache';
+grant execute on specific procedure flush_server_metadata_cache to dba;
+
 create or replace procedure backup_database(
     in archive_directory varchar(65535),
     in backup_type varchar(16),
@@ -1097,6 +1097,26 @@ parameter style java
 reads sql data
 external name 'applib.applibJar:org.eigenbase.applib.analysis.EstimateStatisticsForSchemaUdp.execute(java.lang.String, java.lang.Double)';
 
+-- UDP for creating a table holding the result of an aggregate query, which
+-- the optimizer may use to answer queries with the same aggregation
+create or replace procedure applib.create_aggregate_view(
+in schemaName varchar(255),
+in viewName varchar(255),
+in query varchar(65535))
+language java
+parameter style java
+modifies sql data
+external name 'applib.applibJar:org.eigenbase.applib.util.AggregateViewUdp.create';
+
+-- UDP for bringing an aggregate view up to date with its base tables
+create or replace procedure applib.refresh_aggregate_view(
+in schemaName varchar(255),
+in viewName varchar(255))
+language java
+parameter style java
+modifies sql data
+external name 'applib.applibJar:org.eigenbase.applib.util.AggregateViewUdp.refresh';
+
 -- UDP for dropping a schema if it exists
 create or replace procedure applib.drop_schema_if_exists(
 in schemaname varchar(255),
@@ -37,11 +37,15 @@ public class SqlStatements implements SqlStatementsMBean
     Connection conn = null;
 
     private ResultSet getResultSet() throws Exception
+    {
+        return getResultSet(MBeanQueryObject.get().SqlStatementsQuery.str());
+    }
+
+    private ResultSet getResultSet(String query) throws Exception
     {
         conn = MBeanUtil.getConnection(conn);
         Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery(
-            MBeanQueryObject.get().SqlStatementsQuery.str());
+        ResultSet rs = stmt.executeQuery(query);
         return rs;
     }
 
@@ -120,5 +124,40 @@ public class SqlStatements implements SqlStatementsMBean
         }
     }
 
+    public TabularData getStatementStatistics() throws Exception
+    {
+        try {
+            return MBeanUtil.createTable(
+                getResultSet(
+                    MBeanQueryObject.get().SqlStatementStatisticsQuery.str()));
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+        } finally {
+            try {
+                conn.close();
+            } catch (Exception e) {
+                // do nothing
+            }
+        }
+        return null;
+    }
+
+    public String printStatementStatistics() throws Exception
+    {
+        ResultSet rs =
+            getResultSet(
+                MBeanQueryObject.get().SqlStatementStatisticsQuery.str());
+        try {
+            return MBeanUtil.printView(rs);
+        } finally {
+            try {
+                rs.close();
+                conn.close();
+            } catch (Exception e) {
+                // do nothing
+            }
+        }
+    }
+
 }
 // End SqlStatements.java
@@ -28,6 +28,8 @@ public interface SqlStatementsMBean
     public String printStatements() throws Exception;
     public String getSqlStatements(String sessionId) throws Exception;
     public String getDetailedSqlInfo(String stmtId) throws Exception;
+    public TabularData getStatementStatistics() throws Exception;
+    public String printStatementStatistics() throws Exception;
 }
 
 // End SqlStatementsMBean.java
@@ -0,0 +1,38 @@
+-- test the aggregate view UDPs
+create schema AGGVIEW;
+set schema 'AGGVIEW';
+create table SALES(REGION varchar(10), AMOUNT integer);
+insert into SALES values ('EAST', 10), ('EAST', 20), ('WEST', 5);
+
+call applib.create_aggregate_view('AGGVIEW', 'SALES_BY_REGION',
+'select REGION, sum(AMOUNT) as TOTAL, count(*) as N
+from AGGVIEW.SALES group by REGION');
+select * from SALES_BY_REGION order by 1;
+
+-- a query with the same aggregation is answered from the view
+select REGION, sum(AMOUNT), count(*) from SALES group by REGION order by 1;
+
+-- appended rows are merged into the view
+insert into SALES values ('WEST', 7), ('NORTH', 1);
+call applib.refresh_aggregate_view('AGGVIEW', 'SALES_BY_REGION');
+select * from SALES_BY_REGION order by 1;
+select REGION, sum(AMOUNT), count(*) from SALES group by REGION order by 1;
+
+-- after a delete the view is recomputed
+delete from SALES where AMOUNT = 20;
+select REGION, sum(AMOUNT), count(*) from SALES group by REGION order by 1;
+call applib.refresh_aggregate_view('AGGVIEW', 'SALES_BY_REGION');
+select * from SALES_BY_REGION order by 1;
+
+-- refreshing a view which is already fresh does nothing
+call applib.refresh_aggregate_view('AGGVIEW', 'SALES_BY_REGION');
+select * from SALES_BY_REGION order by 1;
+
+-- query without GROUP BY, should get error
+call applib.create_aggregate_view('AGGVIEW', 'SALES_TOTAL',
+'select sum(AMOUNT) from AGGVIEW.SALES');
+
+-- not an aggregate view, should get error
+call applib.refresh_aggregate_view('AGGVIEW', 'SALES');
+
+drop schema AGGVIEW cascade;